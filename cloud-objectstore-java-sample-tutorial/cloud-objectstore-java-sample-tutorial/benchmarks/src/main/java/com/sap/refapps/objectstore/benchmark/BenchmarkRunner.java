@@ -0,0 +1,64 @@
+package com.sap.refapps.objectstore.benchmark;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks once for each number of threads and adds the GC
+ * profiler, which reports the allocation rate per operation. Build and run
+ * them with
+ *
+ * <pre>
+ * mvn install
+ * mvn -f benchmarks/pom.xml package
+ * java -Dthreads=1,4,16 -jar benchmarks/target/benchmarks.jar [JMH options]
+ * </pre>
+ *
+ * The JMH options select benchmarks and parameters, e.g.
+ * <code>RepositoryBenchmark.download -p provider=filesystem -p size=1024</code>.
+ * The results of each thread count are written to
+ * benchmark-results-&lt;threads&gt;-threads.json, throughput and the sampled
+ * latency percentiles for every benchmark. With -t the benchmarks are run
+ * for that thread count only.
+ */
+public final class BenchmarkRunner {
+
+    private static final String DEFAULT_THREADS = "1,4,16";
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+        if (commandLineOptions.shouldHelp() || commandLineOptions.shouldList()
+                || commandLineOptions.shouldListWithParams() || commandLineOptions.shouldListProfilers()
+                || commandLineOptions.shouldListResultFormats()) {
+            Main.main(args);
+            return;
+        }
+        if (commandLineOptions.getThreads().hasValue()) {
+            run(commandLineOptions, commandLineOptions.getThreads().get());
+            return;
+        }
+        for (String threads : System.getProperty("threads", DEFAULT_THREADS).split(",")) {
+            run(commandLineOptions, Integer.parseInt(threads.trim()));
+        }
+    }
+
+    private static void run(final CommandLineOptions commandLineOptions, final int threads) throws Exception {
+        final ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLineOptions).threads(threads);
+        if (commandLineOptions.getProfilers().stream().noneMatch(profiler -> "gc".equals(profiler.getKlass())
+                || GCProfiler.class.getName().equals(profiler.getKlass()))) {
+            options.addProfiler(GCProfiler.class);
+        }
+        if (!commandLineOptions.getResult().hasValue()) {
+            options.resultFormat(ResultFormatType.JSON).result("benchmark-results-" + threads + "-threads.json");
+        }
+        new Runner(options.build()).run();
+    }
+}
@@ -0,0 +1,60 @@
+package com.sap.refapps.objectstore.benchmark;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.jclouds.blobstore.domain.MutableBlobMetadata;
+import org.jclouds.blobstore.domain.internal.MutableBlobMetadataImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sap.refapps.objectstore.model.BlobFile;
+import com.sap.refapps.objectstore.repository.ObjectStoreRepository;
+
+/**
+ * Conversion of the objectstore metadata into a BlobFile, done for every
+ * object of a listing. It includes the readable size and the formatted
+ * last modified date.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BlobFileBenchmark {
+
+    @Param({ "0", "1000", "1048576", "5368709120" })
+    private long size;
+
+    private MutableBlobMetadata metadata;
+
+    @Setup
+    public void setUp() {
+        metadata = new MutableBlobMetadataImpl();
+        metadata.setContainer("objectstore");
+        metadata.setName("images/photo.jpg");
+        metadata.setETag("\"9b2cf535f27731c974343645a3985328\"");
+        metadata.setSize(size);
+        metadata.setLastModified(new Date());
+        metadata.setUri(URI.create("https://objectstore.s3.amazonaws.com/images/photo.jpg"));
+        metadata.setUserMetadata(Collections.singletonMap("owner", "benchmark"));
+        metadata.getContentMetadata().setContentType("image/jpeg");
+    }
+
+    @Benchmark
+    public BlobFile createBlobFile() {
+        return ObjectStoreRepository.createBlobFile("objectstore", metadata);
+    }
+}
@@ -0,0 +1,77 @@
+package com.sap.refapps.objectstore.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.jclouds.blobstore.options.ListContainerOptions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sap.refapps.objectstore.model.BlobFile;
+import com.sap.refapps.objectstore.model.BlobFilePage;
+
+/**
+ * Listing of a bucket through the repository, as a single page and as the
+ * whole bucket page by page. The size of a listing is given by the number
+ * of objects, their content does not matter.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ListBenchmark {
+
+    private static final int PAGE_SIZE = 100;
+
+    @Param({ "transient", "filesystem" })
+    private String provider;
+
+    @Param({ "100", "1000", "10000" })
+    private int objects;
+
+    @Param({ "false", "true" })
+    private boolean withMetadata;
+
+    private LocalBackend backend;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        backend = new LocalBackend(provider);
+        final byte[] content = new byte[128];
+        for (int i = 0; i < objects; i++) {
+            backend.getRepository().uploadFile(backend.getBucket(), new ByteArrayInputStream(content),
+                    content.length, String.format("object-%05d.bin", i), "application/octet-stream");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        backend.close();
+    }
+
+    @Benchmark
+    public BlobFilePage listPage() {
+        return backend.getRepository().listFiles(backend.getBucket(),
+                new ListContainerOptions().maxResults(PAGE_SIZE), withMetadata);
+    }
+
+    @Benchmark
+    public List<BlobFile> listAll() {
+        return backend.getRepository().listFiles(backend.getBucket(), withMetadata);
+    }
+}
@@ -0,0 +1,101 @@
+package com.sap.refapps.objectstore.benchmark;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import com.sap.refapps.objectstore.config.BlobStoreContextProvider;
+import com.sap.refapps.objectstore.config.CacheConfiguration;
+import com.sap.refapps.objectstore.config.CompressionConfiguration;
+import com.sap.refapps.objectstore.config.CopyConfiguration;
+import com.sap.refapps.objectstore.config.DeduplicationConfiguration;
+import com.sap.refapps.objectstore.config.ListConfiguration;
+import com.sap.refapps.objectstore.config.LocalConfiguration;
+import com.sap.refapps.objectstore.config.MetadataCacheConfiguration;
+import com.sap.refapps.objectstore.config.MultipartUploadConfiguration;
+import com.sap.refapps.objectstore.config.ParallelDownloadConfiguration;
+import com.sap.refapps.objectstore.repository.BlobCache;
+import com.sap.refapps.objectstore.repository.ContentCompressor;
+import com.sap.refapps.objectstore.repository.Deduplicator;
+import com.sap.refapps.objectstore.repository.MultipartCopier;
+import com.sap.refapps.objectstore.repository.MultipartUploader;
+import com.sap.refapps.objectstore.repository.ObjectStoreMetrics;
+import com.sap.refapps.objectstore.repository.ObjectStoreRepository;
+import com.sap.refapps.objectstore.repository.ParallelDownloader;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * The repository wired like the application does on a local backend, with
+ * the default configuration, i.e. caches, compression and deduplication
+ * switched off, and with metrics recorded in memory. The filesystem backend stores its files in a temporary
+ * directory that is removed on close.
+ */
+final class LocalBackend implements Closeable {
+
+    private final Path directory;
+    private final LocalConfiguration localConfig;
+    private final BlobStoreContextProvider contextProvider;
+    private final MultipartUploader multipartUploader;
+    private final MultipartCopier multipartCopier;
+    private final ParallelDownloader parallelDownloader;
+    private final BlobCache blobCache;
+    private final ObjectStoreMetrics metrics;
+    private final ObjectStoreRepository repository;
+
+    /**
+     * @param provider
+     *            filesystem or transient
+     * @throws IOException
+     */
+    LocalBackend(final String provider) throws IOException {
+        this.directory = Files.createTempDirectory("objectstore-benchmark-");
+        this.localConfig = new LocalConfiguration();
+        localConfig.setDirectory(directory.toString());
+        this.contextProvider = new BlobStoreContextProvider(provider,
+                () -> localConfig.getBlobStoreContext(provider));
+        this.multipartUploader = new MultipartUploader(new MultipartUploadConfiguration());
+        this.multipartCopier = new MultipartCopier(new CopyConfiguration());
+        this.parallelDownloader = new ParallelDownloader(new ParallelDownloadConfiguration());
+        this.blobCache = new BlobCache(new CacheConfiguration());
+        this.metrics = new ObjectStoreMetrics(new SimpleMeterRegistry(), contextProvider);
+        this.repository = new ObjectStoreRepository(contextProvider, multipartUploader, multipartCopier,
+                parallelDownloader,
+                new ContentCompressor(new CompressionConfiguration()),
+                new Deduplicator(new DeduplicationConfiguration()), Optional.empty(), blobCache,
+                new ListConfiguration(), new MetadataCacheConfiguration(), metrics);
+    }
+
+    LocalConfiguration getLocalConfig() {
+        return localConfig;
+    }
+
+    String getBucket() {
+        return localConfig.getBucket();
+    }
+
+    ObjectStoreMetrics getMetrics() {
+        return metrics;
+    }
+
+    ObjectStoreRepository getRepository() {
+        return repository;
+    }
+
+    @Override
+    public void close() throws IOException {
+        repository.shutdown();
+        blobCache.shutdown();
+        parallelDownloader.shutdown();
+        multipartUploader.shutdown();
+        multipartCopier.shutdown();
+        contextProvider.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.sap.refapps.objectstore.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jclouds.blobstore.options.GetOptions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.sap.refapps.objectstore.model.BlobContent;
+
+/**
+ * Upload, download and delete of a single object through the repository,
+ * on both local backends and for small to large objects. Every thread
+ * uploads and deletes its own objects, all threads download the same one.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RepositoryBenchmark {
+
+    private static final String DOWNLOADED_OBJECT = "download.bin";
+    private static final String CONTENT_TYPE = "application/octet-stream";
+
+    @Param({ "transient", "filesystem" })
+    private String provider;
+
+    @Param({ "1024", "1048576", "16777216" })
+    private int size;
+
+    private LocalBackend backend;
+    private byte[] content;
+    private final AtomicInteger threads = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        backend = new LocalBackend(provider);
+        content = new byte[size];
+        new Random(42).nextBytes(content);
+        upload(DOWNLOADED_OBJECT);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        backend.close();
+    }
+
+    private String upload(final String fileName) throws IOException {
+        return backend.getRepository().uploadFile(backend.getBucket(), new ByteArrayInputStream(content),
+                content.length, fileName, CONTENT_TYPE);
+    }
+
+    /**
+     * Object names and read buffer of a benchmark thread.
+     */
+    @State(Scope.Thread)
+    public static class ThreadState {
+
+        private String uploadedObject;
+        private String deletedObject;
+        private final byte[] buffer = new byte[64 * 1024];
+
+        @Setup(Level.Trial)
+        public void setUp(final RepositoryBenchmark benchmark) {
+            final int thread = benchmark.threads.incrementAndGet();
+            uploadedObject = "upload-" + thread + ".bin";
+            deletedObject = "delete-" + thread + ".bin";
+        }
+    }
+
+    /**
+     * Recreates the deleted object before every delete. The time of the
+     * upload is not measured, its allocations are part of the allocation
+     * rate of delete though.
+     */
+    @State(Scope.Thread)
+    public static class DeleteState {
+
+        @Setup(Level.Invocation)
+        public void createObject(final RepositoryBenchmark benchmark, final ThreadState thread)
+                throws IOException {
+            benchmark.upload(thread.deletedObject);
+        }
+    }
+
+    @Benchmark
+    public String upload(final ThreadState thread) throws IOException {
+        return upload(thread.uploadedObject);
+    }
+
+    @Benchmark
+    public long download(final ThreadState thread, final Blackhole blackhole) throws IOException {
+        final BlobContent blobContent = backend.getRepository()
+                .downloadFile(backend.getBucket(), DOWNLOADED_OBJECT, GetOptions.NONE)
+                .orElseThrow(() -> new IllegalStateException(DOWNLOADED_OBJECT + " does not exist"));
+        long length = 0;
+        try (InputStream inputStream = blobContent.getInputStream()) {
+            int read;
+            while ((read = inputStream.read(thread.buffer)) != -1) {
+                blackhole.consume(thread.buffer);
+                length += read;
+            }
+        }
+        return length;
+    }
+
+    @Benchmark
+    public boolean delete(final ThreadState thread, final DeleteState delete) {
+        return backend.getRepository().deleteFile(backend.getBucket(), thread.deletedObject);
+    }
+}
@@ -0,0 +1,120 @@
+package com.sap.refapps.objectstore.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.fileupload.FileUploadException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sap.refapps.objectstore.config.BatchUploadConfiguration;
+import com.sap.refapps.objectstore.config.BulkDeleteConfiguration;
+import com.sap.refapps.objectstore.config.CopyConfiguration;
+import com.sap.refapps.objectstore.config.DownloadConfiguration;
+import com.sap.refapps.objectstore.controller.DownloadStreamer;
+import com.sap.refapps.objectstore.controller.ObjectstoreController;
+import com.sap.refapps.objectstore.service.BatchUploadService;
+import com.sap.refapps.objectstore.service.BulkDeleteService;
+import com.sap.refapps.objectstore.service.CopyService;
+import com.sap.refapps.objectstore.service.impl.LocalObjectStoreService;
+
+/**
+ * Upload of a multipart request through the controller into the transient
+ * backend, i.e. the multipart parsing and streaming of the part without
+ * the network. Browsers send no length with a part, such a part is
+ * uploaded without a known length; partLength adds the Content-Length
+ * header to the part.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UploadControllerBenchmark {
+
+    private static final String BOUNDARY = "----objectstore-benchmark-boundary";
+
+    @Param({ "1024", "1048576", "16777216" })
+    private int size;
+
+    @Param({ "false", "true" })
+    private boolean partLength;
+
+    private LocalBackend backend;
+    private ExecutorService executor;
+    private BatchUploadService batchUploadService;
+    private BulkDeleteService bulkDeleteService;
+    private CopyService copyService;
+    private ObjectstoreController controller;
+    private byte[] body;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        backend = new LocalBackend("transient");
+        executor = Executors.newSingleThreadExecutor();
+        final LocalObjectStoreService objectStoreService = new LocalObjectStoreService(backend.getLocalConfig(),
+                backend.getRepository(), executor, backend.getMetrics());
+        batchUploadService = new BatchUploadService(objectStoreService, new BatchUploadConfiguration());
+        bulkDeleteService = new BulkDeleteService(objectStoreService, new BulkDeleteConfiguration());
+        copyService = new CopyService(objectStoreService, new CopyConfiguration());
+        controller = new ObjectstoreController(objectStoreService, batchUploadService, bulkDeleteService,
+                copyService, new DownloadStreamer(new DownloadConfiguration(), backend.getMetrics()),
+                new ObjectMapper());
+        body = createBody();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        copyService.shutdown();
+        bulkDeleteService.shutdown();
+        batchUploadService.shutdown();
+        executor.shutdownNow();
+        backend.close();
+    }
+
+    private byte[] createBody() throws IOException {
+        final byte[] content = new byte[size];
+        new Random(42).nextBytes(content);
+        final StringBuilder headers = new StringBuilder().append("--").append(BOUNDARY).append("\r\n")
+                .append("Content-Disposition: form-data; name=\"file\"; filename=\"upload.bin\"\r\n")
+                .append("Content-Type: application/octet-stream\r\n");
+        if (partLength) {
+            headers.append("Content-Length: ").append(size).append("\r\n");
+        }
+        headers.append("\r\n");
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream(size + 512);
+        outputStream.write(headers.toString().getBytes(StandardCharsets.US_ASCII));
+        outputStream.write(content);
+        outputStream.write(("\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+        return outputStream.toByteArray();
+    }
+
+    @Benchmark
+    public ResponseEntity<String> uploadFile() throws IOException, FileUploadException {
+        final MockHttpServletRequest request = new MockHttpServletRequest("POST",
+                "/objectstorage.svc/api/v1/storage");
+        request.setContentType("multipart/form-data; boundary=" + BOUNDARY);
+        request.setContent(body);
+        return controller.uploadFile(request);
+    }
+}
@@ -0,0 +1,265 @@
+package com.sap.refapps.objectstore.loadtest;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryUsage;
+import java.lang.management.ThreadMXBean;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.MBeanServerConnection;
+import javax.management.ObjectName;
+import javax.management.remote.JMXConnector;
+import javax.management.remote.JMXConnectorFactory;
+import javax.management.remote.JMXServiceURL;
+
+/**
+ * The application under test, started from its executable jar with the aws
+ * backend pointed at the stand-in store. Heap, threads and garbage
+ * collection of the process are read over JMX on the loopback interface.
+ */
+final class ApplicationProcess implements Closeable {
+
+    private static final long STARTUP_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(2);
+    private static final String CREDENTIALS = "vcap.services.objectstore-service.credentials.";
+
+    private final Process process;
+    private final int port;
+    private final File log;
+    private JMXConnector jmxConnector;
+
+    private ApplicationProcess(final Process process, final int port, final File log) {
+        this.process = process;
+        this.port = port;
+        this.log = log;
+    }
+
+    /**
+     * Starts the application and waits until it serves requests.
+     *
+     * @param options
+     * @param mode
+     *            platform, virtual or parallel
+     * @param storeEndpoint
+     * @return the started application
+     * @throws IOException
+     *             if the application does not start
+     */
+    static ApplicationProcess start(final LoadTestOptions options, final String mode, final String storeEndpoint)
+            throws IOException, InterruptedException {
+        final int port = getFreePort();
+        final int jmxPort = getFreePort();
+        final List<String> command = new ArrayList<>();
+        command.add(options.getJava());
+        command.add("-Xmx" + options.getAppHeap());
+        command.add("-Dcom.sun.management.jmxremote.port=" + jmxPort);
+        command.add("-Dcom.sun.management.jmxremote.rmi.port=" + jmxPort);
+        command.add("-Dcom.sun.management.jmxremote.authenticate=false");
+        command.add("-Dcom.sun.management.jmxremote.ssl=false");
+        command.add("-Djava.rmi.server.hostname=127.0.0.1");
+        command.add("-jar");
+        command.add(options.getAppJar());
+        command.add("--server.port=" + port);
+        command.add("--server.address=127.0.0.1");
+        command.add("--objectstore.backend=aws");
+        command.add("--objectstore.aws.endpoint=" + storeEndpoint);
+        command.add("--" + CREDENTIALS + "bucket=loadtest");
+        command.add("--" + CREDENTIALS + "access-key-id=loadtest");
+        command.add("--" + CREDENTIALS + "secret-access-key=loadtest");
+        command.add("--logging.level.root=WARN");
+        if (mode.equals("virtual")) {
+            command.add("--spring.profiles.include=virtual-threads");
+        } else if (mode.equals("parallel")) {
+            command.add("--objectstore.parallel-download.enabled=true");
+        }
+        command.addAll(options.getAppArgs());
+
+        final File log = new File("loadtest-app-" + mode + ".log");
+        final ProcessBuilder processBuilder = new ProcessBuilder(command).redirectErrorStream(true)
+                .redirectOutput(log);
+        // only read by Java 9 and later, which need it for Spring 5.0
+        processBuilder.environment().put("JDK_JAVA_OPTIONS", "--add-opens java.base/java.lang=ALL-UNNAMED");
+        final ApplicationProcess application = new ApplicationProcess(processBuilder.start(), port, log);
+        try {
+            application.awaitStartup();
+            application.jmxConnector = JMXConnectorFactory.connect(
+                    new JMXServiceURL("service:jmx:rmi:///jndi/rmi://127.0.0.1:" + jmxPort + "/jmxrmi"));
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            application.close();
+            throw e;
+        }
+        return application;
+    }
+
+    String getBaseUrl() {
+        return "http://127.0.0.1:" + port;
+    }
+
+    /**
+     * @return sampler of heap and threads, started
+     * @throws IOException
+     * @throws JMException
+     */
+    ResourceSampler startSampling() throws IOException, JMException {
+        return new ResourceSampler(jmxConnector.getMBeanServerConnection());
+    }
+
+    @Override
+    public void close() {
+        if (jmxConnector != null) {
+            try {
+                jmxConnector.close();
+            } catch (IOException e) {
+                // the process is stopped anyway
+            }
+        }
+        process.destroy();
+        try {
+            if (!process.waitFor(30, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+            }
+        } catch (InterruptedException e) {
+            process.destroyForcibly();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void awaitStartup() throws IOException, InterruptedException {
+        final long deadline = System.currentTimeMillis() + STARTUP_TIMEOUT_MILLIS;
+        while (System.currentTimeMillis() < deadline) {
+            if (!process.isAlive()) {
+                throw new IOException("The application exited with " + process.exitValue() + ", see " + log);
+            }
+            try {
+                final HttpURLConnection connection = (HttpURLConnection) new URL(
+                        getBaseUrl() + "/objectstorage.svc/api/v1/storage?maxResults=1").openConnection();
+                if (connection.getResponseCode() == HttpURLConnection.HTTP_OK) {
+                    return;
+                }
+            } catch (IOException e) {
+                // not listening yet
+            }
+            TimeUnit.MILLISECONDS.sleep(500);
+        }
+        throw new IOException("The application has not started within " + STARTUP_TIMEOUT_MILLIS + " ms, see " + log);
+    }
+
+    private static int getFreePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    /**
+     * Samples heap and live threads of the application once a second.
+     * Threads are the platform threads, virtual threads are not counted.
+     */
+    static final class ResourceSampler {
+
+        private final MemoryMXBean memory;
+        private final ThreadMXBean threads;
+        private final List<GarbageCollectorMXBean> garbageCollectors = new ArrayList<>();
+        private final ScheduledExecutorService scheduler;
+        private final long startCollections;
+        private final long startCollectionTime;
+        private long samples;
+        private long heapUsedTotal;
+        private long heapUsedMax;
+        private long heapCommittedMax;
+        private long threadsTotal;
+        private long threadsMax;
+
+        ResourceSampler(final MBeanServerConnection connection) throws IOException, JMException {
+            this.memory = ManagementFactory.newPlatformMXBeanProxy(connection, ManagementFactory.MEMORY_MXBEAN_NAME,
+                    MemoryMXBean.class);
+            this.threads = ManagementFactory.newPlatformMXBeanProxy(connection,
+                    ManagementFactory.THREAD_MXBEAN_NAME, ThreadMXBean.class);
+            for (ObjectName name : connection.queryNames(
+                    new ObjectName(ManagementFactory.GARBAGE_COLLECTOR_MXBEAN_DOMAIN_TYPE + ",*"), null)) {
+                garbageCollectors.add(ManagementFactory.newPlatformMXBeanProxy(connection, name.toString(),
+                        GarbageCollectorMXBean.class));
+            }
+            this.startCollections = getCollections();
+            this.startCollectionTime = getCollectionTime();
+            threads.resetPeakThreadCount();
+            this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                final Thread thread = new Thread(runnable, "loadtest-sampler");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleAtFixedRate(this::sample, 0, 1, TimeUnit.SECONDS);
+        }
+
+        private synchronized void sample() {
+            try {
+                final MemoryUsage heap = memory.getHeapMemoryUsage();
+                final int threadCount = threads.getThreadCount();
+                samples++;
+                heapUsedTotal += heap.getUsed();
+                heapUsedMax = Math.max(heapUsedMax, heap.getUsed());
+                heapCommittedMax = Math.max(heapCommittedMax, heap.getCommitted());
+                threadsTotal += threadCount;
+                threadsMax = Math.max(threadsMax, threadCount);
+            } catch (RuntimeException e) {
+                // a sample lost to a busy application
+            }
+        }
+
+        /**
+         * @return summary of the samples since the start
+         */
+        synchronized ResourceUsage stop() {
+            scheduler.shutdownNow();
+            return new ResourceUsage(samples > 0 ? heapUsedTotal / samples : 0, heapUsedMax, heapCommittedMax,
+                    samples > 0 ? (double) threadsTotal / samples : 0, threadsMax, threads.getPeakThreadCount(),
+                    getCollections() - startCollections, getCollectionTime() - startCollectionTime);
+        }
+
+        private long getCollections() {
+            return garbageCollectors.stream().mapToLong(GarbageCollectorMXBean::getCollectionCount).sum();
+        }
+
+        private long getCollectionTime() {
+            return garbageCollectors.stream().mapToLong(GarbageCollectorMXBean::getCollectionTime).sum();
+        }
+    }
+
+    /**
+     * Heap and thread usage of the application during a run.
+     */
+    static final class ResourceUsage {
+
+        final long heapUsedAverage;
+        final long heapUsedMax;
+        final long heapCommittedMax;
+        final double threadsAverage;
+        final long threadsMax;
+        final long threadsPeak;
+        final long collections;
+        final long collectionMillis;
+
+        ResourceUsage(final long heapUsedAverage, final long heapUsedMax, final long heapCommittedMax,
+                final double threadsAverage, final long threadsMax, final long threadsPeak, final long collections,
+                final long collectionMillis) {
+            this.heapUsedAverage = heapUsedAverage;
+            this.heapUsedMax = heapUsedMax;
+            this.heapCommittedMax = heapCommittedMax;
+            this.threadsAverage = threadsAverage;
+            this.threadsMax = threadsMax;
+            this.threadsPeak = threadsPeak;
+            this.collections = collections;
+            this.collectionMillis = collectionMillis;
+        }
+    }
+}
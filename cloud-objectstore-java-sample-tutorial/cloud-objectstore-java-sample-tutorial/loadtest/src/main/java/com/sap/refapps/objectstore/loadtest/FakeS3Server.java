@@ -0,0 +1,751 @@
+package com.sap.refapps.objectstore.loadtest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * An in-memory stand-in for S3 on the loopback interface. It serves the
+ * part of the S3 REST API the application uses through jclouds aws-s3 with
+ * path-style requests: objects with user metadata, conditional and ranged
+ * gets, copies, listings, multi-object delete, multipart uploads and
+ * multipart copies. Signatures are not checked.
+ *
+ * Every response is delayed by the latency plus up to jitter, request and
+ * response bodies are transferred at bandwidth bytes per second at most,
+ * and errorRate of the requests fail with 503 SlowDown like a throttling
+ * S3.
+ */
+final class FakeS3Server implements Closeable {
+
+    private static final String S3_NAMESPACE = "http://s3.amazonaws.com/doc/2006-03-01/";
+    private static final String STREAMING_PAYLOAD = "STREAMING-";
+    private static final int CHUNK_SIZE = 16 * 1024;
+    private static final DateTimeFormatter ISO_DATE = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'")
+            .withZone(ZoneOffset.UTC);
+    private static final Pattern KEY = Pattern.compile("<Key>(.*?)</Key>", Pattern.DOTALL);
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d*)-(\\d*)");
+    private static final Pattern PART = Pattern
+            .compile("<Part>\\s*<PartNumber>(\\d+)</PartNumber>\\s*<ETag>(.*?)</ETag>\\s*</Part>", Pattern.DOTALL);
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final long latencyMillis;
+    private final long jitterMillis;
+    private final long bandwidth;
+    private final double errorRate;
+    private final ConcurrentMap<String, NavigableMap<String, StoredObject>> buckets = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, PendingUpload> uploads = new ConcurrentHashMap<>();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong injectedErrors = new AtomicLong();
+
+    /**
+     * Starts the server on a free port.
+     *
+     * @param options
+     * @throws IOException
+     */
+    FakeS3Server(final LoadTestOptions options) throws IOException {
+        this.latencyMillis = options.getLatencyMillis();
+        this.jitterMillis = options.getJitterMillis();
+        this.bandwidth = options.getBandwidth();
+        this.errorRate = options.getErrorRate();
+        final AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            final Thread thread = new Thread(null, runnable, "fake-s3-" + threadNumber.incrementAndGet(), 256 * 1024);
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 4096);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * @return endpoint to configure in jclouds
+     */
+    String getEndpoint() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    long getRequests() {
+        return requests.get();
+    }
+
+    long getInjectedErrors() {
+        return injectedErrors.get();
+    }
+
+    /**
+     * Drops all objects and uploads and resets the counters.
+     */
+    void reset() {
+        buckets.clear();
+        uploads.clear();
+        resetCounters();
+    }
+
+    /**
+     * Resets the counters, the objects are kept.
+     */
+    void resetCounters() {
+        requests.set(0);
+        injectedErrors.set(0);
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        try {
+            Response response;
+            try {
+                if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+                    injectedErrors.incrementAndGet();
+                    readBody(exchange);
+                    response = error(503, "SlowDown", "Please reduce your request rate.");
+                } else {
+                    response = route(exchange);
+                }
+            } catch (RuntimeException e) {
+                response = error(500, "InternalError", String.valueOf(e));
+            }
+            delay();
+            send(exchange, response);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private Response route(final HttpExchange exchange) throws IOException {
+        final String method = exchange.getRequestMethod();
+        final String path = exchange.getRequestURI().getPath();
+        final Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+        final int slash = path.indexOf('/', 1);
+        final String bucket = slash < 0 ? path.substring(1) : path.substring(1, slash);
+        final String key = slash < 0 ? "" : path.substring(slash + 1);
+        if (bucket.isEmpty()) {
+            return xml(200, "<ListAllMyBucketsResult xmlns=\"" + S3_NAMESPACE + "\"><Buckets/></ListAllMyBucketsResult>");
+        }
+        if (key.isEmpty()) {
+            switch (method) {
+            case "GET":
+                if (query.containsKey("location")) {
+                    return xml(200, "<LocationConstraint xmlns=\"" + S3_NAMESPACE + "\"/>");
+                }
+                return list(bucket, query);
+            case "POST":
+                if (query.containsKey("delete")) {
+                    return deleteObjects(bucket, readBody(exchange));
+                }
+                break;
+            case "PUT":
+                readBody(exchange);
+                getBucket(bucket);
+                return new Response(200);
+            case "HEAD":
+                return new Response(200);
+            case "DELETE":
+                buckets.remove(bucket);
+                return new Response(204);
+            default:
+                break;
+            }
+        } else {
+            switch (method) {
+            case "GET":
+                return get(exchange, bucket, key, false);
+            case "HEAD":
+                return get(exchange, bucket, key, true);
+            case "PUT":
+                if (query.containsKey("uploadId")) {
+                    return uploadPart(exchange, query);
+                }
+                if (exchange.getRequestHeaders().containsKey("x-amz-copy-source")) {
+                    readBody(exchange);
+                    return copy(exchange, bucket, key);
+                }
+                return put(exchange, bucket, key);
+            case "POST":
+                if (query.containsKey("uploads")) {
+                    readBody(exchange);
+                    return initiateUpload(exchange, bucket, key);
+                }
+                if (query.containsKey("uploadId")) {
+                    return completeUpload(exchange, bucket, key, query.get("uploadId"));
+                }
+                break;
+            case "DELETE":
+                if (query.containsKey("uploadId")) {
+                    uploads.remove(query.get("uploadId"));
+                } else {
+                    getBucket(bucket).remove(key);
+                }
+                return new Response(204);
+            default:
+                break;
+            }
+        }
+        readBody(exchange);
+        return error(501, "NotImplemented", method + " " + exchange.getRequestURI() + " is not implemented");
+    }
+
+    private NavigableMap<String, StoredObject> getBucket(final String bucket) {
+        return buckets.computeIfAbsent(bucket, name -> new ConcurrentSkipListMap<>());
+    }
+
+    private Response put(final HttpExchange exchange, final String bucket, final String key) throws IOException {
+        final StoredObject object = new StoredObject(readBody(exchange), getContentType(exchange),
+                getUserMetadata(exchange.getRequestHeaders()));
+        getBucket(bucket).put(key, object);
+        return new Response(200).header("ETag", object.getETag());
+    }
+
+    private Response copy(final HttpExchange exchange, final String bucket, final String key) {
+        final Headers headers = exchange.getRequestHeaders();
+        final StoredObject sourceObject = getCopySource(headers);
+        if (sourceObject == null) {
+            return error(404, "NoSuchKey", "The specified key does not exist.");
+        }
+        final String ifMatch = headers.getFirst("x-amz-copy-source-if-match");
+        if (ifMatch != null && !matches(ifMatch, sourceObject.getETag())) {
+            return error(412, "PreconditionFailed", "At least one of the preconditions you specified did not hold.");
+        }
+        final StoredObject object = "REPLACE".equals(headers.getFirst("x-amz-metadata-directive"))
+                ? new StoredObject(sourceObject.content, getContentType(exchange), getUserMetadata(headers))
+                : new StoredObject(sourceObject.content, sourceObject.contentType, sourceObject.userMetadata);
+        getBucket(bucket).put(key, object);
+        return xml(200, "<CopyObjectResult xmlns=\"" + S3_NAMESPACE + "\"><LastModified>"
+                + ISO_DATE.format(object.lastModified) + "</LastModified><ETag>" + escape(object.getETag())
+                + "</ETag></CopyObjectResult>");
+    }
+
+    /**
+     * @return object named by the x-amz-copy-source header, null if it does
+     *         not exist
+     */
+    private StoredObject getCopySource(final Headers headers) {
+        final String source = decode(headers.getFirst("x-amz-copy-source"));
+        final int slash = source.indexOf('/', source.startsWith("/") ? 1 : 0);
+        if (slash < 0) {
+            return null;
+        }
+        final String sourceBucket = source.substring(source.startsWith("/") ? 1 : 0, slash);
+        return getBucket(sourceBucket).get(source.substring(slash + 1));
+    }
+
+    private Response get(final HttpExchange exchange, final String bucket, final String key, final boolean head) {
+        final StoredObject object = getBucket(bucket).get(key);
+        if (object == null) {
+            return head ? new Response(404) : error(404, "NoSuchKey", "The specified key does not exist.");
+        }
+        final Headers headers = exchange.getRequestHeaders();
+        final String ifMatch = headers.getFirst("If-Match");
+        final String ifNoneMatch = headers.getFirst("If-None-Match");
+        final Instant ifModifiedSince = parseDate(headers.getFirst("If-Modified-Since"));
+        final Instant ifUnmodifiedSince = parseDate(headers.getFirst("If-Unmodified-Since"));
+        if ((ifMatch != null && !matches(ifMatch, object.getETag()))
+                || (ifUnmodifiedSince != null && object.lastModified.isAfter(ifUnmodifiedSince))) {
+            return error(412, "PreconditionFailed", "At least one of the preconditions you specified did not hold.");
+        }
+        if ((ifNoneMatch != null && matches(ifNoneMatch, object.getETag()))
+                || (ifModifiedSince != null && !object.lastModified.isAfter(ifModifiedSince))) {
+            return new Response(304).header("ETag", object.getETag());
+        }
+        final Response response = new Response(200).header("ETag", object.getETag())
+                .header("Last-Modified", DateTimeFormatter.RFC_1123_DATE_TIME
+                        .format(ZonedDateTime.ofInstant(object.lastModified, ZoneOffset.UTC)))
+                .header("Content-Type", object.contentType).header("Accept-Ranges", "bytes");
+        object.userMetadata.forEach((name, value) -> response.header("x-amz-meta-" + name, value));
+        final int size = object.content.length;
+        int offset = 0;
+        int length = size;
+        final String range = headers.getFirst("Range");
+        if (range != null && range.startsWith("bytes=")) {
+            // a single range, as S3 serves them
+            final String first = range.substring("bytes=".length()).split(",")[0].trim();
+            final int dash = first.indexOf('-');
+            final long start;
+            final long end;
+            if (dash == 0) {
+                start = Math.max(0, size - Long.parseLong(first.substring(1)));
+                end = size - 1;
+            } else {
+                start = Long.parseLong(first.substring(0, dash));
+                end = dash == first.length() - 1 ? size - 1
+                        : Math.min(size - 1, Long.parseLong(first.substring(dash + 1)));
+            }
+            if (start > end || start >= size) {
+                return error(416, "InvalidRange", "The requested range is not satisfiable")
+                        .header("Content-Range", "bytes */" + size);
+            }
+            offset = (int) start;
+            length = (int) (end - start + 1);
+            response.status = 206;
+            response.header("Content-Range", "bytes " + start + "-" + end + "/" + size);
+        }
+        if (head) {
+            return response.header("Content-Length", Integer.toString(length)).head();
+        }
+        return response.body(object.content, offset, length);
+    }
+
+    private Response list(final String bucket, final Map<String, String> query) {
+        final boolean v2 = "2".equals(query.get("list-type"));
+        final String prefix = query.getOrDefault("prefix", "");
+        final String delimiter = query.get("delimiter");
+        final String marker = v2 ? query.getOrDefault("continuation-token", query.getOrDefault("start-after", ""))
+                : query.getOrDefault("marker", "");
+        final int maxKeys = Math.min(1000, Integer.parseInt(query.getOrDefault("max-keys", "1000")));
+        final NavigableMap<String, StoredObject> objects = getBucket(bucket);
+        final StringBuilder contents = new StringBuilder();
+        final StringBuilder commonPrefixes = new StringBuilder();
+        String lastPrefix = null;
+        String nextMarker = null;
+        int count = 0;
+        boolean truncated = false;
+        final String from = marker.compareTo(prefix) > 0 ? marker : prefix;
+        for (Map.Entry<String, StoredObject> entry : objects.tailMap(from, !from.equals(marker)).entrySet()) {
+            final String key = entry.getKey();
+            if (!key.startsWith(prefix)) {
+                break;
+            }
+            final int delimiterIndex = delimiter != null ? key.indexOf(delimiter, prefix.length()) : -1;
+            final String commonPrefix = delimiterIndex >= 0 ? key.substring(0, delimiterIndex + delimiter.length())
+                    : null;
+            if (commonPrefix != null && commonPrefix.equals(lastPrefix)) {
+                continue;
+            }
+            if (count == maxKeys) {
+                truncated = true;
+                break;
+            }
+            count++;
+            if (commonPrefix != null) {
+                lastPrefix = commonPrefix;
+                nextMarker = commonPrefix;
+                commonPrefixes.append("<CommonPrefixes><Prefix>").append(escape(commonPrefix))
+                        .append("</Prefix></CommonPrefixes>");
+            } else {
+                final StoredObject object = entry.getValue();
+                nextMarker = key;
+                contents.append("<Contents><Key>").append(escape(key)).append("</Key><LastModified>")
+                        .append(ISO_DATE.format(object.lastModified)).append("</LastModified><ETag>")
+                        .append(escape(object.getETag())).append("</ETag><Size>").append(object.content.length)
+                        .append("</Size><StorageClass>STANDARD</StorageClass></Contents>");
+            }
+        }
+        final StringBuilder result = new StringBuilder("<ListBucketResult xmlns=\"").append(S3_NAMESPACE)
+                .append("\"><Name>").append(escape(bucket)).append("</Name><Prefix>").append(escape(prefix))
+                .append("</Prefix>");
+        if (v2) {
+            result.append("<KeyCount>").append(count).append("</KeyCount>");
+        } else {
+            result.append("<Marker>").append(escape(marker)).append("</Marker>");
+        }
+        result.append("<MaxKeys>").append(maxKeys).append("</MaxKeys>");
+        if (delimiter != null) {
+            result.append("<Delimiter>").append(escape(delimiter)).append("</Delimiter>");
+        }
+        result.append("<IsTruncated>").append(truncated).append("</IsTruncated>");
+        if (truncated) {
+            result.append(v2 ? "<NextContinuationToken>" : "<NextMarker>").append(escape(nextMarker))
+                    .append(v2 ? "</NextContinuationToken>" : "</NextMarker>");
+        }
+        return xml(200, result.append(contents).append(commonPrefixes).append("</ListBucketResult>").toString());
+    }
+
+    private Response deleteObjects(final String bucket, final byte[] body) {
+        final NavigableMap<String, StoredObject> objects = getBucket(bucket);
+        final StringBuilder result = new StringBuilder("<DeleteResult xmlns=\"").append(S3_NAMESPACE).append("\">");
+        final Matcher matcher = KEY.matcher(new String(body, StandardCharsets.UTF_8));
+        while (matcher.find()) {
+            final String key = unescape(matcher.group(1));
+            objects.remove(key);
+            result.append("<Deleted><Key>").append(escape(key)).append("</Key></Deleted>");
+        }
+        return xml(200, result.append("</DeleteResult>").toString());
+    }
+
+    private Response initiateUpload(final HttpExchange exchange, final String bucket, final String key) {
+        final String uploadId = UUID.randomUUID().toString();
+        uploads.put(uploadId, new PendingUpload(getContentType(exchange),
+                getUserMetadata(exchange.getRequestHeaders())));
+        return xml(200, "<InitiateMultipartUploadResult xmlns=\"" + S3_NAMESPACE + "\"><Bucket>" + escape(bucket)
+                + "</Bucket><Key>" + escape(key) + "</Key><UploadId>" + uploadId
+                + "</UploadId></InitiateMultipartUploadResult>");
+    }
+
+    private Response uploadPart(final HttpExchange exchange, final Map<String, String> query) throws IOException {
+        final byte[] content = readBody(exchange);
+        final PendingUpload upload = uploads.get(query.get("uploadId"));
+        if (upload == null) {
+            return error(404, "NoSuchUpload", "The specified upload does not exist.");
+        }
+        final Headers headers = exchange.getRequestHeaders();
+        if (headers.containsKey("x-amz-copy-source")) {
+            return uploadPartCopy(headers, upload, Integer.parseInt(query.get("partNumber")));
+        }
+        final StoredObject part = new StoredObject(content, null, new HashMap<>());
+        upload.parts.put(Integer.parseInt(query.get("partNumber")), part);
+        return new Response(200).header("ETag", part.getETag());
+    }
+
+    private Response uploadPartCopy(final Headers headers, final PendingUpload upload, final int partNumber) {
+        final StoredObject sourceObject = getCopySource(headers);
+        if (sourceObject == null) {
+            return error(404, "NoSuchKey", "The specified key does not exist.");
+        }
+        int start = 0;
+        int end = sourceObject.content.length - 1;
+        final String range = headers.getFirst("x-amz-copy-source-range");
+        if (range != null) {
+            final Matcher matcher = RANGE.matcher(range);
+            if (!matcher.matches() || matcher.group(1).isEmpty() || matcher.group(2).isEmpty()) {
+                return error(400, "InvalidArgument", "Invalid copy source range " + range);
+            }
+            start = Integer.parseInt(matcher.group(1));
+            end = Integer.parseInt(matcher.group(2));
+            if (end >= sourceObject.content.length || start > end) {
+                return error(400, "InvalidRange", "The requested range is not satisfiable");
+            }
+        }
+        final StoredObject part = new StoredObject(Arrays.copyOfRange(sourceObject.content, start, end + 1), null,
+                new HashMap<>());
+        upload.parts.put(partNumber, part);
+        return xml(200, "<CopyPartResult xmlns=\"" + S3_NAMESPACE + "\"><LastModified>"
+                + ISO_DATE.format(part.lastModified) + "</LastModified><ETag>" + escape(part.getETag())
+                + "</ETag></CopyPartResult>");
+    }
+
+    private Response completeUpload(final HttpExchange exchange, final String bucket, final String key,
+            final String uploadId) throws IOException {
+        final String body = new String(readBody(exchange), StandardCharsets.UTF_8);
+        final PendingUpload upload = uploads.remove(uploadId);
+        if (upload == null) {
+            return error(404, "NoSuchUpload", "The specified upload does not exist.");
+        }
+        final ByteArrayOutputStream content = new ByteArrayOutputStream();
+        final MessageDigest partDigests = md5();
+        int partCount = 0;
+        final Matcher matcher = PART.matcher(body);
+        while (matcher.find()) {
+            final StoredObject part = upload.parts.get(Integer.parseInt(matcher.group(1)));
+            if (part == null || !matches(unescape(matcher.group(2)), part.getETag())) {
+                return error(400, "InvalidPart", "Part " + matcher.group(1) + " has not been uploaded.");
+            }
+            content.write(part.content, 0, part.content.length);
+            partDigests.update(part.digest);
+            partCount++;
+        }
+        final StoredObject object = new StoredObject(content.toByteArray(), upload.contentType,
+                upload.userMetadata, "\"" + hex(partDigests.digest()) + "-" + partCount + "\"");
+        getBucket(bucket).put(key, object);
+        return xml(200, "<CompleteMultipartUploadResult xmlns=\"" + S3_NAMESPACE + "\"><Location>" + getEndpoint()
+                + "/" + escape(bucket) + "/" + escape(key) + "</Location><Bucket>" + escape(bucket)
+                + "</Bucket><Key>" + escape(key) + "</Key><ETag>" + escape(object.getETag())
+                + "</ETag></CompleteMultipartUploadResult>");
+    }
+
+    private void delay() {
+        final long delay = latencyMillis + (jitterMillis > 0 ? ThreadLocalRandom.current().nextLong(jitterMillis + 1) : 0);
+        if (delay > 0) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Waits until the transferred bytes are within the bandwidth.
+     */
+    private void throttle(final long bytes, final long startNanos) {
+        if (bandwidth <= 0) {
+            return;
+        }
+        final long dueNanos = startNanos + bytes * TimeUnit.SECONDS.toNanos(1) / bandwidth;
+        final long waitNanos = dueNanos - System.nanoTime();
+        if (waitNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private byte[] readBody(final HttpExchange exchange) throws IOException {
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[CHUNK_SIZE];
+        final long start = System.nanoTime();
+        try (InputStream inputStream = exchange.getRequestBody()) {
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                body.write(buffer, 0, read);
+                throttle(body.size(), start);
+            }
+        }
+        final String contentSha256 = exchange.getRequestHeaders().getFirst("x-amz-content-sha256");
+        return contentSha256 != null && contentSha256.startsWith(STREAMING_PAYLOAD)
+                ? decodeChunks(body.toByteArray())
+                : body.toByteArray();
+    }
+
+    /**
+     * Decodes an aws-chunked body, which jclouds sends for payloads it
+     * cannot hash ahead of the upload.
+     */
+    private static byte[] decodeChunks(final byte[] body) {
+        final ByteArrayOutputStream content = new ByteArrayOutputStream(body.length);
+        int position = 0;
+        while (position < body.length) {
+            int lineEnd = position;
+            while (lineEnd < body.length - 1 && !(body[lineEnd] == '\r' && body[lineEnd + 1] == '\n')) {
+                lineEnd++;
+            }
+            final String header = new String(body, position, lineEnd - position, StandardCharsets.US_ASCII);
+            final int semicolon = header.indexOf(';');
+            final int length = Integer.parseInt(semicolon < 0 ? header.trim() : header.substring(0, semicolon), 16);
+            if (length == 0) {
+                break;
+            }
+            content.write(body, lineEnd + 2, length);
+            position = lineEnd + 2 + length + 2;
+        }
+        return content.toByteArray();
+    }
+
+    private void send(final HttpExchange exchange, final Response response) throws IOException {
+        final Headers headers = exchange.getResponseHeaders();
+        response.headers.forEach(headers::set);
+        headers.set("x-amz-request-id", Long.toHexString(requests.get()));
+        if (response.head || response.length == 0 || "HEAD".equals(exchange.getRequestMethod())) {
+            exchange.sendResponseHeaders(response.status, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(response.status, response.length);
+        final long start = System.nanoTime();
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            int written = 0;
+            while (written < response.length) {
+                final int length = Math.min(CHUNK_SIZE, response.length - written);
+                outputStream.write(response.body, response.offset + written, length);
+                written += length;
+                throttle(written, start);
+            }
+        } catch (IOException e) {
+            // the client went away, e.g. a download that was cancelled
+        }
+    }
+
+    private static Response xml(final int status, final String xml) {
+        final byte[] body = ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" + xml).getBytes(StandardCharsets.UTF_8);
+        return new Response(status).header("Content-Type", "application/xml").body(body, 0, body.length);
+    }
+
+    private static Response error(final int status, final String code, final String message) {
+        return xml(status, "<Error><Code>" + code + "</Code><Message>" + escape(message) + "</Message><RequestId>"
+                + UUID.randomUUID() + "</RequestId></Error>");
+    }
+
+    private static String getContentType(final HttpExchange exchange) {
+        final String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        return contentType != null ? contentType : "application/octet-stream";
+    }
+
+    private static Map<String, String> getUserMetadata(final Headers headers) {
+        final Map<String, String> userMetadata = new LinkedHashMap<>();
+        headers.forEach((name, values) -> {
+            if (name.toLowerCase().startsWith("x-amz-meta-") && !values.isEmpty()) {
+                userMetadata.put(name.substring("x-amz-meta-".length()).toLowerCase(), values.get(0));
+            }
+        });
+        return userMetadata;
+    }
+
+    private static Map<String, String> parseQuery(final String rawQuery) {
+        final Map<String, String> query = new HashMap<>();
+        if (rawQuery != null) {
+            for (String parameter : rawQuery.split("&")) {
+                final int equals = parameter.indexOf('=');
+                query.put(decode(equals < 0 ? parameter : parameter.substring(0, equals)),
+                        equals < 0 ? "" : decode(parameter.substring(equals + 1)));
+            }
+        }
+        return query;
+    }
+
+    private static String decode(final String value) {
+        try {
+            return URLDecoder.decode(value.replace("+", "%2B"), "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Instant parseDate(final String date) {
+        try {
+            return date != null ? ZonedDateTime.parse(date, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant() : null;
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return true if one of the comma separated eTags, or *, matches
+     */
+    private static boolean matches(final String condition, final String eTag) {
+        for (String candidate : condition.split(",")) {
+            final String trimmed = candidate.trim();
+            if (trimmed.equals("*") || trimmed.replace("\"", "").equals(eTag.replace("\"", ""))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String escape(final String value) {
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+
+    private static String unescape(final String value) {
+        return value.replace("&quot;", "\"").replace("&lt;", "<").replace("&gt;", ">").replace("&amp;", "&");
+    }
+
+    private static MessageDigest md5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hex(final byte[] bytes) {
+        final StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * An object, or a part of a multipart upload.
+     */
+    private static final class StoredObject {
+
+        private final byte[] content;
+        private final byte[] digest;
+        private final String eTag;
+        private final String contentType;
+        private final Map<String, String> userMetadata;
+        // S3 dates have a precision of seconds in the headers
+        private final Instant lastModified = Instant.ofEpochSecond(Instant.now().getEpochSecond());
+
+        StoredObject(final byte[] content, final String contentType, final Map<String, String> userMetadata) {
+            this(content, contentType, userMetadata, null);
+        }
+
+        StoredObject(final byte[] content, final String contentType, final Map<String, String> userMetadata,
+                final String eTag) {
+            this.content = content;
+            this.digest = md5().digest(content);
+            this.eTag = eTag != null ? eTag : "\"" + hex(digest) + "\"";
+            this.contentType = contentType;
+            this.userMetadata = userMetadata;
+        }
+
+        String getETag() {
+            return eTag;
+        }
+    }
+
+    /**
+     * A multipart upload that has not been completed yet.
+     */
+    private static final class PendingUpload {
+
+        private final String contentType;
+        private final Map<String, String> userMetadata;
+        private final Map<Integer, StoredObject> parts = new ConcurrentHashMap<>();
+
+        PendingUpload(final String contentType, final Map<String, String> userMetadata) {
+            this.contentType = contentType;
+            this.userMetadata = userMetadata;
+        }
+    }
+
+    /**
+     * Status, headers and body of a response.
+     */
+    private static final class Response {
+
+        private int status;
+        private final Map<String, String> headers = new LinkedHashMap<>();
+        private byte[] body;
+        private int offset;
+        private int length;
+        private boolean head;
+
+        Response(final int status) {
+            this.status = status;
+        }
+
+        Response header(final String name, final String value) {
+            headers.put(name, value);
+            return this;
+        }
+
+        Response body(final byte[] body, final int offset, final int length) {
+            this.body = body;
+            this.offset = offset;
+            this.length = length;
+            return this;
+        }
+
+        Response head() {
+            this.head = true;
+            return this;
+        }
+    }
+}
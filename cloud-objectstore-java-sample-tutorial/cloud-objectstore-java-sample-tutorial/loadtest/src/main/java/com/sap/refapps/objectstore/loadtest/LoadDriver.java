@@ -0,0 +1,265 @@
+package com.sap.refapps.objectstore.loadtest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fires a mix of uploads, downloads, listings and deletes at the REST API
+ * of the application from a number of concurrent clients. Each client
+ * waits for its response before it sends the next request.
+ *
+ * Downloads and listings use objects preloaded before the run, so they
+ * always find their object. Every client deletes only objects it has
+ * uploaded itself; as long as it has none, it uploads instead.
+ */
+final class LoadDriver {
+
+    private static final String API_PATH = "/objectstorage.svc/api/v1/storage";
+    private static final String BOUNDARY = "----objectstore-loadtest-boundary";
+    private static final String READ_PREFIX = "read-object-";
+    private static final int TIMEOUT_MILLIS = (int) TimeUnit.MINUTES.toMillis(5);
+
+    private final LoadTestOptions options;
+    private final String baseUrl;
+    private final byte[] content;
+    private final int[] weights;
+
+    /**
+     * @param options
+     * @param baseUrl
+     *            e.g. http://127.0.0.1:8080
+     */
+    LoadDriver(final LoadTestOptions options, final String baseUrl) {
+        this.options = options;
+        this.baseUrl = baseUrl;
+        this.content = new byte[options.getSize()];
+        new Random(42).nextBytes(content);
+        final Map<Operation, Integer> mix = options.getMix();
+        this.weights = new int[Operation.values().length];
+        for (Operation operation : Operation.values()) {
+            weights[operation.ordinal()] = mix.getOrDefault(operation, 0);
+        }
+    }
+
+    /**
+     * Uploads the objects read by downloads and listings.
+     *
+     * @throws IOException
+     *             if an object cannot be uploaded
+     */
+    void preload() throws IOException {
+        for (int i = 0; i < options.getObjects(); i++) {
+            if (!upload(READ_PREFIX + i)) {
+                throw new IOException("Preloading " + READ_PREFIX + i + " failed");
+            }
+        }
+    }
+
+    /**
+     * Runs the clients for warmup and duration. Only the requests started
+     * after the warmup are recorded.
+     *
+     * @param concurrency
+     *            number of clients
+     * @return statistics of every operation
+     * @throws InterruptedException
+     */
+    Map<Operation, OperationStats> run(final int concurrency) throws InterruptedException {
+        final long warmupEnd = System.nanoTime() + TimeUnit.SECONDS.toNanos(options.getWarmupSeconds());
+        final long end = warmupEnd + TimeUnit.SECONDS.toNanos(options.getDurationSeconds());
+        final List<Client> clients = new ArrayList<>();
+        final List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < concurrency; i++) {
+            final Client client = new Client(i, warmupEnd, end);
+            // small stacks, the load test may run thousands of clients
+            final Thread thread = new Thread(null, client, "loadtest-client-" + i, 256 * 1024);
+            thread.setDaemon(true);
+            clients.add(client);
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        final Map<Operation, OperationStats> stats = new EnumMap<>(Operation.class);
+        for (Operation operation : Operation.values()) {
+            final OperationStats merged = new OperationStats();
+            clients.forEach(client -> merged.merge(client.stats.get(operation)));
+            stats.put(operation, merged);
+        }
+        return stats;
+    }
+
+    private Operation pick() {
+        int total = 0;
+        for (int weight : weights) {
+            total += weight;
+        }
+        int value = ThreadLocalRandom.current().nextInt(total);
+        for (Operation operation : Operation.values()) {
+            value -= weights[operation.ordinal()];
+            if (value < 0) {
+                return operation;
+            }
+        }
+        return Operation.DOWNLOAD;
+    }
+
+    private boolean upload(final String fileName) throws IOException {
+        final byte[] header = ("--" + BOUNDARY + "\r\nContent-Disposition: form-data; name=\"file\"; filename=\""
+                + fileName + "\"\r\nContent-Type: application/octet-stream\r\n\r\n")
+                        .getBytes(StandardCharsets.US_ASCII);
+        final byte[] trailer = ("\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+        final HttpURLConnection connection = open(API_PATH, "POST");
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", "multipart/form-data; boundary=" + BOUNDARY);
+        connection.setFixedLengthStreamingMode(header.length + content.length + trailer.length);
+        try (OutputStream outputStream = connection.getOutputStream()) {
+            outputStream.write(header);
+            outputStream.write(content);
+            outputStream.write(trailer);
+        }
+        // the controller answers 202 either way, with an empty message if the upload failed
+        return connection.getResponseCode() == HttpURLConnection.HTTP_ACCEPTED
+                && readResponse(connection).contains("successfully uploaded");
+    }
+
+    private boolean download(final String fileName) throws IOException {
+        final HttpURLConnection connection = open(API_PATH + "/" + fileName, "GET");
+        final boolean success = connection.getResponseCode() == HttpURLConnection.HTTP_OK;
+        final long length = drain(connection);
+        return success && length == content.length;
+    }
+
+    private boolean list() throws IOException {
+        final HttpURLConnection connection = open(API_PATH + "?maxResults=100&prefix=" + READ_PREFIX, "GET");
+        final boolean success = connection.getResponseCode() == HttpURLConnection.HTTP_OK;
+        drain(connection);
+        return success;
+    }
+
+    private boolean delete(final String fileName) throws IOException {
+        final HttpURLConnection connection = open(API_PATH + "/" + fileName, "DELETE");
+        final boolean success = connection.getResponseCode() == HttpURLConnection.HTTP_OK;
+        drain(connection);
+        return success;
+    }
+
+    private HttpURLConnection open(final String path, final String method) throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+        connection.setRequestMethod(method);
+        connection.setConnectTimeout(TIMEOUT_MILLIS);
+        connection.setReadTimeout(TIMEOUT_MILLIS);
+        return connection;
+    }
+
+    /**
+     * Reads the whole response so that the connection can be reused.
+     *
+     * @return length of the response body
+     */
+    private static long drain(final HttpURLConnection connection) throws IOException {
+        final InputStream inputStream = connection.getResponseCode() < 400 ? connection.getInputStream()
+                : connection.getErrorStream();
+        if (inputStream == null) {
+            return 0;
+        }
+        final byte[] buffer = new byte[16 * 1024];
+        long length = 0;
+        try (InputStream stream = inputStream) {
+            int read;
+            while ((read = stream.read(buffer)) != -1) {
+                length += read;
+            }
+        }
+        return length;
+    }
+
+    private static String readResponse(final HttpURLConnection connection) throws IOException {
+        final ByteArrayOutputStream response = new ByteArrayOutputStream();
+        try (InputStream inputStream = connection.getInputStream()) {
+            final byte[] buffer = new byte[1024];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                response.write(buffer, 0, read);
+            }
+        }
+        return new String(response.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A client sending one request after the other.
+     */
+    private final class Client implements Runnable {
+
+        private final int number;
+        private final long warmupEnd;
+        private final long end;
+        private final Map<Operation, OperationStats> stats = new EnumMap<>(Operation.class);
+        private final Deque<String> uploaded = new ArrayDeque<>();
+        private long sequence;
+
+        Client(final int number, final long warmupEnd, final long end) {
+            this.number = number;
+            this.warmupEnd = warmupEnd;
+            this.end = end;
+            for (Operation operation : Operation.values()) {
+                stats.put(operation, new OperationStats());
+            }
+        }
+
+        @Override
+        public void run() {
+            long start;
+            while ((start = System.nanoTime()) < end) {
+                Operation operation = pick();
+                if (operation == Operation.DELETE && uploaded.isEmpty()) {
+                    operation = Operation.UPLOAD;
+                }
+                boolean success;
+                try {
+                    success = execute(operation);
+                } catch (IOException e) {
+                    success = false;
+                }
+                if (start >= warmupEnd) {
+                    stats.get(operation).record(System.nanoTime() - start, success);
+                }
+            }
+        }
+
+        private boolean execute(final Operation operation) throws IOException {
+            switch (operation) {
+            case UPLOAD:
+                final String fileName = "write-object-" + number + "-" + sequence++;
+                final boolean success = upload(fileName);
+                if (success) {
+                    uploaded.add(fileName);
+                }
+                return success;
+            case DOWNLOAD:
+                return download(READ_PREFIX + ThreadLocalRandom.current().nextInt(options.getObjects()));
+            case LIST:
+                return list();
+            case DELETE:
+                return delete(uploaded.poll());
+            default:
+                throw new IllegalStateException("Unknown operation " + operation);
+            }
+        }
+    }
+}
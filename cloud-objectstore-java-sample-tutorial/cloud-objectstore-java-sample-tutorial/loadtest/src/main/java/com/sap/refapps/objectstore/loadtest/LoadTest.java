@@ -0,0 +1,153 @@
+package com.sap.refapps.objectstore.loadtest;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.sap.refapps.objectstore.loadtest.ApplicationProcess.ResourceSampler;
+import com.sap.refapps.objectstore.loadtest.ApplicationProcess.ResourceUsage;
+
+/**
+ * End-to-end load test of the application against a stand-in S3 with
+ * injected latency, bandwidth limit and errors. Runs offline on a single
+ * machine, everything talks over the loopback interface:
+ *
+ * <pre>
+ * mvn package
+ * mvn -f loadtest/pom.xml package
+ * java -jar loadtest/target/loadtest.jar --latency-ms=200 --concurrency=1000 --modes=platform,virtual
+ * java -jar loadtest/target/loadtest.jar --scenario=slow-downloads
+ * java -jar loadtest/target/loadtest.jar --scenario=large-downloads
+ * </pre>
+ *
+ * For every mode the application is started from its jar, platform with
+ * the default Tomcat thread pool, virtual with the virtual-threads profile,
+ * which needs the application to run on Java 21 (--java), and parallel with
+ * parallel ranged downloads of large objects enabled. Each
+ * mode is run with every concurrency in turn against the same application.
+ * The report on throughput, latency percentiles, heap and threads of every
+ * run, and a summary comparing the runs, is printed and written to the
+ * report file. Thousands of clients need as many file descriptors on both
+ * sides of the loopback connections, e.g. ulimit -n 65536.
+ */
+public final class LoadTest {
+
+    private LoadTest() {
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final LoadTestOptions options;
+        try {
+            options = LoadTestOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.print(LoadTestOptions.usage());
+            System.exit(2);
+            return;
+        }
+        final List<Integer> concurrencies = options.getConcurrencies();
+        // keep a connection per client alive instead of the default of 5
+        System.setProperty("http.maxConnections", Integer.toString(Collections.max(concurrencies)));
+
+        final StringWriter report = new StringWriter();
+        final StringWriter summary = new StringWriter();
+        try (FakeS3Server store = new FakeS3Server(options)) {
+            for (String mode : options.getModes()) {
+                store.reset();
+                System.out.println("Starting the application (" + mode + ") against " + store.getEndpoint());
+                try (ApplicationProcess application = ApplicationProcess.start(options, mode,
+                        store.getEndpoint())) {
+                    final LoadDriver driver = new LoadDriver(options, application.getBaseUrl());
+                    driver.preload();
+                    for (int concurrency : concurrencies) {
+                        store.resetCounters();
+                        System.out.println("Running " + concurrency + " clients for " + options.getWarmupSeconds()
+                                + " s warmup and " + options.getDurationSeconds() + " s");
+                        final ResourceSampler sampler = application.startSampling();
+                        final Map<Operation, OperationStats> stats = driver.run(concurrency);
+                        final ResourceUsage usage = sampler.stop();
+                        final String section = report(options, mode, concurrency, stats, usage, store);
+                        System.out.print(section);
+                        report.append(section);
+                        summarize(summary, options, mode, concurrency, stats, usage);
+                    }
+                }
+            }
+        }
+        if (options.getModes().size() * concurrencies.size() > 1) {
+            final String section = String.format("%n== summary%s%n%-9s %8s %9s %9s %7s %9s %9s %9s %8s %8s%n%s",
+                    options.getScenario().isEmpty() ? "" : " of scenario " + options.getScenario(), "mode",
+                    "clients", "req/s", "MB/s", "errors", "p50 ms", "p99 ms", "p99.9 ms", "threads", "heap MB",
+                    summary);
+            System.out.print(section);
+            report.append(section);
+        }
+        try (PrintWriter writer = new PrintWriter(
+                new OutputStreamWriter(new FileOutputStream(options.getReport()), StandardCharsets.UTF_8))) {
+            writer.print(report);
+        }
+        System.out.println("Report written to " + options.getReport());
+    }
+
+    private static String report(final LoadTestOptions options, final String mode, final int concurrency,
+            final Map<Operation, OperationStats> stats, final ResourceUsage usage, final FakeS3Server store)
+            throws IOException {
+        final StringWriter section = new StringWriter();
+        final PrintWriter out = new PrintWriter(section);
+        final double seconds = options.getDurationSeconds();
+        out.printf("%n== mode %s: %d clients, %d s, %d byte objects%n", mode, concurrency,
+                options.getDurationSeconds(), options.getSize());
+        out.printf("   store latency %d ms (+%d ms jitter), bandwidth %s, error rate %.1f%%%n",
+                options.getLatencyMillis(), options.getJitterMillis(),
+                options.getBandwidth() > 0 ? options.getBandwidth() + " B/s" : "unlimited",
+                options.getErrorRate() * 100);
+        out.printf("%-9s %9s %9s %7s %9s %9s %9s %9s%n", "operation", "requests", "req/s", "errors", "p50 ms",
+                "p99 ms", "p99.9 ms", "max ms");
+        final OperationStats total = new OperationStats();
+        for (Map.Entry<Operation, OperationStats> entry : stats.entrySet()) {
+            if (entry.getValue().getCount() > 0) {
+                print(out, entry.getKey().name().toLowerCase(), entry.getValue(), seconds);
+                total.merge(entry.getValue());
+            }
+        }
+        print(out, "total", total, seconds);
+        out.printf("heap used: avg %d MB, max %d MB (committed max %d MB)%n", usage.heapUsedAverage >> 20,
+                usage.heapUsedMax >> 20, usage.heapCommittedMax >> 20);
+        out.printf("platform threads: avg %.0f, max %d (peak %d)%n", usage.threadsAverage, usage.threadsMax,
+                usage.threadsPeak);
+        out.printf("gc: %d collections, %d ms%n", usage.collections, usage.collectionMillis);
+        out.printf("store: %d requests, %d injected errors%n", store.getRequests(), store.getInjectedErrors());
+        out.flush();
+        return section.toString();
+    }
+
+    /**
+     * Adds a line with the totals and the peak resources of a run. MB/s
+     * counts the objects uploaded and downloaded.
+     */
+    private static void summarize(final StringWriter summary, final LoadTestOptions options, final String mode,
+            final int concurrency, final Map<Operation, OperationStats> stats, final ResourceUsage usage) {
+        final OperationStats total = new OperationStats();
+        stats.values().forEach(total::merge);
+        final double seconds = options.getDurationSeconds();
+        final long transfers = stats.get(Operation.UPLOAD).getCount() + stats.get(Operation.DOWNLOAD).getCount();
+        summary.append(String.format("%-9s %8d %9.1f %9.1f %7d %9.1f %9.1f %9.1f %8d %8d%n", mode, concurrency,
+                total.getCount() / seconds, transfers * (double) options.getSize() / seconds / (1 << 20),
+                total.getErrors(),
+                total.getPercentileMillis(50), total.getPercentileMillis(99), total.getPercentileMillis(99.9),
+                usage.threadsMax, usage.heapUsedMax >> 20));
+    }
+
+    private static void print(final PrintWriter out, final String name, final OperationStats stats,
+            final double seconds) {
+        out.printf("%-9s %9d %9.1f %7d %9.1f %9.1f %9.1f %9.1f%n", name, stats.getCount(),
+                stats.getCount() / seconds, stats.getErrors(), stats.getPercentileMillis(50),
+                stats.getPercentileMillis(99), stats.getPercentileMillis(99.9), stats.getPercentileMillis(100));
+    }
+}
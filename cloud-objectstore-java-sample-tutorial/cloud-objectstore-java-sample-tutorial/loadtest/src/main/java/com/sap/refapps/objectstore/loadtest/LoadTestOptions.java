@@ -0,0 +1,232 @@
+package com.sap.refapps.objectstore.loadtest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Options of the load test, given as --name=value arguments. Sizes are in
+ * bytes, durations in seconds unless the name says otherwise. A scenario
+ * presets options for a repeatable comparison, options given along with it
+ * override its values.
+ */
+final class LoadTestOptions {
+
+    private static final Map<String, String> DEFAULTS = new LinkedHashMap<>();
+    private static final Map<String, Map<String, String>> SCENARIOS = new LinkedHashMap<>();
+    private static final List<String> MODES = Arrays.asList("platform", "virtual", "parallel");
+
+    static {
+        DEFAULTS.put("scenario", "");
+        // application
+        DEFAULTS.put("app-jar", "target/objectstore-sample-1.0.0.jar");
+        DEFAULTS.put("java", System.getProperty("java.home") + "/bin/java");
+        DEFAULTS.put("app-heap", "512m");
+        DEFAULTS.put("app-args", "");
+        DEFAULTS.put("modes", "platform");
+        // stand-in store
+        DEFAULTS.put("latency-ms", "50");
+        DEFAULTS.put("jitter-ms", "0");
+        DEFAULTS.put("bandwidth", "0");
+        DEFAULTS.put("error-rate", "0");
+        // traffic
+        DEFAULTS.put("concurrency", "64");
+        DEFAULTS.put("warmup", "10");
+        DEFAULTS.put("duration", "60");
+        DEFAULTS.put("size", "65536");
+        DEFAULTS.put("objects", "100");
+        DEFAULTS.put("mix", "upload:20,download:60,list:10,delete:10");
+        DEFAULTS.put("report", "loadtest-report.txt");
+
+        // thousands of clients downloading from a slow store, the default
+        // Tomcat pool against the virtual-threads profile
+        scenario("slow-downloads", "modes=platform,virtual", "mix=download:100", "latency-ms=200", "size=4096",
+                "concurrency=1000,5000,10000", "warmup=10", "duration=30");
+        // 100 MB objects from a store serving every transfer at 16 MB/s, a
+        // single GET against parallel ranged downloads
+        scenario("large-downloads", "modes=platform,parallel", "mix=download:100", "latency-ms=20",
+                "bandwidth=16777216", "size=104857600", "objects=2", "concurrency=1,4", "warmup=5", "duration=30",
+                "app-heap=1g");
+    }
+
+    private static void scenario(final String name, final String... options) {
+        final Map<String, String> values = new LinkedHashMap<>();
+        for (String option : options) {
+            final int equals = option.indexOf('=');
+            values.put(option.substring(0, equals), option.substring(equals + 1));
+        }
+        SCENARIOS.put(name, values);
+    }
+
+    private final Map<String, String> values;
+
+    private LoadTestOptions(final Map<String, String> values) {
+        this.values = values;
+    }
+
+    /**
+     * @param args
+     *            --name=value arguments
+     * @return options, defaults for the ones not given
+     * @throws IllegalArgumentException
+     *             for unknown or malformed arguments
+     */
+    static LoadTestOptions parse(final String[] args) {
+        final Map<String, String> given = new HashMap<>();
+        for (String arg : args) {
+            final int equals = arg.indexOf('=');
+            if (!arg.startsWith("--") || equals < 0) {
+                throw new IllegalArgumentException("Expected --name=value but got " + arg);
+            }
+            final String name = arg.substring(2, equals);
+            if (!DEFAULTS.containsKey(name)) {
+                throw new IllegalArgumentException("Unknown option --" + name + ", known are " + DEFAULTS.keySet());
+            }
+            given.put(name, arg.substring(equals + 1));
+        }
+        final Map<String, String> values = new HashMap<>(DEFAULTS);
+        final String scenario = given.getOrDefault("scenario", "").trim();
+        if (!scenario.isEmpty()) {
+            if (!SCENARIOS.containsKey(scenario)) {
+                throw new IllegalArgumentException(
+                        "Unknown scenario " + scenario + ", known are " + SCENARIOS.keySet());
+            }
+            values.putAll(SCENARIOS.get(scenario));
+        }
+        values.putAll(given);
+        return new LoadTestOptions(values);
+    }
+
+    /**
+     * @return usage with the default of every option
+     */
+    static String usage() {
+        final StringBuilder usage = new StringBuilder("Options (--name=value):\n");
+        DEFAULTS.forEach((name, value) -> usage.append(String.format("  --%-12s default: %s%n", name, value)));
+        usage.append("Scenarios (--scenario=name):\n");
+        SCENARIOS.forEach((name, values) -> usage.append(String.format("  %-14s %s%n", name, values)));
+        return usage.toString();
+    }
+
+    String getAppJar() {
+        return values.get("app-jar");
+    }
+
+    String getJava() {
+        return values.get("java");
+    }
+
+    String getAppHeap() {
+        return values.get("app-heap");
+    }
+
+    /**
+     * @return further arguments of the application, e.g.
+     *         --server.tomcat.max-threads=400
+     */
+    List<String> getAppArgs() {
+        final String appArgs = values.get("app-args").trim();
+        return appArgs.isEmpty() ? Collections.emptyList() : Arrays.asList(appArgs.split("\\s+"));
+    }
+
+    /**
+     * @return execution modes to compare, platform, virtual and/or parallel
+     */
+    List<String> getModes() {
+        final List<String> modes = new ArrayList<>();
+        for (String mode : values.get("modes").split(",")) {
+            if (!MODES.contains(mode.trim())) {
+                throw new IllegalArgumentException("Unknown mode " + mode + ", expected one of " + MODES);
+            }
+            modes.add(mode.trim());
+        }
+        return modes;
+    }
+
+    long getLatencyMillis() {
+        return getLong("latency-ms");
+    }
+
+    long getJitterMillis() {
+        return getLong("jitter-ms");
+    }
+
+    /**
+     * @return bytes per second of every transfer from and to the store, 0
+     *         for no limit
+     */
+    long getBandwidth() {
+        return getLong("bandwidth");
+    }
+
+    /**
+     * @return share of the store requests failing with 503, between 0 and 1
+     */
+    double getErrorRate() {
+        return Double.parseDouble(values.get("error-rate"));
+    }
+
+    String getScenario() {
+        return values.get("scenario");
+    }
+
+    /**
+     * @return numbers of concurrent clients, every mode is run with each of
+     *         them in turn
+     */
+    List<Integer> getConcurrencies() {
+        final List<Integer> concurrencies = new ArrayList<>();
+        for (String concurrency : values.get("concurrency").split(",")) {
+            final int clients = Integer.parseInt(concurrency.trim());
+            if (clients <= 0) {
+                throw new IllegalArgumentException("Expected a positive concurrency but got " + concurrency);
+            }
+            concurrencies.add(clients);
+        }
+        return concurrencies;
+    }
+
+    long getWarmupSeconds() {
+        return getLong("warmup");
+    }
+
+    long getDurationSeconds() {
+        return getLong("duration");
+    }
+
+    int getSize() {
+        return (int) getLong("size");
+    }
+
+    int getObjects() {
+        return (int) getLong("objects");
+    }
+
+    /**
+     * @return weight of every operation
+     */
+    Map<Operation, Integer> getMix() {
+        final Map<Operation, Integer> mix = new EnumMap<>(Operation.class);
+        for (String entry : values.get("mix").split(",")) {
+            final String[] weight = entry.split(":");
+            if (weight.length != 2) {
+                throw new IllegalArgumentException("Expected operation:weight but got " + entry);
+            }
+            mix.put(Operation.valueOf(weight[0].trim().toUpperCase()), Integer.parseInt(weight[1].trim()));
+        }
+        return mix;
+    }
+
+    String getReport() {
+        return values.get("report");
+    }
+
+    private long getLong(final String name) {
+        return Long.parseLong(values.get(name).trim());
+    }
+}
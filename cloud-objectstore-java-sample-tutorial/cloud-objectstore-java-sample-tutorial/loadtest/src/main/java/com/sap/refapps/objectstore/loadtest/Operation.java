@@ -0,0 +1,8 @@
+package com.sap.refapps.objectstore.loadtest;
+
+/**
+ * Operations of the load test on the REST API of the application.
+ */
+enum Operation {
+    UPLOAD, DOWNLOAD, LIST, DELETE
+}
@@ -0,0 +1,63 @@
+package com.sap.refapps.objectstore.loadtest;
+
+import java.util.Arrays;
+
+/**
+ * Latencies and errors of one operation. A recorder is used by a single
+ * client thread, the recorders of all clients are merged for the report.
+ */
+final class OperationStats {
+
+    private long[] latencies = new long[1024];
+    private int count;
+    private long errors;
+
+    /**
+     * @param latencyNanos
+     * @param success
+     *            false if the request failed or got an unexpected status
+     */
+    void record(final long latencyNanos, final boolean success) {
+        if (count == latencies.length) {
+            latencies = Arrays.copyOf(latencies, count * 2);
+        }
+        latencies[count++] = latencyNanos;
+        if (!success) {
+            errors++;
+        }
+    }
+
+    /**
+     * @param other
+     *            recorder of another client
+     */
+    void merge(final OperationStats other) {
+        latencies = Arrays.copyOf(latencies, count + other.count);
+        System.arraycopy(other.latencies, 0, latencies, count, other.count);
+        count += other.count;
+        errors += other.errors;
+    }
+
+    long getCount() {
+        return count;
+    }
+
+    long getErrors() {
+        return errors;
+    }
+
+    /**
+     * @param percentile
+     *            e.g. 99.9
+     * @return latency in milliseconds, nearest rank
+     */
+    double getPercentileMillis(final double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        final long[] sorted = Arrays.copyOf(latencies, count);
+        Arrays.sort(sorted);
+        final int rank = (int) Math.ceil(percentile / 100 * count);
+        return sorted[Math.max(0, Math.min(count, rank) - 1)] / 1e6;
+    }
+}
@@ -1,14 +1,22 @@
 package com.sap.refapps.objectstore.config;
 
+import java.util.Properties;
+
 import org.jclouds.ContextBuilder;
 import org.jclouds.blobstore.BlobStoreContext;
+import org.jclouds.location.reference.LocationConstants;
+import org.jclouds.s3.reference.S3Constants;
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
 import org.springframework.context.annotation.PropertySource;
 
 /**
- * This is AWS Credentials Configuration class
+ * This is AWS Credentials Configuration class. The endpoint is optional
+ * and points the application at an S3 compatible store instead of AWS,
+ * e.g. the stand-in store of the load test, addressed with path-style
+ * requests.
  *
  */
 
@@ -21,6 +29,7 @@ public class AmazonWebServiceConfiguration {
     private String accessKeyId;
     private String bucket;
     private String secretAccessKey;
+    private String endpoint = "";
 
     public String getAccessKeyId() {
         return accessKeyId;
@@ -46,12 +55,36 @@ public class AmazonWebServiceConfiguration {
         this.secretAccessKey = secretAccessKey;
     }
 
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public void setEndpoint(final String endpoint) {
+        this.endpoint = endpoint;
+    }
+
     /**
      * @return blobStoreContext
      */
     public BlobStoreContext getBlobStoreContext() {
-        return ContextBuilder.newBuilder("aws-s3").credentials(this.getAccessKeyId(), this.getSecretAccessKey())
-                .buildView(BlobStoreContext.class);
+        final ContextBuilder contextBuilder = ContextBuilder.newBuilder("aws-s3")
+                .credentials(this.getAccessKeyId(), this.getSecretAccessKey());
+        if (endpoint != null && !endpoint.isEmpty()) {
+            final Properties overrides = new Properties();
+            overrides.setProperty(S3Constants.PROPERTY_S3_VIRTUAL_HOST_BUCKETS, "false");
+            // a single region, otherwise the region of the bucket is looked up at AWS
+            overrides.setProperty(LocationConstants.PROPERTY_REGIONS, "us-east-1");
+            contextBuilder.endpoint(endpoint).overrides(overrides);
+        }
+        return contextBuilder.buildView(BlobStoreContext.class);
     }
 
+    /**
+     * @return blobStoreContextProvider sharing one blobStoreContext across
+     *         requests, closed on shutdown
+     */
+    @Bean(destroyMethod = "close")
+    public BlobStoreContextProvider blobStoreContextProvider() {
+        return new BlobStoreContextProvider("aws-s3", this::getBlobStoreContext);
+    }
 }
@@ -0,0 +1,58 @@
+package com.sap.refapps.objectstore.config;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * This is the configuration class of the asynchronous service API. The
+ * jclouds BlobStore API is blocking, so the backend calls of asynchronous
+ * requests run on the objectStoreExecutor while the request threads are
+ * released. Up to queueSize calls wait for a thread, further calls are
+ * rejected and answered with 503 instead of piling up in memory.
+ *
+ */
+
+@Configuration
+@ConfigurationProperties(prefix = "objectstore.async")
+public class AsyncConfiguration {
+
+    private int threads = 64;
+    private int queueSize = 256;
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(final int threads) {
+        this.threads = threads;
+    }
+
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    public void setQueueSize(final int queueSize) {
+        this.queueSize = queueSize;
+    }
+
+    /**
+     * @return executor running the backend calls of the asynchronous service
+     *         API, replaced by virtual threads in the virtual-threads profile
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    @Profile("!virtual-threads")
+    public ExecutorService objectStoreExecutor() {
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize),
+                new ThreadFactoryBuilder().setNameFormat("objectstore-async-%d").setDaemon(true).build());
+    }
+}
@@ -0,0 +1,46 @@
+package com.sap.refapps.objectstore.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * This is the batch upload configuration class. At most maxPendingFiles
+ * files are read ahead of the uploads, each holding up to memoryBufferSize
+ * bytes on the heap, larger files are spooled to temporary files.
+ *
+ */
+
+@Configuration
+@ConfigurationProperties(prefix = "objectstore.batch")
+public class BatchUploadConfiguration {
+
+    private static final int MB = 1024 * 1024;
+
+    private int concurrency = 8;
+    private int maxPendingFiles = 16;
+    private int memoryBufferSize = 1 * MB;
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public void setConcurrency(final int concurrency) {
+        this.concurrency = concurrency;
+    }
+
+    public int getMaxPendingFiles() {
+        return maxPendingFiles;
+    }
+
+    public void setMaxPendingFiles(final int maxPendingFiles) {
+        this.maxPendingFiles = maxPendingFiles;
+    }
+
+    public int getMemoryBufferSize() {
+        return memoryBufferSize;
+    }
+
+    public void setMemoryBufferSize(final int memoryBufferSize) {
+        this.memoryBufferSize = memoryBufferSize;
+    }
+}
@@ -0,0 +1,136 @@
+package com.sap.refapps.objectstore.config;
+
+import java.io.Closeable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.jclouds.blobstore.BlobStoreContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Holds the long-lived BlobStoreContext of the active objectstore backend.
+ *
+ * The context is built once at startup and shared by all request threads.
+ * It is only rebuilt after a credential rotation ({@link #rebuild()}) or a
+ * fatal error ({@link #invalidate(BlobStoreContext)}) and is closed on
+ * shutdown.
+ */
+public class BlobStoreContextProvider implements Closeable {
+
+    private static final long RETIRED_CONTEXT_GRACE_PERIOD_SECONDS = 60;
+    private static final long MINIMUM_REBUILD_INTERVAL_MILLIS = 30000;
+
+    private final String backend;
+    private final Supplier<BlobStoreContext> contextFactory;
+    private final ScheduledExecutorService retiredContextCloser;
+    private final AtomicLong buildCount = new AtomicLong();
+    private volatile BlobStoreContext context;
+    private volatile long lastBuildTimeMillis;
+    private volatile long lastBuildTimestamp;
+    private volatile boolean closed;
+
+    private static Logger logger = LoggerFactory.getLogger(BlobStoreContextProvider.class);
+
+    public BlobStoreContextProvider(final String backend, final Supplier<BlobStoreContext> contextFactory) {
+        this.backend = backend;
+        this.contextFactory = contextFactory;
+        this.retiredContextCloser = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "blobstore-context-closer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.context = build();
+    }
+
+    /**
+     * @return the shared blobStoreContext
+     */
+    public BlobStoreContext getContext() {
+        final BlobStoreContext current = context;
+        if (current == null) {
+            throw new IllegalStateException("BlobStoreContext for " + backend + " is closed");
+        }
+        return current;
+    }
+
+    /**
+     * Builds a new context, e.g. after the credentials have been rotated. The
+     * previous context is closed after a grace period so that requests still
+     * using it can complete.
+     */
+    public synchronized void rebuild() {
+        if (closed) {
+            return;
+        }
+        final BlobStoreContext previous = context;
+        context = build();
+        retire(previous);
+    }
+
+    /**
+     * Rebuilds the context after a fatal error, unless another thread has
+     * already replaced the failed context or the current context is too young
+     * to be rebuilt again.
+     *
+     * @param failedContext
+     *            the context the failing call was made with
+     */
+    public synchronized void invalidate(final BlobStoreContext failedContext) {
+        if (!closed && failedContext == context
+                && System.currentTimeMillis() - lastBuildTimestamp >= MINIMUM_REBUILD_INTERVAL_MILLIS) {
+            logger.warn("Rebuilding BlobStoreContext for " + backend + " after a fatal error");
+            rebuild();
+        }
+    }
+
+    /**
+     * @return time taken by the last context bootstrap in milliseconds
+     */
+    public long getLastBuildTimeMillis() {
+        return lastBuildTimeMillis;
+    }
+
+    /**
+     * @return number of contexts built since startup
+     */
+    public long getBuildCount() {
+        return buildCount.get();
+    }
+
+    public String getBackend() {
+        return backend;
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        // close retired contexts right away instead of waiting for the grace period
+        for (Runnable pendingClose : retiredContextCloser.shutdownNow()) {
+            pendingClose.run();
+        }
+        if (context != null) {
+            context.close();
+            context = null;
+        }
+    }
+
+    private BlobStoreContext build() {
+        final long start = System.nanoTime();
+        final BlobStoreContext blobStoreContext = contextFactory.get();
+        lastBuildTimeMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        lastBuildTimestamp = System.currentTimeMillis();
+        buildCount.incrementAndGet();
+        logger.info("BlobStoreContext for " + backend + " built in " + lastBuildTimeMillis + " ms");
+        return blobStoreContext;
+    }
+
+    private void retire(final BlobStoreContext previous) {
+        if (previous != null) {
+            retiredContextCloser.schedule(previous::close, RETIRED_CONTEXT_GRACE_PERIOD_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.sap.refapps.objectstore.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * This is the bulk delete configuration class. Objects are deleted in
+ * chunks of up to chunkSize names, capped at 1000, the limit of an S3
+ * multi-object delete.
+ *
+ */
+
+@Configuration
+@ConfigurationProperties(prefix = "objectstore.bulk-delete")
+public class BulkDeleteConfiguration {
+
+    private int chunkSize = 1000;
+    private int concurrency = 4;
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public void setChunkSize(final int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public void setConcurrency(final int concurrency) {
+        this.concurrency = concurrency;
+    }
+}
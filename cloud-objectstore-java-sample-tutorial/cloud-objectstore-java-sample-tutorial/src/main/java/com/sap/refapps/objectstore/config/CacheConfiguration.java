@@ -0,0 +1,82 @@
+package com.sap.refapps.objectstore.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * This is the configuration class of the local object cache. Small objects
+ * are kept on the heap, larger ones in files of the cache directory.
+ *
+ */
+
+@Configuration
+@ConfigurationProperties(prefix = "objectstore.cache")
+public class CacheConfiguration {
+
+    private static final long KB = 1024;
+    private static final long MB = 1024 * KB;
+
+    private boolean enabled = false;
+    private long memoryBudget = 64 * MB;
+    private long memoryObjectLimit = 256 * KB;
+    private long diskBudget = 1024 * MB;
+    private long maxObjectSize = 64 * MB;
+    private String directory = "";
+    private long ttlSeconds = 300;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(final boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    public void setMemoryBudget(final long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+
+    public long getMemoryObjectLimit() {
+        return memoryObjectLimit;
+    }
+
+    public void setMemoryObjectLimit(final long memoryObjectLimit) {
+        this.memoryObjectLimit = memoryObjectLimit;
+    }
+
+    public long getDiskBudget() {
+        return diskBudget;
+    }
+
+    public void setDiskBudget(final long diskBudget) {
+        this.diskBudget = diskBudget;
+    }
+
+    public long getMaxObjectSize() {
+        return maxObjectSize;
+    }
+
+    public void setMaxObjectSize(final long maxObjectSize) {
+        this.maxObjectSize = maxObjectSize;
+    }
+
+    public String getDirectory() {
+        return directory;
+    }
+
+    public void setDirectory(final String directory) {
+        this.directory = directory;
+    }
+
+    public long getTtlSeconds() {
+        return ttlSeconds;
+    }
+
+    public void setTtlSeconds(final long ttlSeconds) {
+        this.ttlSeconds = ttlSeconds;
+    }
+}
@@ -0,0 +1,59 @@
+package com.sap.refapps.objectstore.config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * This is the compression configuration class. Uploads whose content type
+ * matches one of contentTypes (wildcards like text/* are allowed) and that
+ * are at least minSize bytes long, or of unknown length, are stored gzip
+ * compressed at the given level.
+ *
+ */
+
+@Configuration
+@ConfigurationProperties(prefix = "objectstore.compression")
+public class CompressionConfiguration {
+
+    private boolean enabled = false;
+    private List<String> contentTypes = new ArrayList<>(
+            Arrays.asList("text/*", "application/json", "application/xml", "application/x-ndjson"));
+    private long minSize = 1024;
+    private int level = 6;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(final boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public List<String> getContentTypes() {
+        return contentTypes;
+    }
+
+    public void setContentTypes(final List<String> contentTypes) {
+        this.contentTypes = contentTypes;
+    }
+
+    public long getMinSize() {
+        return minSize;
+    }
+
+    public void setMinSize(final long minSize) {
+        this.minSize = minSize;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public void setLevel(final int level) {
+        this.level = level;
+    }
+}
@@ -0,0 +1,65 @@
+package com.sap.refapps.objectstore.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * This is the server-side copy configuration class. The objects of a
+ * prefix are copied concurrency at a time. On S3, objects above
+ * multipartThreshold, the 5 GB limit of a single copy request, are copied
+ * in parts of partSize, partConcurrency parts of an object at a time.
+ *
+ */
+
+@Configuration
+@ConfigurationProperties(prefix = "objectstore.copy")
+public class CopyConfiguration {
+
+    private static final long MB = 1024 * 1024;
+
+    private int concurrency = 8;
+    private long multipartThreshold = 5120 * MB;
+    private long partSize = 512 * MB;
+    private int partConcurrency = 4;
+    private int maxRetries = 3;
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public void setConcurrency(final int concurrency) {
+        this.concurrency = concurrency;
+    }
+
+    public long getMultipartThreshold() {
+        return multipartThreshold;
+    }
+
+    public void setMultipartThreshold(final long multipartThreshold) {
+        this.multipartThreshold = multipartThreshold;
+    }
+
+    public long getPartSize() {
+        return partSize;
+    }
+
+    public void setPartSize(final long partSize) {
+        this.partSize = partSize;
+    }
+
+    public int getPartConcurrency() {
+        return partConcurrency;
+    }
+
+    public void setPartConcurrency(final int partConcurrency) {
+        this.partConcurrency = partConcurrency;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public void setMaxRetries(final int maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+}
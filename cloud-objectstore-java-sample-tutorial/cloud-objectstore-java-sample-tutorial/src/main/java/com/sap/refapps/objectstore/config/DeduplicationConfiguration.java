@@ -0,0 +1,48 @@
+package com.sap.refapps.objectstore.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * This is the deduplication configuration class. Uploads of at least
+ * minSize bytes, or of unknown length, are hashed while they stream to the
+ * objectstore. A duplicate is copied instead of uploaded if it fits into a
+ * multipart part or is compressed, which needs multipart uploads enabled.
+ * The hashes of up to maxEntries stored objects are kept.
+ *
+ */
+
+@Configuration
+@ConfigurationProperties(prefix = "objectstore.dedup")
+public class DeduplicationConfiguration {
+
+    private static final long KB = 1024;
+
+    private boolean enabled = false;
+    private long minSize = 64 * KB;
+    private long maxEntries = 100000;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(final boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public long getMinSize() {
+        return minSize;
+    }
+
+    public void setMinSize(final long minSize) {
+        this.minSize = minSize;
+    }
+
+    public long getMaxEntries() {
+        return maxEntries;
+    }
+
+    public void setMaxEntries(final long maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+}
@@ -0,0 +1,67 @@
+package com.sap.refapps.objectstore.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * This is the download configuration class. Downloads are copied through
+ * buffers of bufferSize bytes, at most bufferPoolSize of them exist at a
+ * time. A download waits up to bufferWaitMillis for one of them and is
+ * then copied through a small buffer instead. The response is flushed once
+ * flushBytes have been written or flushIntervalMillis have passed since
+ * the last flush.
+ *
+ */
+
+@Configuration
+@ConfigurationProperties(prefix = "objectstore.download")
+public class DownloadConfiguration {
+
+    private static final int KB = 1024;
+
+    private int bufferSize = 256 * KB;
+    private int bufferPoolSize = 64;
+    private long bufferWaitMillis = 50;
+    private long flushBytes = 1024 * KB;
+    private long flushIntervalMillis = 250;
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public void setBufferSize(final int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    public int getBufferPoolSize() {
+        return bufferPoolSize;
+    }
+
+    public void setBufferPoolSize(final int bufferPoolSize) {
+        this.bufferPoolSize = bufferPoolSize;
+    }
+
+    public long getBufferWaitMillis() {
+        return bufferWaitMillis;
+    }
+
+    public void setBufferWaitMillis(final long bufferWaitMillis) {
+        this.bufferWaitMillis = bufferWaitMillis;
+    }
+
+    public long getFlushBytes() {
+        return flushBytes;
+    }
+
+    public void setFlushBytes(final long flushBytes) {
+        this.flushBytes = flushBytes;
+    }
+
+    public long getFlushIntervalMillis() {
+        return flushIntervalMillis;
+    }
+
+    public void setFlushIntervalMillis(final long flushIntervalMillis) {
+        this.flushIntervalMillis = flushIntervalMillis;
+    }
+}
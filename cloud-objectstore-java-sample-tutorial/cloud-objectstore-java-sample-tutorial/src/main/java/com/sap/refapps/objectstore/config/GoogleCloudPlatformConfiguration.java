@@ -8,6 +8,7 @@ import org.jclouds.blobstore.BlobStoreContext;
 import org.jclouds.domain.Credentials;
 import org.jclouds.googlecloud.GoogleCredentialsFromJson;
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
 import org.springframework.context.annotation.PropertySource;
@@ -56,4 +57,13 @@ public class GoogleCloudPlatformConfiguration {
 
         return blobStoreContext;
     }
+
+    /**
+     * @return blobStoreContextProvider sharing one blobStoreContext across
+     *         requests, closed on shutdown
+     */
+    @Bean(destroyMethod = "close")
+    public BlobStoreContextProvider blobStoreContextProvider() {
+        return new BlobStoreContextProvider("google-cloud-storage", this::getBlobStoreContext);
+    }
 }
@@ -0,0 +1,24 @@
+package com.sap.refapps.objectstore.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * This is the object listing configuration class
+ *
+ */
+
+@Configuration
+@ConfigurationProperties(prefix = "objectstore.list")
+public class ListConfiguration {
+
+    private int metadataConcurrency = 8;
+
+    public int getMetadataConcurrency() {
+        return metadataConcurrency;
+    }
+
+    public void setMetadataConcurrency(final int metadataConcurrency) {
+        this.metadataConcurrency = metadataConcurrency;
+    }
+}
@@ -0,0 +1,97 @@
+package com.sap.refapps.objectstore.config;
+
+import java.nio.file.Paths;
+import java.util.Properties;
+
+import org.jclouds.ContextBuilder;
+import org.jclouds.blobstore.BlobStoreContext;
+import org.jclouds.filesystem.reference.FilesystemConstants;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+/**
+ * This is the configuration class of the local backends, used outside of
+ * Cloud Foundry. The local-filesystem profile stores the objects as files
+ * below directory (a directory per bucket), the local-transient profile
+ * keeps them in memory until the application stops. The bucket is created
+ * on startup.
+ *
+ */
+
+@Profile({ "local-filesystem", "local-transient" })
+@Configuration
+@ConfigurationProperties(prefix = "objectstore.local")
+public class LocalConfiguration {
+
+    private String bucket = "objectstore";
+    private String directory = "";
+    private boolean fastReads = true;
+
+    public String getBucket() {
+        return bucket;
+    }
+
+    public void setBucket(final String bucket) {
+        this.bucket = bucket;
+    }
+
+    /**
+     * @return base directory of the filesystem backend, defaults to
+     *         objectstore in the temporary directory
+     */
+    public String getDirectory() {
+        return directory.isEmpty() ? Paths.get(System.getProperty("java.io.tmpdir"), "objectstore").toString()
+                : directory;
+    }
+
+    public void setDirectory(final String directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @return true if downloads from the filesystem backend read the files
+     *         directly, requires the metadata cache
+     */
+    public boolean isFastReads() {
+        return fastReads;
+    }
+
+    public void setFastReads(final boolean fastReads) {
+        this.fastReads = fastReads;
+    }
+
+    /**
+     * @param provider
+     *            filesystem or transient
+     * @return blobStoreContext with the bucket created
+     */
+    public BlobStoreContext getBlobStoreContext(final String provider) {
+        final Properties overrides = new Properties();
+        overrides.setProperty(FilesystemConstants.PROPERTY_BASEDIR, getDirectory());
+        final BlobStoreContext context = ContextBuilder.newBuilder(provider).overrides(overrides)
+                .buildView(BlobStoreContext.class);
+        context.getBlobStore().createContainerInLocation(null, bucket);
+        return context;
+    }
+
+    /**
+     * @return blobStoreContextProvider of the filesystem backend
+     */
+    @Profile("local-filesystem")
+    @Bean(destroyMethod = "close")
+    public BlobStoreContextProvider fileSystemContextProvider() {
+        return new BlobStoreContextProvider("filesystem", () -> getBlobStoreContext("filesystem"));
+    }
+
+    /**
+     * @return blobStoreContextProvider of the transient backend, the objects
+     *         are lost when its context is closed
+     */
+    @Profile("local-transient")
+    @Bean(destroyMethod = "close")
+    public BlobStoreContextProvider transientContextProvider() {
+        return new BlobStoreContextProvider("transient", () -> getBlobStoreContext("transient"));
+    }
+}
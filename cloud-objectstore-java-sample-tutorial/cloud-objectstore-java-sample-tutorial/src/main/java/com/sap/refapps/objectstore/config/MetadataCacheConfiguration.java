@@ -0,0 +1,61 @@
+package com.sap.refapps.objectstore.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * This is the configuration class of the cache of object metadata and
+ * listing pages.
+ *
+ */
+
+@Configuration
+@ConfigurationProperties(prefix = "objectstore.metadata-cache")
+public class MetadataCacheConfiguration {
+
+    private boolean enabled = false;
+    private long ttlSeconds = 60;
+    private long refreshSeconds = 10;
+    private long maximumEntries = 10000;
+    private long maximumPages = 1000;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(final boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public long getTtlSeconds() {
+        return ttlSeconds;
+    }
+
+    public void setTtlSeconds(final long ttlSeconds) {
+        this.ttlSeconds = ttlSeconds;
+    }
+
+    public long getRefreshSeconds() {
+        return refreshSeconds;
+    }
+
+    public void setRefreshSeconds(final long refreshSeconds) {
+        this.refreshSeconds = refreshSeconds;
+    }
+
+    public long getMaximumEntries() {
+        return maximumEntries;
+    }
+
+    public void setMaximumEntries(final long maximumEntries) {
+        this.maximumEntries = maximumEntries;
+    }
+
+    public long getMaximumPages() {
+        return maximumPages;
+    }
+
+    public void setMaximumPages(final long maximumPages) {
+        this.maximumPages = maximumPages;
+    }
+}
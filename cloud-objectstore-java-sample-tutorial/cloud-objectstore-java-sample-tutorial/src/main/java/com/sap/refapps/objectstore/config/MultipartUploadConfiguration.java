@@ -0,0 +1,72 @@
+package com.sap.refapps.objectstore.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * This is the multipart upload configuration class. Multipart upload is
+ * switched on for the cloud-aws and cloud-gcp profiles.
+ *
+ */
+
+@Configuration
+@ConfigurationProperties(prefix = "objectstore.multipart")
+public class MultipartUploadConfiguration {
+
+    private static final long MB = 1024 * 1024;
+
+    private boolean enabled = false;
+    private long threshold = 64 * MB;
+    private long partSize = 16 * MB;
+    private int concurrency = 4;
+    private int bufferPoolSize = 16;
+    private int maxRetries = 3;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(final boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public long getThreshold() {
+        return threshold;
+    }
+
+    public void setThreshold(final long threshold) {
+        this.threshold = threshold;
+    }
+
+    public long getPartSize() {
+        return partSize;
+    }
+
+    public void setPartSize(final long partSize) {
+        this.partSize = partSize;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public void setConcurrency(final int concurrency) {
+        this.concurrency = concurrency;
+    }
+
+    public int getBufferPoolSize() {
+        return bufferPoolSize;
+    }
+
+    public void setBufferPoolSize(final int bufferPoolSize) {
+        this.bufferPoolSize = bufferPoolSize;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public void setMaxRetries(final int maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+}
@@ -8,6 +8,10 @@ import org.slf4j.LoggerFactory;
 import org.springframework.context.ApplicationContextInitializer;
 import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.MutablePropertySources;
+import org.springframework.core.env.PropertySource;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.support.ResourcePropertySource;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -16,39 +20,123 @@ public class ObjectStoreContextInitializer implements ApplicationContextInitiali
 
     private static final Logger logger = LoggerFactory.getLogger(ObjectStoreContextInitializer.class);
 
+    /**
+     * Property selecting the backend regardless of the bound service, one of
+     * aws, gcp, filesystem or transient.
+     */
+    public static final String BACKEND_PROPERTY = "objectstore.backend";
+
+    /**
+     * Profile opting in to the transient in-memory backend when neither a
+     * backend is configured nor an objectstore service is bound.
+     */
+    public static final String LOCAL_PROFILE = "local";
+
     private static String activeProfile;
 
     @Override
     public void initialize(ConfigurableApplicationContext applicationContext) {
         final ConfigurableEnvironment applicationEnvironment = applicationContext.getEnvironment();
-        final String profileToActive = getActiveProfile();
+        final String profileToActive = getActiveProfile(applicationEnvironment.getProperty(BACKEND_PROPERTY),
+                applicationEnvironment.acceptsProfiles(LOCAL_PROFILE));
         // Active profile is set based on the objectore service connected to.
         // (s3/GCS etc..)
         applicationEnvironment.addActiveProfile(profileToActive);
+        addProfileProperties(applicationEnvironment, profileToActive);
+    }
+
+    /**
+     * The config files have been read before the profile is activated here,
+     * so the application-&lt;profile&gt;.properties of the backend, e.g. the
+     * multipart upload settings of cloud-aws and cloud-gcp, would never take
+     * effect. The file is added ahead of application.properties, as Boot
+     * does for the profiles it activates itself; command line arguments and
+     * environment variables still override it.
+     *
+     * @param environment
+     * @param profile
+     */
+    static void addProfileProperties(final ConfigurableEnvironment environment, final String profile) {
+        final ClassPathResource resource = new ClassPathResource("application-" + profile + ".properties");
+        if (!resource.exists()) {
+            return;
+        }
+        try {
+            final ResourcePropertySource propertySource = new ResourcePropertySource(
+                    "applicationConfig: [classpath:/" + resource.getPath() + "]", resource);
+            final MutablePropertySources propertySources = environment.getPropertySources();
+            for (PropertySource<?> source : propertySources) {
+                if (source.getName().startsWith("applicationConfig:")) {
+                    propertySources.addBefore(source.getName(), propertySource);
+                    return;
+                }
+            }
+            propertySources.addLast(propertySource);
+        } catch (IOException e) {
+            logger.error("Error occurred while reading the properties of profile " + profile + e);
+        }
     }
 
     /**
-     * This method is used to return the profile name to activate based on
-     * service plans.
+     * This method is used to return the profile name to activate. A
+     * configured backend takes precedence over the service plan. Without an
+     * objectstore service the transient in-memory backend is only used for
+     * local development, a deployment missing its binding fails at startup
+     * instead of losing every upload on restart.
      *
+     * @param backend
+     *            configured backend or null to follow the service plan
+     * @param local
+     *            whether the local profile is active
      * @return profile name
      */
-    public static String getActiveProfile() {
-        final String servicePlan = getServicePlan();
-        if (servicePlan.equals("s3-standard")) {
+    public static String getActiveProfile(final String backend, final boolean local) {
+        if (backend != null && !backend.isEmpty()) {
+            activeProfile = getBackendProfile(backend);
+            return activeProfile;
+        }
+        final Optional<String> servicePlan = getServicePlan();
+        if (!servicePlan.isPresent()) {
+            if (!local) {
+                throw new IllegalStateException("No objectstore service is bound and " + BACKEND_PROPERTY
+                        + " is not set, set it to aws, gcp, filesystem or transient, or activate the "
+                        + LOCAL_PROFILE + " profile for the transient in-memory objectstore");
+            }
+            logger.warn("No objectstore service is bound and " + BACKEND_PROPERTY
+                    + " is not set, falling back to the transient in-memory objectstore of the " + LOCAL_PROFILE
+                    + " profile");
+            activeProfile = "local-transient";
+        } else if (servicePlan.get().equals("s3-standard")) {
             activeProfile = "cloud-aws";
-        } else if (servicePlan.equals("gcs-standard")) {
+        } else if (servicePlan.get().equals("gcs-standard")) {
             activeProfile = "cloud-gcp";
+        } else {
+            throw new IllegalStateException("Unsupported objectstore service plan: " + servicePlan.get());
         }
         return activeProfile;
     }
 
+    private static String getBackendProfile(final String backend) {
+        switch (backend.trim().toLowerCase()) {
+        case "aws":
+            return "cloud-aws";
+        case "gcp":
+            return "cloud-gcp";
+        case "filesystem":
+            return "local-filesystem";
+        case "transient":
+            return "local-transient";
+        default:
+            throw new IllegalStateException("Unsupported " + BACKEND_PROPERTY + ": " + backend);
+        }
+    }
+
     /**
      * This method is used to parse the service plan name from VCAP_SERVICES
      *
-     * @return service plan name
+     * @return service plan name or empty if no objectstore service is bound
      */
-    private static String getServicePlan() {
+    private static Optional<String> getServicePlan() {
         Optional<String> servicePlan = Optional.empty();
         final String jsonString = System.getenv("VCAP_SERVICES");
         if (jsonString != null) {
@@ -65,7 +153,7 @@ public class ObjectStoreContextInitializer implements ApplicationContextInitiali
                 logger.error("Exception occurred: " + e);
             }
         }
-        return servicePlan.get();
+        return servicePlan;
     }
 
 }
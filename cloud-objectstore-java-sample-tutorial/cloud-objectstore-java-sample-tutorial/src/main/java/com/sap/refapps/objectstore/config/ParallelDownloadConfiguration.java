@@ -0,0 +1,74 @@
+package com.sap.refapps.objectstore.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * This is the parallel download configuration class. Whole objects above
+ * threshold are downloaded as ranges of rangeSize bytes, up to concurrency
+ * ranges per download are fetched ahead of the client. At most
+ * maxBufferedRanges ranges, shared by all downloads, are held in memory.
+ *
+ */
+
+@Configuration
+@ConfigurationProperties(prefix = "objectstore.parallel-download")
+public class ParallelDownloadConfiguration {
+
+    private static final long MB = 1024 * 1024;
+
+    private boolean enabled = false;
+    private long threshold = 64 * MB;
+    private int rangeSize = 8 * (int) MB;
+    private int concurrency = 4;
+    private int maxBufferedRanges = 32;
+    private int maxRetries = 3;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(final boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public long getThreshold() {
+        return threshold;
+    }
+
+    public void setThreshold(final long threshold) {
+        this.threshold = threshold;
+    }
+
+    public int getRangeSize() {
+        return rangeSize;
+    }
+
+    public void setRangeSize(final int rangeSize) {
+        this.rangeSize = rangeSize;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public void setConcurrency(final int concurrency) {
+        this.concurrency = concurrency;
+    }
+
+    public int getMaxBufferedRanges() {
+        return maxBufferedRanges;
+    }
+
+    public void setMaxBufferedRanges(final int maxBufferedRanges) {
+        this.maxBufferedRanges = maxBufferedRanges;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public void setMaxRetries(final int maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+}
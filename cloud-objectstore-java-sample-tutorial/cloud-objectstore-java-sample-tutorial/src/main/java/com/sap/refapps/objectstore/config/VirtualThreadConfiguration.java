@@ -0,0 +1,108 @@
+package com.sap.refapps.objectstore.config;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javax.annotation.PreDestroy;
+
+import org.apache.coyote.AbstractProtocol;
+import org.apache.coyote.ProtocolHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.concurrent.ConcurrentTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * This is the configuration class of the virtual-threads profile. Requests,
+ * streamed responses and the calls of the asynchronous service API run on
+ * virtual threads, so the number of concurrent downloads is no longer bound
+ * by server.tomcat.max-threads or objectstore.async.threads.
+ *
+ * The application is built for Java 8, the virtual threads are created
+ * through reflection and the profile requires a Java 21 runtime started
+ * with --add-opens java.base/java.lang=ALL-UNNAMED.
+ */
+
+@Profile("virtual-threads")
+@Configuration
+public class VirtualThreadConfiguration implements WebMvcConfigurer {
+
+    private static final Logger logger = LoggerFactory.getLogger(VirtualThreadConfiguration.class);
+
+    private final ExecutorService objectStoreExecutor = newVirtualThreadExecutor("objectstore-async-");
+
+    /**
+     * @return executor running the backend calls of the asynchronous service
+     *         API, one virtual thread per call
+     */
+    @Bean(destroyMethod = "")
+    public ExecutorService objectStoreExecutor() {
+        return objectStoreExecutor;
+    }
+
+    /**
+     * @return customizer handing the requests of the Tomcat connectors to
+     *         virtual threads
+     */
+    @Bean
+    public WebServerFactoryCustomizer<TomcatServletWebServerFactory> virtualThreadTomcatCustomizer() {
+        // virtual threads hold no resources once their task is done, the
+        // executor is left to be collected along with the connector
+        final ExecutorService requestExecutor = newVirtualThreadExecutor("objectstore-request-");
+        return factory -> factory.addConnectorCustomizers(connector -> {
+            final ProtocolHandler protocolHandler = connector.getProtocolHandler();
+            if (protocolHandler instanceof AbstractProtocol) {
+                ((AbstractProtocol<?>) protocolHandler).setExecutor(requestExecutor);
+            } else {
+                logger.warn("Requests of " + protocolHandler + " are not run on virtual threads");
+            }
+        });
+    }
+
+    /**
+     * Streamed responses (StreamingResponseBody) are written on virtual
+     * threads instead of a new platform thread per response.
+     */
+    @Override
+    public void configureAsyncSupport(final AsyncSupportConfigurer configurer) {
+        configurer.setTaskExecutor(new ConcurrentTaskExecutor(newVirtualThreadExecutor("objectstore-stream-")));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // the executor class is internal to the JDK, the destroy method of
+        // the bean could not be invoked reflectively
+        objectStoreExecutor.shutdownNow();
+    }
+
+    /**
+     * @param namePrefix
+     *            prefix of the thread names, followed by a counter
+     * @return executor starting a new virtual thread for every task
+     */
+    static ExecutorService newVirtualThreadExecutor(final String namePrefix) {
+        try {
+            final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, namePrefix, 0L);
+            final ThreadFactory threadFactory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            final Method newThreadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor",
+                    ThreadFactory.class);
+            return (ExecutorService) newThreadPerTaskExecutor.invoke(null, threadFactory);
+        } catch (ClassNotFoundException | NoSuchMethodException e) {
+            throw new IllegalStateException("The virtual-threads profile requires Java 21 or later, running on "
+                    + System.getProperty("java.version"), e);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException("Error occurred while creating virtual threads", e);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.sap.refapps.objectstore.controller;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A byte range of an HTTP Range request header: first-last, first- or a
+ * suffix range -length.
+ */
+final class ByteRange {
+
+    private static final String BYTES_UNIT = "bytes=";
+
+    private final long first;
+    private final long last;
+    private final long suffixLength;
+
+    private ByteRange(long first, long last, long suffixLength) {
+        this.first = first;
+        this.last = last;
+        this.suffixLength = suffixLength;
+    }
+
+    /**
+     * @param rangeHeader
+     * @return the requested ranges, empty if the header is missing or cannot
+     *         be parsed, in which case the whole object is to be returned
+     */
+    static List<ByteRange> parse(String rangeHeader) {
+        if (rangeHeader == null || !rangeHeader.startsWith(BYTES_UNIT)) {
+            return Collections.emptyList();
+        }
+        List<ByteRange> ranges = new ArrayList<>();
+        try {
+            for (String spec : rangeHeader.substring(BYTES_UNIT.length()).split(",")) {
+                spec = spec.trim();
+                int dash = spec.indexOf('-');
+                if (dash < 0) {
+                    return Collections.emptyList();
+                }
+                String firstPart = spec.substring(0, dash).trim();
+                String lastPart = spec.substring(dash + 1).trim();
+                if (firstPart.isEmpty()) {
+                    long suffixLength = Long.parseLong(lastPart);
+                    if (suffixLength <= 0) {
+                        return Collections.emptyList();
+                    }
+                    ranges.add(new ByteRange(-1, -1, suffixLength));
+                } else {
+                    long first = Long.parseLong(firstPart);
+                    long last = lastPart.isEmpty() ? -1 : Long.parseLong(lastPart);
+                    if (first < 0 || (last >= 0 && last < first)) {
+                        return Collections.emptyList();
+                    }
+                    ranges.add(new ByteRange(first, last, -1));
+                }
+            }
+        } catch (NumberFormatException e) {
+            return Collections.emptyList();
+        }
+        return ranges;
+    }
+
+    /**
+     * @param size
+     *            size of the whole object
+     * @return true if the range overlaps the object
+     */
+    boolean isSatisfiable(long size) {
+        return suffixLength > 0 ? size > 0 : first < size;
+    }
+
+    long getStart(long size) {
+        return suffixLength > 0 ? Math.max(0, size - suffixLength) : first;
+    }
+
+    long getEnd(long size) {
+        return last >= 0 && suffixLength <= 0 ? Math.min(last, size - 1) : size - 1;
+    }
+
+    /**
+     * @param size
+     * @return Content-Range header value for this range
+     */
+    String toContentRange(long size) {
+        return "bytes " + getStart(size) + "-" + getEnd(size) + "/" + size;
+    }
+}
@@ -0,0 +1,181 @@
+package com.sap.refapps.objectstore.controller;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import com.sap.refapps.objectstore.config.DownloadConfiguration;
+import com.sap.refapps.objectstore.model.BlobContent;
+import com.sap.refapps.objectstore.repository.ObjectStoreMetrics;
+
+/**
+ * Copies downloads from the objectstore to the response. The payload is
+ * read into large buffers taken from a pool shared by all downloads, so a
+ * download neither allocates its own buffers nor is written in small
+ * chunks. The pool is bounded, a download that finds no free buffer in
+ * time is copied through a small buffer of its own, so the heap used for
+ * buffers does not grow with the number of concurrent downloads. The
+ * payload, and with it the backend connection, is released as soon as the
+ * copy ends, i.e. when the response is complete or the client has gone
+ * away.
+ */
+@Component
+@ManagedResource(objectName = "com.sap.refapps.objectstore:type=DownloadStreamer")
+public class DownloadStreamer {
+
+    private static final int FALLBACK_BUFFER_SIZE = 8 * 1024;
+
+    private final DownloadConfiguration config;
+    private final ObjectStoreMetrics metrics;
+    private final Semaphore bufferPermits;
+    private final BlockingQueue<byte[]> freeBuffers;
+    private final AtomicInteger activeDownloads = new AtomicInteger();
+    private final AtomicLong completedDownloads = new AtomicLong();
+    private final AtomicLong failedDownloads = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicLong fallbackBuffers = new AtomicLong();
+
+    private static Logger logger = LoggerFactory.getLogger(DownloadStreamer.class);
+
+    @Autowired
+    public DownloadStreamer(final DownloadConfiguration config, final ObjectStoreMetrics metrics) {
+        this.config = config;
+        this.metrics = metrics;
+        this.bufferPermits = new Semaphore(config.getBufferPoolSize());
+        this.freeBuffers = new ArrayBlockingQueue<>(config.getBufferPoolSize());
+        metrics.bind(this);
+    }
+
+    /**
+     * Copies the payload to the response and closes it afterwards.
+     *
+     * @param blobContent
+     * @param outputStream
+     *            output stream of the response
+     * @return number of bytes written
+     * @throws IOException
+     */
+    public long copy(final BlobContent blobContent, final OutputStream outputStream) throws IOException {
+        final long start = System.nanoTime();
+        long written = 0;
+        boolean completed = false;
+        activeDownloads.incrementAndGet();
+        final boolean pooled;
+        try {
+            pooled = bufferPermits.tryAcquire(config.getBufferWaitMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            activeDownloads.decrementAndGet();
+            blobContent.getInputStream().close();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a download buffer");
+        }
+        final byte[] buffer = pooled ? takeBuffer() : createFallbackBuffer();
+        try (InputStream inputStream = blobContent.getInputStream()) {
+            final long flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(config.getFlushIntervalMillis());
+            long unflushed = 0;
+            long lastFlush = start;
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, read);
+                written += read;
+                unflushed += read;
+                final long now = System.nanoTime();
+                // a slow backend still delivers the first bytes to the client
+                if (unflushed >= config.getFlushBytes() || now - lastFlush >= flushIntervalNanos) {
+                    outputStream.flush();
+                    unflushed = 0;
+                    lastFlush = now;
+                }
+            }
+            outputStream.flush();
+            completed = true;
+        } finally {
+            if (pooled) {
+                releaseBuffer(buffer);
+            }
+            activeDownloads.decrementAndGet();
+            bytesWritten.addAndGet(written);
+            metrics.downloaded(written);
+            (completed ? completedDownloads : failedDownloads).incrementAndGet();
+            logThroughput(blobContent.getName(), written, System.nanoTime() - start, completed);
+        }
+        return written;
+    }
+
+    @ManagedAttribute
+    public int getActiveDownloads() {
+        return activeDownloads.get();
+    }
+
+    @ManagedAttribute
+    public long getCompletedDownloads() {
+        return completedDownloads.get();
+    }
+
+    @ManagedAttribute
+    public long getFailedDownloads() {
+        return failedDownloads.get();
+    }
+
+    @ManagedAttribute
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    @ManagedAttribute
+    public int getPooledBuffers() {
+        return freeBuffers.size();
+    }
+
+    @ManagedAttribute
+    public long getFallbackBuffers() {
+        return fallbackBuffers.get();
+    }
+
+    /**
+     * @return pooled buffer, taken with a permit
+     */
+    private byte[] takeBuffer() {
+        final byte[] buffer = freeBuffers.poll();
+        return buffer != null ? buffer : new byte[config.getBufferSize()];
+    }
+
+    private byte[] createFallbackBuffer() {
+        fallbackBuffers.incrementAndGet();
+        return new byte[Math.min(FALLBACK_BUFFER_SIZE, config.getBufferSize())];
+    }
+
+    private void releaseBuffer(final byte[] buffer) {
+        freeBuffers.offer(buffer);
+        bufferPermits.release();
+    }
+
+    private static void logThroughput(final String fileName, final long bytes, final long nanos,
+            final boolean completed) {
+        final long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+        final long bytesPerSecond = nanos > 0 ? (long) (bytes * 1e9 / nanos) : bytes;
+        if (completed) {
+            if (logger.isDebugEnabled()) {
+                logger.debug(fileName + " is streamed: " + bytes + " bytes in " + millis + " ms ("
+                        + bytesPerSecond + " bytes/s)");
+            }
+        } else {
+            logger.warn(fileName + " is aborted after " + bytes + " bytes in " + millis + " ms (" + bytesPerSecond
+                    + " bytes/s)");
+        }
+    }
+}
@@ -2,62 +2,169 @@ package com.sap.refapps.objectstore.controller;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
 
 import javax.servlet.http.HttpServletRequest;
 
+import org.apache.commons.fileupload.FileItemHeaders;
 import org.apache.commons.fileupload.FileItemIterator;
 import org.apache.commons.fileupload.FileItemStream;
 import org.apache.commons.fileupload.FileUploadException;
 import org.apache.commons.fileupload.servlet.ServletFileUpload;
+import org.jclouds.blobstore.options.CopyOptions;
+import org.jclouds.blobstore.options.GetOptions;
+import org.jclouds.blobstore.options.ListContainerOptions;
+import org.jclouds.http.HttpResponse;
+import org.jclouds.http.HttpResponseException;
+import org.jclouds.io.ContentMetadataBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.io.InputStreamResource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.util.MimeTypeUtils;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import com.google.common.io.ByteStreams;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sap.refapps.objectstore.model.BlobContent;
 import com.sap.refapps.objectstore.model.BlobFile;
-import com.sap.refapps.objectstore.service.ObjectStoreService;
+import com.sap.refapps.objectstore.model.BlobFilePage;
+import com.sap.refapps.objectstore.model.BulkDeleteRequest;
+import com.sap.refapps.objectstore.model.CopyRequest;
+import com.sap.refapps.objectstore.model.CopyResult;
+import com.sap.refapps.objectstore.model.DeleteResult;
+import com.sap.refapps.objectstore.model.UploadResult;
+import com.sap.refapps.objectstore.repository.ContentCompressor;
+import com.sap.refapps.objectstore.service.AsyncObjectStoreService;
+import com.sap.refapps.objectstore.service.BatchUploadService;
+import com.sap.refapps.objectstore.service.BulkDeleteService;
+import com.sap.refapps.objectstore.service.CopyService;
 
 @RestController
 @RequestMapping("/objectstorage.svc/api/v1")
 public class ObjectstoreController {
 
-    private ObjectStoreService objectStoreService;
+    private static final int MAX_RANGES = 16;
+
+    private AsyncObjectStoreService objectStoreService;
+    private BatchUploadService batchUploadService;
+    private BulkDeleteService bulkDeleteService;
+    private CopyService copyService;
+    private DownloadStreamer downloadStreamer;
+    private ObjectMapper objectMapper;
     private static Logger logger = LoggerFactory.getLogger(ObjectstoreController.class);
 
     @Autowired
-    public ObjectstoreController(final ObjectStoreService objectStoreService) {
+    public ObjectstoreController(final AsyncObjectStoreService objectStoreService,
+            final BatchUploadService batchUploadService, final BulkDeleteService bulkDeleteService,
+            final CopyService copyService, final DownloadStreamer downloadStreamer, final ObjectMapper objectMapper) {
         this.objectStoreService = objectStoreService;
+        this.batchUploadService = batchUploadService;
+        this.bulkDeleteService = bulkDeleteService;
+        this.copyService = copyService;
+        this.downloadStreamer = downloadStreamer;
+        this.objectMapper = objectMapper;
     }
 
     /**
+     * @param prefix
+     *            only list objects whose name starts with the prefix
+     * @param delimiter
+     *            group names up to the delimiter into directory entries
+     * @param recursive
+     *            list the objects of all subdirectories
+     * @param metadata
+     *            fetch content type and user metadata of every object
      * @return list of blobfiles Function to get the list of objects in the
-     *         objectStore.
+     *         objectStore. The list is streamed to the client as the pages
+     *         arrive from the objectStore.
+     */
+    @GetMapping(value = "/storage", params = { "!marker", "!maxResults" })
+    public ResponseEntity<StreamingResponseBody> listFiles(
+            @RequestParam(value = "prefix", required = false) String prefix,
+            @RequestParam(value = "delimiter", required = false) String delimiter,
+            @RequestParam(value = "recursive", defaultValue = "false") boolean recursive,
+            @RequestParam(value = "metadata", defaultValue = "false") boolean metadata) {
+
+        if (recursive && delimiter != null) {
+            return errorMessage("delimiter cannot be combined with a recursive listing", HttpStatus.BAD_REQUEST);
+        }
+        ListContainerOptions options = createListOptions(null, null, prefix, delimiter, recursive);
+        StreamingResponseBody body = outputStream -> writeBlobFiles(outputStream, options, metadata);
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON_UTF8).body(body);
+    }
+
+    /**
+     * @param marker
+     *            nextMarker of the previous page
+     * @param maxResults
+     *            maximum number of objects in the page
+     * @param prefix
+     *            only list objects whose name starts with the prefix
+     * @param delimiter
+     *            group names up to the delimiter into directory entries
+     * @param recursive
+     *            list the objects of all subdirectories
+     * @param metadata
+     *            fetch content type and user metadata of every object
+     * @return page of blobfiles along with the marker of the next page
      */
     @GetMapping("/storage")
     @ResponseBody
-    public ResponseEntity<List<BlobFile>> listFiles() {
+    public CompletableFuture<ResponseEntity<BlobFilePage>> listFiles(@RequestParam(value = "marker", required = false) String marker,
+            @RequestParam(value = "maxResults", required = false) Integer maxResults,
+            @RequestParam(value = "prefix", required = false) String prefix,
+            @RequestParam(value = "delimiter", required = false) String delimiter,
+            @RequestParam(value = "recursive", defaultValue = "false") boolean recursive,
+            @RequestParam(value = "metadata", defaultValue = "false") boolean metadata) {
 
-        List<BlobFile> blobFiles = this.objectStoreService.listObjects();
-        return new ResponseEntity<>(blobFiles, HttpStatus.OK);
+        if (recursive && delimiter != null) {
+            return CompletableFuture.completedFuture(
+                    errorMessage("delimiter cannot be combined with a recursive listing", HttpStatus.BAD_REQUEST));
+        }
+        ListContainerOptions options = createListOptions(marker, maxResults, prefix, delimiter, recursive);
+        return this.objectStoreService.listObjectsAsync(options, metadata)
+                .thenApply(page -> new ResponseEntity<>(page, HttpStatus.OK));
     }
 
     /**
      * @param request
      * @return Message indicating if the file has been uploaded Function to
-     *         upload objects to objectStore.
+     *         upload objects to objectStore. Unlike the other endpoints the
+     *         uploads stay on the request thread: the blocking read of the
+     *         request body would otherwise hold an objectStoreExecutor thread
+     *         for as long as the client takes to send it.
      */
     @PostMapping("/storage")
     public ResponseEntity<String> uploadFile(HttpServletRequest request) throws IOException, FileUploadException {
@@ -67,7 +174,6 @@ public class ObjectstoreController {
 
         String message = "";
         Optional<FileItemStream> fileItemStream = Optional.empty();
-        byte[] byteArray = null;
 
         if (isMultipart) {
 
@@ -78,11 +184,12 @@ public class ObjectstoreController {
                 while (iter.hasNext()) {
                     fileItemStream = Optional.of(iter.next());
                     try (InputStream inputStream = fileItemStream.get().openStream()) {
-                        byteArray = ByteStreams.toByteArray(inputStream);
                         if (!fileItemStream.get().isFormField()) {
+                            // the part is streamed to the objectstore, never held in memory
                             final String contentType = fileItemStream.get().getContentType();
-                            message = this.objectStoreService.uploadFile(byteArray, fileItemStream.get().getName(),
-                                    contentType);
+                            this.objectStoreService.uploadFile(inputStream, getContentLength(fileItemStream.get()),
+                                    fileItemStream.get().getName(), contentType);
+                            message = fileItemStream.get().getName() + " is successfully uploaded.";
                         }
                     } catch (IOException e) {
                         logger.error("Error occurred while uploading the object: " + fileItemStream.get().getName() + e);
@@ -95,29 +202,277 @@ public class ObjectstoreController {
         return new ResponseEntity<>(message, HttpStatus.ACCEPTED);
     }
 
+    /**
+     * @param request
+     * @return result of every file Function to upload the files of a
+     *         multipart request concurrently. The status is 207 if some of the
+     *         files could not be uploaded.
+     */
+    @PostMapping("/storage/batch")
+    public ResponseEntity<List<UploadResult>> uploadFiles(HttpServletRequest request)
+            throws IOException, FileUploadException {
+
+        if (!ServletFileUpload.isMultipartContent(request)) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        List<UploadResult> results = this.batchUploadService
+                .upload(new ServletFileUpload().getItemIterator(request));
+        for (UploadResult result : results) {
+            if (!UploadResult.UPLOADED.equals(result.getStatus())) {
+                return new ResponseEntity<>(results, HttpStatus.MULTI_STATUS);
+            }
+        }
+        return new ResponseEntity<>(results, HttpStatus.OK);
+    }
+
     /**
      * @param fileName
+     * @param rangeHeader
+     *            optional byte ranges to download
+     * @param ifRange
+     *            ETag or date the ranges are conditional on
+     * @param ifNoneMatch
+     *            ETags of the copies the client already has
+     * @param ifModifiedSince
+     *            date of the copy the client already has
+     * @param acceptEncoding
+     *            encodings a compressed object may be sent with
      * @return inputStream containing the file Function to get a particular
-     *         objects from objectStore.
+     *         objects from objectStore. A Range request is answered with 206
+     *         and only the requested bytes are fetched from the objectStore.
+     *         An unchanged object is answered with 304 and no body. The
+     *         request thread is released while the objectStore is called.
      */
     @GetMapping(value = "/storage/{name:.*}")
-    public ResponseEntity<InputStreamResource> getFile(@PathVariable(value = "name") String fileName) {
+    public CompletableFuture<ResponseEntity<StreamingResponseBody>> getFile(
+            @PathVariable(value = "name") String fileName,
+            @RequestHeader(value = HttpHeaders.RANGE, required = false) String rangeHeader,
+            @RequestHeader(value = HttpHeaders.IF_RANGE, required = false) String ifRange,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            @RequestHeader(value = HttpHeaders.IF_MODIFIED_SINCE, required = false) String ifModifiedSince,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+
+        if (fileName == null) {
+            // Default to 200, when input is missing
+            return CompletableFuture.completedFuture(new ResponseEntity<StreamingResponseBody>(HttpStatus.OK));
+        }
+        List<ByteRange> ranges = ByteRange.parse(rangeHeader);
+        if (ranges.isEmpty() || ranges.size() > MAX_RANGES) {
+            // the whole object is served in a single round trip
+            return getWholeFile(fileName, ifNoneMatch, ifModifiedSince, acceptEncoding);
+        }
+
+        return getRanges(fileName, ranges, ifRange, ifNoneMatch, ifModifiedSince, acceptEncoding, true);
+    }
 
-        if (fileName != null) {
+    /**
+     * Resolves the ranges against the metadata of the object. The ranges are
+     * fetched on condition of the ETag in the metadata, if the object has
+     * been replaced in between they are resolved once more against its new
+     * metadata.
+     */
+    private CompletableFuture<ResponseEntity<StreamingResponseBody>> getRanges(String fileName,
+            List<ByteRange> ranges, String ifRange, String ifNoneMatch, String ifModifiedSince,
+            String acceptEncoding, boolean retry) {
+        // the metadata gives the size the ranges are resolved against
+        return this.objectStoreService.getFileMetadataAsync(fileName).thenCompose(blobMetadata -> {
+            if (!blobMetadata.isPresent()) {
+                return CompletableFuture
+                        .completedFuture(errorBody(fileName + " does not exist in the container", HttpStatus.NOT_FOUND));
+            }
+            BlobContent metadata = blobMetadata.get();
+            if (isNotModified(ifNoneMatch, ifModifiedSince, metadata)) {
+                return CompletableFuture
+                        .completedFuture(new ResponseEntity<>(createValidatorHeaders(metadata), HttpStatus.NOT_MODIFIED));
+            }
+            // the ranges of a compressed object would address its stored bytes
+            if (metadata.getSize() < 0 || metadata.getContentEncoding() != null
+                    || !isIfRangeMatching(ifRange, metadata)) {
+                return getWholeFile(fileName, ifNoneMatch, ifModifiedSince, acceptEncoding);
+            }
+            // without a retry left the whole (new) object is served, a valid answer to a Range request
+            return getFileRanges(fileName, metadata, ranges,
+                    () -> retry ? getRanges(fileName, ranges, ifRange, ifNoneMatch, ifModifiedSince, acceptEncoding, false)
+                            : getWholeFile(fileName, ifNoneMatch, ifModifiedSince, acceptEncoding));
+        });
+    }
+
+    /**
+     * Answers the ranges of an object whose metadata has been fetched with a
+     * 206, or with a 416 if none of them can be satisfied.
+     *
+     * @param changed
+     *            answer if the object no longer matches the metadata
+     */
+    private CompletableFuture<ResponseEntity<StreamingResponseBody>> getFileRanges(String fileName,
+            BlobContent metadata, List<ByteRange> ranges,
+            Supplier<CompletableFuture<ResponseEntity<StreamingResponseBody>>> changed) {
+        final long size = metadata.getSize();
+        final List<ByteRange> satisfiable = new ArrayList<>();
+        for (ByteRange range : ranges) {
+            if (range.isSatisfiable(size)) {
+                satisfiable.add(range);
+            }
+        }
+        if (satisfiable.isEmpty()) {
             HttpHeaders respHeaders = new HttpHeaders();
+            respHeaders.set(HttpHeaders.CONTENT_RANGE, "bytes */" + size);
+            return CompletableFuture
+                    .completedFuture(new ResponseEntity<>(respHeaders, HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE));
+        }
+        if (satisfiable.size() > 1) {
+            return CompletableFuture.completedFuture(getMultipartRanges(fileName, metadata, satisfiable));
+        }
 
-            if (this.objectStoreService.isBlobExist(fileName)) {
-                respHeaders.setContentDispositionFormData("attachment", fileName);
-                InputStreamResource inputStreamResource = new InputStreamResource(
-                        this.objectStoreService.getFile(fileName));
-                return new ResponseEntity<InputStreamResource>(inputStreamResource, respHeaders, HttpStatus.OK);
-            } else {
-                return errorMessage(fileName + " does not exist in the container", HttpStatus.NOT_FOUND);
+        ByteRange range = satisfiable.get(0);
+        return this.objectStoreService.getFileAsync(fileName, createRangeOptions(range, metadata))
+                .handle((blobContent, ex) -> {
+                    if (ex != null) {
+                        Throwable cause = unwrap(ex);
+                        if (cause instanceof HttpResponseException
+                                && hasStatus((HttpResponseException) cause, HttpStatus.PRECONDITION_FAILED)) {
+                            return changed.get();
+                        }
+                        throw new CompletionException(cause);
+                    }
+                    if (!blobContent.isPresent()) {
+                        return CompletableFuture.completedFuture(
+                                errorBody(fileName + " does not exist in the container", HttpStatus.NOT_FOUND));
+                    }
+                    HttpHeaders respHeaders = createFileHeaders(fileName, metadata);
+                    respHeaders.set(HttpHeaders.CONTENT_RANGE, range.toContentRange(size));
+                    respHeaders.setContentLength(range.getEnd(size) - range.getStart(size) + 1);
+                    return CompletableFuture.completedFuture(new ResponseEntity<StreamingResponseBody>(
+                            outputStream -> this.downloadStreamer.copy(blobContent.get(), outputStream), respHeaders,
+                            HttpStatus.PARTIAL_CONTENT));
+                }).thenCompose(Function.identity());
+    }
+
+    /**
+     * Downloads the whole object with a single conditional getBlob call.
+     */
+    private CompletableFuture<ResponseEntity<StreamingResponseBody>> getWholeFile(String fileName,
+            String ifNoneMatch, String ifModifiedSince, String acceptEncoding) {
+        // the backend does not send the body if the object is unchanged
+        return this.objectStoreService.getFileAsync(fileName, createConditionalOptions(ifNoneMatch, ifModifiedSince))
+                .handle((blobContent, ex) -> {
+                    if (ex != null) {
+                        Throwable cause = unwrap(ex);
+                        if (cause instanceof HttpResponseException
+                                && hasStatus((HttpResponseException) cause, HttpStatus.NOT_MODIFIED)) {
+                            return new ResponseEntity<>(
+                                    createValidatorHeaders(((HttpResponseException) cause).getResponse()),
+                                    HttpStatus.NOT_MODIFIED);
+                        }
+                        throw new CompletionException(cause);
+                    }
+                    if (!blobContent.isPresent()) {
+                        return errorBody(fileName + " does not exist in the container", HttpStatus.NOT_FOUND);
+                    }
+                    BlobContent content = blobContent.get();
+                    if (isNotModified(ifNoneMatch, ifModifiedSince, content)) {
+                        // conditions the objectStore could not evaluate itself
+                        closeQuietly(content);
+                        return new ResponseEntity<>(createValidatorHeaders(content), HttpStatus.NOT_MODIFIED);
+                    }
+                    HttpHeaders respHeaders = createFileHeaders(fileName, content);
+                    BlobContent body = negotiateEncoding(content, acceptEncoding, respHeaders);
+                    if (body.getContentLength() >= 0) {
+                        respHeaders.setContentLength(body.getContentLength());
+                    }
+                    return new ResponseEntity<>(outputStream -> this.downloadStreamer.copy(body, outputStream), respHeaders,
+                            HttpStatus.OK);
+                });
+    }
+
+    /**
+     * @param fileName
+     * @param ifNoneMatch
+     *            ETags of the copies the client already has
+     * @param ifModifiedSince
+     *            date of the copy the client already has
+     * @param acceptEncoding
+     *            encodings a compressed object may be sent with
+     * @return headers of the object Function to get the ETag, size and type
+     *         of an object without downloading it.
+     */
+    @RequestMapping(value = "/storage/{name:.*}", method = RequestMethod.HEAD)
+    public CompletableFuture<ResponseEntity<Void>> getFileMetadata(@PathVariable(value = "name") String fileName,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            @RequestHeader(value = HttpHeaders.IF_MODIFIED_SINCE, required = false) String ifModifiedSince,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+
+        return this.objectStoreService.getFileMetadataAsync(fileName).thenApply(blobMetadata -> {
+            if (!blobMetadata.isPresent()) {
+                return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+            }
+            BlobContent metadata = blobMetadata.get();
+            if (isNotModified(ifNoneMatch, ifModifiedSince, metadata)) {
+                return new ResponseEntity<>(createValidatorHeaders(metadata), HttpStatus.NOT_MODIFIED);
             }
+            HttpHeaders respHeaders = createFileHeaders(fileName, metadata);
+            BlobContent representation = negotiateEncoding(metadata, acceptEncoding, respHeaders);
+            if (representation.getSize() >= 0) {
+                respHeaders.setContentLength(representation.getSize());
+            }
+            return new ResponseEntity<>(respHeaders, HttpStatus.OK);
+        });
+    }
+
+    /**
+     * Answers a request for several ranges with a multipart/byteranges
+     * response. The objectStores only serve a single range per request, so
+     * each range is fetched on its own while the response is written.
+     */
+    private ResponseEntity<StreamingResponseBody> getMultipartRanges(String fileName, BlobContent metadata,
+            List<ByteRange> ranges) {
+        final long size = metadata.getSize();
+        final String boundary = MimeTypeUtils.generateMultipartBoundaryString();
+        final String contentType = metadata.getContentType() != null ? metadata.getContentType()
+                : MediaType.APPLICATION_OCTET_STREAM_VALUE;
+        HttpHeaders respHeaders = createFileHeaders(fileName, metadata);
+        respHeaders.setContentType(MediaType.parseMediaType("multipart/byteranges; boundary=" + boundary));
+
+        StreamingResponseBody body = outputStream -> {
+            for (ByteRange range : ranges) {
+                String partHeaders = "\r\n--" + boundary + "\r\n" + HttpHeaders.CONTENT_TYPE + ": " + contentType
+                        + "\r\n" + HttpHeaders.CONTENT_RANGE + ": " + range.toContentRange(size) + "\r\n\r\n";
+                outputStream.write(partHeaders.getBytes(StandardCharsets.US_ASCII));
+                // the status has been sent, a changed object can only abort the response
+                BlobContent part = getRange(fileName, range, metadata).orElseThrow(
+                        () -> new IOException(fileName + " has been removed while it was downloaded"));
+                this.downloadStreamer.copy(part, outputStream);
+            }
+            outputStream.write(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+        };
+        return new ResponseEntity<>(body, respHeaders, HttpStatus.PARTIAL_CONTENT);
+    }
+
+    private Optional<BlobContent> getRange(String fileName, ByteRange range, BlobContent metadata)
+            throws IOException {
+        try {
+            return this.objectStoreService.getFile(fileName, createRangeOptions(range, metadata));
+        } catch (HttpResponseException e) {
+            if (hasStatus(e, HttpStatus.PRECONDITION_FAILED)) {
+                throw new IOException(fileName + " has been changed while it was downloaded", e);
+            }
+            throw e;
         }
+    }
 
-        // Default to 200, when input is missing
-        return new ResponseEntity<InputStreamResource>(HttpStatus.OK);
+    /**
+     * @param range
+     * @param metadata
+     * @return options fetching the range only from the object the metadata
+     *         has been read from
+     */
+    private static GetOptions createRangeOptions(ByteRange range, BlobContent metadata) {
+        final long size = metadata.getSize();
+        GetOptions options = new GetOptions().range(range.getStart(size), range.getEnd(size));
+        if (metadata.getEtag() != null) {
+            options.ifETagMatches(metadata.getEtag());
+        }
+        return options;
     }
 
     /**
@@ -126,24 +481,490 @@ public class ObjectstoreController {
      *         delete an object
      */
     @DeleteMapping("/storage/{name}")
-    public ResponseEntity<String> deleteFile(@PathVariable(value = "name") String fileName) {
-        String msg = "Could not delete a null object.";
-        if (fileName != null) {
-            if (this.objectStoreService.isBlobExist(fileName)) {
-                if (this.objectStoreService.deleteFile(fileName)) {
-                    msg = fileName + " is successfully deleted.";
-                } else {
-                    msg = "Error occurred while deleting the object: " + fileName;
-                    return new ResponseEntity<>(msg, HttpStatus.INTERNAL_SERVER_ERROR);
-                }
+    public CompletableFuture<ResponseEntity<String>> deleteFile(@PathVariable(value = "name") String fileName) {
+        if (fileName == null) {
+            return CompletableFuture
+                    .completedFuture(new ResponseEntity<>("Could not delete a null object.", HttpStatus.OK));
+        }
+        // a single round trip, deleting an object that does not exist succeeds with 200 (see README)
+        return this.objectStoreService.deleteFileAsync(fileName).thenApply(deleted -> {
+            if (deleted) {
+                return new ResponseEntity<>(fileName + " is successfully deleted.", HttpStatus.OK);
+            }
+            String msg = "Error occurred while deleting the object: " + fileName;
+            return new ResponseEntity<>(msg, HttpStatus.INTERNAL_SERVER_ERROR);
+        });
+    }
+
+    /**
+     * @param deleteRequest
+     *            names or prefix of the objects to delete
+     * @return result of every object Function to delete many objects with
+     *         the batch delete of the objectStore. The results are streamed
+     *         to the client as the chunks complete.
+     */
+    @PostMapping("/storage/delete")
+    public ResponseEntity<StreamingResponseBody> deleteFiles(@RequestBody BulkDeleteRequest deleteRequest) {
+        List<String> names = deleteRequest.getNames();
+        String prefix = deleteRequest.getPrefix();
+        boolean hasNames = names != null && !names.isEmpty();
+        boolean hasPrefix = prefix != null && !prefix.isEmpty();
+        if (hasNames == hasPrefix) {
+            return errorBody("either names or a non-empty prefix is required", HttpStatus.BAD_REQUEST);
+        }
+
+        StreamingResponseBody body = outputStream -> writeJsonArray(outputStream, (Consumer<Object> writer) -> {
+            Consumer<List<DeleteResult>> resultConsumer = results -> results.forEach(writer);
+            if (hasNames) {
+                this.bulkDeleteService.delete(names, resultConsumer);
             } else {
-                msg = fileName + " does not exist in the container";
-                return errorMessage(msg, HttpStatus.NOT_FOUND);
+                this.bulkDeleteService.deletePrefix(prefix, resultConsumer);
             }
+        });
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON_UTF8).body(body);
+    }
+
+    /**
+     * @param copyRequest
+     *            source and target, or prefix and targetPrefix of the objects
+     *            to copy
+     * @return result of the copy Function to copy objects on the
+     *         objectStore, their content is not transferred through the
+     *         application. A single object is answered with its result and
+     *         404 if it does not exist, the results of a prefix are streamed
+     *         to the client as the copies complete.
+     */
+    @PostMapping("/storage/copy")
+    public ResponseEntity<StreamingResponseBody> copyFiles(@RequestBody CopyRequest copyRequest) {
+        return copyFiles(copyRequest, false);
+    }
+
+    /**
+     * @param copyRequest
+     *            source and target, or prefix and targetPrefix of the objects
+     *            to move
+     * @return result of the move Function to move objects on the
+     *         objectStore. Every source is deleted once it has been copied.
+     */
+    @PostMapping("/storage/move")
+    public ResponseEntity<StreamingResponseBody> moveFiles(@RequestBody CopyRequest copyRequest) {
+        return copyFiles(copyRequest, true);
+    }
+
+    /**
+     * @param copyRequest
+     *            source and target name of the object
+     * @return result of the rename Function to rename a single object, i.e.
+     *         to move it to the target name.
+     */
+    @PostMapping("/storage/rename")
+    public ResponseEntity<StreamingResponseBody> renameFile(@RequestBody CopyRequest copyRequest) {
+        if (copyRequest.getPrefix() != null || copyRequest.getTargetPrefix() != null) {
+            return errorBody("rename takes a single source and target", HttpStatus.BAD_REQUEST);
+        }
+        return copyFiles(copyRequest, true);
+    }
 
+    private ResponseEntity<StreamingResponseBody> copyFiles(CopyRequest copyRequest, boolean move) {
+        String source = copyRequest.getSource();
+        String target = copyRequest.getTarget();
+        String prefix = copyRequest.getPrefix();
+        String targetPrefix = copyRequest.getTargetPrefix();
+        boolean isSingle = source != null && !source.isEmpty() && target != null && !target.isEmpty()
+                && prefix == null && targetPrefix == null;
+        boolean isPrefix = prefix != null && !prefix.isEmpty() && targetPrefix != null && source == null
+                && target == null;
+        if (isSingle == isPrefix) {
+            return errorBody("either source and target or a non-empty prefix and targetPrefix are required",
+                    HttpStatus.BAD_REQUEST);
+        }
+        if (move && isSingle && source.equals(target)) {
+            return errorBody("source and target of a move must differ", HttpStatus.BAD_REQUEST);
         }
+        if (isPrefix && targetPrefix.startsWith(prefix)) {
+            // the listing would run into the copies
+            return errorBody("targetPrefix must not start with prefix", HttpStatus.BAD_REQUEST);
+        }
+        CopyOptions options;
+        try {
+            options = createCopyOptions(copyRequest);
+        } catch (InvalidMediaTypeException e) {
+            return errorBody("invalid contentType: " + copyRequest.getContentType(), HttpStatus.BAD_REQUEST);
+        }
+
+        if (isSingle) {
+            CopyResult result = this.copyService.copy(source, target, options, move);
+            HttpStatus status = CopyResult.NOT_FOUND.equals(result.getStatus()) ? HttpStatus.NOT_FOUND
+                    : CopyResult.FAILED.equals(result.getStatus()) ? HttpStatus.INTERNAL_SERVER_ERROR
+                            : HttpStatus.OK;
+            StreamingResponseBody body = outputStream -> outputStream.write(objectMapper.writeValueAsBytes(result));
+            return ResponseEntity.status(status).contentType(MediaType.APPLICATION_JSON_UTF8).body(body);
+        }
+        StreamingResponseBody body = outputStream -> writeJsonArray(outputStream,
+                (Consumer<Object> writer) -> this.copyService.copyPrefix(prefix, targetPrefix, options, move,
+                        writer::accept));
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON_UTF8).body(body);
+    }
+
+    /**
+     * Writes the listing as a JSON array, one page at a time.
+     *
+     * @param outputStream
+     * @param options
+     * @param metadata
+     * @throws IOException
+     */
+    private void writeBlobFiles(OutputStream outputStream, ListContainerOptions options, boolean metadata)
+            throws IOException {
+        writeJsonArray(outputStream, writer -> this.objectStoreService.streamObjects(options, metadata,
+                page -> page.forEach(writer)));
+    }
+
+    /**
+     * Writes the elements handed to the writer as a JSON array, flushing
+     * after every element so that the client receives them as they arrive.
+     *
+     * @param outputStream
+     * @param producer
+     *            calls the writer with each element
+     * @throws IOException
+     */
+    private void writeJsonArray(OutputStream outputStream, Consumer<Consumer<Object>> producer)
+            throws IOException {
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.writeStartArray();
+            producer.accept(element -> {
+                try {
+                    generator.writeObject(element);
+                    generator.flush();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            generator.writeEndArray();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * @param copyRequest
+     * @return copyOptions with the content type and user metadata replacing
+     *         those of the source, if they are set
+     */
+    private static CopyOptions createCopyOptions(CopyRequest copyRequest) {
+        String contentType = copyRequest.getContentType();
+        Map<String, String> userMetadata = copyRequest.getUserMetadata();
+        if (contentType == null && userMetadata == null) {
+            return CopyOptions.NONE;
+        }
+        CopyOptions.Builder options = CopyOptions.builder();
+        if (contentType != null) {
+            options.contentMetadata(
+                    ContentMetadataBuilder.create().contentType(MediaType.parseMediaType(contentType).toString())
+                            .build());
+        }
+        if (userMetadata != null) {
+            options.userMetadata(userMetadata);
+        }
+        return options.build();
+    }
+
+    /**
+     * Maps the listing parameters onto ListContainerOptions so that the
+     * filtering is done by the objectstore.
+     *
+     * @return listContainerOptions
+     */
+    private static ListContainerOptions createListOptions(String marker, Integer maxResults, String prefix,
+            String delimiter, boolean recursive) {
+        ListContainerOptions options = new ListContainerOptions();
+        if (marker != null) {
+            options.afterMarker(marker);
+        }
+        if (maxResults != null) {
+            options.maxResults(maxResults);
+        }
+        if (prefix != null && !prefix.isEmpty()) {
+            options.prefix(prefix);
+        }
+        if (delimiter != null && !delimiter.isEmpty()) {
+            options.delimiter(delimiter);
+        }
+        if (recursive) {
+            options.recursive();
+        }
+        return options;
+    }
+
+    /**
+     * @param fileItemStream
+     * @return content length sent by the client for the part or -1 if unknown
+     */
+    private static long getContentLength(final FileItemStream fileItemStream) {
+        final FileItemHeaders headers = fileItemStream.getHeaders();
+        final String contentLength = headers != null ? headers.getHeader(HttpHeaders.CONTENT_LENGTH) : null;
+        if (contentLength != null) {
+            try {
+                return Long.parseLong(contentLength.trim());
+            } catch (NumberFormatException e) {
+                logger.warn("Ignoring invalid content length of " + fileItemStream.getName() + ": " + contentLength);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param fileName
+     * @param blobContent
+     * @return headers shared by full and partial downloads
+     */
+    private static HttpHeaders createFileHeaders(String fileName, BlobContent blobContent) {
+        HttpHeaders respHeaders = createValidatorHeaders(blobContent);
+        respHeaders.setContentDispositionFormData("attachment", fileName);
+        respHeaders.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+        respHeaders.setContentType(blobContent.getContentType() != null
+                ? MediaType.parseMediaType(blobContent.getContentType()) : MediaType.APPLICATION_OCTET_STREAM);
+        return respHeaders;
+    }
+
+    /**
+     * Sends an object stored compressed as it is stored if the client
+     * accepts its encoding, otherwise it is decompressed while it is
+     * streamed. Ranges are not offered for such objects.
+     *
+     * @param blobContent
+     *            object with or without payload
+     * @param acceptEncoding
+     * @param respHeaders
+     *            headers of the response, completed for the representation
+     * @return blobContent to be sent to the client
+     */
+    private static BlobContent negotiateEncoding(BlobContent blobContent, String acceptEncoding,
+            HttpHeaders respHeaders) {
+        final String contentEncoding = blobContent.getContentEncoding();
+        if (contentEncoding == null) {
+            return blobContent;
+        }
+        respHeaders.set(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        respHeaders.set(HttpHeaders.ACCEPT_RANGES, "none");
+        if (!ContentCompressor.GZIP.equals(contentEncoding) || isEncodingAccepted(acceptEncoding, contentEncoding)) {
+            respHeaders.set(HttpHeaders.CONTENT_ENCODING, contentEncoding);
+            return blobContent;
+        }
+        if (blobContent.getEtag() != null) {
+            // the ETag of the object belongs to the compressed bytes
+            respHeaders.setETag("W/" + quoteETag(blobContent.getEtag()));
+        }
+        InputStream decoded = null;
+        if (blobContent.getInputStream() != null) {
+            try {
+                decoded = new GZIPInputStream(blobContent.getInputStream(), 64 * 1024);
+            } catch (IOException e) {
+                closeQuietly(blobContent);
+                throw new UncheckedIOException(e);
+            }
+        }
+        return new BlobContent(blobContent.getName(), blobContent.getEtag(), blobContent.getLastModified(),
+                blobContent.getContentType(), blobContent.getDecodedSize(), blobContent.getDecodedSize(), decoded);
+    }
+
+    /**
+     * @param acceptEncoding
+     * @param contentEncoding
+     * @return true if the Accept-Encoding header allows the encoding, an
+     *         explicit entry takes precedence over the * wildcard
+     */
+    private static boolean isEncodingAccepted(String acceptEncoding, String contentEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        double wildcard = 0;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] params = coding.trim().split(";");
+            String name = params[0].trim();
+            double quality = 1;
+            for (int i = 1; i < params.length; i++) {
+                String param = params[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        quality = Double.parseDouble(param.substring(2));
+                    } catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+            if (name.equalsIgnoreCase(contentEncoding) || name.equalsIgnoreCase("x-" + contentEncoding)) {
+                return quality > 0;
+            }
+            if (name.equals("*")) {
+                wildcard = quality;
+            }
+        }
+        return wildcard > 0;
+    }
+
+    /**
+     * @param blobContent
+     * @return ETag and Last-Modified headers, also sent along with a 304
+     */
+    private static HttpHeaders createValidatorHeaders(BlobContent blobContent) {
+        HttpHeaders respHeaders = new HttpHeaders();
+        if (blobContent.getEtag() != null) {
+            respHeaders.setETag(quoteETag(blobContent.getEtag()));
+        }
+        if (blobContent.getLastModified() != null) {
+            respHeaders.setLastModified(blobContent.getLastModified().getTime());
+        }
+        return respHeaders;
+    }
+
+    /**
+     * @param response
+     *            304 response of the objectStore
+     * @return ETag and Last-Modified headers of the objectStore response
+     */
+    private static HttpHeaders createValidatorHeaders(HttpResponse response) {
+        HttpHeaders respHeaders = new HttpHeaders();
+        for (String headerName : new String[] { HttpHeaders.ETAG, HttpHeaders.LAST_MODIFIED }) {
+            String value = response.getFirstHeaderOrNull(headerName);
+            if (value != null) {
+                respHeaders.set(headerName, value);
+            }
+        }
+        return respHeaders;
+    }
+
+    /**
+     * @param ifNoneMatch
+     * @param ifModifiedSince
+     * @param blobContent
+     * @return true if the copy of the client is still current. If-None-Match
+     *         takes precedence over If-Modified-Since.
+     */
+    private static boolean isNotModified(String ifNoneMatch, String ifModifiedSince, BlobContent blobContent) {
+        if (ifNoneMatch != null) {
+            if (blobContent.getEtag() == null) {
+                return false;
+            }
+            String etag = quoteETag(blobContent.getEtag());
+            for (String clientETag : ifNoneMatch.split(",")) {
+                clientETag = clientETag.trim();
+                if (clientETag.startsWith("W/")) {
+                    clientETag = clientETag.substring(2);
+                }
+                if (clientETag.equals("*") || clientETag.equals(etag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        long modifiedSince = parseDate(HttpHeaders.IF_MODIFIED_SINCE, ifModifiedSince);
+        return modifiedSince >= 0 && blobContent.getLastModified() != null
+                && blobContent.getLastModified().getTime() / 1000 <= modifiedSince / 1000;
+    }
+
+    /**
+     * @param ifNoneMatch
+     * @param ifModifiedSince
+     * @return getOptions letting the objectStore answer with 304 instead of
+     *         the body
+     */
+    private static GetOptions createConditionalOptions(String ifNoneMatch, String ifModifiedSince) {
+        if (ifNoneMatch != null) {
+            String clientETag = ifNoneMatch.trim();
+            // the objectStores take a single strong ETag only
+            return clientETag.startsWith("\"") && clientETag.indexOf(',') < 0
+                    ? new GetOptions().ifETagDoesntMatch(clientETag) : GetOptions.NONE;
+        }
+        long modifiedSince = parseDate(HttpHeaders.IF_MODIFIED_SINCE, ifModifiedSince);
+        return modifiedSince >= 0 ? new GetOptions().ifModifiedSince(new Date(modifiedSince)) : GetOptions.NONE;
+    }
+
+    /**
+     * @param headerName
+     * @param value
+     * @return milliseconds of the HTTP date or -1 if missing or invalid
+     */
+    private static long parseDate(String headerName, String value) {
+        if (value == null) {
+            return -1;
+        }
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(headerName, value);
+        try {
+            return headers.getFirstDate(headerName);
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+
+    private static Throwable unwrap(Throwable ex) {
+        return ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+    }
+
+    private static boolean hasStatus(HttpResponseException e, HttpStatus status) {
+        return e.getResponse() != null && e.getResponse().getStatusCode() == status.value();
+    }
+
+    /**
+     * @param ifRange
+     * @param blobContent
+     * @return true if the ranges may be served, i.e. the If-Range condition
+     *         is missing or still matches the object
+     */
+    private static boolean isIfRangeMatching(String ifRange, BlobContent blobContent) {
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            // weak validators never match for ranges
+            return blobContent.getEtag() != null && ifRange.equals(quoteETag(blobContent.getEtag()));
+        }
+        long ifRangeDate = parseDate(HttpHeaders.IF_RANGE, ifRange);
+        return ifRangeDate >= 0 && blobContent.getLastModified() != null
+                && blobContent.getLastModified().getTime() / 1000 <= ifRangeDate / 1000;
+    }
+
+    private static String quoteETag(String etag) {
+        return etag.startsWith("\"") ? etag : "\"" + etag + "\"";
+    }
+
+    private static void closeQuietly(BlobContent blobContent) {
+        try {
+            blobContent.getInputStream().close();
+        } catch (IOException e) {
+            logger.warn("Error occurred while closing the object: " + blobContent.getName() + e);
+        }
+    }
+
+    /**
+     * @param e
+     * @return 503 once the queue of the objectStoreExecutor is full, the
+     *         client may retry after a second
+     */
+    @ExceptionHandler(RejectedExecutionException.class)
+    public ResponseEntity<String> handleRejectedExecution(RejectedExecutionException e) {
+        logger.warn("Error occurred while queueing an objectstore call " + e);
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.TEXT_PLAIN);
+        headers.set(HttpHeaders.RETRY_AFTER, "1");
+        return new ResponseEntity<>("The objectstore is busy, please retry.", headers,
+                HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
+    /**
+     * @param message
+     * @param status
+     * @return ResponseEntity with a plain text body for streamed endpoints
+     */
+    private static ResponseEntity<StreamingResponseBody> errorBody(String message, HttpStatus status) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.TEXT_PLAIN);
 
-        return new ResponseEntity<>(msg, HttpStatus.OK);
+        StreamingResponseBody body = outputStream -> outputStream.write(message.getBytes(StandardCharsets.UTF_8));
+        return new ResponseEntity<>(body, headers, status);
     }
 
     /**
@@ -154,7 +975,7 @@ public class ObjectstoreController {
      */
     private static ResponseEntity errorMessage(String message, HttpStatus status) {
         HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(org.springframework.http.MediaType.TEXT_PLAIN);
+        headers.setContentType(MediaType.TEXT_PLAIN);
 
         return ResponseEntity.status(status).headers(headers).body(message);
     }
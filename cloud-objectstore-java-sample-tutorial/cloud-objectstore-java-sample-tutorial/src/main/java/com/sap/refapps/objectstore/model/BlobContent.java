@@ -0,0 +1,91 @@
+package com.sap.refapps.objectstore.model;
+
+import java.io.InputStream;
+import java.util.Date;
+
+/**
+ * Payload of a (partial) object download along with the metadata needed for
+ * the response headers.
+ */
+public class BlobContent {
+
+    private final String name;
+    private final String etag;
+    private final Date lastModified;
+    private final String contentType;
+    private final long contentLength;
+    private final long size;
+    private final InputStream inputStream;
+    private final String contentEncoding;
+    private final long decodedSize;
+
+    public BlobContent(String name, String etag, Date lastModified, String contentType, long contentLength,
+                       long size, InputStream inputStream) {
+        this(name, etag, lastModified, contentType, contentLength, size, inputStream, null, -1);
+    }
+
+    public BlobContent(String name, String etag, Date lastModified, String contentType, long contentLength,
+                       long size, InputStream inputStream, String contentEncoding, long decodedSize) {
+        this.name = name;
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.contentType = contentType;
+        this.contentLength = contentLength;
+        this.size = size;
+        this.inputStream = inputStream;
+        this.contentEncoding = contentEncoding;
+        this.decodedSize = decodedSize;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public Date getLastModified() {
+        return lastModified;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * @return number of bytes in the inputStream or -1 if unknown
+     */
+    public long getContentLength() {
+        return contentLength;
+    }
+
+    /**
+     * @return size of the whole object or -1 if unknown
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * @return payload of the download, null for metadata only
+     */
+    public InputStream getInputStream() {
+        return inputStream;
+    }
+
+    /**
+     * @return encoding the object is stored with or null if it is stored as
+     *         uploaded
+     */
+    public String getContentEncoding() {
+        return contentEncoding;
+    }
+
+    /**
+     * @return size of the object once decoded or -1 if unknown
+     */
+    public long getDecodedSize() {
+        return decodedSize;
+    }
+}
@@ -12,6 +12,7 @@ public class BlobFile {
     private String size;
     private String contentType;
     private Map<String,String> userMetadata;
+    private boolean directory;
 
     public BlobFile() {
     }
@@ -20,6 +21,12 @@ public class BlobFile {
         this.name = name;
     }
 
+    public BlobFile(String bucket, String name, boolean directory) {
+        this.bucket = bucket;
+        this.name = name;
+        this.directory = directory;
+    }
+
     public BlobFile(String etag, String bucket, String name, String url, String size, String lastModified,
                     String contenType, Map<String, String> userMetadata) {
         this.etag = etag;
@@ -63,4 +70,11 @@ public class BlobFile {
     public String getUrl() {
         return url;
     }
+
+    /**
+     * @return true for a common prefix (folder) of a delimited listing
+     */
+    public boolean isDirectory() {
+        return directory;
+    }
 }
@@ -0,0 +1,28 @@
+package com.sap.refapps.objectstore.model;
+
+import java.util.List;
+
+public class BlobFilePage {
+
+    private List<BlobFile> files;
+    private String nextMarker;
+
+    public BlobFilePage() {
+    }
+
+    public BlobFilePage(List<BlobFile> files, String nextMarker) {
+        this.files = files;
+        this.nextMarker = nextMarker;
+    }
+
+    public List<BlobFile> getFiles() {
+        return files;
+    }
+
+    /**
+     * @return marker to pass to get the next page, null on the last page
+     */
+    public String getNextMarker() {
+        return nextMarker;
+    }
+}
@@ -0,0 +1,28 @@
+package com.sap.refapps.objectstore.model;
+
+import java.util.List;
+
+/**
+ * Objects to delete, given either by name or by a common prefix.
+ */
+public class BulkDeleteRequest {
+
+    private List<String> names;
+    private String prefix;
+
+    public List<String> getNames() {
+        return names;
+    }
+
+    public void setNames(List<String> names) {
+        this.names = names;
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    public void setPrefix(String prefix) {
+        this.prefix = prefix;
+    }
+}
@@ -0,0 +1,70 @@
+package com.sap.refapps.objectstore.model;
+
+import java.util.Map;
+
+/**
+ * Objects to copy or move, given either as a single source and target or as
+ * a prefix whose objects are copied below targetPrefix. Content type and
+ * user metadata are taken over from the source unless they are set here.
+ */
+public class CopyRequest {
+
+    private String source;
+    private String target;
+    private String prefix;
+    private String targetPrefix;
+    private String contentType;
+    private Map<String, String> userMetadata;
+
+    public String getSource() {
+        return source;
+    }
+
+    public void setSource(String source) {
+        this.source = source;
+    }
+
+    public String getTarget() {
+        return target;
+    }
+
+    public void setTarget(String target) {
+        this.target = target;
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    public void setPrefix(String prefix) {
+        this.prefix = prefix;
+    }
+
+    /**
+     * @return prefix replacing prefix in the names of the copies, may be
+     *         empty
+     */
+    public String getTargetPrefix() {
+        return targetPrefix;
+    }
+
+    public void setTargetPrefix(String targetPrefix) {
+        this.targetPrefix = targetPrefix;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public void setContentType(String contentType) {
+        this.contentType = contentType;
+    }
+
+    public Map<String, String> getUserMetadata() {
+        return userMetadata;
+    }
+
+    public void setUserMetadata(Map<String, String> userMetadata) {
+        this.userMetadata = userMetadata;
+    }
+}
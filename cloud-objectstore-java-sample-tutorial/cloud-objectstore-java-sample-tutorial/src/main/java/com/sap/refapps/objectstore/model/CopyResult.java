@@ -0,0 +1,58 @@
+package com.sap.refapps.objectstore.model;
+
+/**
+ * Outcome of the copy or move of one object.
+ */
+public class CopyResult {
+
+    public static final String COPIED = "copied";
+    public static final String MOVED = "moved";
+    public static final String NOT_FOUND = "not_found";
+    public static final String FAILED = "failed";
+
+    private String source;
+    private String target;
+    private String status;
+    private String etag;
+    private String error;
+
+    public CopyResult() {
+    }
+
+    public CopyResult(String source, String target, String status, String etag, String error) {
+        this.source = source;
+        this.target = target;
+        this.status = status;
+        this.etag = etag;
+        this.error = error;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public String getTarget() {
+        return target;
+    }
+
+    /**
+     * @return copied, moved, not_found or failed
+     */
+    public String getStatus() {
+        return status;
+    }
+
+    /**
+     * @return eTag of the copy, null if it failed
+     */
+    public String getEtag() {
+        return etag;
+    }
+
+    /**
+     * @return reason of a failed copy or move, null otherwise
+     */
+    public String getError() {
+        return error;
+    }
+}
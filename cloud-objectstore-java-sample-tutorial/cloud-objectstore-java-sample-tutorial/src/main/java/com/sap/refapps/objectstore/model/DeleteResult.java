@@ -0,0 +1,41 @@
+package com.sap.refapps.objectstore.model;
+
+/**
+ * Outcome of the deletion of one object of a bulk delete.
+ */
+public class DeleteResult {
+
+    public static final String DELETED = "deleted";
+    public static final String FAILED = "failed";
+
+    private String name;
+    private String status;
+    private String error;
+
+    public DeleteResult() {
+    }
+
+    public DeleteResult(String name, String status, String error) {
+        this.name = name;
+        this.status = status;
+        this.error = error;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return deleted or failed
+     */
+    public String getStatus() {
+        return status;
+    }
+
+    /**
+     * @return reason of a failed deletion, null otherwise
+     */
+    public String getError() {
+        return error;
+    }
+}
@@ -0,0 +1,59 @@
+package com.sap.refapps.objectstore.model;
+
+/**
+ * Outcome of the upload of one file of a batch upload.
+ */
+public class UploadResult {
+
+    public static final String UPLOADED = "uploaded";
+    public static final String FAILED = "failed";
+
+    private String name;
+    private String status;
+    private String etag;
+    private long bytes;
+    private long durationMillis;
+    private String error;
+
+    public UploadResult() {
+    }
+
+    public UploadResult(String name, String status, String etag, long bytes, long durationMillis, String error) {
+        this.name = name;
+        this.status = status;
+        this.etag = etag;
+        this.bytes = bytes;
+        this.durationMillis = durationMillis;
+        this.error = error;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return uploaded or failed
+     */
+    public String getStatus() {
+        return status;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    /**
+     * @return reason of a failed upload, null otherwise
+     */
+    public String getError() {
+        return error;
+    }
+}
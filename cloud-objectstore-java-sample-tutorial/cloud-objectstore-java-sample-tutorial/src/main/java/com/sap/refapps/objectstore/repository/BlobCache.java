@@ -0,0 +1,449 @@
+package com.sap.refapps.objectstore.repository;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.annotation.PreDestroy;
+
+import org.jclouds.blobstore.options.GetOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalNotification;
+import com.sap.refapps.objectstore.config.CacheConfiguration;
+import com.sap.refapps.objectstore.model.BlobContent;
+
+/**
+ * Read-through cache of whole objects. Objects up to memoryObjectLimit are
+ * kept on the heap, objects up to maxObjectSize in files of the cache
+ * directory. Both tiers evict by size once their byte budget is used up.
+ *
+ * Entries are keyed by bucket, name and ETag, so an entry can only ever be
+ * served for the version it was filled with. Uploads and deletes through
+ * this application invalidate the entries of the object, changes made by
+ * other clients are picked up once the entry expires after ttlSeconds.
+ *
+ * Objects are copied into the cache while they are streamed to the first
+ * client, so a miss costs no extra latency to the first byte.
+ *
+ * The disk tier is served through a FileInputStream into the pooled
+ * buffers of the DownloadStreamer, not with sendfile or a memory mapping.
+ * Downloads are asynchronous requests and Tomcat 8.5 only performs
+ * sendfile at the end of a synchronous request, while a mapping keeps the
+ * file pinned after eviction has deleted it, beyond the byte budget.
+ *
+ * A download that started before an invalidation may complete after it
+ * with the previous version. Every invalidation therefore advances the
+ * generation of the name, and a download only publishes its version if the
+ * generation it started with is still current.
+ */
+@Component
+@ManagedResource(objectName = "com.sap.refapps.objectstore:type=BlobCache")
+public class BlobCache {
+
+    private final CacheConfiguration config;
+    private static final int GENERATION_STRIPES = 1024;
+
+    private final ConcurrentMap<String, String> currentETags = new ConcurrentHashMap<>();
+    // names sharing a stripe only cost each other a missed fill
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+    private final Cache<String, CachedBlob> memoryTier;
+    private final Cache<String, CachedBlob> diskTier;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private Path directory;
+
+    private static Logger logger = LoggerFactory.getLogger(BlobCache.class);
+
+    @Autowired
+    public BlobCache(final CacheConfiguration config) throws IOException {
+        this.config = config;
+        this.memoryTier = createTier(config.getMemoryBudget());
+        this.diskTier = createTier(config.getDiskBudget());
+        if (config.isEnabled()) {
+            this.directory = config.getDirectory().isEmpty()
+                    ? Paths.get(System.getProperty("java.io.tmpdir"), "objectstore-cache")
+                    : Paths.get(config.getDirectory());
+            Files.createDirectories(directory);
+        }
+    }
+
+    /**
+     * @param options
+     * @return true if the download is served from and filled into the cache
+     */
+    public boolean isCacheable(final GetOptions options) {
+        return config.isEnabled() && options.getRanges().isEmpty();
+    }
+
+    /**
+     * @param bucketName
+     * @param fileName
+     * @return blobContent reading from the cache or empty on a miss
+     */
+    public Optional<BlobContent> get(final String bucketName, final String fileName) {
+        final String etag = currentETags.get(getNameKey(bucketName, fileName));
+        if (etag != null) {
+            final String key = getKey(bucketName, fileName, etag);
+            CachedBlob cachedBlob = memoryTier.getIfPresent(key);
+            if (cachedBlob == null) {
+                cachedBlob = diskTier.getIfPresent(key);
+            }
+            if (cachedBlob != null) {
+                try {
+                    final Optional<BlobContent> blobContent = Optional.of(cachedBlob.open());
+                    hits.incrementAndGet();
+                    return blobContent;
+                } catch (IOException e) {
+                    // the file has been evicted in between
+                    logger.warn("Error occurred while reading the cached object: " + fileName + e);
+                }
+            }
+        }
+        misses.incrementAndGet();
+        return Optional.empty();
+    }
+
+    /**
+     * @param bucketName
+     * @param fileName
+     * @return generation to be passed to put, taken before the download
+     */
+    public long getGeneration(final String bucketName, final String fileName) {
+        return generations.get(getStripe(getNameKey(bucketName, fileName)));
+    }
+
+    /**
+     * Fills the cache with a downloaded object while it is served. Objects
+     * above maxObjectSize or of unknown length are passed through unchanged.
+     * The returned stream copies the bytes into the cache as the client
+     * reads them, the entry is only added once the whole object has been
+     * read, and it is dropped if the download is aborted or the object has
+     * been invalidated since the download started.
+     *
+     * @param bucketName
+     * @param blobContent
+     *            whole object as downloaded from the objectstore
+     * @param generation
+     *            generation of the object before the download started
+     * @return blobContent to be served to the client
+     * @throws IOException
+     */
+    public BlobContent put(final String bucketName, final BlobContent blobContent, final long generation)
+            throws IOException {
+        final long length = blobContent.getContentLength();
+        if (blobContent.getEtag() == null || length < 0 || length > config.getMaxObjectSize()) {
+            return blobContent;
+        }
+        final CacheFill cacheFill = new CacheFill(bucketName, blobContent, generation);
+        return new BlobContent(blobContent.getName(), blobContent.getEtag(), blobContent.getLastModified(),
+                blobContent.getContentType(), length, blobContent.getSize(), cacheFill,
+                blobContent.getContentEncoding(), blobContent.getDecodedSize());
+    }
+
+    /**
+     * Drops all cached versions of an object.
+     *
+     * @param bucketName
+     * @param fileName
+     */
+    public void invalidate(final String bucketName, final String fileName) {
+        if (!config.isEnabled()) {
+            return;
+        }
+        final String nameKey = getNameKey(bucketName, fileName);
+        final String[] removed = new String[1];
+        currentETags.compute(nameKey, (name, etag) -> {
+            generations.incrementAndGet(getStripe(nameKey));
+            removed[0] = etag;
+            return null;
+        });
+        final String etag = removed[0];
+        if (etag != null) {
+            final String key = getKey(bucketName, fileName, etag);
+            memoryTier.invalidate(key);
+            diskTier.invalidate(key);
+        }
+    }
+
+    @ManagedAttribute
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    @ManagedAttribute
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    @ManagedAttribute
+    public long getEvictionCount() {
+        return memoryTier.stats().evictionCount() + diskTier.stats().evictionCount();
+    }
+
+    @ManagedAttribute
+    public long getMemoryEntryCount() {
+        return memoryTier.size();
+    }
+
+    @ManagedAttribute
+    public long getDiskEntryCount() {
+        return diskTier.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // removes the files of the disk tier
+        memoryTier.invalidateAll();
+        diskTier.invalidateAll();
+    }
+
+    private Cache<String, CachedBlob> createTier(final long budget) {
+        return CacheBuilder.newBuilder().maximumWeight(budget)
+                .weigher((String key, CachedBlob cachedBlob) -> (int) Math.min(cachedBlob.size, Integer.MAX_VALUE))
+                .expireAfterWrite(config.getTtlSeconds(), TimeUnit.SECONDS)
+                .removalListener(this::onRemoval).recordStats().build();
+    }
+
+    private void onRemoval(final RemovalNotification<String, CachedBlob> notification) {
+        final CachedBlob cachedBlob = notification.getValue();
+        if (notification.wasEvicted()) {
+            currentETags.remove(notification.getKey().substring(0, notification.getKey().lastIndexOf('\n')),
+                    cachedBlob.metadata.getEtag());
+        }
+        if (cachedBlob.file != null) {
+            // downloads still reading the file keep their open handle
+            try {
+                Files.deleteIfExists(cachedBlob.file);
+            } catch (IOException e) {
+                logger.warn("Error occurred while deleting the cached object: " + cachedBlob.file + e);
+            }
+        }
+    }
+
+    private static int getStripe(final String nameKey) {
+        return (nameKey.hashCode() & Integer.MAX_VALUE) % GENERATION_STRIPES;
+    }
+
+    private static String getNameKey(final String bucketName, final String fileName) {
+        return bucketName + '\n' + fileName;
+    }
+
+    private static String getKey(final String bucketName, final String fileName, final String etag) {
+        return getNameKey(bucketName, fileName) + '\n' + etag;
+    }
+
+    /**
+     * Publishes a completely read object, unless it has been invalidated
+     * since the download started.
+     */
+    private void publish(final String bucketName, final CachedBlob cachedBlob, final long generation) {
+        final String key = getKey(bucketName, cachedBlob.metadata.getName(), cachedBlob.metadata.getEtag());
+        final Cache<String, CachedBlob> tier = cachedBlob.data != null ? memoryTier : diskTier;
+        tier.put(key, cachedBlob);
+        final String nameKey = getNameKey(bucketName, cachedBlob.metadata.getName());
+        final int stripe = getStripe(nameKey);
+        final boolean[] published = new boolean[1];
+        // serialized with invalidate on the same name
+        currentETags.compute(nameKey, (name, etag) -> {
+            published[0] = generations.get(stripe) == generation;
+            return published[0] ? cachedBlob.metadata.getEtag() : etag;
+        });
+        if (!published[0]) {
+            tier.invalidate(key);
+        }
+    }
+
+    /**
+     * Serves the downloaded object and copies it into the cache on the way,
+     * into a heap buffer for the memory tier or a file for the disk tier.
+     * Failing to fill the cache never fails the download.
+     */
+    private final class CacheFill extends FilterInputStream {
+
+        private final String bucketName;
+        private final BlobContent metadata;
+        private final long generation;
+        private final long length;
+        private byte[] data;
+        private Path file;
+        private OutputStream fileStream;
+        private long filled;
+        private boolean done;
+
+        CacheFill(final String bucketName, final BlobContent blobContent, final long generation)
+                throws IOException {
+            super(blobContent.getInputStream());
+            this.bucketName = bucketName;
+            this.metadata = blobContent;
+            this.generation = generation;
+            this.length = blobContent.getContentLength();
+            if (length <= config.getMemoryObjectLimit()) {
+                this.data = new byte[(int) length];
+            } else {
+                this.file = Files.createTempFile(directory, "blob-", ".cache");
+                this.fileStream = Files.newOutputStream(file);
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int read = super.read();
+            if (read == -1) {
+                complete();
+            } else {
+                fill(new byte[] { (byte) read }, 0, 1);
+            }
+            return read;
+        }
+
+        @Override
+        public int read(final byte[] buffer, final int offset, final int count) throws IOException {
+            final int read = super.read(buffer, offset, count);
+            if (read == -1) {
+                complete();
+            } else {
+                fill(buffer, offset, read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(final long count) throws IOException {
+            // skipped bytes would leave a gap in the cached copy
+            discard();
+            return super.skip(count);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                // a download aborted before its end is not cached
+                discard();
+            }
+        }
+
+        private void fill(final byte[] buffer, final int offset, final int count) {
+            if (done) {
+                return;
+            }
+            if (filled + count > length) {
+                discard();
+                return;
+            }
+            try {
+                if (data != null) {
+                    System.arraycopy(buffer, offset, data, (int) filled, count);
+                } else {
+                    fileStream.write(buffer, offset, count);
+                }
+                filled += count;
+            } catch (IOException e) {
+                logger.warn("Error occurred while caching the object: " + metadata.getName() + e);
+                discard();
+            }
+        }
+
+        private void complete() {
+            if (done) {
+                return;
+            }
+            if (filled != length) {
+                discard();
+                return;
+            }
+            done = true;
+            try {
+                if (fileStream != null) {
+                    fileStream.close();
+                }
+                publish(bucketName, new CachedBlob(metadata, data, file), generation);
+            } catch (IOException e) {
+                logger.warn("Error occurred while caching the object: " + metadata.getName() + e);
+                deleteFile();
+            }
+        }
+
+        private void discard() {
+            if (done) {
+                return;
+            }
+            done = true;
+            data = null;
+            if (fileStream != null) {
+                try {
+                    fileStream.close();
+                } catch (IOException e) {
+                    // the file is deleted anyway
+                }
+            }
+            deleteFile();
+        }
+
+        private void deleteFile() {
+            if (file != null) {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException e) {
+                    logger.warn("Error occurred while deleting the cached object: " + file + e);
+                }
+            }
+        }
+    }
+
+    /**
+     * A cached object, held either as bytes or as a file.
+     */
+    private static final class CachedBlob {
+
+        private final BlobContent metadata;
+        private final byte[] data;
+        private final Path file;
+        private final long size;
+
+        CachedBlob(final BlobContent metadata, final byte[] data, final Path file) throws IOException {
+            this.metadata = metadata;
+            this.data = data;
+            this.file = file;
+            this.size = data != null ? data.length : Files.size(file);
+        }
+
+        /**
+         * @return blobContent reading the cached bytes
+         * @throws IOException
+         */
+        BlobContent open() throws IOException {
+            final InputStream inputStream = data != null ? new ByteArrayInputStream(data)
+                    : new FileInputStream(file.toFile());
+            return new BlobContent(metadata.getName(), metadata.getEtag(), metadata.getLastModified(),
+                    metadata.getContentType(), size, size, inputStream, metadata.getContentEncoding(),
+                    metadata.getDecodedSize());
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package com.sap.refapps.objectstore.repository;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+import org.springframework.util.InvalidMimeTypeException;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingInputStream;
+import com.sap.refapps.objectstore.config.CompressionConfiguration;
+
+/**
+ * Compresses uploads of compressible content types before they are stored.
+ * The encoding and the original length are recorded in the user metadata of
+ * the object rather than as its Content-Encoding, so that no objectstore
+ * decompresses the object on its own when it is downloaded.
+ *
+ * The compressed length is only known once the whole upload has been read,
+ * so the compressed object is spooled to a temporary file.
+ */
+@Component
+@ManagedResource(objectName = "com.sap.refapps.objectstore:type=ContentCompressor")
+public class ContentCompressor {
+
+    /**
+     * User metadata holding the encoding of a compressed object.
+     */
+    public static final String ENCODING_METADATA = "content-encoding";
+
+    /**
+     * User metadata holding the length of a compressed object before
+     * compression.
+     */
+    public static final String LENGTH_METADATA = "uncompressed-length";
+
+    public static final String GZIP = "gzip";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final CompressionConfiguration config;
+    private final List<MimeType> contentTypes;
+    private final ConcurrentMap<String, Ratio> ratios = new ConcurrentHashMap<>();
+
+    private static Logger logger = LoggerFactory.getLogger(ContentCompressor.class);
+
+    @Autowired
+    public ContentCompressor(final CompressionConfiguration config) {
+        this.config = config;
+        this.contentTypes = config.getContentTypes().stream().map(MimeTypeUtils::parseMimeType)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @param contentType
+     * @param contentLength
+     *            length of the upload or -1 if unknown
+     * @return true if the upload is stored compressed
+     */
+    public boolean isCompressible(final String contentType, final long contentLength) {
+        if (!config.isEnabled() || contentType == null
+                || (contentLength >= 0 && contentLength < config.getMinSize())) {
+            return false;
+        }
+        final MimeType mimeType = parseMimeType(contentType);
+        if (mimeType == null) {
+            return false;
+        }
+        for (MimeType compressible : contentTypes) {
+            if (compressible.includes(mimeType)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Compresses the upload into a temporary file, which the caller deletes
+     * once it has been uploaded.
+     *
+     * @param fileName
+     * @param contentType
+     * @param inputStream
+     * @return compressed upload
+     * @throws IOException
+     */
+    public CompressedFile compress(final String fileName, final String contentType, final InputStream inputStream)
+            throws IOException {
+        final Path file = Files.createTempFile("objectstore-compress-", ".gz");
+        final CountingInputStream countingStream = new CountingInputStream(inputStream);
+        try (OutputStream outputStream = new LeveledGZIPOutputStream(Files.newOutputStream(file),
+                config.getLevel())) {
+            ByteStreams.copy(countingStream, outputStream);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+        final CompressedFile compressedFile = new CompressedFile(file, countingStream.getCount(), Files.size(file));
+        record(fileName, contentType, compressedFile);
+        return compressedFile;
+    }
+
+    /**
+     * @return percentage of the original length the uploads of each content
+     *         type are stored with
+     */
+    @ManagedAttribute
+    public Map<String, Double> getCompressionRatios() {
+        final Map<String, Double> percentages = new TreeMap<>();
+        ratios.forEach((contentType, ratio) -> percentages.put(contentType, ratio.getPercentage()));
+        return percentages;
+    }
+
+    /**
+     * @return bytes of the compressed uploads before compression
+     */
+    @ManagedAttribute
+    public long getOriginalBytes() {
+        long original = 0;
+        for (Ratio ratio : ratios.values()) {
+            original += ratio.originalBytes.get();
+        }
+        return original;
+    }
+
+    @ManagedAttribute
+    public long getCompressedBytes() {
+        long compressed = 0;
+        for (Ratio ratio : ratios.values()) {
+            compressed += ratio.compressedBytes.get();
+        }
+        return compressed;
+    }
+
+    @ManagedAttribute
+    public long getBytesSaved() {
+        long saved = 0;
+        for (Ratio ratio : ratios.values()) {
+            saved += ratio.originalBytes.get() - ratio.compressedBytes.get();
+        }
+        return saved;
+    }
+
+    private void record(final String fileName, final String contentType, final CompressedFile compressedFile) {
+        final MimeType mimeType = parseMimeType(contentType);
+        final String key = mimeType != null ? mimeType.getType() + "/" + mimeType.getSubtype() : contentType;
+        final Ratio ratio = ratios.computeIfAbsent(key, k -> new Ratio());
+        ratio.originalBytes.addAndGet(compressedFile.originalLength);
+        ratio.compressedBytes.addAndGet(compressedFile.length);
+        logger.info(fileName + " is compressed: " + compressedFile.originalLength + " to " + compressedFile.length
+                + " bytes, " + key + " is stored at " + String.format("%.1f", ratio.getPercentage())
+                + "% on average");
+    }
+
+    private static MimeType parseMimeType(final String contentType) {
+        try {
+            return MimeTypeUtils.parseMimeType(contentType);
+        } catch (InvalidMimeTypeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * An upload compressed into a temporary file.
+     */
+    public static final class CompressedFile {
+
+        private final Path file;
+        private final long originalLength;
+        private final long length;
+
+        CompressedFile(final Path file, final long originalLength, final long length) {
+            this.file = file;
+            this.originalLength = originalLength;
+            this.length = length;
+        }
+
+        public Path getFile() {
+            return file;
+        }
+
+        public String getEncoding() {
+            return GZIP;
+        }
+
+        /**
+         * @return length of the upload before compression
+         */
+        public long getOriginalLength() {
+            return originalLength;
+        }
+
+        /**
+         * @return length of the compressed file
+         */
+        public long getLength() {
+            return length;
+        }
+
+        public void delete() {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                logger.warn("Error occurred while deleting the compressed file: " + file + e);
+            }
+        }
+    }
+
+    private static final class Ratio {
+
+        private final AtomicLong originalBytes = new AtomicLong();
+        private final AtomicLong compressedBytes = new AtomicLong();
+
+        double getPercentage() {
+            final long original = originalBytes.get();
+            return original > 0 ? 100.0 * compressedBytes.get() / original : 100.0;
+        }
+    }
+
+    private static final class LeveledGZIPOutputStream extends GZIPOutputStream {
+
+        LeveledGZIPOutputStream(final OutputStream outputStream, final int level) throws IOException {
+            super(outputStream, BUFFER_SIZE);
+            def.setLevel(level);
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package com.sap.refapps.objectstore.repository;
+
+import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.io.BaseEncoding;
+import com.google.common.io.CountingInputStream;
+import com.sap.refapps.objectstore.config.DeduplicationConfiguration;
+
+/**
+ * Index from the content hash of uploaded objects to the object they have
+ * been stored as. An upload is hashed while it streams to the objectstore,
+ * so the hash is known once the stream has been read to its end. An upload
+ * that the repository has read completely before transferring it, i.e. one
+ * that fits into the buffer of a single multipart part or is compressed,
+ * is copied within the objectstore if an object with the same content and
+ * content type has been stored before. Larger uploads are transferred as
+ * they are read, their duplicates are resolved after completion: they are
+ * counted and the index points to the most recent copy.
+ *
+ * The index is local to this instance and only knows uploads made through
+ * it. An entry is only used while the object still has the recorded ETag,
+ * so an object changed or removed since is never copied.
+ */
+@Component
+@ManagedResource(objectName = "com.sap.refapps.objectstore:type=Deduplicator")
+public class Deduplicator {
+
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+
+    private final DeduplicationConfiguration config;
+    private final Cache<String, StoredObject> index;
+    private final AtomicLong uploads = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+    private final AtomicLong duplicatesUploaded = new AtomicLong();
+    private final AtomicLong bytesUploaded = new AtomicLong();
+    private final AtomicLong bytesSaved = new AtomicLong();
+
+    private static Logger logger = LoggerFactory.getLogger(Deduplicator.class);
+
+    @Autowired
+    public Deduplicator(final DeduplicationConfiguration config) {
+        this.config = config;
+        this.index = CacheBuilder.newBuilder().maximumSize(config.getMaxEntries()).build();
+    }
+
+    /**
+     * @param contentLength
+     *            length of the upload or -1 if unknown
+     * @return true if the upload is checked for a stored duplicate
+     */
+    public boolean isDeduplicated(final long contentLength) {
+        return config.isEnabled() && (contentLength < 0 || contentLength >= config.getMinSize());
+    }
+
+    /**
+     * @param inputStream
+     * @param contentType
+     * @return upload hashing the stream as it is read
+     */
+    public HashedUpload hash(final InputStream inputStream, final String contentType) {
+        try {
+            return new HashedUpload(inputStream, MessageDigest.getInstance(DIGEST_ALGORITHM), contentType);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(DIGEST_ALGORITHM + " is not available", e);
+        }
+    }
+
+    /**
+     * @param hashedUpload
+     *            upload that has been read to its end
+     * @return object stored with the same content or empty if none is known
+     */
+    public Optional<StoredObject> find(final HashedUpload hashedUpload) {
+        return Optional.ofNullable(index.getIfPresent(hashedUpload.getKey()));
+    }
+
+    /**
+     * Records the object an upload has been stored as. An upload whose
+     * content was already stored under another name is counted as a
+     * duplicate that has been transferred.
+     *
+     * @param hashedUpload
+     *            upload that has been read to its end
+     * @param bucketName
+     * @param fileName
+     * @param eTag
+     */
+    public void stored(final HashedUpload hashedUpload, final String bucketName, final String fileName,
+            final String eTag) {
+        uploads.incrementAndGet();
+        bytesUploaded.addAndGet(hashedUpload.getLength());
+        final StoredObject storedObject = index.getIfPresent(hashedUpload.getKey());
+        if (storedObject != null && !storedObject.isObject(bucketName, fileName)) {
+            duplicatesUploaded.incrementAndGet();
+            logger.debug(fileName + " is a duplicate of " + storedObject.fileName
+                    + " that has been uploaded before its hash was known");
+        }
+        if (eTag != null) {
+            index.put(hashedUpload.getKey(), new StoredObject(bucketName, fileName, eTag));
+        }
+    }
+
+    /**
+     * Records an upload that has been copied from a stored object instead of
+     * being transferred.
+     *
+     * @param hashedUpload
+     * @param fileName
+     * @param storedObject
+     */
+    public void deduplicated(final HashedUpload hashedUpload, final String fileName,
+            final StoredObject storedObject) {
+        hashedUpload.deduplicated = true;
+        uploads.incrementAndGet();
+        duplicates.incrementAndGet();
+        bytesSaved.addAndGet(hashedUpload.getLength());
+        logger.info(fileName + " is a duplicate of " + storedObject.fileName + ", " + hashedUpload.getLength()
+                + " bytes are not uploaded");
+    }
+
+    /**
+     * Drops an entry whose object has been changed or removed.
+     *
+     * @param hashedUpload
+     * @param storedObject
+     */
+    public void remove(final HashedUpload hashedUpload, final StoredObject storedObject) {
+        index.asMap().remove(hashedUpload.getKey(), storedObject);
+    }
+
+    @ManagedAttribute
+    public long getUploads() {
+        return uploads.get();
+    }
+
+    @ManagedAttribute
+    public long getDuplicates() {
+        return duplicates.get();
+    }
+
+    /**
+     * @return duplicates that have been transferred because they were only
+     *         recognized after completion
+     */
+    @ManagedAttribute
+    public long getDuplicatesUploaded() {
+        return duplicatesUploaded.get();
+    }
+
+    @ManagedAttribute
+    public long getBytesSaved() {
+        return bytesSaved.get();
+    }
+
+    /**
+     * @return percentage of the uploaded bytes that have not been
+     *         transferred
+     */
+    @ManagedAttribute
+    public double getDedupRatio() {
+        final long saved = bytesSaved.get();
+        final long total = saved + bytesUploaded.get();
+        return total > 0 ? 100.0 * saved / total : 0;
+    }
+
+    @ManagedAttribute
+    public long getIndexEntries() {
+        return index.size();
+    }
+
+    /**
+     * An upload hashed while its stream is read, without holding more of it
+     * than the reader does.
+     */
+    public static final class HashedUpload {
+
+        private final CountingInputStream countingStream;
+        private final DigestInputStream inputStream;
+        private final String contentType;
+        private String key;
+        private boolean deduplicated;
+
+        HashedUpload(final InputStream inputStream, final MessageDigest digest, final String contentType) {
+            this.countingStream = new CountingInputStream(inputStream);
+            this.inputStream = new DigestInputStream(countingStream, digest);
+            this.contentType = contentType;
+        }
+
+        /**
+         * @return stream to upload, the hash is complete once it has been
+         *         read to its end
+         */
+        public InputStream getInputStream() {
+            return inputStream;
+        }
+
+        public long getLength() {
+            return countingStream.getCount();
+        }
+
+        /**
+         * @return true if the upload has been copied from a stored object
+         */
+        public boolean isDeduplicated() {
+            return deduplicated;
+        }
+
+        String getKey() {
+            if (key == null) {
+                key = BaseEncoding.base16().lowerCase().encode(inputStream.getMessageDigest().digest()) + "/"
+                        + contentType;
+            }
+            return key;
+        }
+    }
+
+    /**
+     * An object stored through this application.
+     */
+    public static final class StoredObject {
+
+        private final String bucketName;
+        private final String fileName;
+        private final String eTag;
+
+        StoredObject(final String bucketName, final String fileName, final String eTag) {
+            this.bucketName = bucketName;
+            this.fileName = fileName;
+            this.eTag = eTag;
+        }
+
+        public String getBucketName() {
+            return bucketName;
+        }
+
+        public String getFileName() {
+            return fileName;
+        }
+
+        public String getETag() {
+            return eTag;
+        }
+
+        boolean isObject(final String bucketName, final String fileName) {
+            return this.bucketName.equals(bucketName) && this.fileName.equals(fileName);
+        }
+    }
+}
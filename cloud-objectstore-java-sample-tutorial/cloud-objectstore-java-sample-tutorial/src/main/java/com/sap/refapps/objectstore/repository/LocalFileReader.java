@@ -0,0 +1,151 @@
+package com.sap.refapps.objectstore.repository;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Optional;
+
+import org.jclouds.blobstore.options.GetOptions;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import com.google.common.io.ByteStreams;
+import com.sap.refapps.objectstore.config.LocalConfiguration;
+import com.sap.refapps.objectstore.config.MetadataCacheConfiguration;
+import com.sap.refapps.objectstore.model.BlobContent;
+
+/**
+ * Reads the objects of the filesystem backend straight from their files.
+ * For every getBlob jclouds checks bucket and object, reads all extended
+ * attributes of the file and serves a range through nested byte sources,
+ * which costs more than the read itself for small objects and ranges. The
+ * reader takes the metadata from the metadata cache of the repository and
+ * reads the requested bytes with a positioned FileChannel. Without the
+ * metadata cache each read would still need a metadata lookup through
+ * jclouds, so the reader is only used along with it.
+ *
+ * Downloads with conditions other than an If-Match on the ETag of the
+ * metadata, and files that no longer match the metadata, are left to
+ * jclouds.
+ */
+@Component
+@Profile("local-filesystem")
+public class LocalFileReader {
+
+    private final Path directory;
+    private final boolean enabled;
+
+    @Autowired
+    public LocalFileReader(final LocalConfiguration config, final MetadataCacheConfiguration metadataCacheConfig) {
+        this.directory = Paths.get(config.getDirectory()).toAbsolutePath().normalize();
+        this.enabled = config.isFastReads() && metadataCacheConfig.isEnabled();
+    }
+
+    /**
+     * @param options
+     * @return true if the download may be read from the file
+     */
+    public boolean isFastRead(final GetOptions options) {
+        return enabled && options.getIfNoneMatch() == null
+                && options.getIfModifiedSince() == null && options.getIfUnmodifiedSince() == null
+                && options.getRanges().size() <= 1;
+    }
+
+    /**
+     * @param bucketName
+     * @param metadata
+     *            metadata of the object
+     * @param options
+     *            a single byte range at most
+     * @return blobContent reading the file or empty if the download is left
+     *         to jclouds
+     * @throws IOException
+     */
+    public Optional<BlobContent> read(final String bucketName, final BlobContent metadata, final GetOptions options)
+            throws IOException {
+        // jclouds answers an outdated ETag with a 412
+        if (options.getIfMatch() != null && !unquote(options.getIfMatch()).equals(unquote(metadata.getEtag()))) {
+            return Optional.empty();
+        }
+        final Path bucketDirectory = directory.resolve(bucketName).normalize();
+        final Path file = bucketDirectory.resolve(metadata.getName()).normalize();
+        if (!file.startsWith(bucketDirectory) || !file.toFile().isFile()) {
+            return Optional.empty();
+        }
+        final FileChannel channel;
+        try {
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        }
+        try {
+            final long size = channel.size();
+            // a file changed behind the metadata (cache) is left to jclouds
+            if (size != metadata.getSize() || metadata.getLastModified() == null
+                    || file.toFile().lastModified() != metadata.getLastModified().getTime()) {
+                channel.close();
+                return Optional.empty();
+            }
+            final long[] range = getRange(options.getRanges(), size);
+            if (range == null) {
+                channel.close();
+                return Optional.empty();
+            }
+            final long length = range[1] - range[0] + 1;
+            final InputStream inputStream = ByteStreams.limit(Channels.newInputStream(channel.position(range[0])),
+                    length);
+            return Optional.of(new BlobContent(metadata.getName(), metadata.getEtag(), metadata.getLastModified(),
+                    metadata.getContentType(), length, size, inputStream, metadata.getContentEncoding(),
+                    metadata.getDecodedSize()));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static String unquote(final String eTag) {
+        return eTag != null && eTag.length() > 1 && eTag.startsWith("\"") && eTag.endsWith("\"")
+                ? eTag.substring(1, eTag.length() - 1)
+                : String.valueOf(eTag);
+    }
+
+    /**
+     * @param ranges
+     *            ranges of the getOptions, e.g. 0-99, 100- or -50
+     * @param size
+     * @return first and last byte or null if the range cannot be satisfied
+     */
+    private static long[] getRange(final List<String> ranges, final long size) {
+        if (ranges.isEmpty()) {
+            return new long[] { 0, size - 1 };
+        }
+        final String range = ranges.get(0);
+        final int dash = range.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+        final String first = range.substring(0, dash);
+        final String last = range.substring(dash + 1);
+        try {
+            final long start;
+            final long end;
+            if (first.isEmpty()) {
+                start = Math.max(0, size - Long.parseLong(last));
+                end = size - 1;
+            } else {
+                start = Long.parseLong(first);
+                end = last.isEmpty() ? size - 1 : Math.min(Long.parseLong(last), size - 1);
+            }
+            return start <= end ? new long[] { start, end } : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
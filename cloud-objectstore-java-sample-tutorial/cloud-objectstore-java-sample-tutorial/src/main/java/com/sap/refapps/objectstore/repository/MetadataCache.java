@@ -0,0 +1,283 @@
+package com.sap.refapps.objectstore.repository;
+
+import java.util.Collection;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.BiFunction;
+import java.util.function.LongSupplier;
+
+import org.jclouds.blobstore.options.ListContainerOptions;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.sap.refapps.objectstore.config.MetadataCacheConfiguration;
+import com.sap.refapps.objectstore.model.BlobContent;
+import com.sap.refapps.objectstore.model.BlobFilePage;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+
+/**
+ * Caches object metadata and listing pages of the repository. If the cache
+ * is disabled every lookup goes to the loaders.
+ *
+ * Concurrent lookups of the same key share a single backend request. An
+ * entry older than refreshSeconds is still served while it is reloaded in
+ * the background, an entry older than ttlSeconds is loaded again. Writes
+ * through the repository invalidate the metadata of the object and the
+ * listing pages of its bucket. Only pages requested one at a time are
+ * cached, listings walked page by page bypass the cache.
+ *
+ * A load or background refresh that is in flight while an entry is
+ * invalidated still stores its result once it completes. As in the
+ * BlobCache, every invalidation therefore advances a generation, of the
+ * object name for metadata and of the bucket for pages. Each entry carries
+ * the generation its load started with and is only served while that
+ * generation is current, otherwise it is dropped and loaded again.
+ */
+class MetadataCache {
+
+    /**
+     * Loads a listing page from the objectstore.
+     */
+    interface PageLoader {
+        BlobFilePage load(String bucketName, ListContainerOptions options, boolean withMetadata);
+    }
+
+    private static final int GENERATION_STRIPES = 1024;
+    // a name changed this often is served from its latest load
+    private static final int MAX_STALE_LOADS = 3;
+
+    private final boolean enabled;
+    private final BiFunction<String, String, Optional<BlobContent>> metadataLoader;
+    private final PageLoader pageLoader;
+    private final LoadingCache<MetadataKey, Loaded<Optional<BlobContent>>> metadata;
+    private final LoadingCache<PageKey, Loaded<BlobFilePage>> pages;
+    // names or buckets sharing a stripe only cost each other a reload
+    private final AtomicLongArray metadataGenerations = new AtomicLongArray(GENERATION_STRIPES);
+    private final AtomicLongArray pageGenerations = new AtomicLongArray(GENERATION_STRIPES);
+    private final ExecutorService refreshExecutor;
+
+    MetadataCache(final MetadataCacheConfiguration config,
+            final BiFunction<String, String, Optional<BlobContent>> metadataLoader, final PageLoader pageLoader) {
+        this.enabled = config.isEnabled();
+        this.metadataLoader = metadataLoader;
+        this.pageLoader = pageLoader;
+        this.refreshExecutor = Executors.newFixedThreadPool(2,
+                new ThreadFactoryBuilder().setNameFormat("objectstore-refresh-%d").setDaemon(true).build());
+        this.metadata = newBuilder(config, config.getMaximumEntries()).build(CacheLoader.asyncReloading(
+                CacheLoader.from((MetadataKey key) -> new Loaded<>(getGeneration(key),
+                        metadataLoader.apply(key.bucketName, key.fileName))),
+                refreshExecutor));
+        this.pages = newBuilder(config, config.getMaximumPages()).build(CacheLoader.asyncReloading(
+                CacheLoader.from((PageKey key) -> new Loaded<>(getGeneration(key),
+                        pageLoader.load(key.bucketName, key.options, key.withMetadata))),
+                refreshExecutor));
+    }
+
+    /**
+     * @param bucketName
+     * @param fileName
+     * @return metadata of the object or empty if it does not exist
+     */
+    Optional<BlobContent> getMetadata(final String bucketName, final String fileName) {
+        if (!enabled) {
+            return metadataLoader.apply(bucketName, fileName);
+        }
+        final MetadataKey key = new MetadataKey(bucketName, fileName);
+        return get(metadata, key, () -> getGeneration(key));
+    }
+
+    /**
+     * @param bucketName
+     * @param options
+     * @param withMetadata
+     * @return listing page
+     */
+    BlobFilePage getPage(final String bucketName, final ListContainerOptions options, final boolean withMetadata) {
+        if (!enabled) {
+            return pageLoader.load(bucketName, options, withMetadata);
+        }
+        final PageKey key = new PageKey(bucketName, options, withMetadata);
+        return get(pages, key, () -> getGeneration(key));
+    }
+
+    /**
+     * Loads a listing page without the cache. The pages of a walk over a
+     * whole listing are each read once, caching them would only evict the
+     * pages of interactive listings.
+     *
+     * @param bucketName
+     * @param options
+     * @param withMetadata
+     * @return listing page
+     */
+    BlobFilePage loadPage(final String bucketName, final ListContainerOptions options, final boolean withMetadata) {
+        return pageLoader.load(bucketName, options, withMetadata);
+    }
+
+    /**
+     * Drops the metadata of the object and all listing pages of its bucket.
+     *
+     * @param bucketName
+     * @param fileName
+     */
+    void invalidate(final String bucketName, final String fileName) {
+        invalidateMetadata(new MetadataKey(bucketName, fileName));
+        invalidatePages(bucketName);
+    }
+
+    /**
+     * Drops the metadata of the objects and all listing pages of their
+     * bucket.
+     *
+     * @param bucketName
+     * @param fileNames
+     */
+    void invalidate(final String bucketName, final Collection<String> fileNames) {
+        for (String fileName : fileNames) {
+            invalidateMetadata(new MetadataKey(bucketName, fileName));
+        }
+        invalidatePages(bucketName);
+    }
+
+    void shutdown() {
+        refreshExecutor.shutdownNow();
+    }
+
+    /**
+     * Registers the statistics of the metadata and page caches.
+     *
+     * @param registry
+     * @param tags
+     */
+    void bindTo(final MeterRegistry registry, final Iterable<Tag> tags) {
+        GuavaCacheMetrics.monitor(registry, metadata, "objectstore.metadata", tags);
+        GuavaCacheMetrics.monitor(registry, pages, "objectstore.pages", tags);
+    }
+
+    private static CacheBuilder<Object, Object> newBuilder(final MetadataCacheConfiguration config,
+            final long maximumSize) {
+        return CacheBuilder.newBuilder().maximumSize(maximumSize)
+                .refreshAfterWrite(config.getRefreshSeconds(), TimeUnit.SECONDS)
+                .expireAfterWrite(config.getTtlSeconds(), TimeUnit.SECONDS).recordStats();
+    }
+
+    private void invalidateMetadata(final MetadataKey key) {
+        metadataGenerations.incrementAndGet(getStripe(key.hashCode()));
+        metadata.invalidate(key);
+    }
+
+    private void invalidatePages(final String bucketName) {
+        pageGenerations.incrementAndGet(getStripe(bucketName.hashCode()));
+        pages.asMap().keySet().removeIf(key -> key.bucketName.equals(bucketName));
+    }
+
+    private long getGeneration(final MetadataKey key) {
+        return metadataGenerations.get(getStripe(key.hashCode()));
+    }
+
+    private long getGeneration(final PageKey key) {
+        return pageGenerations.get(getStripe(key.bucketName.hashCode()));
+    }
+
+    private static int getStripe(final int hashCode) {
+        return (hashCode & Integer.MAX_VALUE) % GENERATION_STRIPES;
+    }
+
+    private static <K, V> V get(final LoadingCache<K, Loaded<V>> cache, final K key,
+            final LongSupplier generation) {
+        for (int attempt = 1;; attempt++) {
+            final Loaded<V> loaded;
+            try {
+                loaded = cache.getUnchecked(key);
+            } catch (UncheckedExecutionException | ExecutionError e) {
+                // the backend exception is rethrown as is, e.g. to rebuild the context
+                Throwables.throwIfUnchecked(e.getCause());
+                throw e;
+            }
+            if (loaded.generation == generation.getAsLong() || attempt == MAX_STALE_LOADS) {
+                return loaded.value;
+            }
+            // loaded before an invalidation and stored after it
+            cache.asMap().remove(key, loaded);
+        }
+    }
+
+    /**
+     * Cached value along with the generation its load started with.
+     */
+    private static final class Loaded<V> {
+
+        private final long generation;
+        private final V value;
+
+        Loaded(final long generation, final V value) {
+            this.generation = generation;
+            this.value = value;
+        }
+    }
+
+    private static final class MetadataKey {
+
+        private final String bucketName;
+        private final String fileName;
+
+        MetadataKey(final String bucketName, final String fileName) {
+            this.bucketName = bucketName;
+            this.fileName = fileName;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (!(obj instanceof MetadataKey)) {
+                return false;
+            }
+            final MetadataKey other = (MetadataKey) obj;
+            return bucketName.equals(other.bucketName) && fileName.equals(other.fileName);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * bucketName.hashCode() + fileName.hashCode();
+        }
+    }
+
+    private static final class PageKey {
+
+        private final String bucketName;
+        private final ListContainerOptions options;
+        private final boolean withMetadata;
+        private final String id;
+
+        PageKey(final String bucketName, final ListContainerOptions options, final boolean withMetadata) {
+            this.bucketName = bucketName;
+            this.options = options;
+            this.withMetadata = withMetadata;
+            // the options do not implement equals, the key compares their values
+            this.id = String.join("\n", bucketName, String.valueOf(options.getPrefix()),
+                    String.valueOf(options.getDelimiter()), String.valueOf(options.getMarker()),
+                    String.valueOf(options.getMaxResults()), String.valueOf(options.isRecursive()),
+                    String.valueOf(withMetadata));
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            return obj instanceof PageKey && id.equals(((PageKey) obj).id);
+        }
+
+        @Override
+        public int hashCode() {
+            return id.hashCode();
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package com.sap.refapps.objectstore.repository;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.PreDestroy;
+
+import org.jclouds.blobstore.BlobStore;
+import org.jclouds.blobstore.domain.BlobMetadata;
+import org.jclouds.blobstore.domain.MultipartPart;
+import org.jclouds.blobstore.domain.MultipartUpload;
+import org.jclouds.blobstore.options.PutOptions;
+import org.jclouds.s3.S3Client;
+import org.jclouds.s3.blobstore.S3BlobStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sap.refapps.objectstore.config.CopyConfiguration;
+
+/**
+ * Copies objects above the 5 GB limit of a single S3 copy request as a
+ * multipart upload whose parts are copied from byte ranges of the source
+ * (UploadPartCopy). The bytes stay within S3, parts are copied in parallel
+ * and retried individually, and a failed copy is aborted so that no
+ * orphaned parts are left behind.
+ *
+ * UploadPartCopy takes no precondition in jclouds, so the parts are not
+ * pinned to a version of the source. The ETag of the source is read before
+ * the copy and checked again once the copy is complete; if the source has
+ * changed in between, the parts may mix both versions and the copy is
+ * removed again.
+ *
+ * The portable BlobStore API has no part copy, so this is only done on S3.
+ * Google Cloud Storage copies objects of any size in a single request and
+ * the local backends copy within the application.
+ */
+@Component
+public class MultipartCopier {
+
+    private final CopyConfiguration config;
+    private final ExecutorService executor;
+
+    private static Logger logger = LoggerFactory.getLogger(MultipartCopier.class);
+
+    @Autowired
+    public MultipartCopier(final CopyConfiguration config) {
+        this.config = config;
+        this.executor = Executors.newFixedThreadPool(config.getPartConcurrency(),
+                new ThreadFactoryBuilder().setNameFormat("objectstore-copy-part-%d").setDaemon(true).build());
+    }
+
+    /**
+     * @param blobStore
+     * @param size
+     *            size of the source object
+     * @return true if the object has to be copied in parts
+     */
+    public boolean isMultipartCopy(final BlobStore blobStore, final long size) {
+        return blobStore instanceof S3BlobStore && size > config.getMultipartThreshold();
+    }
+
+    /**
+     * Copies the object in parts within its bucket.
+     *
+     * @param blobStore
+     * @param bucketName
+     * @param sourceName
+     * @param sourceETag
+     *            ETag of the source when its size was read
+     * @param size
+     *            size of the source object
+     * @param blobMetadata
+     *            name, content type and user metadata of the copy
+     * @return eTag of the copy
+     * @throws IOException
+     *             if a part could not be copied or the source has been
+     *             changed during the copy
+     */
+    public String copy(final BlobStore blobStore, final String bucketName, final String sourceName,
+            final String sourceETag, final long size, final BlobMetadata blobMetadata) throws IOException {
+        final S3Client s3Client = blobStore.getContext().unwrapApi(S3Client.class);
+        final long partSize = getPartSize(blobStore, size);
+        final MultipartUpload multipartUpload = blobStore.initiateMultipartUpload(bucketName, blobMetadata,
+                PutOptions.NONE);
+        final AtomicBoolean aborted = new AtomicBoolean();
+        final List<Future<MultipartPart>> parts = new ArrayList<>();
+        final String eTag;
+        try {
+            int partNumber = 1;
+            for (long start = 0; start < size; start += partSize) {
+                parts.add(submitPart(s3Client, multipartUpload, sourceName, partNumber++, start,
+                        Math.min(start + partSize, size) - 1, aborted));
+            }
+            final List<MultipartPart> copiedParts = new ArrayList<>(parts.size());
+            for (Future<MultipartPart> part : parts) {
+                copiedParts.add(part.get());
+            }
+            eTag = blobStore.completeMultipartUpload(multipartUpload, copiedParts);
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abort(blobStore, multipartUpload, parts, aborted);
+            throw new IOException("Multipart copy of " + sourceName + " was interrupted", e);
+        } catch (ExecutionException e) {
+            abort(blobStore, multipartUpload, parts, aborted);
+            throw new IOException("Multipart copy of " + sourceName + " failed", e.getCause());
+        } catch (RuntimeException e) {
+            abort(blobStore, multipartUpload, parts, aborted);
+            throw e;
+        }
+        checkSource(blobStore, bucketName, sourceName, sourceETag, blobMetadata.getName());
+        logger.info(sourceName + " is copied to " + blobMetadata.getName() + " in " + parts.size() + " parts.");
+        return eTag;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private Future<MultipartPart> submitPart(final S3Client s3Client, final MultipartUpload multipartUpload,
+            final String sourceName, final int partNumber, final long start, final long end,
+            final AtomicBoolean aborted) {
+        return executor.submit(() -> {
+            if (aborted.get()) {
+                throw new CancellationException(multipartUpload.blobName() + " copy is aborted");
+            }
+            return copyPart(s3Client, multipartUpload, sourceName, partNumber, start, end);
+        });
+    }
+
+    private MultipartPart copyPart(final S3Client s3Client, final MultipartUpload multipartUpload,
+            final String sourceName, final int partNumber, final long start, final long end)
+            throws InterruptedException {
+        int attempt = 0;
+        while (true) {
+            try {
+                // the range is inclusive
+                final String eTag = s3Client.uploadPartCopy(multipartUpload.containerName(),
+                        multipartUpload.blobName(), partNumber, multipartUpload.id(),
+                        multipartUpload.containerName(), sourceName, start, end);
+                return MultipartPart.create(partNumber, end - start + 1, eTag, new Date());
+            } catch (RuntimeException e) {
+                if (++attempt > config.getMaxRetries()) {
+                    throw e;
+                }
+                logger.warn("Retrying part " + partNumber + " of " + multipartUpload.blobName() + " after: " + e);
+                Thread.sleep(100L << attempt);
+            }
+        }
+    }
+
+    /**
+     * Removes the copy if the source no longer has the ETag it had before
+     * the copy, or if that cannot be told.
+     */
+    private static void checkSource(final BlobStore blobStore, final String bucketName, final String sourceName,
+            final String sourceETag, final String targetName) throws IOException {
+        final BlobMetadata sourceMetadata;
+        try {
+            sourceMetadata = blobStore.blobMetadata(bucketName, sourceName);
+        } catch (RuntimeException e) {
+            removeCopy(blobStore, bucketName, targetName);
+            throw new IOException("Error occurred while checking the source of the copy: " + sourceName, e);
+        }
+        if (sourceMetadata == null || !sourceMetadata.getETag().equals(sourceETag)) {
+            removeCopy(blobStore, bucketName, targetName);
+            throw new IOException(sourceName + " has been changed while it was copied to " + targetName);
+        }
+    }
+
+    private static void removeCopy(final BlobStore blobStore, final String bucketName, final String targetName) {
+        try {
+            blobStore.removeBlob(bucketName, targetName);
+            logger.info("Multipart copy to " + targetName + " is removed.");
+        } catch (RuntimeException e) {
+            logger.error("Error occurred while removing the multipart copy to " + targetName + e);
+        }
+    }
+
+    private void abort(final BlobStore blobStore, final MultipartUpload multipartUpload,
+            final List<Future<MultipartPart>> parts, final AtomicBoolean aborted) {
+        aborted.set(true);
+        // parts still in flight are awaited, otherwise they could be stored
+        // after the abort and leave orphaned parts behind
+        for (Future<MultipartPart> part : parts) {
+            try {
+                part.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException | CancellationException e) {
+                // the copy is aborted anyway
+            }
+        }
+        try {
+            blobStore.abortMultipartUpload(multipartUpload);
+            logger.info("Multipart copy to " + multipartUpload.blobName() + " is aborted.");
+        } catch (RuntimeException e) {
+            logger.error("Error occurred while aborting the multipart copy to " + multipartUpload.blobName() + e);
+        }
+    }
+
+    private long getPartSize(final BlobStore blobStore, final long size) {
+        long partSize = Math.max(config.getPartSize(), blobStore.getMinimumMultipartPartSize());
+        // grow the parts for objects that would exceed the part count limit
+        final long maximumNumberOfParts = blobStore.getMaximumNumberOfParts();
+        partSize = Math.max(partSize, (size + maximumNumberOfParts - 1) / maximumNumberOfParts);
+        return Math.min(partSize, blobStore.getMaximumMultipartPartSize());
+    }
+}
@@ -0,0 +1,299 @@
+package com.sap.refapps.objectstore.repository;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+import javax.annotation.PreDestroy;
+
+import org.jclouds.blobstore.BlobStore;
+import org.jclouds.blobstore.domain.BlobMetadata;
+import org.jclouds.blobstore.domain.MultipartPart;
+import org.jclouds.blobstore.domain.MultipartUpload;
+import org.jclouds.blobstore.options.PutOptions;
+import org.jclouds.io.Payload;
+import org.jclouds.io.payloads.ByteSourcePayload;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.google.common.io.ByteSource;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sap.refapps.objectstore.config.MultipartUploadConfiguration;
+
+/**
+ * Uploads large objects as multipart uploads. Parts are read into buffers
+ * taken from a bounded pool shared by all uploads and are uploaded in
+ * parallel, so the heap used by uploads is capped at
+ * bufferPoolSize * partSize. Failed parts are retried individually and a
+ * failed upload is aborted so that no orphaned parts are left behind.
+ * <p>
+ * A stream that fits into the first part is held completely before it is
+ * uploaded, so a deduplicated upload can be replaced by a copy then.
+ */
+@Component
+public class MultipartUploader {
+
+    private final MultipartUploadConfiguration config;
+    private final ExecutorService executor;
+    private final Semaphore bufferPermits;
+    private final BlockingQueue<byte[]> freeBuffers;
+
+    private static Logger logger = LoggerFactory.getLogger(MultipartUploader.class);
+
+    @Autowired
+    public MultipartUploader(final MultipartUploadConfiguration config) {
+        this.config = config;
+        this.executor = Executors.newFixedThreadPool(config.getBufferPoolSize(),
+                new ThreadFactoryBuilder().setNameFormat("objectstore-multipart-%d").setDaemon(true).build());
+        this.bufferPermits = new Semaphore(config.getBufferPoolSize());
+        this.freeBuffers = new ArrayBlockingQueue<>(config.getBufferPoolSize());
+    }
+
+    public boolean isEnabled() {
+        return config.isEnabled();
+    }
+
+    /**
+     * @param contentLength
+     *            length of the object or -1 if unknown
+     * @return true if the object should be uploaded in parts
+     */
+    public boolean isMultipartUpload(final long contentLength) {
+        return config.isEnabled() && (contentLength < 0 || contentLength > config.getThreshold());
+    }
+
+    /**
+     * Uploads the stream in parts. A stream that turns out to fit into a
+     * single part is uploaded with a plain putBlob instead.
+     *
+     * @param blobStore
+     * @param bucketName
+     * @param blobMetadata
+     *            name, content type and user metadata of the object
+     * @param inputStream
+     * @param contentLength
+     *            length of the object or -1 if unknown
+     * @return eTag of the uploaded object
+     * @throws IOException
+     */
+    public String upload(final BlobStore blobStore, final String bucketName, final BlobMetadata blobMetadata,
+            final InputStream inputStream, final long contentLength) throws IOException {
+        return upload(blobStore, bucketName, blobMetadata, inputStream, contentLength, () -> null);
+    }
+
+    /**
+     * @param blobStore
+     * @param bucketName
+     * @param blobMetadata
+     *            name, content type and user metadata of the object
+     * @param inputStream
+     * @param contentLength
+     *            length of the object or -1 if unknown
+     * @param storedCopy
+     *            called once the stream has been read to its end within
+     *            the first part, before anything is uploaded; returns the
+     *            eTag of a copy made of the content instead of the upload
+     *            or null
+     * @return eTag of the uploaded object
+     * @throws IOException
+     */
+    public String upload(final BlobStore blobStore, final String bucketName, final BlobMetadata blobMetadata,
+            final InputStream inputStream, final long contentLength, final Supplier<String> storedCopy)
+            throws IOException {
+
+        final int partSize = getPartSize(blobStore, contentLength);
+        byte[] buffer = acquireBuffer(partSize);
+        int length;
+        try {
+            length = readFully(inputStream, buffer, partSize);
+        } catch (IOException e) {
+            releaseBuffer(buffer);
+            throw e;
+        }
+        if (length < partSize) {
+            try {
+                final String eTag = storedCopy.get();
+                if (eTag != null) {
+                    return eTag;
+                }
+                return blobStore.putBlob(bucketName, blobStore.blobBuilder(blobMetadata.getName())
+                        .userMetadata(blobMetadata.getUserMetadata()).payload(createPayload(buffer, length))
+                        .contentType(blobMetadata.getContentMetadata().getContentType()).build());
+            } finally {
+                releaseBuffer(buffer);
+            }
+        }
+
+        final MultipartUpload multipartUpload = blobStore.initiateMultipartUpload(bucketName, blobMetadata,
+                PutOptions.NONE);
+        final Semaphore inFlightParts = new Semaphore(config.getConcurrency());
+        final AtomicBoolean aborted = new AtomicBoolean();
+        final List<Future<MultipartPart>> parts = new ArrayList<>();
+        try {
+            int partNumber = 1;
+            while (length > 0) {
+                checkFailedParts(parts);
+                inFlightParts.acquire();
+                parts.add(submitPart(blobStore, multipartUpload, partNumber++, buffer, length, inFlightParts,
+                        aborted));
+                buffer = null;
+                if (length < partSize) {
+                    break;
+                }
+                buffer = acquireBuffer(partSize);
+                length = readFully(inputStream, buffer, partSize);
+            }
+            if (buffer != null) {
+                releaseBuffer(buffer);
+                buffer = null;
+            }
+
+            final List<MultipartPart> uploadedParts = new ArrayList<>(parts.size());
+            for (Future<MultipartPart> part : parts) {
+                uploadedParts.add(part.get());
+            }
+            final String eTag = blobStore.completeMultipartUpload(multipartUpload, uploadedParts);
+            logger.info(blobMetadata.getName() + " is uploaded in " + uploadedParts.size() + " parts.");
+            return eTag;
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abort(blobStore, multipartUpload, parts, aborted, buffer);
+            throw new IOException("Multipart upload of " + blobMetadata.getName() + " was interrupted", e);
+        } catch (ExecutionException e) {
+            abort(blobStore, multipartUpload, parts, aborted, buffer);
+            throw new IOException("Multipart upload of " + blobMetadata.getName() + " failed", e.getCause());
+        } catch (IOException | RuntimeException e) {
+            abort(blobStore, multipartUpload, parts, aborted, buffer);
+            throw e;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private Future<MultipartPart> submitPart(final BlobStore blobStore, final MultipartUpload multipartUpload,
+            final int partNumber, final byte[] buffer, final int length, final Semaphore inFlightParts,
+            final AtomicBoolean aborted) {
+        return executor.submit(() -> {
+            try {
+                if (aborted.get()) {
+                    throw new CancellationException(multipartUpload.blobName() + " upload is aborted");
+                }
+                return uploadPart(blobStore, multipartUpload, partNumber, buffer, length);
+            } finally {
+                releaseBuffer(buffer);
+                inFlightParts.release();
+            }
+        });
+    }
+
+    private MultipartPart uploadPart(final BlobStore blobStore, final MultipartUpload multipartUpload,
+            final int partNumber, final byte[] buffer, final int length) throws InterruptedException {
+        int attempt = 0;
+        while (true) {
+            try {
+                return blobStore.uploadMultipartPart(multipartUpload, partNumber, createPayload(buffer, length));
+            } catch (RuntimeException e) {
+                if (++attempt > config.getMaxRetries()) {
+                    throw e;
+                }
+                logger.warn("Retrying part " + partNumber + " of " + multipartUpload.blobName() + " after: " + e);
+                Thread.sleep(100L << attempt);
+            }
+        }
+    }
+
+    private void abort(final BlobStore blobStore, final MultipartUpload multipartUpload,
+            final List<Future<MultipartPart>> parts, final AtomicBoolean aborted, final byte[] buffer) {
+        aborted.set(true);
+        if (buffer != null) {
+            releaseBuffer(buffer);
+        }
+        // parts still in flight are awaited, otherwise they could be stored
+        // after the abort and leave orphaned parts behind
+        for (Future<MultipartPart> part : parts) {
+            try {
+                part.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException | CancellationException e) {
+                // the upload is aborted anyway
+            }
+        }
+        try {
+            blobStore.abortMultipartUpload(multipartUpload);
+            logger.info("Multipart upload of " + multipartUpload.blobName() + " is aborted.");
+        } catch (RuntimeException e) {
+            logger.error("Error occurred while aborting the multipart upload of " + multipartUpload.blobName() + e);
+        }
+    }
+
+    private static void checkFailedParts(final List<Future<MultipartPart>> parts)
+            throws InterruptedException, ExecutionException {
+        for (Future<MultipartPart> part : parts) {
+            if (part.isDone()) {
+                part.get();
+            }
+        }
+    }
+
+    private int getPartSize(final BlobStore blobStore, final long contentLength) {
+        long partSize = Math.max(config.getPartSize(), blobStore.getMinimumMultipartPartSize());
+        if (contentLength > 0) {
+            // grow the parts for objects that would exceed the part count limit
+            final long maximumNumberOfParts = blobStore.getMaximumNumberOfParts();
+            partSize = Math.max(partSize, (contentLength + maximumNumberOfParts - 1) / maximumNumberOfParts);
+        }
+        partSize = Math.min(partSize, blobStore.getMaximumMultipartPartSize());
+        return (int) Math.min(partSize, Integer.MAX_VALUE - 8);
+    }
+
+    private byte[] acquireBuffer(final int partSize) throws IOException {
+        try {
+            bufferPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for an upload buffer", e);
+        }
+        final byte[] buffer = freeBuffers.poll();
+        return buffer != null && buffer.length == partSize ? buffer : new byte[partSize];
+    }
+
+    private void releaseBuffer(final byte[] buffer) {
+        freeBuffers.offer(buffer);
+        bufferPermits.release();
+    }
+
+    private static Payload createPayload(final byte[] buffer, final int length) {
+        final Payload payload = new ByteSourcePayload(ByteSource.wrap(buffer).slice(0, length));
+        payload.getContentMetadata().setContentLength((long) length);
+        return payload;
+    }
+
+    private static int readFully(final InputStream inputStream, final byte[] buffer, final int partSize)
+            throws IOException {
+        int length = 0;
+        int read;
+        while (length < partSize && (read = inputStream.read(buffer, length, partSize - length)) != -1) {
+            length += read;
+        }
+        return length;
+    }
+}
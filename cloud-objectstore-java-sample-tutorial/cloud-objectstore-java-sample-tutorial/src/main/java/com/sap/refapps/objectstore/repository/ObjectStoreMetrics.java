@@ -0,0 +1,287 @@
+package com.sap.refapps.objectstore.repository;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToDoubleFunction;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.google.common.base.Throwables;
+import com.sap.refapps.objectstore.config.BlobStoreContextProvider;
+import com.sap.refapps.objectstore.controller.DownloadStreamer;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Micrometer meters of the objectstore, exposed by the actuator, e.g. in
+ * Prometheus format at /actuator/prometheus. All meters are tagged with the
+ * backend.
+ *
+ * <ul>
+ * <li>objectstore.operations: latency of the ObjectStoreService operations
+ * by operation and outcome, with objectstore.operations.active calls in
+ * flight and objectstore.operations.errors by cause</li>
+ * <li>objectstore.backend.calls: latency of the calls the repository makes
+ * to the objectstore, i.e. without cache hits, likewise with
+ * objectstore.backend.calls.active and objectstore.backend.calls.errors</li>
+ * <li>objectstore.bytes: bytes of completed uploads (in) and of downloads
+ * written to clients (out), objectstore.object.size: size of the uploaded
+ * objects</li>
+ * <li>objectstore.context.build.time and objectstore.context.builds:
+ * bootstrap of the BlobStoreContext</li>
+ * <li>objectstore.dedup.uploads, objectstore.dedup.duplicates by outcome
+ * (copied or uploaded), objectstore.dedup.bytes.saved and
+ * objectstore.dedup.index.entries: statistics of the Deduplicator</li>
+ * <li>objectstore.blob.cache.requests by result, objectstore.blob.cache.evictions
+ * and objectstore.blob.cache.entries by tier: the BlobCache, and the cache.*
+ * meters of the Guava caches objectstore.metadata and objectstore.pages</li>
+ * <li>objectstore.compression.bytes by stage (original or compressed) and
+ * objectstore.compression.bytes.saved: uploads stored compressed</li>
+ * <li>objectstore.downloads by outcome, objectstore.downloads.active,
+ * objectstore.download.buffers.pooled and
+ * objectstore.download.buffers.fallback: downloads copied to clients</li>
+ * </ul>
+ *
+ * The meters of an operation are registered on its first call and looked
+ * up from a map afterwards, so a call costs two clock reads and a few
+ * atomic updates.
+ */
+@Component
+public class ObjectStoreMetrics {
+
+    private static final long[] OBJECT_SIZE_BUCKETS = { 1L << 10, 1L << 16, 1L << 20, 1L << 23, 1L << 26,
+            1L << 29, 1L << 32 };
+
+    private final MeterRegistry registry;
+    private final String backend;
+    private final ConcurrentMap<String, OperationMeters> operations = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, OperationMeters> backendCalls = new ConcurrentHashMap<>();
+    private final Counter bytesIn;
+    private final Counter bytesOut;
+    private final DistributionSummary objectSize;
+
+    @Autowired
+    public ObjectStoreMetrics(final MeterRegistry registry, final BlobStoreContextProvider contextProvider) {
+        this.registry = registry;
+        this.backend = contextProvider.getBackend();
+        this.bytesIn = Counter.builder("objectstore.bytes").baseUnit("bytes").tag("direction", "in")
+                .tag("backend", backend).description("Bytes of completed uploads").register(registry);
+        this.bytesOut = Counter.builder("objectstore.bytes").baseUnit("bytes").tag("direction", "out")
+                .tag("backend", backend).description("Bytes of downloads written to clients").register(registry);
+        this.objectSize = DistributionSummary.builder("objectstore.object.size").baseUnit("bytes")
+                .tag("backend", backend).sla(OBJECT_SIZE_BUCKETS).description("Size of the uploaded objects")
+                .register(registry);
+        TimeGauge.builder("objectstore.context.build.time", contextProvider, TimeUnit.MILLISECONDS,
+                BlobStoreContextProvider::getLastBuildTimeMillis).tag("backend", backend)
+                .description("Time taken by the last BlobStoreContext bootstrap").register(registry);
+        FunctionCounter.builder("objectstore.context.builds", contextProvider,
+                BlobStoreContextProvider::getBuildCount).tag("backend", backend)
+                .description("BlobStoreContexts built since startup").register(registry);
+    }
+
+    /**
+     * Times an ObjectStoreService operation.
+     *
+     * @param operation
+     *            e.g. uploadFile
+     * @param call
+     * @return result of the call
+     * @throws E
+     *             exception of the call, counted by its cause
+     */
+    public <T, E extends Exception> T record(final String operation, final TimedCall<T, E> call) throws E {
+        return record(operations.computeIfAbsent(operation, name -> new OperationMeters("objectstore.operations",
+                "operation", name)), call);
+    }
+
+    /**
+     * Times a call of the repository to the objectstore.
+     *
+     * @param name
+     *            e.g. getBlob
+     * @param call
+     * @return result of the call
+     * @throws E
+     *             exception of the call, counted by its cause
+     */
+    public <T, E extends Exception> T recordBackendCall(final String name, final TimedCall<T, E> call) throws E {
+        return record(backendCalls.computeIfAbsent(name, callName -> new OperationMeters(
+                "objectstore.backend.calls", "call", callName)), call);
+    }
+
+    /**
+     * @param bytes
+     *            length of a completed upload
+     */
+    public void uploaded(final long bytes) {
+        bytesIn.increment(bytes);
+        objectSize.record(bytes);
+    }
+
+    /**
+     * @param bytes
+     *            written to a client
+     */
+    public void downloaded(final long bytes) {
+        bytesOut.increment(bytes);
+    }
+
+    /**
+     * Registers the statistics of the deduplication.
+     *
+     * @param deduplicator
+     */
+    public void bind(final Deduplicator deduplicator) {
+        functionCounter("objectstore.dedup.uploads", deduplicator, Deduplicator::getUploads)
+                .description("Deduplicated uploads").register(registry);
+        functionCounter("objectstore.dedup.duplicates", deduplicator, Deduplicator::getDuplicates)
+                .tag("outcome", "copied").description("Duplicates copied instead of uploaded").register(registry);
+        functionCounter("objectstore.dedup.duplicates", deduplicator, Deduplicator::getDuplicatesUploaded)
+                .tag("outcome", "uploaded").description("Duplicates recognized after their upload")
+                .register(registry);
+        functionCounter("objectstore.dedup.bytes.saved", deduplicator, Deduplicator::getBytesSaved)
+                .baseUnit("bytes").description("Bytes of duplicates that have not been uploaded")
+                .register(registry);
+        Gauge.builder("objectstore.dedup.index.entries", deduplicator, Deduplicator::getIndexEntries)
+                .tag("backend", backend).description("Content hashes in the deduplication index")
+                .register(registry);
+    }
+
+    /**
+     * Registers the statistics of the download cache.
+     *
+     * @param blobCache
+     */
+    public void bind(final BlobCache blobCache) {
+        functionCounter("objectstore.blob.cache.requests", blobCache, BlobCache::getHitCount).tag("result", "hit")
+                .description("Downloads served from the cache").register(registry);
+        functionCounter("objectstore.blob.cache.requests", blobCache, BlobCache::getMissCount)
+                .tag("result", "miss").description("Cacheable downloads not found in the cache").register(registry);
+        functionCounter("objectstore.blob.cache.evictions", blobCache, BlobCache::getEvictionCount)
+                .description("Objects evicted from either tier").register(registry);
+        Gauge.builder("objectstore.blob.cache.entries", blobCache, BlobCache::getMemoryEntryCount)
+                .tag("tier", "memory").tag("backend", backend).register(registry);
+        Gauge.builder("objectstore.blob.cache.entries", blobCache, BlobCache::getDiskEntryCount).tag("tier", "disk")
+                .tag("backend", backend).register(registry);
+    }
+
+    /**
+     * Registers the statistics of the metadata and listing page caches.
+     *
+     * @param metadataCache
+     */
+    void bind(final MetadataCache metadataCache) {
+        metadataCache.bindTo(registry, Tags.of("backend", backend));
+    }
+
+    /**
+     * Registers the statistics of the compressed uploads.
+     *
+     * @param contentCompressor
+     */
+    public void bind(final ContentCompressor contentCompressor) {
+        functionCounter("objectstore.compression.bytes", contentCompressor, ContentCompressor::getOriginalBytes)
+                .tag("stage", "original").baseUnit("bytes").description("Bytes of compressed uploads")
+                .register(registry);
+        functionCounter("objectstore.compression.bytes", contentCompressor, ContentCompressor::getCompressedBytes)
+                .tag("stage", "compressed").baseUnit("bytes").description("Bytes of compressed uploads")
+                .register(registry);
+        functionCounter("objectstore.compression.bytes.saved", contentCompressor, ContentCompressor::getBytesSaved)
+                .baseUnit("bytes").description("Bytes not stored thanks to compression").register(registry);
+    }
+
+    /**
+     * Registers the statistics of the downloads copied to clients, their
+     * bytes are counted by objectstore.bytes.
+     *
+     * @param downloadStreamer
+     */
+    public void bind(final DownloadStreamer downloadStreamer) {
+        functionCounter("objectstore.downloads", downloadStreamer, DownloadStreamer::getCompletedDownloads)
+                .tag("outcome", "completed").description("Downloads copied to clients").register(registry);
+        functionCounter("objectstore.downloads", downloadStreamer, DownloadStreamer::getFailedDownloads)
+                .tag("outcome", "failed").description("Downloads copied to clients").register(registry);
+        Gauge.builder("objectstore.downloads.active", downloadStreamer, DownloadStreamer::getActiveDownloads)
+                .tag("backend", backend).description("Downloads being copied").register(registry);
+        Gauge.builder("objectstore.download.buffers.pooled", downloadStreamer, DownloadStreamer::getPooledBuffers)
+                .tag("backend", backend).description("Free buffers of the download pool").register(registry);
+        functionCounter("objectstore.download.buffers.fallback", downloadStreamer,
+                DownloadStreamer::getFallbackBuffers).description("Downloads that found no free pooled buffer")
+                        .register(registry);
+    }
+
+    private <T> FunctionCounter.Builder<T> functionCounter(final String name, final T object,
+            final ToDoubleFunction<T> count) {
+        return FunctionCounter.builder(name, object, count).tag("backend", backend);
+    }
+
+    private <T, E extends Exception> T record(final OperationMeters meters, final TimedCall<T, E> call) throws E {
+        final long start = System.nanoTime();
+        meters.active.incrementAndGet();
+        try {
+            final T result = call.call();
+            meters.success.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return result;
+        } catch (Exception e) {
+            meters.error.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            meters.errorCounter(Throwables.getRootCause(e).getClass().getSimpleName()).increment();
+            throw e;
+        } finally {
+            meters.active.decrementAndGet();
+        }
+    }
+
+    /**
+     * A call that may throw a checked exception, e.g. an upload.
+     */
+    @FunctionalInterface
+    public interface TimedCall<T, E extends Exception> {
+
+        T call() throws E;
+    }
+
+    /**
+     * Timers, in-flight gauge and error counters of one operation.
+     */
+    private final class OperationMeters {
+
+        private final String name;
+        private final String tagKey;
+        private final String tagValue;
+        private final Timer success;
+        private final Timer error;
+        private final AtomicInteger active = new AtomicInteger();
+        private final ConcurrentMap<String, Counter> errors = new ConcurrentHashMap<>();
+
+        OperationMeters(final String name, final String tagKey, final String tagValue) {
+            this.name = name;
+            this.tagKey = tagKey;
+            this.tagValue = tagValue;
+            this.success = timer("success");
+            this.error = timer("error");
+            Gauge.builder(name + ".active", active, AtomicInteger::get).tag(tagKey, tagValue)
+                    .tag("backend", backend).description("Calls in flight").register(registry);
+        }
+
+        Counter errorCounter(final String cause) {
+            return errors.computeIfAbsent(cause, key -> Counter.builder(name + ".errors").tag(tagKey, tagValue)
+                    .tag("backend", backend).tag("cause", key).description("Failed calls by cause")
+                    .register(registry));
+        }
+
+        private Timer timer(final String outcome) {
+            return Timer.builder(name).tag(tagKey, tagValue).tag("backend", backend).tag("outcome", outcome)
+                    .register(registry);
+        }
+    }
+}
@@ -2,175 +2,762 @@ package com.sap.refapps.objectstore.repository;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import javax.annotation.PreDestroy;
 
 import org.jclouds.blobstore.BlobStore;
 import org.jclouds.blobstore.BlobStoreContext;
 import org.jclouds.blobstore.domain.Blob;
+import org.jclouds.blobstore.domain.BlobMetadata;
 import org.jclouds.blobstore.domain.PageSet;
 import org.jclouds.blobstore.domain.StorageMetadata;
+import org.jclouds.blobstore.domain.StorageType;
+import org.jclouds.blobstore.options.CopyOptions;
+import org.jclouds.blobstore.options.GetOptions;
+import org.jclouds.blobstore.options.ListContainerOptions;
+import org.jclouds.http.HttpResponseException;
+import org.jclouds.io.ContentMetadata;
+import org.jclouds.io.ContentMetadataBuilder;
 import org.jclouds.io.Payload;
-import org.jclouds.io.payloads.ByteArrayPayload;
+import org.jclouds.io.payloads.FilePayload;
+import org.jclouds.io.payloads.InputStreamPayload;
+import org.jclouds.rest.AuthorizationException;
+import org.jclouds.s3.S3Client;
+import org.jclouds.s3.domain.DeleteResult;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 
+import com.google.common.base.Throwables;
+import com.google.common.io.Closeables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sap.refapps.objectstore.config.BlobStoreContextProvider;
+import com.sap.refapps.objectstore.config.ListConfiguration;
+import com.sap.refapps.objectstore.config.MetadataCacheConfiguration;
+import com.sap.refapps.objectstore.model.BlobContent;
 import com.sap.refapps.objectstore.model.BlobFile;
+import com.sap.refapps.objectstore.model.BlobFilePage;
 
 @Repository
 public class ObjectStoreRepository {
 
-    private BlobStoreContext context;
-    private BlobStore blobStore;
+    private static final String GOOGLE_CLOUD_STORAGE = "google-cloud-storage";
+    private static final String AWS_S3 = "aws-s3";
+    private static final int PRECONDITION_FAILED = 412;
+
+    private final BlobStoreContextProvider contextProvider;
+    private final MultipartUploader multipartUploader;
+    private final MultipartCopier multipartCopier;
+    private final ParallelDownloader parallelDownloader;
+    private final ContentCompressor contentCompressor;
+    private final Deduplicator deduplicator;
+    private final Optional<LocalFileReader> localFileReader;
+    private final BlobCache blobCache;
+    private final MetadataCache metadataCache;
+    private final ExecutorService metadataExecutor;
+    private final ObjectStoreMetrics metrics;
 
     private static Logger logger = LoggerFactory.getLogger(ObjectStoreRepository.class);
 
-    public BlobStoreContext getContext() {
-        return context;
+    @Autowired
+    public ObjectStoreRepository(final BlobStoreContextProvider contextProvider,
+            final MultipartUploader multipartUploader, final MultipartCopier multipartCopier,
+            final ParallelDownloader parallelDownloader, final ContentCompressor contentCompressor,
+            final Deduplicator deduplicator, final Optional<LocalFileReader> localFileReader,
+            final BlobCache blobCache, final ListConfiguration listConfig,
+            final MetadataCacheConfiguration metadataCacheConfig, final ObjectStoreMetrics metrics) {
+        this.contextProvider = contextProvider;
+        this.multipartUploader = multipartUploader;
+        this.multipartCopier = multipartCopier;
+        this.parallelDownloader = parallelDownloader;
+        this.contentCompressor = contentCompressor;
+        this.deduplicator = deduplicator;
+        this.localFileReader = localFileReader;
+        this.blobCache = blobCache;
+        this.metrics = metrics;
+        this.metadataExecutor = Executors.newFixedThreadPool(listConfig.getMetadataConcurrency(),
+                new ThreadFactoryBuilder().setNameFormat("objectstore-metadata-%d").setDaemon(true).build());
+        this.metadataCache = new MetadataCache(metadataCacheConfig, this::loadFileMetadata,
+                (bucketName, options, withMetadata) -> withBlobStore("list",
+                        blobStore -> listPage(blobStore, bucketName, options, withMetadata)));
+        metrics.bind(blobCache);
+        metrics.bind(metadataCache);
+        metrics.bind(contentCompressor);
+        metrics.bind(deduplicator);
     }
 
-    public void setContext(BlobStoreContext context) {
-        this.context = context;
+    @PreDestroy
+    public void shutdown() {
+        metadataExecutor.shutdownNow();
+        metadataCache.shutdown();
     }
 
     /**
+     * Streams the object to the objectstore without buffering it on the heap.
+     * Objects of compressible content types are stored compressed. With
+     * deduplication, the object is hashed while it streams, and one whose
+     * content has been uploaded before is copied within the objectstore if
+     * it has been read completely before its transfer.
+     *
      * @param bucketName
-     * @param data
+     * @param inputStream
+     * @param contentLength
+     *            length of the object or -1 if unknown
      * @param fileName
-     * @return message
+     * @param contentType
+     * @return eTag of the uploaded object
+     * @throws IOException
      */
-    public String uploadFile(String bucketName, byte[] bytes, String fileName, String contentType) {
+    public String uploadFile(String bucketName, InputStream inputStream, long contentLength, String fileName,
+            String contentType) throws IOException {
+        try {
+            if (deduplicator.isDeduplicated(contentLength)) {
+                return uploadDeduplicated(bucketName, inputStream, contentLength, fileName, contentType);
+            }
+            return store(bucketName, inputStream, contentLength, fileName, contentType, null);
+        } finally {
+            blobCache.invalidate(bucketName, fileName);
+            metadataCache.invalidate(bucketName, fileName);
+        }
+    }
+
+    /**
+     * @param storedCopy
+     *            called once the upload has been read completely before its
+     *            transfer, returns the eTag of a copy made instead or null;
+     *            null if the upload is not deduplicated
+     */
+    private String store(String bucketName, InputStream inputStream, long contentLength, String fileName,
+            String contentType, Supplier<String> storedCopy) throws IOException {
+        if (contentCompressor.isCompressible(contentType, contentLength)) {
+            return uploadCompressed(bucketName, inputStream, fileName, contentType, storedCopy);
+        }
+        return upload(bucketName, inputStream, contentLength, fileName, contentType, createUserMetadata(),
+                storedCopy);
+    }
 
-        String message = null;
+    /**
+     * The content hash is only known once the whole upload has been read.
+     * An upload that has been transferred by then is indexed, so a later
+     * upload of the same content is copied from it.
+     */
+    private String uploadDeduplicated(String bucketName, InputStream inputStream, long contentLength,
+            String fileName, String contentType) throws IOException {
+        final Deduplicator.HashedUpload hashedUpload = deduplicator.hash(inputStream, contentType);
+        final String eTag = store(bucketName, hashedUpload.getInputStream(), contentLength, fileName, contentType,
+                () -> copyDuplicate(bucketName, fileName, hashedUpload));
+        if (!hashedUpload.isDeduplicated()) {
+            deduplicator.stored(hashedUpload, bucketName, fileName, eTag);
+        }
+        return eTag;
+    }
 
+    /**
+     * @return eTag of the copy or null if no object with the same content is
+     *         known or the stored object has been changed or removed, the
+     *         upload is then transferred as usual
+     */
+    private String copyDuplicate(String bucketName, String fileName, Deduplicator.HashedUpload hashedUpload) {
+        final Optional<Deduplicator.StoredObject> found = deduplicator.find(hashedUpload);
+        if (!found.isPresent()) {
+            return null;
+        }
+        final Deduplicator.StoredObject storedObject = found.get();
         try {
-            // getting blob store
-            blobStore = getContext().getBlobStore();
+            final String eTag = withBlobStore("copyBlob", blobStore -> {
+                if (storedObject.getBucketName().equals(bucketName) && storedObject.getFileName().equals(fileName)) {
+                    // the object is uploaded again unchanged, nothing to copy
+                    BlobMetadata blobMetadata = blobStore.blobMetadata(bucketName, fileName);
+                    return blobMetadata != null && storedObject.getETag().equals(blobMetadata.getETag())
+                            ? blobMetadata.getETag() : null;
+                }
+                CopyOptions.Builder copyOptions = CopyOptions.builder();
+                if (GOOGLE_CLOUD_STORAGE.equals(contextProvider.getBackend())) {
+                    // Google Cloud Storage copies without preconditions only, the stored object is checked
+                    // beforehand and may still change in between
+                    BlobMetadata storedMetadata = blobStore.blobMetadata(storedObject.getBucketName(),
+                            storedObject.getFileName());
+                    if (storedMetadata == null || !storedObject.getETag().equals(storedMetadata.getETag())) {
+                        return null;
+                    }
+                } else {
+                    copyOptions.ifMatch(storedObject.getETag());
+                }
+                // the copy takes over content type and user metadata of the stored object
+                return blobStore.copyBlob(storedObject.getBucketName(), storedObject.getFileName(), bucketName,
+                        fileName, copyOptions.build());
+            });
+            if (eTag != null) {
+                deduplicator.deduplicated(hashedUpload, fileName, storedObject);
+                return eTag;
+            }
+        } catch (AuthorizationException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            logger.warn("Error occurred while copying the duplicate: " + storedObject.getFileName() + e);
+        }
+        deduplicator.remove(hashedUpload, storedObject);
+        return null;
+    }
+
+    private String uploadCompressed(String bucketName, InputStream inputStream, String fileName,
+            String contentType, Supplier<String> storedCopy) throws IOException {
+        final ContentCompressor.CompressedFile compressedFile = contentCompressor.compress(fileName, contentType,
+                inputStream);
+        try (InputStream compressedStream = Files.newInputStream(compressedFile.getFile())) {
+            if (storedCopy != null) {
+                final String eTag = storedCopy.get();
+                if (eTag != null) {
+                    return eTag;
+                }
+            }
+            // the encoding is restored from the user metadata on download
+            Map<String, String> userMetadata = createUserMetadata();
+            userMetadata.put(ContentCompressor.ENCODING_METADATA, compressedFile.getEncoding());
+            userMetadata.put(ContentCompressor.LENGTH_METADATA, String.valueOf(compressedFile.getOriginalLength()));
+            return upload(bucketName, compressedStream, compressedFile.getLength(), fileName, contentType,
+                    userMetadata, null);
+        } finally {
+            compressedFile.delete();
+        }
+    }
 
+    private String upload(String bucketName, InputStream inputStream, long contentLength, String fileName,
+            String contentType, Map<String, String> userMetadata, Supplier<String> storedCopy) throws IOException {
+
+        // a deduplicated upload goes through the multipart uploader as well, which holds an upload that fits
+        // into one part completely before transferring it
+        if (multipartUploader.isMultipartUpload(contentLength)
+                || storedCopy != null && multipartUploader.isEnabled()) {
+            return multipartUpload(bucketName, inputStream, contentLength, fileName, contentType, userMetadata,
+                    storedCopy != null ? storedCopy : () -> null);
+        }
+
+        if (contentLength >= 0) {
             // creating payload
-            Payload payload = new ByteArrayPayload(bytes);
+            Payload payload = new InputStreamPayload(inputStream);
+            payload.getContentMetadata().setContentLength(contentLength);
+            return putBlob(bucketName, payload, fileName, contentType, userMetadata);
+        }
 
-            // adding user metadata to the blob
-            Map<String, String> userMetadata = new HashMap<String, String>();
-            userMetadata.put("description", "sample content");
+        // The objectstore needs the length before the upload starts, so
+        // uploads of unknown length are spooled to a temporary file rather
+        // than the heap.
+        final Path spoolFile = Files.createTempFile("objectstore-upload-", ".tmp");
+        try {
+            Files.copy(inputStream, spoolFile, StandardCopyOption.REPLACE_EXISTING);
+            if (storedCopy != null) {
+                final String eTag = storedCopy.get();
+                if (eTag != null) {
+                    return eTag;
+                }
+            }
+            Payload payload = new FilePayload(spoolFile.toFile());
+            payload.getContentMetadata().setContentLength(Files.size(spoolFile));
+            return putBlob(bucketName, payload, fileName, contentType, userMetadata);
+        } finally {
+            Files.deleteIfExists(spoolFile);
+        }
+    }
 
+    private String putBlob(String bucketName, Payload payload, String fileName, String contentType,
+            Map<String, String> userMetadata) {
+        return withBlobStore("putBlob", blobStore -> {
             // creating Blob
             Blob blob = blobStore.blobBuilder(fileName).payload(payload).contentType(contentType)
                     .userMetadata(userMetadata).build();
 
-            // Multipart upload is currently not supported since it has an issue
-            // with OpenStack Swift.
-            // multipart issue:
+            // Objects below the multipart threshold are uploaded in a single
+            // request; multipart upload is left off for OpenStack Swift
             // (https://issues.apache.org/jira/browse/JCLOUDS-1064).
-            blobStore.putBlob(bucketName, blob);
-            message = fileName + " is successfully uploaded.";
+            return blobStore.putBlob(bucketName, blob);
+        });
+    }
 
-        } finally {
-            getContext().close();
+    private String multipartUpload(String bucketName, InputStream inputStream, long contentLength, String fileName,
+            String contentType, Map<String, String> userMetadata, Supplier<String> storedCopy) throws IOException {
+        try {
+            return withBlobStore("multipartUpload", blobStore -> {
+                BlobMetadata blobMetadata = blobStore.blobBuilder(fileName).userMetadata(userMetadata).forSigning()
+                        .contentType(contentType).build().getMetadata();
+                try {
+                    return multipartUploader.upload(blobStore, bucketName, blobMetadata, inputStream,
+                            contentLength, storedCopy);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
         }
+    }
 
-        return message;
+    private static Map<String, String> createUserMetadata() {
+        // adding user metadata to the blob
+        Map<String, String> userMetadata = new HashMap<String, String>();
+        userMetadata.put("description", "sample content");
+        return userMetadata;
     }
 
     /**
+     * Lists all files of the bucket, following the pages of the listing.
+     *
      * @param bucketName
+     * @param withMetadata
      * @return List<BlobFile>
      */
-    public List<BlobFile> listFiles(String bucketName) {
-
+    public List<BlobFile> listFiles(String bucketName, boolean withMetadata) {
         List<BlobFile> files = new ArrayList<>();
-        PageSet<? extends StorageMetadata> list;
+        streamFiles(bucketName, new ListContainerOptions(), withMetadata, files::addAll);
+        return files;
+    }
+
+    /**
+     * @param bucketName
+     * @param options
+     *            marker and maxResults of the page
+     * @param withMetadata
+     * @return one page of the listing
+     */
+    public BlobFilePage listFiles(String bucketName, ListContainerOptions options, boolean withMetadata) {
+        return metadataCache.getPage(bucketName, options, withMetadata);
+    }
+
+    /**
+     * Hands the listing to the consumer page by page as the pages arrive
+     * from the objectstore, so that no more than one page is held in memory.
+     * The pages are not cached, a walk reads each of them once.
+     *
+     * @param bucketName
+     * @param options
+     * @param withMetadata
+     * @param pageConsumer
+     */
+    public void streamFiles(String bucketName, ListContainerOptions options, boolean withMetadata,
+            Consumer<List<BlobFile>> pageConsumer) {
+        ListContainerOptions pageOptions = options;
+        while (true) {
+            BlobFilePage page = metadataCache.loadPage(bucketName, pageOptions, withMetadata);
+            pageConsumer.accept(page.getFiles());
+
+            String nextMarker = page.getNextMarker();
+            if (nextMarker == null || nextMarker.equals(pageOptions.getMarker())) {
+                return;
+            }
+            pageOptions = options.clone().afterMarker(nextMarker);
+        }
+    }
 
+    /**
+     * Builds the files from the list metadata alone. User metadata and the
+     * content type are only fetched, with bounded-parallel HEAD requests, if
+     * withMetadata is set. Common prefixes of a delimited listing are
+     * returned as directory entries ahead of the files.
+     */
+    private BlobFilePage listPage(BlobStore blobStore, String bucketName, ListContainerOptions options,
+            boolean withMetadata) {
+        List<BlobFile> directories = new ArrayList<>();
+        List<StorageMetadata> blobs = new ArrayList<>();
+
+        PageSet<? extends StorageMetadata> list = blobStore.list(bucketName, options);
+        for (StorageMetadata storageMetadata : list) {
+            if (storageMetadata.getType() == StorageType.BLOB) {
+                blobs.add(storageMetadata);
+            } else if (storageMetadata.getType() == StorageType.RELATIVE_PATH
+                    || storageMetadata.getType() == StorageType.FOLDER) {
+                directories.add(new BlobFile(bucketName, storageMetadata.getName(), true));
+            }
+        }
+        if (withMetadata) {
+            blobs = fetchBlobMetadata(blobStore, bucketName, blobs);
+        }
+
+        List<BlobFile> files = new ArrayList<>(directories.size() + blobs.size());
+        files.addAll(directories);
+        for (StorageMetadata storageMetadata : blobs) {
+            files.add(createBlobFile(bucketName, storageMetadata));
+        }
+        return new BlobFilePage(files, list.getNextMarker());
+    }
+
+    private List<StorageMetadata> fetchBlobMetadata(BlobStore blobStore, String bucketName,
+            List<StorageMetadata> blobs) {
+        List<Future<BlobMetadata>> futures = new ArrayList<>(blobs.size());
+        for (StorageMetadata storageMetadata : blobs) {
+            futures.add(metadataExecutor.submit(() -> blobStore.blobMetadata(bucketName, storageMetadata.getName())));
+        }
+
+        List<StorageMetadata> detailed = new ArrayList<>(blobs.size());
         try {
-            // getting blobstore
-            blobStore = getContext().getBlobStore();
-
-            // List all files from the bucket
-            list = blobStore.list(bucketName);
-
-            if (list != null) {
-                // Iterate and form the list to be returned
-                for (Iterator<? extends StorageMetadata> it = list.iterator(); it.hasNext();) {
-                    StorageMetadata storageMetadata = it.next();
-                    Blob blob = blobStore.getBlob(bucketName, storageMetadata.getName());
-                    files.add(createBlobFile(blob));
-                }
+            for (int i = 0; i < blobs.size(); i++) {
+                BlobMetadata blobMetadata = futures.get(i).get();
+                // a blob removed since the listing keeps its list metadata
+                detailed.add(blobMetadata != null ? blobMetadata : blobs.get(i));
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while fetching the metadata of " + bucketName, e);
+        } catch (ExecutionException e) {
+            Throwables.throwIfUnchecked(e.getCause());
+            throw new IllegalStateException(e.getCause());
         } finally {
-            getContext().close();
+            for (Future<BlobMetadata> future : futures) {
+                future.cancel(true);
+            }
         }
-        return files;
+        return detailed;
     }
 
     /**
+     * Downloads the object with a single getBlob call. A large object may be
+     * fetched in concurrent ranges instead, its length and ETag are taken
+     * from its metadata. Objects of the filesystem backend are read from
+     * their files if possible.
+     *
      * @param bucketName
      * @param fileName
-     * @return InputStream
+     * @param options
+     *            byte range and conditions of the download
+     * @return blobContent or empty if the blob does not exist
      */
-    public InputStream downloadFile(String bucketName, String fileName) {
-
-        InputStream inputStream = null;
-        try {
-            // getting blobstore
-            blobStore = getContext().getBlobStore();
-
+    public Optional<BlobContent> downloadFile(String bucketName, String fileName, GetOptions options) {
+        final boolean cacheable = blobCache.isCacheable(options);
+        if (cacheable) {
+            Optional<BlobContent> cachedContent = blobCache.get(bucketName, fileName);
+            if (cachedContent.isPresent()) {
+                return cachedContent;
+            }
+        }
+        if (localFileReader.isPresent() && localFileReader.get().isFastRead(options)) {
+            Optional<BlobContent> metadata = getFileMetadata(bucketName, fileName);
+            if (!metadata.isPresent()) {
+                return metadata;
+            }
+            try {
+                Optional<BlobContent> blobContent = localFileReader.get().read(bucketName, metadata.get(), options);
+                if (blobContent.isPresent()) {
+                    return blobContent;
+                }
+            } catch (IOException e) {
+                logger.error("Error occurred while downloading the object: " + fileName + e);
+                throw new UncheckedIOException(e);
+            }
+        }
+        // an invalidation during the download keeps its version out of the cache
+        final long generation = cacheable ? blobCache.getGeneration(bucketName, fileName) : 0;
+        if (parallelDownloader.isParallelDownload(options)) {
+            Optional<BlobContent> metadata = getFileMetadata(bucketName, fileName);
+            if (!metadata.isPresent()) {
+                return metadata;
+            }
+            if (parallelDownloader.isParallelDownload(options, metadata.get().getContentLength())) {
+                Optional<BlobContent> blobContent = downloadInRanges(bucketName, metadata.get());
+                if (blobContent.isPresent()) {
+                    try {
+                        return Optional.of(cacheable ? blobCache.put(bucketName, blobContent.get(), generation)
+                                : blobContent.get());
+                    } catch (IOException e) {
+                        logger.error("Error occurred while downloading the object: " + fileName + e);
+                        Closeables.closeQuietly(blobContent.get().getInputStream());
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            }
+        }
+        return withBlobStore("getBlob", blobStore -> {
             // getting blob
-            Blob blob = blobStore.getBlob(bucketName, fileName);
+            Blob blob;
+            try {
+                blob = blobStore.getBlob(bucketName, fileName, options);
+            } catch (HttpResponseException e) {
+                if (options.getIfMatch() != null && e.getResponse() != null
+                        && e.getResponse().getStatusCode() == PRECONDITION_FAILED) {
+                    // the ETag the caller read from the (cached) metadata is outdated
+                    blobCache.invalidate(bucketName, fileName);
+                    metadataCache.invalidate(bucketName, fileName);
+                }
+                throw e;
+            }
+            if (blob == null) {
+                return Optional.empty();
+            }
+            try {
+                InputStream inputStream = blob.getPayload().openStream();
+                logger.info(fileName + " is successfully downloaded.");
+                BlobContent blobContent = createBlobContent(blob.getMetadata(),
+                        blob.getPayload().getContentMetadata(), inputStream);
+                return Optional.of(cacheable ? blobCache.put(bucketName, blobContent, generation) : blobContent);
+
+            } catch (IOException e) {
+                logger.error("Error occurred while downloading the object: " + fileName + e);
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
 
-            inputStream = blob.getPayload().openStream();
+    /**
+     * Fetches a large object in concurrent ranges, all of them conditional
+     * on the ETag of its metadata.
+     *
+     * @param bucketName
+     * @param metadata
+     * @return blobContent or empty if the first range could not be fetched,
+     *         e.g. because the metadata is outdated
+     */
+    private Optional<BlobContent> downloadInRanges(String bucketName, BlobContent metadata) {
+        final String fileName = metadata.getName();
+        try {
+            InputStream inputStream = withBlobStore("getBlob", blobStore -> {
+                try {
+                    return parallelDownloader.download(blobStore, bucketName, fileName, metadata.getEtag(),
+                            metadata.getContentLength());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
             logger.info(fileName + " is successfully downloaded.");
-
-        } catch (IOException e) {
-            logger.error("Error occurred while downloading the object: " + fileName + e);
-
-        } finally {
-            getContext().close();
+            return Optional.of(new BlobContent(fileName, metadata.getEtag(), metadata.getLastModified(),
+                    metadata.getContentType(), metadata.getContentLength(), metadata.getSize(), inputStream,
+                    metadata.getContentEncoding(), metadata.getDecodedSize()));
+        } catch (UncheckedIOException e) {
+            // downloaded with a single getBlob instead
+            logger.warn("Error occurred while downloading the ranges of the object: " + fileName + e);
+            metadataCache.invalidate(bucketName, fileName);
+            return Optional.empty();
         }
+    }
+
+    /**
+     * @param bucketName
+     * @param fileName
+     * @return blobContent without payload or empty if the blob does not exist
+     */
+    public Optional<BlobContent> getFileMetadata(String bucketName, String fileName) {
+        return metadataCache.getMetadata(bucketName, fileName);
+    }
 
-        return inputStream;
+    private Optional<BlobContent> loadFileMetadata(String bucketName, String fileName) {
+        return withBlobStore("blobMetadata", blobStore -> {
+            BlobMetadata blobMetadata = blobStore.blobMetadata(bucketName, fileName);
+            return blobMetadata != null
+                    ? Optional.of(createBlobContent(blobMetadata, blobMetadata.getContentMetadata(), null))
+                    : Optional.<BlobContent> empty();
+        });
     }
 
     /**
+     * Removes the object with a single call. Like the objectstores, the
+     * removal of an object that does not exist succeeds.
+     *
      * @param bucketName
      * @param fileName
      * @return true/false if the blobfile has been deleted
      */
     public boolean deleteFile(String bucketName, String fileName) {
+        try {
+            withBlobStore("removeBlob", blobStore -> {
+                // removing blob
+                blobStore.removeBlob(bucketName, fileName);
+                return null;
+            });
+            logger.info(fileName + " is successfully deleted.");
+            return true;
+        } catch (RuntimeException e) {
+            logger.error("Error occurred while deleting the object: " + fileName + e);
+            return false;
+        } finally {
+            blobCache.invalidate(bucketName, fileName);
+            metadataCache.invalidate(bucketName, fileName);
+        }
+    }
 
-        boolean isBlobRemoved = false;
+    /**
+     * Removes the objects with the batch delete of the objectstore, i.e. a
+     * single S3 multi-object delete for up to 1000 names. The other
+     * objectstores have no batch delete, their objects are removed one by
+     * one, as jclouds would do.
+     *
+     * @param bucketName
+     * @param fileNames
+     * @return the reason each object could not be removed by its name, empty
+     *         if all of them were removed
+     */
+    public Map<String, String> deleteFiles(String bucketName, List<String> fileNames) {
         try {
-            // getting blobstore
-            blobStore = getContext().getBlobStore();
-            // removing blob
-            blobStore.removeBlob(bucketName, fileName);
+            final Map<String, String> errors = withBlobStore("removeBlobs",
+                    blobStore -> AWS_S3.equals(contextProvider.getBackend())
+                            ? deleteObjects(blobStore, bucketName, fileNames)
+                            : removeBlobs(blobStore, bucketName, fileNames));
+            logger.info((fileNames.size() - errors.size()) + " objects are successfully deleted.");
+            return errors;
+        } finally {
+            for (String fileName : fileNames) {
+                blobCache.invalidate(bucketName, fileName);
+            }
+            metadataCache.invalidate(bucketName, fileNames);
+        }
+    }
+
+    /**
+     * BlobStore.removeBlobs drops the per key errors of the multi-object
+     * delete, the S3 API reports them.
+     */
+    private static Map<String, String> deleteObjects(final BlobStore blobStore, final String bucketName,
+            final List<String> fileNames) {
+        final DeleteResult deleteResult = blobStore.getContext().unwrapApi(S3Client.class).deleteObjects(bucketName,
+                fileNames);
+        final Map<String, String> errors = new HashMap<>();
+        for (Map.Entry<String, DeleteResult.Error> error : deleteResult.getErrors().entrySet()) {
+            errors.put(error.getKey(), error.getValue().getCode() + ": " + error.getValue().getMessage());
+        }
+        return errors;
+    }
 
-            if (!isBlobExist(bucketName, fileName)) {
-                isBlobRemoved = true;
-                logger.info(fileName + " is successfully deleted.");
+    private static Map<String, String> removeBlobs(final BlobStore blobStore, final String bucketName,
+            final List<String> fileNames) {
+        final Map<String, String> errors = new HashMap<>();
+        for (String fileName : fileNames) {
+            try {
+                blobStore.removeBlob(bucketName, fileName);
+            } catch (AuthorizationException e) {
+                throw e;
+            } catch (RuntimeException e) {
+                errors.put(fileName, e.toString());
             }
+        }
+        return errors;
+    }
+
+    /**
+     * Copies the object within the bucket on the objectstore, its content is
+     * not transferred through the application. Content type and user
+     * metadata are taken over from the source unless the options override
+     * them; the encoding of a compressed object is kept either way. Where
+     * the objectstore supports it, the copy only succeeds while the source
+     * still has the ETag it had when its size was read.
+     *
+     * @param bucketName
+     * @param sourceName
+     * @param targetName
+     * @param options
+     *            contentMetadata with the content type and userMetadata
+     *            replacing those of the source, if set
+     * @return eTag of the copy or empty if the source does not exist
+     * @throws IOException
+     */
+    public Optional<String> copyFile(String bucketName, String sourceName, String targetName, CopyOptions options)
+            throws IOException {
+        try {
+            return withBlobStore("copyBlob", blobStore -> {
+                BlobMetadata sourceMetadata = blobStore.blobMetadata(bucketName, sourceName);
+                if (sourceMetadata == null) {
+                    return Optional.<String> empty();
+                }
+                ContentMetadata sourceContentMetadata = sourceMetadata.getContentMetadata();
+                boolean replaceMetadata = options.contentMetadata() != null || options.userMetadata() != null;
+                String contentType = options.contentMetadata() != null
+                        && options.contentMetadata().getContentType() != null
+                                ? options.contentMetadata().getContentType()
+                                : sourceContentMetadata.getContentType();
+                Map<String, String> userMetadata = options.userMetadata() != null
+                        ? createCopyUserMetadata(sourceMetadata.getUserMetadata(), options.userMetadata())
+                        : sourceMetadata.getUserMetadata();
+
+                Long size = sourceMetadata.getSize();
+                if (size != null && multipartCopier.isMultipartCopy(blobStore, size)) {
+                    BlobMetadata blobMetadata = blobStore.blobBuilder(targetName).userMetadata(userMetadata)
+                            .forSigning().contentType(contentType).build().getMetadata();
+                    try {
+                        return Optional.of(multipartCopier.copy(blobStore, bucketName, sourceName,
+                                sourceMetadata.getETag(), size, blobMetadata));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                CopyOptions.Builder copyOptions = CopyOptions.builder();
+                if (!GOOGLE_CLOUD_STORAGE.equals(contextProvider.getBackend())) {
+                    // Google Cloud Storage copies without preconditions only
+                    copyOptions.ifMatch(sourceMetadata.getETag());
+                }
+                if (replaceMetadata) {
+                    // replacing the metadata replaces all of it
+                    copyOptions.contentMetadata(ContentMetadataBuilder.fromContentMetadata(sourceContentMetadata)
+                            .contentType(contentType).build()).userMetadata(userMetadata);
+                }
+                return Optional.of(blobStore.copyBlob(bucketName, sourceName, bucketName, targetName,
+                        copyOptions.build()));
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
         } finally {
-            getContext().close();
+            blobCache.invalidate(bucketName, targetName);
+            metadataCache.invalidate(bucketName, targetName);
         }
+    }
 
-        return isBlobRemoved;
+    /**
+     * @return the user metadata of a copy, keeping what the download needs
+     *         to decode a compressed object
+     */
+    private static Map<String, String> createCopyUserMetadata(Map<String, String> sourceMetadata,
+            Map<String, String> userMetadata) {
+        Map<String, String> copyMetadata = new HashMap<>(userMetadata);
+        for (String key : new String[] { ContentCompressor.ENCODING_METADATA, ContentCompressor.LENGTH_METADATA }) {
+            if (sourceMetadata.containsKey(key)) {
+                copyMetadata.put(key, sourceMetadata.get(key));
+            }
+        }
+        return copyMetadata;
     }
 
+    /**
+     * @param bucketName
+     * @param fileName
+     * @return true if the blob exists, answered from the metadata cache if it
+     *         is enabled
+     */
     public boolean isBlobExist(String bucketName, String fileName) {
+        return getFileMetadata(bucketName, fileName).isPresent();
+    }
 
-        boolean isExist = false;
+    /**
+     * Runs an operation against the blobStore of the current shared context.
+     * The blobStore is resolved once per call and never stored, so concurrent
+     * operations cannot observe each other's handle. An authorization failure
+     * makes the provider rebuild the context.
+     *
+     * @param call
+     *            name the operation is timed under, e.g. getBlob
+     * @param operation
+     * @return result of the operation
+     */
+    private <T> T withBlobStore(final String call, final Function<BlobStore, T> operation) {
+        final BlobStoreContext context = contextProvider.getContext();
         try {
-            // getting blobstore
-            blobStore = getContext().getBlobStore();
-            isExist = blobStore.blobExists(bucketName, fileName);
-        } finally {
-            getContext().close();
+            return metrics.recordBackendCall(call, () -> operation.apply(context.getBlobStore()));
+        } catch (AuthorizationException e) {
+            contextProvider.invalidate(context);
+            throw e;
         }
-        return isExist;
     }
 
     /**
@@ -178,11 +765,54 @@ public class ObjectStoreRepository {
      * @return blobFile
      */
     public static BlobFile createBlobFile(final Blob blob) {
-        return new BlobFile(blob.getMetadata().getETag(), blob.getMetadata().getContainer(),
-                blob.getMetadata().getName(), blob.getMetadata().getUri().toString(),
-                readableFileSize(blob.getMetadata().getSize()), blob.getMetadata().getLastModified().toString(),
-                blob.getPayload().getContentMetadata().getContentType(), blob.getMetadata().getUserMetadata());
+        return createBlobFile(blob.getMetadata().getContainer(), blob.getMetadata());
+    }
 
+    /**
+     * A compressed object is listed with its length before compression if
+     * the metadata has its user metadata, e.g. with metadata=true, and with
+     * its stored length otherwise.
+     *
+     * @param bucketName
+     * @param storageMetadata
+     *            list or blob metadata
+     * @return blobFile
+     */
+    public static BlobFile createBlobFile(final String bucketName, final StorageMetadata storageMetadata) {
+        final String contentType = storageMetadata instanceof BlobMetadata
+                ? ((BlobMetadata) storageMetadata).getContentMetadata().getContentType()
+                : null;
+        final Map<String, String> userMetadata = storageMetadata.getUserMetadata();
+        final long originalLength = userMetadata != null
+                && userMetadata.get(ContentCompressor.ENCODING_METADATA) != null
+                        ? parseLength(userMetadata.get(ContentCompressor.LENGTH_METADATA))
+                        : -1;
+        final Long size = originalLength >= 0 ? Long.valueOf(originalLength) : storageMetadata.getSize();
+        return new BlobFile(storageMetadata.getETag(), bucketName, storageMetadata.getName(),
+                Objects.toString(storageMetadata.getUri(), null), readableFileSize(size != null ? size : 0),
+                Objects.toString(storageMetadata.getLastModified(), null), contentType,
+                storageMetadata.getUserMetadata());
+    }
+
+    private static BlobContent createBlobContent(final BlobMetadata blobMetadata,
+            final ContentMetadata contentMetadata, final InputStream inputStream) {
+        final Long size = blobMetadata.getSize();
+        final Long contentLength = contentMetadata.getContentLength();
+        final Map<String, String> userMetadata = blobMetadata.getUserMetadata();
+        final String contentEncoding = userMetadata != null ? userMetadata.get(ContentCompressor.ENCODING_METADATA)
+                : null;
+        return new BlobContent(blobMetadata.getName(), blobMetadata.getETag(), blobMetadata.getLastModified(),
+                contentMetadata.getContentType(), contentLength != null ? contentLength : -1,
+                size != null ? size : -1, inputStream, contentEncoding,
+                contentEncoding != null ? parseLength(userMetadata.get(ContentCompressor.LENGTH_METADATA)) : -1);
+    }
+
+    private static long parseLength(final String length) {
+        try {
+            return length != null ? Long.parseLong(length) : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
     }
 
     /**
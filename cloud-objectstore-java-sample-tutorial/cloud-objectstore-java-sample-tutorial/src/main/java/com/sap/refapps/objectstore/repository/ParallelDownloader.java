@@ -0,0 +1,416 @@
+package com.sap.refapps.objectstore.repository;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PreDestroy;
+
+import org.jclouds.blobstore.BlobStore;
+import org.jclouds.blobstore.domain.Blob;
+import org.jclouds.blobstore.options.GetOptions;
+import org.jclouds.http.HttpResponseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.google.common.base.FinalizablePhantomReference;
+import com.google.common.base.FinalizableReferenceQueue;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sap.refapps.objectstore.config.ParallelDownloadConfiguration;
+
+/**
+ * Downloads large objects as concurrent byte ranges, all of them ranged
+ * requests conditional on the ETag of the object, so the ranges of an
+ * object that changes during the download are never mixed. The ranges are
+ * fetched ahead of the client and handed out in order, failed ranges are
+ * retried individually.
+ * <p>
+ * Every range holds one of maxBufferedRanges permits until its fetch has
+ * ended and the reader is done with it, so a cancelled fetch still counts
+ * until its thread lets go of the buffer. The permits of a download are
+ * released on close, at the end of the object, when a range fails, and
+ * for a stream that is dropped without being closed once it is garbage
+ * collected.
+ */
+@Component
+public class ParallelDownloader {
+
+    private static final int PRECONDITION_FAILED = 412;
+
+    private final ParallelDownloadConfiguration config;
+    private final ExecutorService executor;
+    private final Semaphore bufferedRanges;
+    private final FinalizableReferenceQueue referenceQueue = new FinalizableReferenceQueue();
+    // keeps the cleaners of the open downloads reachable
+    private final Set<DownloadCleaner> cleaners = ConcurrentHashMap.newKeySet();
+
+    private static Logger logger = LoggerFactory.getLogger(ParallelDownloader.class);
+
+    @Autowired
+    public ParallelDownloader(final ParallelDownloadConfiguration config) {
+        this.config = config;
+        this.executor = Executors.newFixedThreadPool(config.getMaxBufferedRanges(),
+                new ThreadFactoryBuilder().setNameFormat("objectstore-range-%d").setDaemon(true).build());
+        this.bufferedRanges = new Semaphore(config.getMaxBufferedRanges());
+    }
+
+    /**
+     * @param options
+     *            options of the download
+     * @return true if the download is parallel for a large enough object,
+     *         i.e. it is enabled and the whole object is downloaded
+     *         unconditionally
+     */
+    public boolean isParallelDownload(final GetOptions options) {
+        return config.isEnabled() && options.getRanges().isEmpty() && options.getIfMatch() == null
+                && options.getIfNoneMatch() == null && options.getIfModifiedSince() == null
+                && options.getIfUnmodifiedSince() == null;
+    }
+
+    /**
+     * @param options
+     *            options of the download
+     * @param contentLength
+     *            length of the downloaded object or -1 if unknown
+     * @return true if the object should be downloaded in ranges
+     */
+    public boolean isParallelDownload(final GetOptions options, final long contentLength) {
+        return isParallelDownload(options) && contentLength > config.getThreshold()
+                && contentLength > config.getRangeSize();
+    }
+
+    /**
+     * Returns once the first range has arrived, so an outdated ETag fails
+     * before anything is sent to the client.
+     *
+     * @param blobStore
+     * @param bucketName
+     * @param fileName
+     * @param eTag
+     *            ETag of the downloaded version
+     * @param contentLength
+     *            length of the object
+     * @return inputStream reading the whole object
+     * @throws IOException
+     *             if the first range could not be fetched, e.g. because
+     *             the object has changed
+     */
+    public InputStream download(final BlobStore blobStore, final String bucketName, final String fileName,
+            final String eTag, final long contentLength) throws IOException {
+        final Download download = new Download(blobStore, bucketName, fileName, eTag, contentLength);
+        final RangedInputStream inputStream = new RangedInputStream(download);
+        cleaners.add(new DownloadCleaner(inputStream, download));
+        try {
+            download.nextRange();
+        } catch (IOException | RuntimeException e) {
+            inputStream.close();
+            throw e;
+        }
+        return inputStream;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+        referenceQueue.close();
+    }
+
+    /**
+     * @return permits of buffered ranges that are not held by a download
+     */
+    int getAvailableBuffers() {
+        return bufferedRanges.availablePermits();
+    }
+
+    private byte[] fetchRange(final BlobStore blobStore, final String bucketName, final String fileName,
+            final String eTag, final long start, final long end) throws IOException, InterruptedException {
+        final GetOptions options = new GetOptions().range(start, end);
+        if (eTag != null) {
+            options.ifETagMatches(eTag);
+        }
+        int attempt = 0;
+        while (true) {
+            try {
+                final Blob blob = blobStore.getBlob(bucketName, fileName, options);
+                if (blob == null) {
+                    throw new IOException(fileName + " has been removed while it was downloaded");
+                }
+                try (InputStream inputStream = blob.getPayload().openStream()) {
+                    final byte[] range = new byte[(int) (end - start + 1)];
+                    ByteStreams.readFully(inputStream, range);
+                    return range;
+                }
+            } catch (IOException | RuntimeException e) {
+                if (e instanceof HttpResponseException && ((HttpResponseException) e).getResponse() != null
+                        && ((HttpResponseException) e).getResponse().getStatusCode() == PRECONDITION_FAILED) {
+                    throw new IOException(fileName + " has been changed while it was downloaded", e);
+                }
+                // a cancelled range is not retried
+                if (++attempt > config.getMaxRetries() || e instanceof InterruptedIOException
+                        || Thread.currentThread().isInterrupted()) {
+                    throw e;
+                }
+                logger.warn("Retrying range " + start + "-" + end + " of " + fileName + " after: " + e);
+            }
+            Thread.sleep(100L << attempt);
+        }
+    }
+
+    /**
+     * One range, owned by its fetch and by the download reading it. The
+     * permit of its buffer is released once both have let go of it.
+     */
+    private final class Range implements Runnable {
+
+        private final Download download;
+        private final long start;
+        private final long end;
+        private final CompletableFuture<byte[]> result = new CompletableFuture<>();
+        private final AtomicInteger owners = new AtomicInteger(2);
+        private Thread fetchThread;
+        private boolean cancelled;
+
+        Range(final Download download, final long start, final long end) {
+            this.download = download;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public void run() {
+            try {
+                synchronized (this) {
+                    if (cancelled) {
+                        result.cancel(false);
+                        return;
+                    }
+                    fetchThread = Thread.currentThread();
+                }
+                result.complete(fetchRange(download.blobStore, download.bucketName, download.fileName,
+                        download.eTag, start, end));
+            } catch (Exception e) {
+                result.completeExceptionally(e);
+            } finally {
+                synchronized (this) {
+                    fetchThread = null;
+                }
+                // an interrupt of the cancellation must not hit the next range
+                Thread.interrupted();
+                release();
+            }
+        }
+
+        /**
+         * Interrupts the fetch, its permit is released once it has ended.
+         */
+        synchronized void cancel() {
+            cancelled = true;
+            if (fetchThread != null) {
+                fetchThread.interrupt();
+            }
+        }
+
+        void release() {
+            if (owners.decrementAndGet() == 0) {
+                bufferedRanges.release();
+            }
+        }
+    }
+
+    /**
+     * State of a download, separate from its stream so that it can still be
+     * released after the stream has been garbage collected. Reads the
+     * ranges from a window of up to concurrency fetches, which also orders
+     * the ranges completing out of order.
+     */
+    private final class Download {
+
+        private final BlobStore blobStore;
+        private final String bucketName;
+        private final String fileName;
+        private final String eTag;
+        private final long contentLength;
+        private final Deque<Range> window = new ArrayDeque<>();
+        private long nextRangeStart;
+        private Range current;
+        private byte[] range;
+        private int position;
+        private boolean finished;
+        private boolean released;
+
+        Download(final BlobStore blobStore, final String bucketName, final String fileName, final String eTag,
+                final long contentLength) {
+            this.blobStore = blobStore;
+            this.bucketName = bucketName;
+            this.fileName = fileName;
+            this.eTag = eTag;
+            this.contentLength = contentLength;
+        }
+
+        synchronized int read(final byte[] buffer, final int offset, final int length) throws IOException {
+            if (finished) {
+                return -1;
+            }
+            if (released) {
+                throw new IOException("Stream closed");
+            }
+            if (length == 0) {
+                return 0;
+            }
+            boolean failed = true;
+            try {
+                while (range == null || position == range.length) {
+                    if (!nextRange()) {
+                        finished = true;
+                        return -1;
+                    }
+                }
+                final int read = Math.min(length, range.length - position);
+                System.arraycopy(range, position, buffer, offset, read);
+                position += read;
+                failed = false;
+                return read;
+            } finally {
+                if (failed || finished) {
+                    release();
+                }
+            }
+        }
+
+        synchronized boolean isReleased() {
+            return released;
+        }
+
+        /**
+         * Cancels the fetches and lets go of the ranges, their permits are
+         * released as the fetches end.
+         */
+        synchronized void release() {
+            if (released) {
+                return;
+            }
+            released = true;
+            releaseCurrent();
+            for (Range pending : window) {
+                pending.cancel();
+                pending.release();
+            }
+            window.clear();
+        }
+
+        private boolean nextRange() throws IOException {
+            releaseCurrent();
+            try {
+                if (window.isEmpty()) {
+                    if (nextRangeStart >= contentLength) {
+                        return false;
+                    }
+                    // nothing left to read, wait for the ranges buffered by
+                    // other downloads
+                    bufferedRanges.acquire();
+                    submitNextRange();
+                }
+                startFetches();
+                current = window.removeFirst();
+                range = current.result.get();
+                position = 0;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while downloading " + fileName, e);
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof IOException ? (IOException) e.getCause()
+                        : new IOException("Error occurred while downloading " + fileName, e.getCause());
+            }
+            return true;
+        }
+
+        private void releaseCurrent() {
+            if (current != null) {
+                current.release();
+                current = null;
+                range = null;
+            }
+        }
+
+        /**
+         * Fetches ahead as far as the window and the buffered ranges allow,
+         * without waiting.
+         */
+        private void startFetches() {
+            while (nextRangeStart < contentLength && window.size() < config.getConcurrency()
+                    && bufferedRanges.tryAcquire()) {
+                submitNextRange();
+            }
+        }
+
+        private void submitNextRange() {
+            final long start = nextRangeStart;
+            final long end = Math.min(start + config.getRangeSize(), contentLength) - 1;
+            final Range next = new Range(this, start, end);
+            window.addLast(next);
+            nextRangeStart = end + 1;
+            executor.execute(next);
+        }
+    }
+
+    private final class RangedInputStream extends InputStream {
+
+        private final Download download;
+
+        RangedInputStream(final Download download) {
+            this.download = download;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+            return download.read(buffer, offset, length);
+        }
+
+        @Override
+        public void close() {
+            download.release();
+        }
+    }
+
+    /**
+     * Releases the download of a stream that was dropped without being
+     * closed.
+     */
+    private final class DownloadCleaner extends FinalizablePhantomReference<RangedInputStream> {
+
+        private final Download download;
+
+        DownloadCleaner(final RangedInputStream inputStream, final Download download) {
+            super(inputStream, referenceQueue);
+            this.download = download;
+        }
+
+        @Override
+        public void finalizeReferent() {
+            cleaners.remove(this);
+            if (!download.isReleased()) {
+                logger.warn("Releasing the download of " + download.fileName + " that was not closed");
+                download.release();
+            }
+        }
+    }
+}
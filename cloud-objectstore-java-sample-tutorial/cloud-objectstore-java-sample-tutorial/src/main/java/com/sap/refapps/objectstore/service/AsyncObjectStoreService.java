@@ -0,0 +1,28 @@
+package com.sap.refapps.objectstore.service;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import org.jclouds.blobstore.options.GetOptions;
+import org.jclouds.blobstore.options.ListContainerOptions;
+
+import com.sap.refapps.objectstore.model.BlobContent;
+import com.sap.refapps.objectstore.model.BlobFilePage;
+
+/**
+ * Asynchronous variant of the ObjectStoreService. The futures complete on
+ * the objectStoreExecutor, so the calling thread is not held while waiting
+ * for the objectstore.
+ */
+public interface AsyncObjectStoreService extends ObjectStoreService {
+
+    public CompletableFuture<Optional<BlobContent>> getFileAsync(String fileName, GetOptions options);
+
+    public CompletableFuture<Optional<BlobContent>> getFileMetadataAsync(String fileName);
+
+    public CompletableFuture<Boolean> deleteFileAsync(String fileName);
+
+    public CompletableFuture<BlobFilePage> listObjectsAsync(ListContainerOptions options, boolean withMetadata);
+
+    public CompletableFuture<Boolean> isBlobExistAsync(String name);
+}
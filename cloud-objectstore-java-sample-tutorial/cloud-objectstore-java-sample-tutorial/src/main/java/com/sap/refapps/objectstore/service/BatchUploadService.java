@@ -0,0 +1,210 @@
+package com.sap.refapps.objectstore.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.fileupload.FileItemIterator;
+import org.apache.commons.fileupload.FileItemStream;
+import org.apache.commons.fileupload.FileUploadException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sap.refapps.objectstore.config.BatchUploadConfiguration;
+import com.sap.refapps.objectstore.model.UploadResult;
+
+/**
+ * Uploads the files of a multipart request concurrently. The request can
+ * only be read one part after the other, so each file is read into a buffer
+ * (or a temporary file once it outgrows the buffer) and handed to a worker
+ * pool while the next file is read. Reading stops while maxPendingFiles
+ * files, shared by all requests, are waiting for or in upload.
+ */
+@Service
+public class BatchUploadService {
+
+    private final ObjectStoreService objectStoreService;
+    private final BatchUploadConfiguration config;
+    private final ExecutorService executor;
+    private final Semaphore pendingFiles;
+
+    private static Logger logger = LoggerFactory.getLogger(BatchUploadService.class);
+
+    @Autowired
+    public BatchUploadService(final ObjectStoreService objectStoreService, final BatchUploadConfiguration config) {
+        this.objectStoreService = objectStoreService;
+        this.config = config;
+        this.executor = Executors.newFixedThreadPool(config.getConcurrency(),
+                new ThreadFactoryBuilder().setNameFormat("objectstore-batch-%d").setDaemon(true).build());
+        this.pendingFiles = new Semaphore(config.getMaxPendingFiles());
+    }
+
+    /**
+     * @param iter
+     *            files of the multipart request
+     * @return result of every file in the order of the request
+     * @throws IOException
+     *             if the request cannot be read
+     * @throws FileUploadException
+     */
+    public List<UploadResult> upload(final FileItemIterator iter) throws IOException, FileUploadException {
+        final List<Future<UploadResult>> results = new ArrayList<>();
+        try {
+            while (iter.hasNext()) {
+                final FileItemStream item = iter.next();
+                if (item.isFormField()) {
+                    continue;
+                }
+                acquire();
+                final PendingFile pendingFile;
+                try (InputStream inputStream = item.openStream()) {
+                    pendingFile = read(item.getName(), item.getContentType(), inputStream);
+                } catch (IOException | RuntimeException e) {
+                    pendingFiles.release();
+                    throw e;
+                }
+                results.add(executor.submit(() -> {
+                    try {
+                        return upload(pendingFile);
+                    } finally {
+                        pendingFile.delete();
+                        pendingFiles.release();
+                    }
+                }));
+            }
+        } finally {
+            // files already read are uploaded even if the request breaks off
+            awaitAll(results);
+        }
+        final List<UploadResult> uploadResults = new ArrayList<>(results.size());
+        for (Future<UploadResult> result : results) {
+            uploadResults.add(getResult(result));
+        }
+        return uploadResults;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private UploadResult upload(final PendingFile pendingFile) {
+        final long start = System.nanoTime();
+        try (InputStream inputStream = pendingFile.openStream()) {
+            final String eTag = objectStoreService.uploadFile(inputStream, pendingFile.length, pendingFile.name,
+                    pendingFile.contentType);
+            return new UploadResult(pendingFile.name, UploadResult.UPLOADED, eTag, pendingFile.length,
+                    elapsedMillis(start), null);
+        } catch (IOException | RuntimeException e) {
+            logger.error("Error occurred while uploading the object: " + pendingFile.name + e);
+            return new UploadResult(pendingFile.name, UploadResult.FAILED, null, pendingFile.length,
+                    elapsedMillis(start), e.toString());
+        }
+    }
+
+    private PendingFile read(final String name, final String contentType, final InputStream inputStream)
+            throws IOException {
+        final byte[] buffer = ByteStreams.toByteArray(ByteStreams.limit(inputStream, config.getMemoryBufferSize()));
+        final int next = inputStream.read();
+        if (next == -1) {
+            return new PendingFile(name, contentType, buffer, buffer.length, null);
+        }
+        final Path spoolFile = Files.createTempFile("objectstore-batch-", ".tmp");
+        try (OutputStream outputStream = Files.newOutputStream(spoolFile)) {
+            outputStream.write(buffer);
+            outputStream.write(next);
+            ByteStreams.copy(inputStream, outputStream);
+        } catch (IOException e) {
+            Files.deleteIfExists(spoolFile);
+            throw e;
+        }
+        return new PendingFile(name, contentType, null, Files.size(spoolFile), spoolFile);
+    }
+
+    private void acquire() throws IOException {
+        try {
+            pendingFiles.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a pending upload", e);
+        }
+    }
+
+    private static void awaitAll(final List<Future<UploadResult>> results) {
+        for (Future<UploadResult> result : results) {
+            try {
+                result.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                // reported along with the results
+            }
+        }
+    }
+
+    private static UploadResult getResult(final Future<UploadResult> result) {
+        try {
+            return result.get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static long elapsedMillis(final long start) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    /**
+     * A file read from the request, held in a buffer or a temporary file.
+     */
+    private static final class PendingFile {
+
+        private final String name;
+        private final String contentType;
+        private final byte[] buffer;
+        private final long length;
+        private final Path spoolFile;
+
+        PendingFile(final String name, final String contentType, final byte[] buffer, final long length,
+                final Path spoolFile) {
+            this.name = name;
+            this.contentType = contentType;
+            this.buffer = buffer;
+            this.length = length;
+            this.spoolFile = spoolFile;
+        }
+
+        InputStream openStream() throws IOException {
+            return buffer != null ? new ByteArrayInputStream(buffer, 0, (int) length)
+                    : Files.newInputStream(spoolFile);
+        }
+
+        void delete() {
+            if (spoolFile != null) {
+                try {
+                    Files.deleteIfExists(spoolFile);
+                } catch (IOException e) {
+                    logger.warn("Error occurred while deleting the spool file: " + spoolFile + e);
+                }
+            }
+        }
+    }
+}
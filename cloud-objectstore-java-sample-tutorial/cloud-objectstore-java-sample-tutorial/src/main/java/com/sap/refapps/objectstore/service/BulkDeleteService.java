@@ -0,0 +1,172 @@
+package com.sap.refapps.objectstore.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+import javax.annotation.PreDestroy;
+
+import org.jclouds.blobstore.options.ListContainerOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sap.refapps.objectstore.config.BulkDeleteConfiguration;
+import com.sap.refapps.objectstore.model.BlobFile;
+import com.sap.refapps.objectstore.model.DeleteResult;
+
+/**
+ * Deletes many objects with the batch delete of the objectstore. The names
+ * are split into chunks of chunkSize, at most 1000, up to concurrency chunks
+ * are deleted in parallel. Each name is reported as deleted or failed on its
+ * own, a chunk only fails as a whole if the request fails. A prefix is
+ * deleted while its listing is read, one page at a time, so the names are
+ * never held in memory all at once.
+ */
+@Service
+public class BulkDeleteService {
+
+    /**
+     * Most names an S3 multi-object delete accepts.
+     */
+    static final int MAX_CHUNK_SIZE = 1000;
+
+    private final ObjectStoreService objectStoreService;
+    private final BulkDeleteConfiguration config;
+    private final ExecutorService executor;
+    private final int chunkSize;
+
+    private static Logger logger = LoggerFactory.getLogger(BulkDeleteService.class);
+
+    @Autowired
+    public BulkDeleteService(final ObjectStoreService objectStoreService, final BulkDeleteConfiguration config) {
+        this.objectStoreService = objectStoreService;
+        this.config = config;
+        this.chunkSize = Math.min(config.getChunkSize(), MAX_CHUNK_SIZE);
+        this.executor = Executors.newFixedThreadPool(config.getConcurrency(),
+                new ThreadFactoryBuilder().setNameFormat("objectstore-bulk-delete-%d").setDaemon(true).build());
+    }
+
+    /**
+     * @param fileNames
+     * @param resultConsumer
+     *            receives the results of each chunk as it completes, always
+     *            on the calling thread
+     */
+    public void delete(final List<String> fileNames, final Consumer<List<DeleteResult>> resultConsumer) {
+        final ChunkedDelete chunkedDelete = new ChunkedDelete(resultConsumer);
+        for (String fileName : fileNames) {
+            chunkedDelete.add(fileName);
+        }
+        chunkedDelete.finish();
+    }
+
+    /**
+     * @param prefix
+     *            all objects whose names start with the prefix are deleted
+     * @param resultConsumer
+     *            receives the results of each chunk as it completes, always
+     *            on the calling thread
+     */
+    public void deletePrefix(final String prefix, final Consumer<List<DeleteResult>> resultConsumer) {
+        final ChunkedDelete chunkedDelete = new ChunkedDelete(resultConsumer);
+        objectStoreService.streamObjects(new ListContainerOptions().prefix(prefix).recursive(), false, page -> {
+            for (BlobFile blobFile : page) {
+                if (!blobFile.isDirectory()) {
+                    chunkedDelete.add(blobFile.getName());
+                }
+            }
+        });
+        chunkedDelete.finish();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private List<DeleteResult> deleteChunk(final List<String> chunk) {
+        final List<DeleteResult> results = new ArrayList<>(chunk.size());
+        try {
+            final Map<String, String> errors = objectStoreService.deleteFiles(chunk);
+            for (String fileName : chunk) {
+                final String error = errors.get(fileName);
+                results.add(error == null ? new DeleteResult(fileName, DeleteResult.DELETED, null)
+                        : new DeleteResult(fileName, DeleteResult.FAILED, error));
+            }
+        } catch (RuntimeException e) {
+            logger.error("Error occurred while deleting " + chunk.size() + " objects starting with: " + chunk.get(0)
+                    + e);
+            for (String fileName : chunk) {
+                results.add(new DeleteResult(fileName, DeleteResult.FAILED, e.toString()));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Collects names into chunks and keeps up to concurrency chunks in
+     * flight, handing finished chunks to the consumer.
+     */
+    private final class ChunkedDelete {
+
+        private final Consumer<List<DeleteResult>> resultConsumer;
+        private final CompletionService<List<DeleteResult>> completionService;
+        private List<String> chunk;
+        private int inFlight;
+
+        ChunkedDelete(final Consumer<List<DeleteResult>> resultConsumer) {
+            this.resultConsumer = resultConsumer;
+            this.completionService = new ExecutorCompletionService<>(executor);
+            this.chunk = new ArrayList<>(chunkSize);
+        }
+
+        void add(final String fileName) {
+            chunk.add(fileName);
+            if (chunk.size() == chunkSize) {
+                submit();
+            }
+        }
+
+        void finish() {
+            if (!chunk.isEmpty()) {
+                submit();
+            }
+            while (inFlight > 0) {
+                takeCompleted();
+            }
+        }
+
+        private void submit() {
+            if (inFlight == config.getConcurrency()) {
+                takeCompleted();
+            }
+            final List<String> names = chunk;
+            completionService.submit(() -> deleteChunk(names));
+            inFlight++;
+            chunk = new ArrayList<>(chunkSize);
+        }
+
+        private void takeCompleted() {
+            try {
+                final List<DeleteResult> results = completionService.take().get();
+                inFlight--;
+                resultConsumer.accept(results);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while deleting objects", e);
+            } catch (ExecutionException e) {
+                // deleteChunk reports its failures as results
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+    }
+}
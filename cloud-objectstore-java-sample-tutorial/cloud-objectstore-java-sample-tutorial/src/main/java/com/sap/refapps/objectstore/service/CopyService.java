@@ -0,0 +1,158 @@
+package com.sap.refapps.objectstore.service;
+
+import java.io.IOException;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+import javax.annotation.PreDestroy;
+
+import org.jclouds.blobstore.options.CopyOptions;
+import org.jclouds.blobstore.options.ListContainerOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sap.refapps.objectstore.config.CopyConfiguration;
+import com.sap.refapps.objectstore.model.BlobFile;
+import com.sap.refapps.objectstore.model.CopyResult;
+
+/**
+ * Copies and moves objects with the server-side copy of the objectstore, so
+ * their content never passes through the application. A move deletes the
+ * source once its copy has succeeded. The objects of a prefix are copied
+ * while its listing is read, up to concurrency objects in parallel.
+ */
+@Service
+public class CopyService {
+
+    private final ObjectStoreService objectStoreService;
+    private final CopyConfiguration config;
+    private final ExecutorService executor;
+
+    private static Logger logger = LoggerFactory.getLogger(CopyService.class);
+
+    @Autowired
+    public CopyService(final ObjectStoreService objectStoreService, final CopyConfiguration config) {
+        this.objectStoreService = objectStoreService;
+        this.config = config;
+        this.executor = Executors.newFixedThreadPool(config.getConcurrency(),
+                new ThreadFactoryBuilder().setNameFormat("objectstore-copy-%d").setDaemon(true).build());
+    }
+
+    /**
+     * @param sourceName
+     * @param targetName
+     * @param options
+     *            content type and user metadata of the copy, if they replace
+     *            those of the source
+     * @param move
+     *            delete the source after it has been copied
+     * @return result of the copy
+     */
+    public CopyResult copy(final String sourceName, final String targetName, final CopyOptions options,
+            final boolean move) {
+        try {
+            final Optional<String> eTag = objectStoreService.copyFile(sourceName, targetName, options);
+            if (!eTag.isPresent()) {
+                return new CopyResult(sourceName, targetName, CopyResult.NOT_FOUND, null, null);
+            }
+            if (!move) {
+                return new CopyResult(sourceName, targetName, CopyResult.COPIED, eTag.get(), null);
+            }
+            if (!objectStoreService.deleteFile(sourceName)) {
+                return new CopyResult(sourceName, targetName, CopyResult.FAILED, eTag.get(),
+                        "copied, but the source could not be deleted");
+            }
+            return new CopyResult(sourceName, targetName, CopyResult.MOVED, eTag.get(), null);
+        } catch (IOException | RuntimeException e) {
+            logger.error("Error occurred while copying the object: " + sourceName + e);
+            return new CopyResult(sourceName, targetName, CopyResult.FAILED, null, e.toString());
+        }
+    }
+
+    /**
+     * @param prefix
+     *            all objects whose names start with the prefix are copied
+     * @param targetPrefix
+     *            replaces the prefix in the names of the copies
+     * @param options
+     *            content type and user metadata of the copies, if they
+     *            replace those of the sources
+     * @param move
+     *            delete every source after it has been copied
+     * @param resultConsumer
+     *            receives the result of each object as it completes, always
+     *            on the calling thread
+     */
+    public void copyPrefix(final String prefix, final String targetPrefix, final CopyOptions options,
+            final boolean move, final Consumer<CopyResult> resultConsumer) {
+        final ParallelCopy parallelCopy = new ParallelCopy(resultConsumer);
+        objectStoreService.streamObjects(new ListContainerOptions().prefix(prefix).recursive(), false, page -> {
+            for (BlobFile blobFile : page) {
+                if (!blobFile.isDirectory()) {
+                    final String sourceName = blobFile.getName();
+                    final String targetName = targetPrefix + sourceName.substring(prefix.length());
+                    parallelCopy.submit(() -> copy(sourceName, targetName, options, move));
+                }
+            }
+        });
+        parallelCopy.finish();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Keeps up to concurrency copies in flight, handing finished copies to
+     * the consumer.
+     */
+    private final class ParallelCopy {
+
+        private final Consumer<CopyResult> resultConsumer;
+        private final CompletionService<CopyResult> completionService;
+        private int inFlight;
+
+        ParallelCopy(final Consumer<CopyResult> resultConsumer) {
+            this.resultConsumer = resultConsumer;
+            this.completionService = new ExecutorCompletionService<>(executor);
+        }
+
+        void submit(final Callable<CopyResult> copy) {
+            if (inFlight == config.getConcurrency()) {
+                takeCompleted();
+            }
+            completionService.submit(copy);
+            inFlight++;
+        }
+
+        void finish() {
+            while (inFlight > 0) {
+                takeCompleted();
+            }
+        }
+
+        private void takeCompleted() {
+            try {
+                final CopyResult result = completionService.take().get();
+                inFlight--;
+                resultConsumer.accept(result);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while copying objects", e);
+            } catch (ExecutionException e) {
+                // copy reports its failures as results
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+    }
+}
@@ -1,20 +1,60 @@
 package com.sap.refapps.objectstore.service;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import org.jclouds.blobstore.options.CopyOptions;
+import org.jclouds.blobstore.options.GetOptions;
+import org.jclouds.blobstore.options.ListContainerOptions;
 import org.springframework.stereotype.Service;
+import com.sap.refapps.objectstore.model.BlobContent;
 import com.sap.refapps.objectstore.model.BlobFile;
+import com.sap.refapps.objectstore.model.BlobFilePage;
 
 @Service
 public interface ObjectStoreService {
 
-    public String uploadFile(byte[] bytes, String name, String contentType);
+    /**
+     * @return eTag of the uploaded object
+     */
+    public String uploadFile(InputStream inputStream, long contentLength, String name, String contentType)
+            throws IOException;
 
     public boolean deleteFile(String fileName);
 
-    public InputStream getFile(String fileName);
+    /**
+     * Deletes the objects in a single batch request where the objectstore
+     * supports it, one by one otherwise.
+     *
+     * @return the reason each object could not be deleted by its name
+     */
+    public Map<String, String> deleteFiles(List<String> fileNames);
+
+    public Optional<BlobContent> getFile(String fileName, GetOptions options);
+
+    /**
+     * Copies the object on the objectstore, without transferring its content
+     * through the application.
+     *
+     * @param options
+     *            content type and user metadata replacing those of the
+     *            source, if set
+     * @return eTag of the copy or empty if the source does not exist
+     */
+    public Optional<String> copyFile(String sourceName, String targetName, CopyOptions options) throws IOException;
+
+    public Optional<BlobContent> getFileMetadata(String fileName);
+
+    public List<BlobFile> listObjects(boolean withMetadata);
+
+    public BlobFilePage listObjects(ListContainerOptions options, boolean withMetadata);
 
-    public List<BlobFile> listObjects();
+    public void streamObjects(ListContainerOptions options, boolean withMetadata,
+            Consumer<List<BlobFile>> pageConsumer);
 
     public boolean isBlobExist(String name);
 }
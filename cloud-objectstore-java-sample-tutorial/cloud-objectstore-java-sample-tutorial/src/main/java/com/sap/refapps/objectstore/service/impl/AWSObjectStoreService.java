@@ -1,70 +1,24 @@
 package com.sap.refapps.objectstore.service.impl;
 
-import java.io.InputStream;
-import java.util.List;
-
-import com.sap.refapps.objectstore.service.ObjectStoreService;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import java.util.concurrent.ExecutorService;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Service;
 
 import com.sap.refapps.objectstore.config.AmazonWebServiceConfiguration;
-import com.sap.refapps.objectstore.model.BlobFile;
+import com.sap.refapps.objectstore.repository.ObjectStoreMetrics;
 import com.sap.refapps.objectstore.repository.ObjectStoreRepository;
 
 @Profile("cloud-aws")
 @Service
-public class AWSObjectStoreService implements ObjectStoreService {
-
-    private final AmazonWebServiceConfiguration awsConfig;
-    private final ObjectStoreRepository repository;
-    private final String containerName;
-    private static Logger logger = LoggerFactory.getLogger(AWSObjectStoreService.class);
+public class AWSObjectStoreService extends AbstractObjectStoreService {
 
     @Autowired
-    public AWSObjectStoreService(final AmazonWebServiceConfiguration awsConfig, ObjectStoreRepository repository) {
-        this.awsConfig = awsConfig;
-        this.repository = repository;
-        this.containerName = awsConfig.getBucket();
-    }
-
-    @Override
-    public String uploadFile(byte[] bytes, String fileName, String contentType) {
-        repository.setContext(awsConfig.getBlobStoreContext());
-        logger.info("Upload started");
-        String message = repository.uploadFile(containerName, bytes, fileName, contentType);
-        logger.info("upload completed");
-        return message;
-    }
-
-    public List<BlobFile> listObjects() {
-        repository.setContext(awsConfig.getBlobStoreContext());
-        List<BlobFile> files = repository.listFiles(containerName);
-        return files;
+    public AWSObjectStoreService(final AmazonWebServiceConfiguration awsConfig, final ObjectStoreRepository repository,
+            @Qualifier("objectStoreExecutor") final ExecutorService executor, final ObjectStoreMetrics metrics) {
+        super(awsConfig.getBucket(), repository, executor, metrics);
     }
 
-    @Override
-    public InputStream getFile(String fileName) {
-        repository.setContext(awsConfig.getBlobStoreContext());
-        InputStream inputStream = repository.downloadFile(containerName, fileName);
-        return inputStream;
-    }
-
-    @Override
-    public boolean deleteFile(String fileName) {
-        repository.setContext(awsConfig.getBlobStoreContext());
-        boolean status = repository.deleteFile(containerName, fileName);
-        return status;
-
-    }
-
-    @Override
-    public boolean isBlobExist(String fileName) {
-        repository.setContext(awsConfig.getBlobStoreContext());
-        boolean status = repository.isBlobExist(containerName, fileName);
-        return status;
-    }
 }
@@ -0,0 +1,146 @@
+package com.sap.refapps.objectstore.service.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
+
+import com.sap.refapps.objectstore.service.AsyncObjectStoreService;
+import org.jclouds.blobstore.options.CopyOptions;
+import org.jclouds.blobstore.options.GetOptions;
+import org.jclouds.blobstore.options.ListContainerOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.io.CountingInputStream;
+import com.sap.refapps.objectstore.model.BlobContent;
+import com.sap.refapps.objectstore.model.BlobFile;
+import com.sap.refapps.objectstore.model.BlobFilePage;
+import com.sap.refapps.objectstore.repository.ObjectStoreMetrics;
+import com.sap.refapps.objectstore.repository.ObjectStoreRepository;
+
+/**
+ * Objectstore operations on the bucket of the active backend, the
+ * subclasses only select the bucket of their configuration.
+ */
+public abstract class AbstractObjectStoreService implements AsyncObjectStoreService {
+
+    private final ObjectStoreRepository repository;
+    private final String containerName;
+    private final ExecutorService executor;
+    private final ObjectStoreMetrics metrics;
+    private static Logger logger = LoggerFactory.getLogger(AbstractObjectStoreService.class);
+
+    protected AbstractObjectStoreService(final String containerName, final ObjectStoreRepository repository,
+            final ExecutorService executor, final ObjectStoreMetrics metrics) {
+        this.repository = repository;
+        this.executor = executor;
+        this.metrics = metrics;
+        this.containerName = containerName;
+    }
+
+    @Override
+    public String uploadFile(InputStream inputStream, long contentLength, String fileName, String contentType)
+            throws IOException {
+        logger.info("Upload started");
+        final CountingInputStream countingStream = new CountingInputStream(inputStream);
+        String eTag = metrics.record("uploadFile", () -> repository.uploadFile(containerName, countingStream,
+                contentLength, fileName, contentType));
+        metrics.uploaded(countingStream.getCount());
+        logger.info("upload completed");
+        return eTag;
+    }
+
+    @Override
+    public List<BlobFile> listObjects(boolean withMetadata) {
+        List<BlobFile> listBlobs = metrics.record("listObjects",
+                () -> repository.listFiles(containerName, withMetadata));
+        return listBlobs;
+    }
+
+    @Override
+    public BlobFilePage listObjects(ListContainerOptions options, boolean withMetadata) {
+        BlobFilePage page = metrics.record("listObjects",
+                () -> repository.listFiles(containerName, options, withMetadata));
+        return page;
+    }
+
+    @Override
+    public void streamObjects(ListContainerOptions options, boolean withMetadata,
+            Consumer<List<BlobFile>> pageConsumer) {
+        metrics.record("streamObjects", () -> {
+            repository.streamFiles(containerName, options, withMetadata, pageConsumer);
+            return null;
+        });
+    }
+
+    @Override
+    public Optional<BlobContent> getFile(String fileName, GetOptions options) {
+        Optional<BlobContent> blobContent = metrics.record("getFile",
+                () -> repository.downloadFile(containerName, fileName, options));
+        return blobContent;
+    }
+
+    @Override
+    public Optional<String> copyFile(String sourceName, String targetName, CopyOptions options)
+            throws IOException {
+        Optional<String> eTag = metrics.record("copyFile",
+                () -> repository.copyFile(containerName, sourceName, targetName, options));
+        return eTag;
+    }
+
+    @Override
+    public Optional<BlobContent> getFileMetadata(String fileName) {
+        Optional<BlobContent> blobContent = metrics.record("getFileMetadata",
+                () -> repository.getFileMetadata(containerName, fileName));
+        return blobContent;
+    }
+
+    @Override
+    public boolean deleteFile(String fileName) {
+        boolean blobRemove = metrics.record("deleteFile", () -> repository.deleteFile(containerName, fileName));
+        return blobRemove;
+
+    }
+
+    @Override
+    public Map<String, String> deleteFiles(List<String> fileNames) {
+        return metrics.record("deleteFiles", () -> repository.deleteFiles(containerName, fileNames));
+    }
+
+    @Override
+    public boolean isBlobExist(String fileName) {
+        boolean blobExist = metrics.record("isBlobExist", () -> repository.isBlobExist(containerName, fileName));
+        return blobExist;
+    }
+
+    @Override
+    public CompletableFuture<Optional<BlobContent>> getFileAsync(String fileName, GetOptions options) {
+        return CompletableFuture.supplyAsync(() -> getFile(fileName, options), executor);
+    }
+
+    @Override
+    public CompletableFuture<Optional<BlobContent>> getFileMetadataAsync(String fileName) {
+        return CompletableFuture.supplyAsync(() -> getFileMetadata(fileName), executor);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> deleteFileAsync(String fileName) {
+        return CompletableFuture.supplyAsync(() -> deleteFile(fileName), executor);
+    }
+
+    @Override
+    public CompletableFuture<BlobFilePage> listObjectsAsync(ListContainerOptions options, boolean withMetadata) {
+        return CompletableFuture.supplyAsync(() -> listObjects(options, withMetadata), executor);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> isBlobExistAsync(String fileName) {
+        return CompletableFuture.supplyAsync(() -> isBlobExist(fileName), executor);
+    }
+
+}
@@ -1,72 +1,24 @@
 package com.sap.refapps.objectstore.service.impl;
 
-import java.io.InputStream;
-import java.util.List;
-
-import com.sap.refapps.objectstore.service.ObjectStoreService;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import java.util.concurrent.ExecutorService;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Service;
 
 import com.sap.refapps.objectstore.config.GoogleCloudPlatformConfiguration;
-import com.sap.refapps.objectstore.model.BlobFile;
+import com.sap.refapps.objectstore.repository.ObjectStoreMetrics;
 import com.sap.refapps.objectstore.repository.ObjectStoreRepository;
 
 @Profile("cloud-gcp")
 @Service
-public class GCPObjectStoreService implements ObjectStoreService {
-
-    private final GoogleCloudPlatformConfiguration gcpConfig;
-    private final ObjectStoreRepository repository;
-    private final String containerName;
-    private static Logger logger = LoggerFactory.getLogger(GCPObjectStoreService.class);
+public class GCPObjectStoreService extends AbstractObjectStoreService {
 
     @Autowired
-    public GCPObjectStoreService(final GoogleCloudPlatformConfiguration gcpConfig,
-                                 final ObjectStoreRepository repository) {
-        this.gcpConfig = gcpConfig;
-        this.repository = repository;
-        this.containerName = gcpConfig.getBucket();
-    }
-
-    @Override
-    public String uploadFile(byte[] bytes, String fileName, String contentType) {
-        repository.setContext(gcpConfig.getBlobStoreContext());
-        logger.info("Upload started");
-        String message = repository.uploadFile(containerName, bytes, fileName, contentType);
-        logger.info("upload completed");
-        return message;
-    }
-
-    public List<BlobFile> listObjects() {
-        repository.setContext(gcpConfig.getBlobStoreContext());
-        List<BlobFile> listBlobs = repository.listFiles(containerName);
-        return listBlobs;
-    }
-
-    @Override
-    public InputStream getFile(String fileName) {
-        repository.setContext(gcpConfig.getBlobStoreContext());
-        InputStream inputStream = repository.downloadFile(containerName, fileName);
-        return inputStream;
-    }
-
-    @Override
-    public boolean deleteFile(String fileName) {
-        repository.setContext(gcpConfig.getBlobStoreContext());
-        boolean blobRemove = repository.deleteFile(containerName, fileName);
-        return blobRemove;
-
-    }
-
-    @Override
-    public boolean isBlobExist(String fileName) {
-        repository.setContext(gcpConfig.getBlobStoreContext());
-        boolean blobExist = repository.isBlobExist(containerName, fileName);
-        return blobExist;
+    public GCPObjectStoreService(final GoogleCloudPlatformConfiguration gcpConfig, final ObjectStoreRepository repository,
+            @Qualifier("objectStoreExecutor") final ExecutorService executor, final ObjectStoreMetrics metrics) {
+        super(gcpConfig.getBucket(), repository, executor, metrics);
     }
 
 }
@@ -0,0 +1,24 @@
+package com.sap.refapps.objectstore.service.impl;
+
+import java.util.concurrent.ExecutorService;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+
+import com.sap.refapps.objectstore.config.LocalConfiguration;
+import com.sap.refapps.objectstore.repository.ObjectStoreMetrics;
+import com.sap.refapps.objectstore.repository.ObjectStoreRepository;
+
+@Profile({ "local-filesystem", "local-transient" })
+@Service
+public class LocalObjectStoreService extends AbstractObjectStoreService {
+
+    @Autowired
+    public LocalObjectStoreService(final LocalConfiguration localConfig, final ObjectStoreRepository repository,
+            @Qualifier("objectStoreExecutor") final ExecutorService executor, final ObjectStoreMetrics metrics) {
+        super(localConfig.getBucket(), repository, executor, metrics);
+    }
+
+}
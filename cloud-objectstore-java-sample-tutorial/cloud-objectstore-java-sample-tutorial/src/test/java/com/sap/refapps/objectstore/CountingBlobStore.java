@@ -0,0 +1,88 @@
+package com.sap.refapps.objectstore;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jclouds.blobstore.BlobStore;
+import org.jclouds.blobstore.BlobStoreContext;
+
+/**
+ * Counts the calls made to the BlobStore of a context by method name, i.e.
+ * the round trips to the objectstore. Single methods can be replaced, e.g.
+ * to fail or to discard the payload.
+ */
+public final class CountingBlobStore {
+
+    /**
+     * Replacement of a BlobStore method.
+     */
+    @FunctionalInterface
+    public interface Call {
+        Object invoke(BlobStore blobStore, Object[] args) throws Exception;
+    }
+
+    private final ConcurrentMap<String, AtomicInteger> counts = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Call> replacements = new ConcurrentHashMap<>();
+
+    /**
+     * @param context
+     * @return context handing out the counting BlobStore
+     */
+    public BlobStoreContext wrap(final BlobStoreContext context) {
+        final BlobStore blobStore = (BlobStore) Proxy.newProxyInstance(BlobStore.class.getClassLoader(),
+                new Class<?>[] { BlobStore.class }, (proxy, method, args) -> {
+                    if (method.getDeclaringClass() == Object.class) {
+                        return invoke(context.getBlobStore(), method, args);
+                    }
+                    counts.computeIfAbsent(method.getName(), name -> new AtomicInteger()).incrementAndGet();
+                    final Call replacement = replacements.get(method.getName());
+                    return replacement != null ? replacement.invoke(context.getBlobStore(), args)
+                            : invoke(context.getBlobStore(), method, args);
+                });
+        return (BlobStoreContext) Proxy.newProxyInstance(BlobStoreContext.class.getClassLoader(),
+                new Class<?>[] { BlobStoreContext.class },
+                (proxy, method, args) -> method.getName().equals("getBlobStore") ? blobStore
+                        : invoke(context, method, args));
+    }
+
+    /**
+     * @param methodName
+     *            all overloads of the method are replaced
+     * @param call
+     */
+    public void replace(final String methodName, final Call call) {
+        replacements.put(methodName, call);
+    }
+
+    /**
+     * @param methodName
+     * @return calls of the method since the last reset
+     */
+    public int getCount(final String methodName) {
+        final AtomicInteger count = counts.get(methodName);
+        return count != null ? count.get() : 0;
+    }
+
+    /**
+     * @return calls of all methods since the last reset
+     */
+    public int getTotalCount() {
+        return counts.values().stream().mapToInt(AtomicInteger::get).sum();
+    }
+
+    public void reset() {
+        counts.clear();
+    }
+
+    private static Object invoke(final Object target, final Method method, final Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.sap.refapps.objectstore;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import org.jclouds.blobstore.BlobStoreContext;
+
+import com.sap.refapps.objectstore.config.BlobStoreContextProvider;
+import com.sap.refapps.objectstore.config.CacheConfiguration;
+import com.sap.refapps.objectstore.config.CompressionConfiguration;
+import com.sap.refapps.objectstore.config.CopyConfiguration;
+import com.sap.refapps.objectstore.config.DeduplicationConfiguration;
+import com.sap.refapps.objectstore.config.ListConfiguration;
+import com.sap.refapps.objectstore.config.LocalConfiguration;
+import com.sap.refapps.objectstore.config.MetadataCacheConfiguration;
+import com.sap.refapps.objectstore.config.MultipartUploadConfiguration;
+import com.sap.refapps.objectstore.config.ParallelDownloadConfiguration;
+import com.sap.refapps.objectstore.repository.BlobCache;
+import com.sap.refapps.objectstore.repository.ContentCompressor;
+import com.sap.refapps.objectstore.repository.Deduplicator;
+import com.sap.refapps.objectstore.repository.MultipartCopier;
+import com.sap.refapps.objectstore.repository.MultipartUploader;
+import com.sap.refapps.objectstore.repository.ObjectStoreMetrics;
+import com.sap.refapps.objectstore.repository.ObjectStoreRepository;
+import com.sap.refapps.objectstore.repository.ParallelDownloader;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * The repository wired like the application does on a local backend, with
+ * the default configuration. The filesystem backend stores its files in a
+ * temporary directory that is removed on close.
+ */
+public final class TestBackend implements Closeable {
+
+    private final Path directory;
+    private final LocalConfiguration localConfig;
+    private final BlobStoreContextProvider contextProvider;
+    private final MultipartUploader multipartUploader;
+    private final MultipartCopier multipartCopier;
+    private final ParallelDownloader parallelDownloader;
+    private final BlobCache blobCache;
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final ObjectStoreMetrics metrics;
+    private final ObjectStoreRepository repository;
+
+    /**
+     * @param provider
+     *            filesystem or transient
+     * @throws IOException
+     */
+    public TestBackend(final String provider) throws IOException {
+        this(provider, new CountingBlobStore(), new MultipartUploadConfiguration());
+    }
+
+    /**
+     * @param provider
+     *            filesystem or transient
+     * @param blobStore
+     *            counts the calls the repository makes to the objectstore
+     * @param multipartConfig
+     * @throws IOException
+     */
+    public TestBackend(final String provider, final CountingBlobStore blobStore,
+            final MultipartUploadConfiguration multipartConfig) throws IOException {
+        this(provider, provider, blobStore, multipartConfig, new DeduplicationConfiguration());
+    }
+
+    /**
+     * @param provider
+     *            filesystem or transient
+     * @param backend
+     *            backend the repository assumes, e.g. google-cloud-storage
+     *            to take its code paths on a local provider
+     * @param blobStore
+     *            counts the calls the repository makes to the objectstore
+     * @param multipartConfig
+     * @param deduplicationConfig
+     * @throws IOException
+     */
+    public TestBackend(final String provider, final String backend, final CountingBlobStore blobStore,
+            final MultipartUploadConfiguration multipartConfig, final DeduplicationConfiguration deduplicationConfig)
+            throws IOException {
+        this(backend, localConfig -> localConfig.getBlobStoreContext(provider), blobStore, multipartConfig,
+                deduplicationConfig, new CompressionConfiguration());
+    }
+
+    /**
+     * @param provider
+     *            filesystem or transient
+     * @param blobStore
+     *            counts the calls the repository makes to the objectstore
+     * @param compressionConfig
+     * @throws IOException
+     */
+    public TestBackend(final String provider, final CountingBlobStore blobStore,
+            final CompressionConfiguration compressionConfig) throws IOException {
+        this(provider, localConfig -> localConfig.getBlobStoreContext(provider), blobStore,
+                new MultipartUploadConfiguration(), new DeduplicationConfiguration(), compressionConfig);
+    }
+
+    /**
+     * @param backend
+     *            backend of the context, e.g. aws-s3
+     * @param contextFactory
+     *            builds the context, e.g. of an S3 stand-in
+     * @param blobStore
+     *            counts the calls the repository makes to the objectstore
+     * @throws IOException
+     */
+    public TestBackend(final String backend, final Supplier<BlobStoreContext> contextFactory,
+            final CountingBlobStore blobStore) throws IOException {
+        this(backend, localConfig -> contextFactory.get(), blobStore, new MultipartUploadConfiguration(),
+                new DeduplicationConfiguration(), new CompressionConfiguration());
+    }
+
+    private TestBackend(final String backend, final Function<LocalConfiguration, BlobStoreContext> contextFactory,
+            final CountingBlobStore blobStore, final MultipartUploadConfiguration multipartConfig,
+            final DeduplicationConfiguration deduplicationConfig, final CompressionConfiguration compressionConfig)
+            throws IOException {
+        this.directory = Files.createTempDirectory("objectstore-test-");
+        this.localConfig = new LocalConfiguration();
+        localConfig.setDirectory(directory.toString());
+        this.contextProvider = new BlobStoreContextProvider(backend,
+                () -> blobStore.wrap(contextFactory.apply(localConfig)));
+        this.multipartUploader = new MultipartUploader(multipartConfig);
+        this.multipartCopier = new MultipartCopier(new CopyConfiguration());
+        this.parallelDownloader = new ParallelDownloader(new ParallelDownloadConfiguration());
+        this.blobCache = new BlobCache(new CacheConfiguration());
+        this.metrics = new ObjectStoreMetrics(registry, contextProvider);
+        this.repository = new ObjectStoreRepository(contextProvider, multipartUploader, multipartCopier,
+                parallelDownloader, new ContentCompressor(compressionConfig),
+                new Deduplicator(deduplicationConfig), Optional.empty(), blobCache,
+                new ListConfiguration(), new MetadataCacheConfiguration(), metrics);
+    }
+
+    public LocalConfiguration getLocalConfig() {
+        return localConfig;
+    }
+
+    public String getBucket() {
+        return localConfig.getBucket();
+    }
+
+    public BlobStoreContextProvider getContextProvider() {
+        return contextProvider;
+    }
+
+    public SimpleMeterRegistry getRegistry() {
+        return registry;
+    }
+
+    public ObjectStoreMetrics getMetrics() {
+        return metrics;
+    }
+
+    public ObjectStoreRepository getRepository() {
+        return repository;
+    }
+
+    @Override
+    public void close() throws IOException {
+        repository.shutdown();
+        blobCache.shutdown();
+        parallelDownloader.shutdown();
+        multipartUploader.shutdown();
+        multipartCopier.shutdown();
+        contextProvider.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.sap.refapps.objectstore.config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.support.ResourcePropertySource;
+
+/**
+ * The environment is prepared as Boot leaves it before the initializers run:
+ * command line arguments first, application.properties last.
+ */
+public class ObjectStoreContextInitializerTest {
+
+    private final Map<String, Object> commandLine = new HashMap<>();
+    private GenericApplicationContext context;
+    private ConfigurableEnvironment environment;
+
+    @Before
+    public void setUp() throws Exception {
+        context = new GenericApplicationContext();
+        environment = context.getEnvironment();
+        environment.getPropertySources().addFirst(new MapPropertySource("commandLineArgs", commandLine));
+        environment.getPropertySources().addLast(new ResourcePropertySource(
+                "applicationConfig: [classpath:/application.properties]",
+                new ClassPathResource("application.properties")));
+    }
+
+    @Test
+    public void awsBackendLoadsTheProfileProperties() {
+        commandLine.put(ObjectStoreContextInitializer.BACKEND_PROPERTY, "aws");
+
+        new ObjectStoreContextInitializer().initialize(context);
+
+        assertThat(environment.getActiveProfiles()).contains("cloud-aws");
+        assertThat(environment.getProperty("objectstore.multipart.enabled", Boolean.class)).isTrue();
+        assertThat(environment.getProperty("objectstore.multipart.threshold", Long.class)).isEqualTo(67108864L);
+        // settings without a profile value still come from application.properties
+        assertThat(environment.getProperty("objectstore.multipart.max-retries", Integer.class)).isEqualTo(3);
+    }
+
+    @Test
+    public void gcpBackendLoadsTheProfileProperties() {
+        commandLine.put(ObjectStoreContextInitializer.BACKEND_PROPERTY, "gcp");
+
+        new ObjectStoreContextInitializer().initialize(context);
+
+        assertThat(environment.getActiveProfiles()).contains("cloud-gcp");
+        assertThat(environment.getProperty("objectstore.multipart.enabled", Boolean.class)).isTrue();
+    }
+
+    @Test
+    public void commandLineOverridesTheProfileProperties() {
+        commandLine.put(ObjectStoreContextInitializer.BACKEND_PROPERTY, "aws");
+        commandLine.put("objectstore.multipart.enabled", "false");
+
+        new ObjectStoreContextInitializer().initialize(context);
+
+        assertThat(environment.getProperty("objectstore.multipart.enabled", Boolean.class)).isFalse();
+    }
+
+    @Test
+    public void missingBackendFailsTheStartup() {
+        assumeTrue(System.getenv("VCAP_SERVICES") == null);
+
+        assertThatThrownBy(() -> new ObjectStoreContextInitializer().initialize(context))
+                .isInstanceOf(IllegalStateException.class).hasMessageContaining(
+                        ObjectStoreContextInitializer.BACKEND_PROPERTY);
+    }
+
+    @Test
+    public void missingBackendFallsBackToTransientInTheLocalProfile() {
+        assumeTrue(System.getenv("VCAP_SERVICES") == null);
+        commandLine.put("spring.profiles.active", ObjectStoreContextInitializer.LOCAL_PROFILE);
+
+        new ObjectStoreContextInitializer().initialize(context);
+
+        assertThat(environment.getActiveProfiles()).contains("local-transient");
+    }
+
+    @Test
+    public void transientBackendNeedsNoLocalProfile() {
+        commandLine.put(ObjectStoreContextInitializer.BACKEND_PROPERTY, "transient");
+
+        new ObjectStoreContextInitializer().initialize(context);
+
+        assertThat(environment.getActiveProfiles()).containsExactly("local-transient");
+    }
+}
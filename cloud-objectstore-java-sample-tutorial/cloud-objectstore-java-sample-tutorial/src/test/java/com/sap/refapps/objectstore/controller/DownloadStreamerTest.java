@@ -0,0 +1,130 @@
+package com.sap.refapps.objectstore.controller;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sap.refapps.objectstore.TestBackend;
+import com.sap.refapps.objectstore.config.DownloadConfiguration;
+import com.sap.refapps.objectstore.model.BlobContent;
+
+public class DownloadStreamerTest {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int POOL_SIZE = 2;
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private ExecutorService executor;
+    private TestBackend backend;
+    private DownloadStreamer downloadStreamer;
+
+    @Before
+    public void setUp() throws IOException {
+        executor = Executors.newCachedThreadPool();
+        backend = new TestBackend("transient");
+        final DownloadConfiguration config = new DownloadConfiguration();
+        config.setBufferSize(BUFFER_SIZE);
+        config.setBufferPoolSize(POOL_SIZE);
+        config.setBufferWaitMillis(10);
+        downloadStreamer = new DownloadStreamer(config, backend.getMetrics());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        release.countDown();
+        executor.shutdownNow();
+        backend.close();
+    }
+
+    @Test
+    public void downloadsBeyondThePoolUseSmallBuffers() throws Exception {
+        final List<BlockingInputStream> inputStreams = new ArrayList<>();
+        final List<Future<Long>> downloads = new ArrayList<>();
+        for (int i = 0; i < POOL_SIZE; i++) {
+            final BlockingInputStream inputStream = new BlockingInputStream();
+            inputStreams.add(inputStream);
+            downloads.add(executor.submit(() -> copy(inputStream)));
+            assertThat(inputStream.reading.await(10, TimeUnit.SECONDS)).isTrue();
+        }
+
+        // all pooled buffers are taken
+        final BlockingInputStream overflow = new BlockingInputStream();
+        overflow.reading.countDown();
+        overflow.blocked = false;
+        assertThat(copy(overflow)).isEqualTo(1);
+        assertThat(overflow.bufferLength).isLessThan(BUFFER_SIZE);
+        assertThat(downloadStreamer.getFallbackBuffers()).isEqualTo(1);
+
+        release.countDown();
+        for (Future<Long> download : downloads) {
+            assertThat(download.get(10, TimeUnit.SECONDS)).isEqualTo(1);
+        }
+        for (BlockingInputStream inputStream : inputStreams) {
+            assertThat(inputStream.bufferLength).isEqualTo(BUFFER_SIZE);
+        }
+        assertThat(downloadStreamer.getPooledBuffers()).isEqualTo(POOL_SIZE);
+
+        // the buffers are reused once they have been returned
+        final BlockingInputStream next = new BlockingInputStream();
+        next.blocked = false;
+        copy(next);
+        assertThat(next.bufferLength).isEqualTo(BUFFER_SIZE);
+        assertThat(downloadStreamer.getFallbackBuffers()).isEqualTo(1);
+    }
+
+    private long copy(final InputStream inputStream) throws IOException {
+        final BlobContent blobContent = new BlobContent("object.bin", "etag", new Date(),
+                "application/octet-stream", 1, 1, inputStream);
+        return downloadStreamer.copy(blobContent, new ByteArrayOutputStream());
+    }
+
+    /**
+     * Serves a single byte, blocked until the test releases it.
+     */
+    private final class BlockingInputStream extends InputStream {
+
+        private final CountDownLatch reading = new CountDownLatch(1);
+        private volatile boolean blocked = true;
+        private volatile int bufferLength;
+        private boolean served;
+
+        @Override
+        public int read() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+            bufferLength = buffer.length;
+            reading.countDown();
+            if (blocked) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(e);
+                }
+            }
+            if (served) {
+                return -1;
+            }
+            served = true;
+            buffer[offset] = 1;
+            return 1;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.sap.refapps.objectstore.controller;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.containsString;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sap.refapps.objectstore.CountingBlobStore;
+import com.sap.refapps.objectstore.TestBackend;
+import com.sap.refapps.objectstore.config.BulkDeleteConfiguration;
+import com.sap.refapps.objectstore.config.DownloadConfiguration;
+import com.sap.refapps.objectstore.config.MultipartUploadConfiguration;
+import com.sap.refapps.objectstore.service.BulkDeleteService;
+import com.sap.refapps.objectstore.service.impl.LocalObjectStoreService;
+
+/**
+ * Posts bulk deletes to the request mapping and reads the streamed report,
+ * on the transient backend behind a CountingBlobStore that fails single
+ * objects.
+ */
+public class ObjectstoreControllerBulkDeleteTest {
+
+    private static final String DELETE = "/objectstorage.svc/api/v1/storage/delete";
+
+    private final CountingBlobStore blobStore = new CountingBlobStore();
+    private ExecutorService executor;
+    private TestBackend backend;
+    private BulkDeleteService bulkDeleteService;
+    private MockMvc mockMvc;
+
+    @Before
+    public void setUp() throws IOException {
+        executor = Executors.newFixedThreadPool(4);
+        backend = new TestBackend("transient", blobStore, new MultipartUploadConfiguration());
+        LocalObjectStoreService objectStoreService = new LocalObjectStoreService(backend.getLocalConfig(),
+                backend.getRepository(), executor, backend.getMetrics());
+        BulkDeleteConfiguration config = new BulkDeleteConfiguration();
+        config.setChunkSize(2);
+        bulkDeleteService = new BulkDeleteService(objectStoreService, config);
+        ObjectstoreController controller = new ObjectstoreController(objectStoreService, null, bulkDeleteService,
+                null, new DownloadStreamer(new DownloadConfiguration(), backend.getMetrics()), new ObjectMapper());
+        mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        bulkDeleteService.shutdown();
+        backend.close();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void reportListsEveryNameWithItsOutcome() throws Exception {
+        upload("a.txt", "b.txt", "c.txt");
+        failRemovalOf("b.txt");
+
+        perform("{\"names\":[\"a.txt\",\"b.txt\",\"c.txt\"]}")
+                // the chunks complete in any order
+                .andExpect(jsonPath("$[?(@.status == 'deleted')].name", containsInAnyOrder("a.txt", "c.txt")))
+                .andExpect(jsonPath("$[?(@.status == 'failed')].name", contains("b.txt")))
+                .andExpect(jsonPath("$[?(@.status == 'failed')].error",
+                        contains(containsString("injected failure of b.txt"))));
+    }
+
+    @Test
+    public void reportOfAPrefixListsTheObjectsBelowIt() throws Exception {
+        upload("logs/1.txt", "logs/2.txt", "logs/3.txt", "other.txt");
+
+        perform("{\"prefix\":\"logs/\"}")
+                .andExpect(jsonPath("$[*].name", containsInAnyOrder("logs/1.txt", "logs/2.txt", "logs/3.txt")))
+                .andExpect(jsonPath("$[*].status", contains("deleted", "deleted", "deleted")));
+    }
+
+    @Test
+    public void namesAndPrefixTogetherAreRejected() throws Exception {
+        mockMvc.perform(post(DELETE).contentType(MediaType.APPLICATION_JSON)
+                .content("{\"names\":[\"a.txt\"],\"prefix\":\"logs/\"}")).andExpect(status().isBadRequest());
+    }
+
+    private ResultActions perform(String content) throws Exception {
+        MvcResult result = mockMvc.perform(post(DELETE).contentType(MediaType.APPLICATION_JSON).content(content))
+                .andExpect(request().asyncStarted()).andReturn();
+        return mockMvc.perform(asyncDispatch(result)).andExpect(status().isOk());
+    }
+
+    private void failRemovalOf(String fileName) {
+        blobStore.replace("removeBlob", (delegate, args) -> {
+            if (args[1].equals(fileName)) {
+                throw new IllegalStateException("injected failure of " + fileName);
+            }
+            delegate.removeBlob((String) args[0], (String) args[1]);
+            return null;
+        });
+    }
+
+    private void upload(String... fileNames) throws IOException {
+        for (String fileName : fileNames) {
+            byte[] bytes = fileName.getBytes(StandardCharsets.UTF_8);
+            backend.getRepository().uploadFile(backend.getBucket(), new ByteArrayInputStream(bytes), bytes.length,
+                    fileName, "text/plain");
+        }
+    }
+}
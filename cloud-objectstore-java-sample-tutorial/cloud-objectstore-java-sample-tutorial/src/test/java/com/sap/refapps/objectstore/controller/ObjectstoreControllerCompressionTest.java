@@ -0,0 +1,149 @@
+package com.sap.refapps.objectstore.controller;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.endsWith;
+import static org.hamcrest.Matchers.startsWith;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+
+import org.jclouds.blobstore.domain.BlobMetadata;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Strings;
+import com.google.common.io.ByteStreams;
+import com.sap.refapps.objectstore.CountingBlobStore;
+import com.sap.refapps.objectstore.TestBackend;
+import com.sap.refapps.objectstore.config.CompressionConfiguration;
+import com.sap.refapps.objectstore.config.DownloadConfiguration;
+import com.sap.refapps.objectstore.repository.ContentCompressor;
+import com.sap.refapps.objectstore.service.impl.LocalObjectStoreService;
+
+/**
+ * Uploads a text object that is stored compressed and reads it back through
+ * the request mappings, decompressed or as stored depending on the
+ * Accept-Encoding of the request.
+ */
+public class ObjectstoreControllerCompressionTest {
+
+    private static final String STORAGE = "/objectstorage.svc/api/v1/storage";
+    private static final String NAME = "text.txt";
+    private static final String CONTENT = Strings.repeat("compressible line of text\n", 2560);
+
+    private final CountingBlobStore blobStore = new CountingBlobStore();
+    private ExecutorService executor;
+    private TestBackend backend;
+    private MockMvc mockMvc;
+
+    @Before
+    public void setUp() throws IOException {
+        executor = Executors.newFixedThreadPool(4);
+        CompressionConfiguration compressionConfig = new CompressionConfiguration();
+        compressionConfig.setEnabled(true);
+        backend = new TestBackend("transient", blobStore, compressionConfig);
+        LocalObjectStoreService objectStoreService = new LocalObjectStoreService(backend.getLocalConfig(),
+                backend.getRepository(), executor, backend.getMetrics());
+        ObjectstoreController controller = new ObjectstoreController(objectStoreService, null, null, null,
+                new DownloadStreamer(new DownloadConfiguration(), backend.getMetrics()), new ObjectMapper());
+        mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
+        byte[] bytes = CONTENT.getBytes(StandardCharsets.UTF_8);
+        backend.getRepository().uploadFile(backend.getBucket(), new ByteArrayInputStream(bytes), bytes.length,
+                NAME, "text/plain");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        backend.close();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void objectIsStoredCompressedWithItsOriginalLength() {
+        BlobMetadata metadata = backend.getContextProvider().getContext().getBlobStore()
+                .blobMetadata(backend.getBucket(), NAME);
+
+        assertThat(metadata.getUserMetadata()).containsEntry(ContentCompressor.ENCODING_METADATA, "gzip")
+                .containsEntry(ContentCompressor.LENGTH_METADATA, String.valueOf(CONTENT.length()));
+        assertThat(metadata.getSize()).isLessThan(CONTENT.length() / 10L);
+    }
+
+    @Test
+    public void clientWithoutGzipReceivesTheDecompressedObject() throws Exception {
+        MockHttpServletResponse response = perform(get(STORAGE + "/" + NAME))
+                .andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
+                .andExpect(header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING))
+                .andExpect(header().string(HttpHeaders.ETAG, startsWith("W/"))).andReturn()
+                .getResponse();
+
+        assertThat(response.getContentAsString()).isEqualTo(CONTENT);
+    }
+
+    @Test
+    public void clientAcceptingGzipReceivesTheStoredObject() throws Exception {
+        MockHttpServletResponse response = perform(
+                get(STORAGE + "/" + NAME).header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate"))
+                        .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip")).andReturn().getResponse();
+
+        assertThat(response.getContentAsByteArray().length).isLessThan(CONTENT.length() / 10);
+        assertThat(gunzip(response.getContentAsByteArray())).isEqualTo(CONTENT);
+    }
+
+    @Test
+    public void rangeOfACompressedObjectIsAnsweredWithTheWholeObject() throws Exception {
+        MockHttpServletResponse response = perform(
+                get(STORAGE + "/" + NAME).header(HttpHeaders.RANGE, "bytes=0-9"))
+                        .andExpect(header().string(HttpHeaders.ACCEPT_RANGES, "none"))
+                        .andExpect(header().doesNotExist(HttpHeaders.CONTENT_RANGE)).andReturn().getResponse();
+
+        assertThat(response.getContentAsString()).isEqualTo(CONTENT);
+    }
+
+    @Test
+    public void listingWithMetadataReportsTheLengthBeforeCompression() throws Exception {
+        perform(get(STORAGE).param("metadata", "true")).andExpect(jsonPath("$[*].size", contains("65 KB")));
+        // the user metadata is not part of a plain listing, it has the stored length
+        perform(get(STORAGE)).andExpect(jsonPath("$[*].size", contains(endsWith(" B"))));
+    }
+
+    /**
+     * The download completes its future first and then streams the body,
+     * each of them asynchronously.
+     */
+    private ResultActions perform(MockHttpServletRequestBuilder requestBuilder) throws Exception {
+        MvcResult result = mockMvc.perform(requestBuilder).andExpect(request().asyncStarted()).andReturn();
+        ResultActions resultActions = mockMvc.perform(asyncDispatch(result));
+        while (resultActions.andReturn().getRequest().isAsyncStarted()) {
+            resultActions.andReturn().getAsyncResult(10000);
+            resultActions = mockMvc.perform(asyncDispatch(resultActions.andReturn()));
+        }
+        return resultActions.andExpect(status().isOk());
+    }
+
+    private static String gunzip(byte[] bytes) throws IOException {
+        try (InputStream inputStream = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            return new String(ByteStreams.toByteArray(inputStream), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.sap.refapps.objectstore.controller;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sap.refapps.objectstore.CountingBlobStore;
+import com.sap.refapps.objectstore.TestBackend;
+import com.sap.refapps.objectstore.config.CopyConfiguration;
+import com.sap.refapps.objectstore.config.DownloadConfiguration;
+import com.sap.refapps.objectstore.config.MultipartUploadConfiguration;
+import com.sap.refapps.objectstore.service.CopyService;
+import com.sap.refapps.objectstore.service.impl.LocalObjectStoreService;
+
+/**
+ * Posts copies, moves and renames to the request mappings and reads the
+ * results, on the transient backend behind a CountingBlobStore that fails
+ * the removal of sources.
+ */
+public class ObjectstoreControllerCopyTest {
+
+    private static final String STORAGE = "/objectstorage.svc/api/v1/storage";
+
+    private final CountingBlobStore blobStore = new CountingBlobStore();
+    private ExecutorService executor;
+    private TestBackend backend;
+    private CopyService copyService;
+    private MockMvc mockMvc;
+
+    @Before
+    public void setUp() throws IOException {
+        executor = Executors.newFixedThreadPool(4);
+        backend = new TestBackend("transient", blobStore, new MultipartUploadConfiguration());
+        LocalObjectStoreService objectStoreService = new LocalObjectStoreService(backend.getLocalConfig(),
+                backend.getRepository(), executor, backend.getMetrics());
+        copyService = new CopyService(objectStoreService, new CopyConfiguration());
+        ObjectstoreController controller = new ObjectstoreController(objectStoreService, null, null, copyService,
+                new DownloadStreamer(new DownloadConfiguration(), backend.getMetrics()), new ObjectMapper());
+        mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        copyService.shutdown();
+        backend.close();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void objectIsCopied() throws Exception {
+        upload("a.txt");
+
+        perform("/copy", "{\"source\":\"a.txt\",\"target\":\"b.txt\"}", HttpStatus.OK)
+                .andExpect(jsonPath("$.status").value("copied")).andExpect(jsonPath("$.etag", notNullValue()));
+
+        assertThat(exists("a.txt")).isTrue();
+        assertThat(exists("b.txt")).isTrue();
+    }
+
+    @Test
+    public void prefixIsCopiedAsAStreamOfResults() throws Exception {
+        upload("logs/1.txt", "logs/2.txt", "other.txt");
+
+        perform("/copy", "{\"prefix\":\"logs/\",\"targetPrefix\":\"archive/\"}", HttpStatus.OK)
+                .andExpect(jsonPath("$[*].target", containsInAnyOrder("archive/1.txt", "archive/2.txt")))
+                .andExpect(jsonPath("$[*].status", containsInAnyOrder("copied", "copied")));
+
+        assertThat(exists("archive/2.txt")).isTrue();
+    }
+
+    @Test
+    public void objectIsMoved() throws Exception {
+        upload("a.txt");
+
+        perform("/move", "{\"source\":\"a.txt\",\"target\":\"b.txt\"}", HttpStatus.OK)
+                .andExpect(jsonPath("$.status").value("moved"));
+
+        assertThat(exists("a.txt")).isFalse();
+        assertThat(exists("b.txt")).isTrue();
+    }
+
+    @Test
+    public void objectIsRenamed() throws Exception {
+        upload("a.txt");
+
+        perform("/rename", "{\"source\":\"a.txt\",\"target\":\"renamed.txt\"}", HttpStatus.OK)
+                .andExpect(jsonPath("$.status").value("moved"));
+
+        assertThat(exists("a.txt")).isFalse();
+        assertThat(exists("renamed.txt")).isTrue();
+    }
+
+    @Test
+    public void renameOfAPrefixIsRejected() throws Exception {
+        mockMvc.perform(post(STORAGE + "/rename").contentType(MediaType.APPLICATION_JSON)
+                .content("{\"prefix\":\"logs/\",\"targetPrefix\":\"archive/\"}")).andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void sourceThatCannotBeDeletedFailsTheMove() throws Exception {
+        upload("a.txt");
+        blobStore.replace("removeBlob", (delegate, args) -> {
+            throw new IllegalStateException("injected failure of " + args[1]);
+        });
+
+        perform("/move", "{\"source\":\"a.txt\",\"target\":\"b.txt\"}", HttpStatus.INTERNAL_SERVER_ERROR)
+                .andExpect(jsonPath("$.status").value("failed"))
+                .andExpect(jsonPath("$.error", containsString("source could not be deleted")));
+
+        assertThat(exists("a.txt")).isTrue();
+        assertThat(exists("b.txt")).isTrue();
+    }
+
+    private ResultActions perform(String path, String content, HttpStatus expectedStatus) throws Exception {
+        MvcResult result = mockMvc
+                .perform(post(STORAGE + path).contentType(MediaType.APPLICATION_JSON).content(content))
+                .andExpect(request().asyncStarted()).andReturn();
+        return mockMvc.perform(asyncDispatch(result)).andExpect(status().is(expectedStatus.value()));
+    }
+
+    private void upload(String... fileNames) throws IOException {
+        for (String fileName : fileNames) {
+            byte[] bytes = fileName.getBytes(StandardCharsets.UTF_8);
+            backend.getRepository().uploadFile(backend.getBucket(), new ByteArrayInputStream(bytes), bytes.length,
+                    fileName, "text/plain");
+        }
+    }
+
+    private boolean exists(String fileName) {
+        return backend.getContextProvider().getContext().getBlobStore().blobExists(backend.getBucket(), fileName);
+    }
+}
@@ -0,0 +1,123 @@
+package com.sap.refapps.objectstore.controller;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.nullValue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sap.refapps.objectstore.TestBackend;
+import com.sap.refapps.objectstore.config.DownloadConfiguration;
+import com.sap.refapps.objectstore.service.impl.LocalObjectStoreService;
+
+/**
+ * Goes through the request mappings: without marker and maxResults the
+ * listing is streamed as a JSON array, with either of them a single page
+ * is returned along with the marker of the next one.
+ */
+public class ObjectstoreControllerListingTest {
+
+    private static final String STORAGE = "/objectstorage.svc/api/v1/storage";
+
+    private ExecutorService executor;
+    private TestBackend backend;
+    private MockMvc mockMvc;
+
+    @Before
+    public void setUp() throws IOException {
+        executor = Executors.newFixedThreadPool(4);
+        backend = new TestBackend("transient");
+        LocalObjectStoreService objectStoreService = new LocalObjectStoreService(backend.getLocalConfig(),
+                backend.getRepository(), executor, backend.getMetrics());
+        ObjectstoreController controller = new ObjectstoreController(objectStoreService, null, null, null,
+                new DownloadStreamer(new DownloadConfiguration(), backend.getMetrics()), new ObjectMapper());
+        mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        backend.close();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void pagesContinueAfterTheMarker() throws Exception {
+        upload("a.txt", "b.txt", "c.txt", "d.txt", "e.txt");
+
+        perform(get(STORAGE).param("maxResults", "2"))
+                .andExpect(jsonPath("$.files[*].name", contains("a.txt", "b.txt")))
+                .andExpect(jsonPath("$.nextMarker").value("b.txt"));
+        perform(get(STORAGE).param("maxResults", "2").param("marker", "b.txt"))
+                .andExpect(jsonPath("$.files[*].name", contains("c.txt", "d.txt")))
+                .andExpect(jsonPath("$.nextMarker").value("d.txt"));
+        perform(get(STORAGE).param("maxResults", "2").param("marker", "d.txt"))
+                .andExpect(jsonPath("$.files[*].name", contains("e.txt")))
+                .andExpect(jsonPath("$.nextMarker", nullValue()));
+    }
+
+    @Test
+    public void markerAloneSelectsThePagedListing() throws Exception {
+        upload("a.txt", "b.txt", "c.txt");
+
+        perform(get(STORAGE).param("marker", "a.txt"))
+                .andExpect(jsonPath("$.files[*].name", contains("b.txt", "c.txt")))
+                .andExpect(jsonPath("$.nextMarker", nullValue()));
+    }
+
+    @Test
+    public void pageOfExactlyMaxResultsObjects() throws Exception {
+        upload("a.txt", "b.txt", "c.txt");
+
+        perform(get(STORAGE).param("maxResults", "3"))
+                .andExpect(jsonPath("$.files[*].name", contains("a.txt", "b.txt", "c.txt")))
+                .andExpect(jsonPath("$.nextMarker", nullValue()));
+        perform(get(STORAGE).param("maxResults", "2"))
+                .andExpect(jsonPath("$.files[*].name", contains("a.txt", "b.txt")))
+                .andExpect(jsonPath("$.nextMarker").value("b.txt"));
+    }
+
+    @Test
+    public void listingWithoutPagingParametersIsStreamed() throws Exception {
+        upload("a.txt", "b.txt", "c.txt");
+
+        perform(get(STORAGE)).andExpect(jsonPath("$[*].name", contains("a.txt", "b.txt", "c.txt")));
+    }
+
+    @Test
+    public void streamingAnEmptyBucketWritesAnEmptyArray() throws Exception {
+        perform(get(STORAGE)).andExpect(content().string("[]")).andExpect(jsonPath("$", empty()));
+    }
+
+    private ResultActions perform(MockHttpServletRequestBuilder requestBuilder) throws Exception {
+        MvcResult result = mockMvc.perform(requestBuilder).andExpect(request().asyncStarted()).andReturn();
+        return mockMvc.perform(asyncDispatch(result)).andExpect(status().isOk());
+    }
+
+    private void upload(String... fileNames) throws IOException {
+        for (String fileName : fileNames) {
+            byte[] bytes = fileName.getBytes(StandardCharsets.UTF_8);
+            backend.getRepository().uploadFile(backend.getBucket(), new ByteArrayInputStream(bytes), bytes.length,
+                    fileName, "text/plain");
+        }
+    }
+}
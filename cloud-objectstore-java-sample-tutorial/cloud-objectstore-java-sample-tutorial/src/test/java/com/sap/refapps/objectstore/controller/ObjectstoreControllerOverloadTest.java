@@ -0,0 +1,94 @@
+package com.sap.refapps.objectstore.controller;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sap.refapps.objectstore.TestBackend;
+import com.sap.refapps.objectstore.config.AsyncConfiguration;
+import com.sap.refapps.objectstore.config.DownloadConfiguration;
+import com.sap.refapps.objectstore.service.impl.LocalObjectStoreService;
+
+/**
+ * Runs the asynchronous endpoints on the objectStoreExecutor of the
+ * AsyncConfiguration with a single thread and a queue of one call.
+ */
+public class ObjectstoreControllerOverloadTest {
+
+    private static final String STORAGE = "/objectstorage.svc/api/v1/storage";
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private ExecutorService executor;
+    private TestBackend backend;
+    private MockMvc mockMvc;
+
+    @Before
+    public void setUp() throws IOException {
+        AsyncConfiguration asyncConfig = new AsyncConfiguration();
+        asyncConfig.setThreads(1);
+        asyncConfig.setQueueSize(1);
+        executor = asyncConfig.objectStoreExecutor();
+        backend = new TestBackend("transient");
+        LocalObjectStoreService objectStoreService = new LocalObjectStoreService(backend.getLocalConfig(),
+                backend.getRepository(), executor, backend.getMetrics());
+        ObjectstoreController controller = new ObjectstoreController(objectStoreService, null, null, null,
+                new DownloadStreamer(new DownloadConfiguration(), backend.getMetrics()), new ObjectMapper());
+        mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        release.countDown();
+        executor.shutdownNow();
+        backend.close();
+    }
+
+    @Test
+    public void requestIsAnsweredWith503OnceTheQueueIsFull() throws Exception {
+        CountDownLatch running = new CountDownLatch(1);
+        executor.execute(() -> {
+            running.countDown();
+            await(release);
+        });
+        running.await(10, TimeUnit.SECONDS);
+        executor.execute(() -> await(release));
+
+        mockMvc.perform(get(STORAGE + "/object.txt")).andExpect(status().isServiceUnavailable())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "1"));
+    }
+
+    @Test
+    public void requestIsServedOnceTheQueueHasDrained() throws Exception {
+        executor.execute(() -> await(release));
+        release.countDown();
+        executor.submit(() -> null).get(10, TimeUnit.SECONDS);
+
+        MvcResult result = mockMvc.perform(get(STORAGE + "/object.txt")).andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result)).andExpect(status().isNotFound());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
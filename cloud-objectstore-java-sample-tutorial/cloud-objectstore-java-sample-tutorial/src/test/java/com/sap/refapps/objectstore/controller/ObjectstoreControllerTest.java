@@ -0,0 +1,223 @@
+package com.sap.refapps.objectstore.controller;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.jclouds.blobstore.BlobStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sap.refapps.objectstore.CountingBlobStore;
+import com.sap.refapps.objectstore.TestBackend;
+import com.sap.refapps.objectstore.config.DownloadConfiguration;
+import com.sap.refapps.objectstore.config.MultipartUploadConfiguration;
+import com.sap.refapps.objectstore.service.impl.LocalObjectStoreService;
+
+/**
+ * Calls the controller directly, on the transient backend behind a
+ * CountingBlobStore. The count of BlobStore calls is the number of round
+ * trips a request costs on a remote objectstore.
+ */
+public class ObjectstoreControllerTest {
+
+    private static final String NAME = "object.txt";
+
+    private final CountingBlobStore blobStore = new CountingBlobStore();
+    private ExecutorService executor;
+    private TestBackend backend;
+    private ObjectstoreController controller;
+
+    @Before
+    public void setUp() throws IOException {
+        executor = Executors.newFixedThreadPool(4);
+        backend = new TestBackend("transient", blobStore, new MultipartUploadConfiguration());
+        LocalObjectStoreService objectStoreService = new LocalObjectStoreService(backend.getLocalConfig(),
+                backend.getRepository(), executor, backend.getMetrics());
+        controller = new ObjectstoreController(objectStoreService, null, null, null,
+                new DownloadStreamer(new DownloadConfiguration(), backend.getMetrics()), new ObjectMapper());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        backend.close();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void downloadIsASingleGetBlob() throws Exception {
+        upload("0123456789");
+
+        ResponseEntity<StreamingResponseBody> response = getFile(null);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(read(response)).isEqualTo("0123456789");
+        assertThat(blobStore.getCount("getBlob")).isEqualTo(1);
+        assertThat(blobStore.getTotalCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void downloadOfAMissingObjectIsASingleGetBlob() throws Exception {
+        ResponseEntity<StreamingResponseBody> response = getFile(null);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+        assertThat(blobStore.getCount("getBlob")).isEqualTo(1);
+        assertThat(blobStore.getTotalCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void downloadOfAnUnchangedObjectIsASingleGetBlob() throws Exception {
+        String eTag = upload("0123456789");
+
+        ResponseEntity<StreamingResponseBody> response = controller
+                .getFile(NAME, null, null, "\"" + eTag.replace("\"", "") + "\"", null, null).get();
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        assertThat(blobStore.getTotalCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void rangeIsASingleBlobMetadataAndGetBlob() throws Exception {
+        upload("0123456789");
+
+        read(getFile("bytes=0-4"));
+
+        assertThat(blobStore.getCount("blobMetadata")).isEqualTo(1);
+        assertThat(blobStore.getCount("getBlob")).isEqualTo(1);
+        assertThat(blobStore.getTotalCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void headIsASingleBlobMetadata() throws Exception {
+        upload("0123456789");
+
+        ResponseEntity<Void> response = controller.getFileMetadata(NAME, null, null, null).get();
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(blobStore.getCount("blobMetadata")).isEqualTo(1);
+        assertThat(blobStore.getTotalCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void deleteIsASingleRemoveBlob() throws Exception {
+        upload("0123456789");
+
+        ResponseEntity<String> response = controller.deleteFile(NAME).get();
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(blobStore.getCount("removeBlob")).isEqualTo(1);
+        assertThat(blobStore.getTotalCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void deleteOfAMissingObjectSucceedsInASingleRemoveBlob() throws Exception {
+        ResponseEntity<String> response = controller.deleteFile(NAME).get();
+
+        // documented in the README, there is no existence check any more
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(blobStore.getCount("removeBlob")).isEqualTo(1);
+        assertThat(blobStore.getTotalCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void rangeOfAnObjectReplacedAfterItsMetadataIsServedFromTheNewObject() throws Exception {
+        upload("0123456789");
+        replaceAfterMetadata("abcdefghijklmnopqrst");
+
+        ResponseEntity<StreamingResponseBody> response = getFile("bytes=2-4");
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.PARTIAL_CONTENT);
+        assertThat(response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes 2-4/20");
+        assertThat(read(response)).isEqualTo("cde");
+        // the ranged getBlob failed on the outdated ETag and was resolved again
+        assertThat(blobStore.getCount("blobMetadata")).isEqualTo(2);
+        assertThat(blobStore.getCount("getBlob")).isEqualTo(2);
+    }
+
+    @Test
+    public void rangeOfAnObjectShortenedAfterItsMetadataIsNotSatisfiable() throws Exception {
+        upload("0123456789");
+        replaceAfterMetadata("012");
+
+        ResponseEntity<StreamingResponseBody> response = getFile("bytes=5-8");
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+        assertThat(response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes */3");
+    }
+
+    @Test
+    public void multipleRangesOfAReplacedObjectAbortTheResponse() throws Exception {
+        upload("0123456789");
+        replaceAfterMetadata("abcdefghijklmnopqrst");
+
+        ResponseEntity<StreamingResponseBody> response = getFile("bytes=0-1,4-5");
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.PARTIAL_CONTENT);
+        assertThatThrownBy(() -> read(response)).isInstanceOf(IOException.class)
+                .hasMessageContaining("has been changed while it was downloaded");
+    }
+
+    @Test
+    public void rangesOfAnUnchangedObjectAreServed() throws Exception {
+        upload("0123456789");
+
+        ResponseEntity<StreamingResponseBody> response = getFile("bytes=-3");
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.PARTIAL_CONTENT);
+        assertThat(read(response)).isEqualTo("789");
+    }
+
+    /**
+     * @return eTag of the object, the calls of the upload are not counted
+     */
+    private String upload(String content) throws IOException {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        String eTag = backend.getRepository().uploadFile(backend.getBucket(), new ByteArrayInputStream(bytes),
+                bytes.length, NAME, "text/plain");
+        blobStore.reset();
+        return eTag;
+    }
+
+    /**
+     * The object is replaced right after the first metadata lookup, i.e.
+     * between resolving the ranges and fetching them.
+     */
+    private void replaceAfterMetadata(String content) {
+        AtomicBoolean replaced = new AtomicBoolean();
+        blobStore.replace("blobMetadata", (delegate, args) -> {
+            Object metadata = delegate.blobMetadata((String) args[0], (String) args[1]);
+            if (replaced.compareAndSet(false, true)) {
+                put(delegate, content);
+            }
+            return metadata;
+        });
+    }
+
+    private void put(BlobStore delegate, String content) {
+        delegate.putBlob(backend.getBucket(), delegate.blobBuilder(NAME)
+                .payload(content.getBytes(StandardCharsets.UTF_8)).contentType("text/plain").build());
+    }
+
+    private ResponseEntity<StreamingResponseBody> getFile(String range) throws Exception {
+        return controller.getFile(NAME, range, null, null, null, null).get();
+    }
+
+    private static String read(ResponseEntity<StreamingResponseBody> response) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        response.getBody().writeTo(outputStream);
+        return new String(outputStream.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,154 @@
+package com.sap.refapps.objectstore.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingInputStream;
+import com.sap.refapps.objectstore.config.CacheConfiguration;
+import com.sap.refapps.objectstore.model.BlobContent;
+
+public class BlobCacheTest {
+
+    private static final String BUCKET = "bucket";
+    private static final String NAME = "object.txt";
+
+    private Path directory;
+    private BlobCache blobCache;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("objectstore-cache-test-");
+        final CacheConfiguration config = new CacheConfiguration();
+        config.setEnabled(true);
+        config.setDirectory(directory.toString());
+        // objects above 4 bytes go to the disk tier
+        config.setMemoryObjectLimit(4);
+        blobCache = new BlobCache(config);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        blobCache.shutdown();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Test
+    public void downloadIsServedFromTheCache() throws IOException {
+        final long generation = blobCache.getGeneration(BUCKET, NAME);
+        assertThat(read(blobCache.put(BUCKET, content("v1", "etag-1"), generation))).isEqualTo("v1");
+
+        assertThat(blobCache.get(BUCKET, NAME).map(BlobCacheTest::read)).contains("v1");
+    }
+
+    @Test
+    public void invalidationDropsTheObject() throws IOException {
+        read(blobCache.put(BUCKET, content("v1", "etag-1"), blobCache.getGeneration(BUCKET, NAME)));
+
+        blobCache.invalidate(BUCKET, NAME);
+
+        assertThat(blobCache.get(BUCKET, NAME)).isEmpty();
+    }
+
+    @Test
+    public void downloadCompletingAfterAnInvalidationIsNotPublished() throws IOException {
+        // the download starts, then the object is replaced and invalidated
+        final long generation = blobCache.getGeneration(BUCKET, NAME);
+        blobCache.invalidate(BUCKET, NAME);
+
+        // the download still gets the version it has read, from the dropped file
+        assertThat(read(blobCache.put(BUCKET, content("version 1", "etag-1"), generation))).isEqualTo("version 1");
+        assertThat(blobCache.get(BUCKET, NAME)).isEmpty();
+        assertThat(blobCache.getDiskEntryCount()).isZero();
+    }
+
+    @Test
+    public void outdatedDownloadDoesNotReplaceTheCurrentVersion() throws IOException {
+        final long staleGeneration = blobCache.getGeneration(BUCKET, NAME);
+        blobCache.invalidate(BUCKET, NAME);
+        read(blobCache.put(BUCKET, content("version 2", "etag-2"), blobCache.getGeneration(BUCKET, NAME)));
+
+        // the download of the first version completes last
+        assertThat(read(blobCache.put(BUCKET, content("v1", "etag-1"), staleGeneration))).isEqualTo("v1");
+
+        assertThat(blobCache.get(BUCKET, NAME).map(BlobCacheTest::read)).contains("version 2");
+    }
+
+    @Test
+    public void objectIsCachedWhileItIsServed() throws IOException {
+        final CountingInputStream source = new CountingInputStream(bytes("version 1"));
+        final BlobContent served = blobCache.put(BUCKET, content(source, 9, "etag-1"),
+                blobCache.getGeneration(BUCKET, NAME));
+
+        // nothing is read ahead of the client
+        assertThat(source.getCount()).isZero();
+        assertThat(blobCache.get(BUCKET, NAME)).isEmpty();
+
+        assertThat(read(served)).isEqualTo("version 1");
+        assertThat(source.getCount()).isEqualTo(9);
+        assertThat(blobCache.get(BUCKET, NAME).map(BlobCacheTest::read)).contains("version 1");
+    }
+
+    @Test
+    public void abortedDownloadIsNotCached() throws IOException {
+        final BlobContent served = blobCache.put(BUCKET, content("version 1", "etag-1"),
+                blobCache.getGeneration(BUCKET, NAME));
+
+        try (InputStream inputStream = served.getInputStream()) {
+            assertThat(inputStream.read(new byte[4])).isEqualTo(4);
+        }
+
+        assertThat(blobCache.get(BUCKET, NAME)).isEmpty();
+        assertThat(blobCache.getDiskEntryCount()).isZero();
+        try (Stream<Path> files = Files.list(directory)) {
+            assertThat(files.count()).isZero();
+        }
+    }
+
+    @Test
+    public void objectShorterThanItsLengthIsNotCached() throws IOException {
+        final BlobContent served = blobCache.put(BUCKET, content(bytes("version"), 9, "etag-1"),
+                blobCache.getGeneration(BUCKET, NAME));
+
+        assertThat(read(served)).isEqualTo("version");
+
+        assertThat(blobCache.get(BUCKET, NAME)).isEmpty();
+    }
+
+    private static InputStream bytes(final String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static BlobContent content(final InputStream inputStream, final long length, final String etag) {
+        return new BlobContent(NAME, etag, new Date(), "text/plain", length, length, inputStream, null, -1);
+    }
+
+    private static BlobContent content(final String content, final String etag) {
+        final byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        return new BlobContent(NAME, etag, new Date(), "text/plain", bytes.length, bytes.length,
+                new ByteArrayInputStream(bytes), null, -1);
+    }
+
+    private static String read(final BlobContent blobContent) {
+        try (InputStream inputStream = blobContent.getInputStream()) {
+            return new String(ByteStreams.toByteArray(inputStream), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
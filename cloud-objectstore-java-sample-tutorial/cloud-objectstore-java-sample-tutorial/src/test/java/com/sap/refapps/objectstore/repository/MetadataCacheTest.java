@@ -0,0 +1,157 @@
+package com.sap.refapps.objectstore.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jclouds.blobstore.options.ListContainerOptions;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sap.refapps.objectstore.config.MetadataCacheConfiguration;
+import com.sap.refapps.objectstore.model.BlobContent;
+import com.sap.refapps.objectstore.model.BlobFile;
+import com.sap.refapps.objectstore.model.BlobFilePage;
+
+public class MetadataCacheTest {
+
+    private static final String BUCKET = "bucket";
+
+    private static final String NAME = "object.txt";
+
+    private final AtomicInteger loadedPages = new AtomicInteger();
+    private final AtomicInteger loadedMetadata = new AtomicInteger();
+    private final CountDownLatch loading = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    // the first load is held until the test releases it
+    private volatile boolean blockFirstLoad;
+    private volatile String version = "v1";
+    private MetadataCache metadataCache;
+
+    @Before
+    public void setUp() {
+        final MetadataCacheConfiguration config = new MetadataCacheConfiguration();
+        config.setEnabled(true);
+        metadataCache = new MetadataCache(config, (bucketName, fileName) -> {
+            final String loadedVersion = version;
+            await(loadedMetadata.incrementAndGet());
+            return Optional.of(new BlobContent(fileName, loadedVersion, null, null, 0, 0, null));
+        }, (bucketName, options, withMetadata) -> {
+            final String loadedVersion = version;
+            await(loadedPages.incrementAndGet());
+            return new BlobFilePage(Collections.singletonList(new BlobFile(loadedVersion)), null);
+        });
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        metadataCache.shutdown();
+    }
+
+    @Test
+    public void requestedPagesAreCached() {
+        metadataCache.getPage(BUCKET, new ListContainerOptions().maxResults(100), false);
+        metadataCache.getPage(BUCKET, new ListContainerOptions().maxResults(100), false);
+
+        assertThat(loadedPages.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void walkedPagesBypassTheCache() {
+        for (int i = 0; i < 3; i++) {
+            metadataCache.loadPage(BUCKET, new ListContainerOptions().afterMarker("object-" + i), false);
+        }
+        metadataCache.loadPage(BUCKET, new ListContainerOptions().afterMarker("object-0"), false);
+        assertThat(loadedPages.get()).isEqualTo(4);
+
+        // nothing has been filled in by the walk
+        metadataCache.getPage(BUCKET, new ListContainerOptions().afterMarker("object-0"), false);
+        assertThat(loadedPages.get()).isEqualTo(5);
+    }
+
+    @Test
+    public void concurrentLookupsShareOneBackendCall() throws Exception {
+        blockFirstLoad = true;
+        final List<Thread> threads = new ArrayList<>();
+        final List<Optional<BlobContent>> results = new CopyOnWriteArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            threads.add(new Thread(() -> results.add(metadataCache.getMetadata(BUCKET, NAME))));
+        }
+        threads.forEach(Thread::start);
+        assertThat(loading.await(10, TimeUnit.SECONDS)).isTrue();
+        // all lookups are waiting, one of them for the backend
+        awaitWaiting(threads);
+        release.countDown();
+        for (Thread thread : threads) {
+            thread.join(10_000);
+        }
+
+        assertThat(loadedMetadata.get()).isEqualTo(1);
+        assertThat(results).hasSize(8).allMatch(result -> "v1".equals(result.get().getEtag()));
+    }
+
+    @Test
+    public void metadataLoadedBeforeAnInvalidationIsNotServed() throws Exception {
+        blockFirstLoad = true;
+        final CompletableFuture<Optional<BlobContent>> inFlight = CompletableFuture
+                .supplyAsync(() -> metadataCache.getMetadata(BUCKET, NAME));
+        assertThat(loading.await(10, TimeUnit.SECONDS)).isTrue();
+
+        // the object is replaced while v1 is being loaded
+        version = "v2";
+        metadataCache.invalidate(BUCKET, NAME);
+        release.countDown();
+        // the lookup itself notices the invalidation and loads again
+        assertThat(inFlight.get(10, TimeUnit.SECONDS).get().getEtag()).isEqualTo("v2");
+
+        assertThat(metadataCache.getMetadata(BUCKET, NAME).get().getEtag()).isEqualTo("v2");
+        assertThat(loadedMetadata.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void pageLoadedBeforeAnInvalidationIsNotServed() throws Exception {
+        blockFirstLoad = true;
+        final CompletableFuture<BlobFilePage> inFlight = CompletableFuture
+                .supplyAsync(() -> metadataCache.getPage(BUCKET, new ListContainerOptions(), false));
+        assertThat(loading.await(10, TimeUnit.SECONDS)).isTrue();
+
+        version = "v2";
+        metadataCache.invalidate(BUCKET, NAME);
+        release.countDown();
+        assertThat(inFlight.get(10, TimeUnit.SECONDS).getFiles().get(0).getName()).isEqualTo("v2");
+
+        assertThat(metadataCache.getPage(BUCKET, new ListContainerOptions(), false).getFiles().get(0).getName())
+                .isEqualTo("v2");
+        assertThat(loadedPages.get()).isEqualTo(2);
+    }
+
+    private void await(final int load) {
+        if (blockFirstLoad && load == 1) {
+            loading.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static void awaitWaiting(final List<Thread> threads) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 10_000;
+        while (!threads.stream().allMatch(thread -> thread.getState() == Thread.State.WAITING
+                || thread.getState() == Thread.State.TIMED_WAITING)) {
+            assertThat(System.currentTimeMillis()).isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+}
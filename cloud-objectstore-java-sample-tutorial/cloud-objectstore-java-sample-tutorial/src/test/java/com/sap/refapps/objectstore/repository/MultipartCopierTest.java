@@ -0,0 +1,158 @@
+package com.sap.refapps.objectstore.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Proxy;
+import java.util.Random;
+import java.util.function.IntConsumer;
+
+import org.jclouds.blobstore.BlobStore;
+import org.jclouds.blobstore.BlobStoreContext;
+import org.jclouds.blobstore.domain.Blob;
+import org.jclouds.blobstore.domain.BlobMetadata;
+import org.jclouds.blobstore.domain.MultipartUpload;
+import org.jclouds.blobstore.options.GetOptions;
+import org.jclouds.blobstore.options.PutOptions;
+import org.jclouds.s3.S3Client;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.io.ByteStreams;
+import com.sap.refapps.objectstore.CountingBlobStore;
+import com.sap.refapps.objectstore.TestBackend;
+import com.sap.refapps.objectstore.config.CopyConfiguration;
+import com.sap.refapps.objectstore.config.MultipartUploadConfiguration;
+
+/**
+ * Copies a 2.5 MB object in 1 MB parts on the transient backend. It has no
+ * UploadPartCopy, the S3Client handed out by the CountingBlobStore stands
+ * in for it and copies each range through the multipart upload of the
+ * transient backend.
+ */
+public class MultipartCopierTest {
+
+    private static final int MB = 1024 * 1024;
+    private static final String SOURCE = "source.bin";
+    private static final String TARGET = "target.bin";
+
+    private final CountingBlobStore blobStore = new CountingBlobStore();
+    private final byte[] content = new byte[5 * MB / 2];
+    private TestBackend backend;
+    private MultipartCopier copier;
+    private BlobStore store;
+    private IntConsumer beforePart = partNumber -> {
+    };
+
+    @Before
+    public void setUp() throws IOException {
+        new Random(42).nextBytes(content);
+        final CopyConfiguration config = new CopyConfiguration();
+        config.setPartSize(MB);
+        config.setMaxRetries(0);
+        copier = new MultipartCopier(config);
+        backend = new TestBackend("transient", blobStore, new MultipartUploadConfiguration());
+        store = backend.getContextProvider().getContext().getBlobStore();
+        final BlobStoreContext s3Context = createS3Context(store.getContext());
+        blobStore.replace("getContext", (delegate, args) -> s3Context);
+        store.putBlob(backend.getBucket(), store.blobBuilder(SOURCE).payload(content).build());
+        blobStore.reset();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        copier.shutdown();
+        backend.close();
+    }
+
+    @Test
+    public void sourceIsCopiedInParts() throws IOException {
+        copier.copy(store, backend.getBucket(), SOURCE, getETag(SOURCE), content.length, targetMetadata());
+
+        assertThat(read(TARGET)).isEqualTo(content);
+        assertThat(blobStore.getCount("uploadMultipartPart")).isEqualTo(3);
+        assertThat(blobStore.getCount("removeBlob")).isZero();
+    }
+
+    @Test
+    public void sourceChangedDuringTheCopyFailsAndRemovesTheCopy() throws IOException {
+        final String eTag = getETag(SOURCE);
+        beforePart = partNumber -> {
+            if (partNumber == 2) {
+                store.putBlob(backend.getBucket(), store.blobBuilder(SOURCE).payload(new byte[content.length])
+                        .build());
+            }
+        };
+
+        assertThatThrownBy(() -> copier.copy(store, backend.getBucket(), SOURCE, eTag, content.length,
+                targetMetadata())).isInstanceOf(IOException.class).hasMessageContaining("has been changed");
+
+        assertThat(store.blobExists(backend.getBucket(), TARGET)).isFalse();
+    }
+
+    @Test
+    public void failedPartAbortsTheCopy() throws IOException {
+        beforePart = partNumber -> {
+            if (partNumber == 2) {
+                throw new IllegalStateException("injected failure of part 2");
+            }
+        };
+
+        assertThatThrownBy(() -> copier.copy(store, backend.getBucket(), SOURCE, getETag(SOURCE), content.length,
+                targetMetadata())).isInstanceOf(IOException.class)
+                        .hasStackTraceContaining("injected failure of part 2");
+
+        assertThat(blobStore.getCount("abortMultipartUpload")).isEqualTo(1);
+        assertThat(store.blobExists(backend.getBucket(), TARGET)).isFalse();
+    }
+
+    /**
+     * @return context whose S3Client copies ranges of the source as parts
+     *         of the multipart upload
+     */
+    private BlobStoreContext createS3Context(final BlobStoreContext context) {
+        final S3Client s3Client = (S3Client) Proxy.newProxyInstance(S3Client.class.getClassLoader(),
+                new Class<?>[] { S3Client.class }, (proxy, method, args) -> {
+                    if (!method.getName().equals("uploadPartCopy")) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    final int partNumber = (Integer) args[2];
+                    beforePart.accept(partNumber);
+                    final Blob range = store.getBlob((String) args[4], (String) args[5],
+                            new GetOptions().range((Long) args[6], (Long) args[7]));
+                    final byte[] bytes;
+                    try (InputStream inputStream = range.getPayload().openStream()) {
+                        bytes = ByteStreams.toByteArray(inputStream);
+                    }
+                    final MultipartUpload multipartUpload = MultipartUpload.create((String) args[0],
+                            (String) args[1], (String) args[3], null, PutOptions.NONE);
+                    return store.uploadMultipartPart(multipartUpload, partNumber,
+                            store.blobBuilder(TARGET).payload(bytes).build().getPayload()).partETag();
+                });
+        return (BlobStoreContext) Proxy.newProxyInstance(BlobStoreContext.class.getClassLoader(),
+                new Class<?>[] { BlobStoreContext.class }, (proxy, method, args) -> {
+                    if (method.getName().equals("unwrapApi")) {
+                        return s3Client;
+                    }
+                    return method.invoke(context, args);
+                });
+    }
+
+    private BlobMetadata targetMetadata() {
+        return store.blobBuilder(TARGET).forSigning().contentType("application/octet-stream").build()
+                .getMetadata();
+    }
+
+    private String getETag(final String name) {
+        return store.blobMetadata(backend.getBucket(), name).getETag();
+    }
+
+    private byte[] read(final String name) throws IOException {
+        try (InputStream inputStream = store.getBlob(backend.getBucket(), name).getPayload().openStream()) {
+            return ByteStreams.toByteArray(inputStream);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.sap.refapps.objectstore.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jclouds.blobstore.BlobStore;
+import org.jclouds.blobstore.domain.BlobMetadata;
+import org.jclouds.blobstore.domain.MultipartUpload;
+import org.jclouds.io.Payload;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.io.ByteStreams;
+import com.sap.refapps.objectstore.CountingBlobStore;
+import com.sap.refapps.objectstore.TestBackend;
+import com.sap.refapps.objectstore.config.MultipartUploadConfiguration;
+
+/**
+ * Uploads in 1 MB parts to the transient backend, with single parts
+ * failing through the CountingBlobStore.
+ */
+public class MultipartUploaderTest {
+
+    private static final int MB = 1024 * 1024;
+    private static final String NAME = "large.bin";
+
+    private final CountingBlobStore blobStore = new CountingBlobStore();
+    private final byte[] content = new byte[3 * MB + MB / 2];
+    private TestBackend backend;
+    private MultipartUploader uploader;
+
+    @Before
+    public void setUp() throws IOException {
+        new Random(42).nextBytes(content);
+        final MultipartUploadConfiguration config = new MultipartUploadConfiguration();
+        config.setEnabled(true);
+        config.setThreshold(MB);
+        config.setPartSize(MB);
+        config.setMaxRetries(2);
+        backend = new TestBackend("transient", blobStore, config);
+        uploader = new MultipartUploader(config);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        uploader.shutdown();
+        backend.close();
+    }
+
+    @Test
+    public void failedPartIsRetried() throws IOException {
+        final AtomicInteger failures = new AtomicInteger();
+        blobStore.replace("uploadMultipartPart", (delegate, args) -> {
+            if ((Integer) args[1] == 2 && failures.getAndIncrement() == 0) {
+                throw new IllegalStateException("injected failure of part 2");
+            }
+            return delegate.uploadMultipartPart((MultipartUpload) args[0], (Integer) args[1], (Payload) args[2]);
+        });
+
+        upload(new ByteArrayInputStream(content));
+
+        assertThat(failures.get()).isEqualTo(2);
+        // four parts plus the retry of part 2
+        assertThat(blobStore.getCount("uploadMultipartPart")).isEqualTo(5);
+        assertThat(blobStore.getCount("completeMultipartUpload")).isEqualTo(1);
+        assertThat(blobStore.getCount("abortMultipartUpload")).isZero();
+        assertThat(read()).isEqualTo(content);
+    }
+
+    @Test
+    public void partFailingBeyondItsRetriesAbortsTheUpload() {
+        blobStore.replace("uploadMultipartPart", (delegate, args) -> {
+            if ((Integer) args[1] == 2) {
+                throw new IllegalStateException("injected failure of part 2");
+            }
+            return delegate.uploadMultipartPart((MultipartUpload) args[0], (Integer) args[1], (Payload) args[2]);
+        });
+
+        assertThatThrownBy(() -> upload(new ByteArrayInputStream(content))).isInstanceOf(IOException.class)
+                .hasMessageContaining("failed");
+
+        assertThat(blobStore.getCount("abortMultipartUpload")).isEqualTo(1);
+        assertThat(blobStore.getCount("completeMultipartUpload")).isZero();
+        assertThat(getBlobStore().blobExists(backend.getBucket(), NAME)).isFalse();
+    }
+
+    @Test
+    public void failingInputStreamAbortsTheUpload() {
+        final InputStream failingStream = new InputStream() {
+
+            private int remaining = 2 * MB;
+
+            @Override
+            public int read() throws IOException {
+                if (remaining-- == 0) {
+                    throw new IOException("client went away");
+                }
+                return 1;
+            }
+        };
+
+        assertThatThrownBy(() -> upload(failingStream)).isInstanceOf(IOException.class)
+                .hasMessage("client went away");
+
+        assertThat(blobStore.getCount("abortMultipartUpload")).isEqualTo(1);
+        assertThat(blobStore.getCount("completeMultipartUpload")).isZero();
+        assertThat(getBlobStore().blobExists(backend.getBucket(), NAME)).isFalse();
+    }
+
+    private String upload(final InputStream inputStream) throws IOException {
+        final BlobStore store = getBlobStore();
+        final BlobMetadata blobMetadata = store.blobBuilder(NAME).forSigning()
+                .contentType("application/octet-stream").build().getMetadata();
+        return uploader.upload(store, backend.getBucket(), blobMetadata, inputStream, -1);
+    }
+
+    private byte[] read() throws IOException {
+        try (InputStream inputStream = getBlobStore().getBlob(backend.getBucket(), NAME).getPayload()
+                .openStream()) {
+            return ByteStreams.toByteArray(inputStream);
+        }
+    }
+
+    private BlobStore getBlobStore() {
+        return backend.getContextProvider().getContext().getBlobStore();
+    }
+}
@@ -0,0 +1,130 @@
+package com.sap.refapps.objectstore.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.jclouds.blobstore.options.GetOptions;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sap.refapps.objectstore.CountingBlobStore;
+import com.sap.refapps.objectstore.TestBackend;
+import com.sap.refapps.objectstore.config.DownloadConfiguration;
+import com.sap.refapps.objectstore.config.MultipartUploadConfiguration;
+import com.sap.refapps.objectstore.controller.DownloadStreamer;
+import com.sap.refapps.objectstore.model.BlobContent;
+import com.sap.refapps.objectstore.service.impl.LocalObjectStoreService;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.search.Search;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Runs operations through the service on the transient backend and reads
+ * the meters they have recorded from the registry of the TestBackend.
+ */
+public class ObjectStoreMetricsTest {
+
+    private static final String NAME = "object.txt";
+    private static final byte[] CONTENT = "metered content".getBytes(StandardCharsets.UTF_8);
+
+    private final CountingBlobStore blobStore = new CountingBlobStore();
+    private ExecutorService executor;
+    private TestBackend backend;
+    private SimpleMeterRegistry registry;
+    private LocalObjectStoreService objectStoreService;
+
+    @Before
+    public void setUp() throws IOException {
+        executor = Executors.newFixedThreadPool(2);
+        backend = new TestBackend("transient", blobStore, new MultipartUploadConfiguration());
+        registry = backend.getRegistry();
+        objectStoreService = new LocalObjectStoreService(backend.getLocalConfig(), backend.getRepository(),
+                executor, backend.getMetrics());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        backend.close();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void uploadIsTimedWithItsBytesAndBackendCall() throws IOException {
+        objectStoreService.uploadFile(new ByteArrayInputStream(CONTENT), CONTENT.length, NAME, "text/plain");
+
+        assertThat(timer("objectstore.operations", "operation", "uploadFile", "success").count()).isEqualTo(1);
+        assertThat(timer("objectstore.backend.calls", "call", "putBlob", "success").count()).isEqualTo(1);
+        assertThat(registry.find("objectstore.bytes").tag("direction", "in").counter().count())
+                .isEqualTo(CONTENT.length);
+        assertThat(registry.find("objectstore.object.size").summary().totalAmount()).isEqualTo(CONTENT.length);
+        assertThat(registry.find("objectstore.operations.active").tag("operation", "uploadFile").gauge().value())
+                .isZero();
+    }
+
+    @Test
+    public void failedOperationIsCountedByItsCause() {
+        blobStore.replace("blobMetadata", (delegate, args) -> {
+            throw new IllegalStateException("injected failure");
+        });
+
+        assertThatThrownBy(() -> objectStoreService.getFileMetadata(NAME)).isInstanceOf(IllegalStateException.class);
+
+        assertThat(timer("objectstore.operations", "operation", "getFileMetadata", "error").count()).isEqualTo(1);
+        assertThat(registry.find("objectstore.operations.errors").tag("operation", "getFileMetadata")
+                .tag("cause", "IllegalStateException").counter().count()).isEqualTo(1);
+        assertThat(registry.find("objectstore.backend.calls.errors").tag("cause", "IllegalStateException")
+                .counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    public void downloadIsCountedByTheStreamer() throws IOException {
+        objectStoreService.uploadFile(new ByteArrayInputStream(CONTENT), CONTENT.length, NAME, "text/plain");
+        final DownloadStreamer downloadStreamer = new DownloadStreamer(new DownloadConfiguration(),
+                backend.getMetrics());
+        final BlobContent blobContent = objectStoreService.getFile(NAME, GetOptions.NONE).get();
+
+        downloadStreamer.copy(blobContent, new ByteArrayOutputStream());
+
+        assertThat(functionCounter(registry.find("objectstore.downloads").tag("outcome", "completed")))
+                .isEqualTo(1);
+        assertThat(functionCounter(registry.find("objectstore.downloads").tag("outcome", "failed"))).isZero();
+        assertThat(registry.find("objectstore.bytes").tag("direction", "out").counter().count())
+                .isEqualTo(CONTENT.length);
+        assertThat(registry.find("objectstore.downloads.active").gauge().value()).isZero();
+    }
+
+    @Test
+    public void statisticsOfTheComponentsAreRegistered() throws IOException {
+        objectStoreService.getFileMetadata(NAME);
+
+        assertThat(functionCounter(registry.find("objectstore.blob.cache.requests").tag("result", "miss")))
+                .isZero();
+        assertThat(registry.find("objectstore.blob.cache.entries").tag("tier", "disk").gauge()).isNotNull();
+        assertThat(registry.find("cache.gets").tag("cache", "objectstore.metadata").tag("result", "miss")
+                .functionCounter()).isNotNull();
+        assertThat(registry.find("cache.size").tag("cache", "objectstore.pages").gauge()).isNotNull();
+        assertThat(functionCounter(registry.find("objectstore.compression.bytes.saved"))).isZero();
+        assertThat(functionCounter(registry.find("objectstore.dedup.uploads"))).isZero();
+    }
+
+    private Timer timer(final String name, final String tagKey, final String tagValue, final String outcome) {
+        final Timer timer = registry.find(name).tag(tagKey, tagValue).tag("outcome", outcome).timer();
+        assertThat(timer).as(name + " " + tagValue + " " + outcome).isNotNull();
+        assertThat(timer.totalTime(TimeUnit.NANOSECONDS)).isPositive();
+        return timer;
+    }
+
+    private static double functionCounter(final Search search) {
+        return search.functionCounter().count();
+    }
+}
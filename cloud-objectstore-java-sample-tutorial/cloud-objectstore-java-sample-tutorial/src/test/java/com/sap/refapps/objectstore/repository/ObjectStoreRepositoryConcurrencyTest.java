@@ -0,0 +1,163 @@
+package com.sap.refapps.objectstore.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.jclouds.blobstore.BlobStoreContext;
+import org.jclouds.blobstore.options.GetOptions;
+import org.jclouds.blobstore.options.ListContainerOptions;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.io.ByteStreams;
+import com.sap.refapps.objectstore.TestBackend;
+import com.sap.refapps.objectstore.config.BlobStoreContextProvider;
+import com.sap.refapps.objectstore.model.BlobContent;
+import com.sap.refapps.objectstore.model.BlobFile;
+
+/**
+ * Runs many operations at once against the shared BlobStoreContext, with
+ * and without the context being rebuilt underneath them.
+ */
+public class ObjectStoreRepositoryConcurrencyTest {
+
+    private static final int WORKERS = 256;
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(WORKERS);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void concurrentOperationsShareOneContext() throws Exception {
+        try (TestBackend backend = new TestBackend("transient")) {
+            runWorkers(backend, 1);
+
+            assertThat(backend.getContextProvider().getBuildCount()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void concurrentOperationsSurviveContextRebuilds() throws Exception {
+        // the filesystem backend keeps the objects across contexts
+        try (TestBackend backend = new TestBackend("filesystem")) {
+            final BlobStoreContextProvider contextProvider = backend.getContextProvider();
+            final AtomicBoolean running = new AtomicBoolean(true);
+            final Thread rebuilder = new Thread(() -> {
+                while (running.get()) {
+                    contextProvider.rebuild();
+                    sleep(20);
+                }
+            });
+            rebuilder.start();
+            try {
+                runWorkers(backend, 5);
+            } finally {
+                running.set(false);
+                rebuilder.join();
+            }
+
+            assertThat(contextProvider.getBuildCount()).isGreaterThan(2);
+        }
+    }
+
+    @Test
+    public void invalidatingARetiredContextDoesNotRebuild() throws Exception {
+        try (TestBackend backend = new TestBackend("transient")) {
+            final BlobStoreContextProvider contextProvider = backend.getContextProvider();
+            final BlobStoreContext retired = contextProvider.getContext();
+            contextProvider.rebuild();
+            final BlobStoreContext current = contextProvider.getContext();
+
+            final CountDownLatch start = new CountDownLatch(1);
+            final List<Future<?>> invalidations = new ArrayList<>();
+            for (int i = 0; i < WORKERS; i++) {
+                invalidations.add(executor.submit(() -> {
+                    start.await();
+                    contextProvider.invalidate(retired);
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> invalidation : invalidations) {
+                invalidation.get(30, TimeUnit.SECONDS);
+            }
+
+            assertThat(contextProvider.getBuildCount()).isEqualTo(2);
+            assertThat(contextProvider.getContext()).isSameAs(current);
+        }
+    }
+
+    /**
+     * Every worker uploads, downloads, lists and deletes its own objects, all
+     * workers are released at the same time.
+     */
+    private void runWorkers(final TestBackend backend, final int rounds) throws Exception {
+        final ObjectStoreRepository repository = backend.getRepository();
+        final String bucket = backend.getBucket();
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Future<?>> workers = new ArrayList<>();
+        for (int i = 0; i < WORKERS; i++) {
+            final String prefix = "worker-" + i + "/";
+            workers.add(executor.submit(() -> {
+                start.await();
+                for (int round = 0; round < rounds; round++) {
+                    final String name = prefix + "object-" + round;
+                    final byte[] content = (name + " content").getBytes(StandardCharsets.UTF_8);
+                    repository.uploadFile(bucket, new ByteArrayInputStream(content), content.length, name,
+                            "text/plain");
+
+                    assertThat(read(repository.downloadFile(bucket, name, new GetOptions()))).isEqualTo(content);
+                    assertThat(repository.getFileMetadata(bucket, name).get().getSize()).isEqualTo(content.length);
+                    final List<BlobFile> files = repository.listFiles(bucket,
+                            new ListContainerOptions().prefix(prefix).recursive(), false).getFiles();
+                    assertThat(files).extracting(BlobFile::getName).containsExactly(name);
+
+                    assertThat(repository.deleteFile(bucket, name)).isTrue();
+                    assertThat(repository.downloadFile(bucket, name, new GetOptions())).isEmpty();
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> worker : workers) {
+            worker.get(120, TimeUnit.SECONDS);
+        }
+    }
+
+    private static byte[] read(final Optional<BlobContent> blobContent) throws IOException {
+        assertThat(blobContent).isPresent();
+        try (InputStream inputStream = blobContent.get().getInputStream()) {
+            return ByteStreams.toByteArray(inputStream);
+        }
+    }
+
+    private static void sleep(final long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
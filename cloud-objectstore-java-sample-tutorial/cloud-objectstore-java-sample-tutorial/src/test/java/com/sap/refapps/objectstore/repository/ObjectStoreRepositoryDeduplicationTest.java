@@ -0,0 +1,149 @@
+package com.sap.refapps.objectstore.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.jclouds.blobstore.BlobStore;
+import org.jclouds.blobstore.options.CopyOptions;
+import org.junit.After;
+import org.junit.Test;
+
+import com.google.common.base.Strings;
+import com.google.common.io.ByteStreams;
+import com.sap.refapps.objectstore.CountingBlobStore;
+import com.sap.refapps.objectstore.TestBackend;
+import com.sap.refapps.objectstore.config.DeduplicationConfiguration;
+import com.sap.refapps.objectstore.config.MultipartUploadConfiguration;
+
+import io.micrometer.core.instrument.search.Search;
+
+/**
+ * Duplicates that fit into a multipart part are copied on the objectstore
+ * instead of being uploaded again, larger ones are recognized after their
+ * upload. Google Cloud Storage rejects copies with an ETag precondition,
+ * the transient backend stands in for it and does the same.
+ */
+public class ObjectStoreRepositoryDeduplicationTest {
+
+    private static final String CONTENT = "duplicated content";
+    private static final int PART_SIZE = 1024 * 1024;
+
+    private final CountingBlobStore blobStore = new CountingBlobStore();
+    private TestBackend backend;
+
+    @After
+    public void tearDown() throws IOException {
+        backend.close();
+    }
+
+    @Test
+    public void duplicateIsCopiedWithAPrecondition() throws IOException {
+        createBackend("transient");
+        upload("first.txt", CONTENT);
+
+        upload("second.txt", CONTENT);
+
+        assertThat(blobStore.getCount("putBlob")).isEqualTo(1);
+        assertThat(blobStore.getCount("copyBlob")).isEqualTo(1);
+        assertThat(read("second.txt")).isEqualTo(CONTENT);
+        assertThat(count("objectstore.dedup.uploads", null)).isEqualTo(2);
+        assertThat(count("objectstore.dedup.duplicates", "copied")).isEqualTo(1);
+        assertThat(count("objectstore.dedup.bytes.saved", null)).isEqualTo(CONTENT.length());
+    }
+
+    @Test
+    public void duplicateLargerThanAPartIsRecognizedAfterItsUpload() throws IOException {
+        createBackend("transient");
+        final String content = Strings.repeat(CONTENT, PART_SIZE / CONTENT.length() * 3 / 2);
+        upload("first.txt", content);
+
+        upload("second.txt", content);
+
+        assertThat(blobStore.getCount("copyBlob")).isZero();
+        assertThat(blobStore.getCount("completeMultipartUpload")).isEqualTo(2);
+        assertThat(read("second.txt")).isEqualTo(content);
+        assertThat(count("objectstore.dedup.duplicates", "copied")).isZero();
+        assertThat(count("objectstore.dedup.duplicates", "uploaded")).isEqualTo(1);
+
+        // the index points to the latest upload, the next duplicate of a
+        // part is copied from it
+        upload("third.txt", CONTENT);
+        upload("fourth.txt", CONTENT);
+        assertThat(blobStore.getCount("copyBlob")).isEqualTo(1);
+    }
+
+    @Test
+    public void duplicateIsCopiedOnGoogleCloudStorage() throws IOException {
+        createBackend("google-cloud-storage");
+        upload("first.txt", CONTENT);
+
+        upload("second.txt", CONTENT);
+
+        assertThat(blobStore.getCount("putBlob")).isEqualTo(1);
+        assertThat(blobStore.getCount("copyBlob")).isEqualTo(1);
+        assertThat(read("second.txt")).isEqualTo(CONTENT);
+    }
+
+    @Test
+    public void changedObjectIsNotCopiedOnGoogleCloudStorage() throws IOException {
+        createBackend("google-cloud-storage");
+        upload("first.txt", CONTENT);
+        // replaced behind the back of the repository
+        final byte[] changed = "changed content".getBytes(StandardCharsets.UTF_8);
+        final BlobStore store = getBlobStore();
+        store.putBlob(backend.getBucket(), store.blobBuilder("first.txt").payload(changed).build());
+        blobStore.reset();
+
+        upload("second.txt", CONTENT);
+
+        assertThat(blobStore.getCount("copyBlob")).isZero();
+        assertThat(blobStore.getCount("putBlob")).isEqualTo(1);
+        assertThat(read("second.txt")).isEqualTo(CONTENT);
+    }
+
+    private void createBackend(final String backendName) throws IOException {
+        final DeduplicationConfiguration deduplicationConfig = new DeduplicationConfiguration();
+        deduplicationConfig.setEnabled(true);
+        deduplicationConfig.setMinSize(1);
+        final MultipartUploadConfiguration multipartConfig = new MultipartUploadConfiguration();
+        multipartConfig.setEnabled(true);
+        multipartConfig.setPartSize(PART_SIZE);
+        backend = new TestBackend("transient", backendName, blobStore, multipartConfig, deduplicationConfig);
+        if ("google-cloud-storage".equals(backendName)) {
+            blobStore.replace("copyBlob", (delegate, args) -> {
+                final CopyOptions options = (CopyOptions) args[4];
+                if (options.ifMatch() != null) {
+                    throw new UnsupportedOperationException("copyBlob with ifMatch");
+                }
+                return delegate.copyBlob((String) args[0], (String) args[1], (String) args[2], (String) args[3],
+                        options);
+            });
+        }
+    }
+
+    private void upload(final String fileName, final String content) throws IOException {
+        final byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        backend.getRepository().uploadFile(backend.getBucket(), new ByteArrayInputStream(bytes), bytes.length,
+                fileName, "text/plain");
+    }
+
+    private double count(final String name, final String outcome) {
+        final Search search = backend.getRegistry().find(name);
+        return (outcome != null ? search.tag("outcome", outcome) : search).functionCounter().count();
+    }
+
+    private BlobStore getBlobStore() {
+        return backend.getContextProvider().getContext().getBlobStore();
+    }
+
+    private String read(final String fileName) throws IOException {
+        try (InputStream inputStream = getBlobStore().getBlob(backend.getBucket(), fileName).getPayload()
+                .openStream()) {
+            return new String(ByteStreams.toByteArray(inputStream), StandardCharsets.UTF_8);
+        }
+    }
+}
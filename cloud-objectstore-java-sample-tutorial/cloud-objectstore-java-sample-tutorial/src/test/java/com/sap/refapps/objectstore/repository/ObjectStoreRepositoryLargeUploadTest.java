@@ -0,0 +1,130 @@
+package com.sap.refapps.objectstore.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jclouds.blobstore.domain.Blob;
+import org.jclouds.blobstore.domain.MultipartPart;
+import org.jclouds.io.Payload;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sap.refapps.objectstore.CountingBlobStore;
+import com.sap.refapps.objectstore.TestBackend;
+import com.sap.refapps.objectstore.config.MultipartUploadConfiguration;
+
+/**
+ * Uploads four times the maximum heap, the tests run with -Xmx256m (see
+ * the surefire configuration). An upload buffered on the heap fails with an
+ * OutOfMemoryError. The transient backend reads and discards the payloads
+ * instead of keeping them in memory.
+ */
+public class ObjectStoreRepositoryLargeUploadTest {
+
+    private static final long MB = 1024 * 1024;
+
+    private final long size = 4 * Runtime.getRuntime().maxMemory();
+    private final AtomicLong storedBytes = new AtomicLong();
+    private final CountingBlobStore blobStore = new CountingBlobStore();
+
+    @Before
+    public void setUp() {
+        blobStore.replace("putBlob", (delegate, args) -> {
+            storedBytes.addAndGet(drain(((Blob) args[1]).getPayload()));
+            return "\"discarded\"";
+        });
+        blobStore.replace("uploadMultipartPart", (delegate, args) -> {
+            final long partSize = drain((Payload) args[2]);
+            storedBytes.addAndGet(partSize);
+            return MultipartPart.create((Integer) args[1], partSize, "\"part-" + args[1] + "\"", new Date());
+        });
+        blobStore.replace("completeMultipartUpload", (delegate, args) -> "\"discarded-parts\"");
+    }
+
+    @Test
+    public void uploadOfKnownLengthIsStreamed() throws IOException {
+        try (TestBackend backend = new TestBackend("transient", blobStore, new MultipartUploadConfiguration())) {
+            backend.getRepository().uploadFile(backend.getBucket(), new GeneratedInputStream(size), size,
+                    "large.bin", "application/octet-stream");
+        }
+
+        assertThat(storedBytes.get()).isEqualTo(size);
+        assertThat(blobStore.getCount("putBlob")).isEqualTo(1);
+    }
+
+    @Test
+    public void uploadOfUnknownLengthIsSpooledToDisk() throws IOException {
+        try (TestBackend backend = new TestBackend("transient", blobStore, new MultipartUploadConfiguration())) {
+            backend.getRepository().uploadFile(backend.getBucket(), new GeneratedInputStream(size), -1,
+                    "large.bin", "application/octet-stream");
+        }
+
+        assertThat(storedBytes.get()).isEqualTo(size);
+    }
+
+    @Test
+    public void multipartUploadUsesTheBoundedBufferPool() throws IOException {
+        final MultipartUploadConfiguration multipartConfig = new MultipartUploadConfiguration();
+        multipartConfig.setEnabled(true);
+        multipartConfig.setThreshold(8 * MB);
+        multipartConfig.setPartSize(8 * MB);
+        multipartConfig.setBufferPoolSize(4);
+        try (TestBackend backend = new TestBackend("transient", blobStore, multipartConfig)) {
+            backend.getRepository().uploadFile(backend.getBucket(), new GeneratedInputStream(size), size,
+                    "large.bin", "application/octet-stream");
+        }
+
+        assertThat(storedBytes.get()).isEqualTo(size);
+        assertThat(blobStore.getCount("uploadMultipartPart")).isGreaterThan(1);
+    }
+
+    private static long drain(final Payload payload) throws IOException {
+        final byte[] buffer = new byte[64 * 1024];
+        long length = 0;
+        try (InputStream inputStream = payload.openStream()) {
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                length += read;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Produces size bytes without holding them.
+     */
+    private static final class GeneratedInputStream extends InputStream {
+
+        private long remaining;
+
+        GeneratedInputStream(final long size) {
+            this.remaining = size;
+        }
+
+        @Override
+        public int read() {
+            if (remaining <= 0) {
+                return -1;
+            }
+            remaining--;
+            return (int) (remaining & 0xff);
+        }
+
+        @Override
+        public int read(final byte[] buffer, final int offset, final int length) {
+            if (remaining <= 0) {
+                return -1;
+            }
+            final int count = (int) Math.min(length, remaining);
+            for (int i = 0; i < count; i++) {
+                buffer[offset + i] = (byte) (remaining - i);
+            }
+            remaining -= count;
+            return count;
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.sap.refapps.objectstore.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jclouds.blobstore.BlobStore;
+import org.jclouds.blobstore.options.GetOptions;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.sap.refapps.objectstore.CountingBlobStore;
+import com.sap.refapps.objectstore.TestBackend;
+import com.sap.refapps.objectstore.config.MultipartUploadConfiguration;
+import com.sap.refapps.objectstore.config.ParallelDownloadConfiguration;
+
+/**
+ * Downloads a 10 KB object in 1 KB ranges from the transient backend, with
+ * single ranges delayed, failing or held through the CountingBlobStore.
+ */
+public class ParallelDownloaderTest {
+
+    private static final int KB = 1024;
+    private static final String NAME = "large.bin";
+
+    private final CountingBlobStore blobStore = new CountingBlobStore();
+    private final ParallelDownloadConfiguration config = new ParallelDownloadConfiguration();
+    private final byte[] content = new byte[10 * KB];
+    private final List<String> ranges = Collections.synchronizedList(new ArrayList<>());
+    private TestBackend backend;
+    private ParallelDownloader downloader;
+    private String eTag;
+
+    @Before
+    public void setUp() throws IOException {
+        new Random(42).nextBytes(content);
+        config.setEnabled(true);
+        config.setThreshold(0);
+        config.setRangeSize(KB);
+        config.setConcurrency(4);
+        config.setMaxBufferedRanges(4);
+        config.setMaxRetries(2);
+        backend = new TestBackend("transient", blobStore, new MultipartUploadConfiguration());
+        downloader = new ParallelDownloader(config);
+        final BlobStore store = getBlobStore();
+        eTag = store.putBlob(backend.getBucket(), store.blobBuilder(NAME).payload(content).build());
+        blobStore.reset();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        downloader.shutdown();
+        backend.close();
+    }
+
+    @Test
+    public void rangesCompletingOutOfOrderAreReassembled() throws IOException {
+        replaceGetBlob(start -> {
+            // the earlier ranges of the window complete last
+            Uninterruptibles.sleepUninterruptibly((4 - start / KB % 4) * 20, TimeUnit.MILLISECONDS);
+        });
+
+        assertThat(download()).isEqualTo(content);
+
+        // the first range is a ranged request as well, not the whole object
+        assertThat(ranges).hasSize(10).allMatch(range -> range.startsWith("bytes=")).contains("bytes=0-1023",
+                "bytes=9216-10239");
+        awaitAvailableBuffers(4);
+    }
+
+    @Test
+    public void failedRangeIsRetried() throws IOException {
+        final AtomicInteger failures = new AtomicInteger();
+        replaceGetBlob(start -> {
+            if (start == 3 * KB && failures.getAndIncrement() == 0) {
+                throw new IllegalStateException("injected failure of range 3");
+            }
+        });
+
+        assertThat(download()).isEqualTo(content);
+
+        assertThat(failures.get()).isEqualTo(2);
+        assertThat(blobStore.getCount("getBlob")).isEqualTo(11);
+        awaitAvailableBuffers(4);
+    }
+
+    @Test
+    public void rangeFailingBeyondItsRetriesFailsTheReadAndReleasesTheBuffers() throws IOException {
+        replaceGetBlob(start -> {
+            if (start == 5 * KB) {
+                throw new IllegalStateException("injected failure of range 5");
+            }
+        });
+
+        try (InputStream inputStream = downloader.download(getBlobStore(), backend.getBucket(), NAME, eTag,
+                content.length)) {
+            assertThatThrownBy(() -> ByteStreams.toByteArray(inputStream)).isInstanceOf(IOException.class)
+                    .hasStackTraceContaining("injected failure of range 5");
+            awaitAvailableBuffers(4);
+        }
+    }
+
+    @Test
+    public void buffersOfCancelledFetchesAreHeldUntilTheFetchesEnd() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch held = new CountDownLatch(3);
+        replaceGetBlob(start -> {
+            if (start > 0) {
+                held.countDown();
+                // ignores the interrupt of the cancellation, like a fetch
+                // that is allocating its buffer
+                Uninterruptibles.awaitUninterruptibly(release, 10, TimeUnit.SECONDS);
+            }
+        });
+        final InputStream inputStream = downloader.download(getBlobStore(), backend.getBucket(), NAME, eTag,
+                content.length);
+        assertThat(held.await(10, TimeUnit.SECONDS)).isTrue();
+
+        inputStream.close();
+
+        // only the buffer of the first range is released
+        awaitAvailableBuffers(1);
+        Thread.sleep(100);
+        assertThat(downloader.getAvailableBuffers()).isEqualTo(1);
+        release.countDown();
+        awaitAvailableBuffers(4);
+    }
+
+    @Test
+    public void buffersOfAStreamThatIsNotClosedAreReleased() throws Exception {
+        InputStream inputStream = downloader.download(getBlobStore(), backend.getBucket(), NAME, eTag,
+                content.length);
+        assertThat(inputStream.read(new byte[KB / 2])).isEqualTo(KB / 2);
+        assertThat(downloader.getAvailableBuffers()).isLessThan(4);
+
+        inputStream = null;
+
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (downloader.getAvailableBuffers() < 4 && System.nanoTime() < deadline) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        assertThat(downloader.getAvailableBuffers()).isEqualTo(4);
+    }
+
+    @Test
+    public void changedObjectFailsBeforeTheFirstRangeIsServed() throws IOException {
+        final BlobStore store = getBlobStore();
+        store.putBlob(backend.getBucket(), store.blobBuilder(NAME).payload(new byte[10 * KB]).build());
+
+        assertThatThrownBy(() -> downloader.download(store, backend.getBucket(), NAME, eTag, content.length))
+                .isInstanceOf(IOException.class).hasMessageContaining("has been changed");
+        // the ranges fetched ahead fail as well
+        awaitAvailableBuffers(4);
+    }
+
+    private byte[] download() throws IOException {
+        try (InputStream inputStream = downloader.download(getBlobStore(), backend.getBucket(), NAME, eTag,
+                content.length)) {
+            return ByteStreams.toByteArray(inputStream);
+        }
+    }
+
+    /**
+     * @param beforeRange
+     *            called with the start of every requested range
+     */
+    private void replaceGetBlob(final RangeHook beforeRange) {
+        blobStore.replace("getBlob", (delegate, args) -> {
+            final GetOptions options = (GetOptions) args[2];
+            final String range = options.getRanges().isEmpty() ? "whole object" : "bytes=" + options.getRanges()
+                    .get(0);
+            ranges.add(range);
+            beforeRange.accept(options.getRanges().isEmpty() ? 0
+                    : Long.parseLong(options.getRanges().get(0).split("-")[0]));
+            return delegate.getBlob((String) args[0], (String) args[1], options);
+        });
+    }
+
+    /**
+     * A fetch lets go of its buffer shortly after the reader has received
+     * it.
+     */
+    private void awaitAvailableBuffers(final int buffers) {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (downloader.getAvailableBuffers() < buffers && System.nanoTime() < deadline) {
+            Uninterruptibles.sleepUninterruptibly(10, TimeUnit.MILLISECONDS);
+        }
+        assertThat(downloader.getAvailableBuffers()).isEqualTo(buffers);
+    }
+
+    private BlobStore getBlobStore() {
+        return backend.getContextProvider().getContext().getBlobStore();
+    }
+
+    @FunctionalInterface
+    private interface RangeHook {
+        void accept(long start);
+    }
+}
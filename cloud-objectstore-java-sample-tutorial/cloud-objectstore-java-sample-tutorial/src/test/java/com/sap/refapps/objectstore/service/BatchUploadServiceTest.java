@@ -0,0 +1,228 @@
+package com.sap.refapps.objectstore.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import javax.servlet.ServletInputStream;
+
+import org.apache.commons.fileupload.FileItemIterator;
+import org.apache.commons.fileupload.servlet.ServletFileUpload;
+import org.jclouds.blobstore.BlobStore;
+import org.jclouds.blobstore.domain.Blob;
+import org.jclouds.blobstore.options.PutOptions;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.DelegatingServletInputStream;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import com.google.common.io.CountingInputStream;
+import com.sap.refapps.objectstore.CountingBlobStore;
+import com.sap.refapps.objectstore.TestBackend;
+import com.sap.refapps.objectstore.config.BatchUploadConfiguration;
+import com.sap.refapps.objectstore.config.MultipartUploadConfiguration;
+import com.sap.refapps.objectstore.model.UploadResult;
+import com.sap.refapps.objectstore.service.impl.LocalObjectStoreService;
+
+/**
+ * Sends multipart requests to the service, uploading to the transient
+ * backend behind a CountingBlobStore that fails or holds single uploads.
+ */
+public class BatchUploadServiceTest {
+
+    private static final int KB = 1024;
+    private static final int MB = 1024 * KB;
+    private static final String BOUNDARY = "batch-boundary";
+
+    private final CountingBlobStore blobStore = new CountingBlobStore();
+    private final BatchUploadConfiguration config = new BatchUploadConfiguration();
+    private final CountDownLatch uploading = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private ExecutorService executor;
+    private TestBackend backend;
+    private BatchUploadService batchUploadService;
+    private CountingInputStream requestStream;
+
+    @Before
+    public void setUp() throws IOException {
+        executor = Executors.newFixedThreadPool(4);
+        backend = new TestBackend("transient", blobStore, new MultipartUploadConfiguration());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        release.countDown();
+        if (batchUploadService != null) {
+            batchUploadService.shutdown();
+        }
+        executor.shutdownNow();
+        backend.close();
+    }
+
+    @Test
+    public void failedFilesAreReportedAlongWithTheUploadedOnes() throws Exception {
+        blobStore.replace("putBlob", (delegate, args) -> {
+            if (((Blob) args[1]).getMetadata().getName().equals("b.txt")) {
+                throw new IllegalStateException("injected failure of b.txt");
+            }
+            return put(delegate, args);
+        });
+
+        List<UploadResult> results = upload(file("a.txt", 10), file("b.txt", 20), file("c.txt", 30));
+
+        assertThat(results).extracting(UploadResult::getName).containsExactly("a.txt", "b.txt", "c.txt");
+        assertThat(results).extracting(UploadResult::getStatus).containsExactly(UploadResult.UPLOADED,
+                UploadResult.FAILED, UploadResult.UPLOADED);
+        assertThat(results.get(1).getError()).contains("injected failure of b.txt");
+        assertThat(results).extracting(UploadResult::getBytes).containsExactly(10L, 20L, 30L);
+        assertThat(getBlobStore().blobExists(backend.getBucket(), "a.txt")).isTrue();
+        assertThat(getBlobStore().blobExists(backend.getBucket(), "b.txt")).isFalse();
+        assertThat(getBlobStore().blobExists(backend.getBucket(), "c.txt")).isTrue();
+    }
+
+    @Test
+    public void fileOfTheBufferSizeIsHeldInMemory() throws Exception {
+        holdUploads();
+        final long spoolFiles = countSpoolFiles();
+
+        CompletableFuture<List<UploadResult>> results = uploadAsync(file("buffered.bin", MB));
+        assertThat(uploading.await(10, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(countSpoolFiles()).isEqualTo(spoolFiles);
+        release.countDown();
+        assertThat(results.get(10, TimeUnit.SECONDS).get(0).getStatus()).isEqualTo(UploadResult.UPLOADED);
+    }
+
+    @Test
+    public void fileAboveTheBufferSizeIsSpooledToDisk() throws Exception {
+        holdUploads();
+        final long spoolFiles = countSpoolFiles();
+
+        CompletableFuture<List<UploadResult>> results = uploadAsync(file("spooled.bin", MB + 1));
+        assertThat(uploading.await(10, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(countSpoolFiles()).isEqualTo(spoolFiles + 1);
+        release.countDown();
+        UploadResult result = results.get(10, TimeUnit.SECONDS).get(0);
+        assertThat(result.getStatus()).isEqualTo(UploadResult.UPLOADED);
+        assertThat(result.getBytes()).isEqualTo(MB + 1);
+        // the spool file is removed once it is uploaded
+        assertThat(countSpoolFiles()).isEqualTo(spoolFiles);
+    }
+
+    @Test
+    public void readingStopsWhileMaxPendingFilesAreUploading() throws Exception {
+        config.setConcurrency(1);
+        config.setMaxPendingFiles(2);
+        final AtomicInteger puts = new AtomicInteger();
+        blobStore.replace("putBlob", (delegate, args) -> {
+            puts.incrementAndGet();
+            uploading.countDown();
+            release.await(10, TimeUnit.SECONDS);
+            return put(delegate, args);
+        });
+        final byte[][] files = { file("1.bin", 256 * KB), file("2.bin", 256 * KB), file("3.bin", 256 * KB),
+                file("4.bin", 256 * KB) };
+
+        CompletableFuture<List<UploadResult>> results = uploadAsync(files);
+        assertThat(uploading.await(10, TimeUnit.SECONDS)).isTrue();
+        Thread.sleep(200);
+
+        // one file is uploading, one is waiting, the third one is not read
+        assertThat(puts.get()).isEqualTo(1);
+        assertThat(requestStream.getCount()).isLessThan(files[0].length + files[1].length + 64 * KB);
+        release.countDown();
+        assertThat(results.get(10, TimeUnit.SECONDS)).extracting(UploadResult::getStatus)
+                .containsOnly(UploadResult.UPLOADED).hasSize(4);
+        assertThat(puts.get()).isEqualTo(4);
+    }
+
+    private void holdUploads() {
+        blobStore.replace("putBlob", (delegate, args) -> {
+            uploading.countDown();
+            release.await(10, TimeUnit.SECONDS);
+            return put(delegate, args);
+        });
+    }
+
+    private List<UploadResult> upload(byte[]... files) throws Exception {
+        return uploadAsync(files).get(30, TimeUnit.SECONDS);
+    }
+
+    private CompletableFuture<List<UploadResult>> uploadAsync(byte[]... files) throws Exception {
+        batchUploadService = new BatchUploadService(new LocalObjectStoreService(backend.getLocalConfig(),
+                backend.getRepository(), executor, backend.getMetrics()), config);
+        final FileItemIterator iter = new ServletFileUpload().getItemIterator(createRequest(files));
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return batchUploadService.upload(iter);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    private MockHttpServletRequest createRequest(byte[]... files) throws IOException {
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        for (byte[] file : files) {
+            body.write(file);
+        }
+        body.write(("--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+        requestStream = new CountingInputStream(new ByteArrayInputStream(body.toByteArray()));
+        final MockHttpServletRequest request = new MockHttpServletRequest("POST", "/storage/batch") {
+
+            @Override
+            public ServletInputStream getInputStream() {
+                return new DelegatingServletInputStream(requestStream);
+            }
+        };
+        request.setContentType("multipart/form-data; boundary=" + BOUNDARY);
+        request.setContent(body.toByteArray());
+        return request;
+    }
+
+    /**
+     * @return part of a multipart body with a file of the given size
+     */
+    private static byte[] file(String name, int size) throws IOException {
+        final ByteArrayOutputStream part = new ByteArrayOutputStream();
+        part.write(("--" + BOUNDARY + "\r\nContent-Disposition: form-data; name=\"file\"; filename=\"" + name
+                + "\"\r\nContent-Type: application/octet-stream\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+        final byte[] content = new byte[size];
+        Arrays.fill(content, (byte) 'x');
+        part.write(content);
+        part.write("\r\n".getBytes(StandardCharsets.US_ASCII));
+        return part.toByteArray();
+    }
+
+    private static Object put(BlobStore delegate, Object[] args) {
+        return args.length > 2 ? delegate.putBlob((String) args[0], (Blob) args[1], (PutOptions) args[2])
+                : delegate.putBlob((String) args[0], (Blob) args[1]);
+    }
+
+    private static long countSpoolFiles() throws IOException {
+        try (Stream<Path> files = Files.list(Paths.get(System.getProperty("java.io.tmpdir")))) {
+            return files.filter(file -> file.getFileName().toString().startsWith("objectstore-batch-")).count();
+        }
+    }
+
+    private BlobStore getBlobStore() {
+        return backend.getContextProvider().getContext().getBlobStore();
+    }
+}
@@ -0,0 +1,178 @@
+package com.sap.refapps.objectstore.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.jclouds.blobstore.BlobStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.io.ByteStreams;
+import com.sap.refapps.objectstore.CountingBlobStore;
+import com.sap.refapps.objectstore.TestBackend;
+import com.sap.refapps.objectstore.config.AmazonWebServiceConfiguration;
+import com.sap.refapps.objectstore.config.BulkDeleteConfiguration;
+import com.sap.refapps.objectstore.config.MultipartUploadConfiguration;
+import com.sap.refapps.objectstore.model.DeleteResult;
+import com.sap.refapps.objectstore.service.impl.LocalObjectStoreService;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Deletes from the transient backend behind a CountingBlobStore that fails
+ * single objects, and from an S3 stand-in answering the multi-object delete
+ * with an error for one of the keys.
+ */
+public class BulkDeleteServiceTest {
+
+    private final CountingBlobStore blobStore = new CountingBlobStore();
+    private final BulkDeleteConfiguration config = new BulkDeleteConfiguration();
+    private final List<List<DeleteResult>> chunks = Collections.synchronizedList(new ArrayList<>());
+    private ExecutorService executor;
+    private TestBackend backend;
+    private BulkDeleteService bulkDeleteService;
+    private HttpServer s3Server;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (bulkDeleteService != null) {
+            bulkDeleteService.shutdown();
+        }
+        if (backend != null) {
+            backend.close();
+        }
+        if (s3Server != null) {
+            s3Server.stop(0);
+        }
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void namesAreDeletedInChunksOfChunkSize() throws IOException {
+        config.setChunkSize(2);
+        createService(new TestBackend("transient", blobStore, new MultipartUploadConfiguration()));
+        upload("a.txt", "b.txt", "c.txt", "d.txt", "e.txt");
+
+        bulkDeleteService.delete(Arrays.asList("a.txt", "b.txt", "c.txt", "d.txt", "e.txt"), chunks::add);
+
+        assertThat(chunks).extracting(List::size).containsExactlyInAnyOrder(2, 2, 1);
+        assertThat(results()).extracting(DeleteResult::getStatus).containsOnly(DeleteResult.DELETED).hasSize(5);
+        assertThat(getBlobStore().list(backend.getBucket())).isEmpty();
+    }
+
+    @Test
+    public void chunkSizeIsCappedAtTheLimitOfTheMultiObjectDelete() throws IOException {
+        config.setChunkSize(5000);
+        createService(new TestBackend("transient", blobStore, new MultipartUploadConfiguration()));
+        final List<String> names = IntStream.range(0, BulkDeleteService.MAX_CHUNK_SIZE + 1)
+                .mapToObj(i -> "missing-" + i).collect(Collectors.toList());
+
+        bulkDeleteService.delete(names, chunks::add);
+
+        assertThat(chunks).extracting(List::size).containsExactlyInAnyOrder(BulkDeleteService.MAX_CHUNK_SIZE, 1);
+    }
+
+    @Test
+    public void failedObjectIsReportedAlongWithTheDeletedOnes() throws IOException {
+        createService(new TestBackend("transient", blobStore, new MultipartUploadConfiguration()));
+        upload("a.txt", "b.txt", "c.txt");
+        blobStore.replace("removeBlob", (delegate, args) -> {
+            if (args[1].equals("b.txt")) {
+                throw new IllegalStateException("injected failure of b.txt");
+            }
+            delegate.removeBlob((String) args[0], (String) args[1]);
+            return null;
+        });
+
+        bulkDeleteService.delete(Arrays.asList("a.txt", "b.txt", "c.txt"), chunks::add);
+
+        final List<DeleteResult> results = results();
+        assertThat(results).extracting(DeleteResult::getName).containsExactly("a.txt", "b.txt", "c.txt");
+        assertThat(results).extracting(DeleteResult::getStatus).containsExactly(DeleteResult.DELETED,
+                DeleteResult.FAILED, DeleteResult.DELETED);
+        assertThat(results.get(1).getError()).contains("injected failure of b.txt");
+        assertThat(getBlobStore().blobExists(backend.getBucket(), "b.txt")).isTrue();
+        assertThat(getBlobStore().blobExists(backend.getBucket(), "a.txt")).isFalse();
+    }
+
+    @Test
+    public void errorsOfTheS3MultiObjectDeleteAreReportedPerObject() throws IOException {
+        final List<String> requests = Collections.synchronizedList(new ArrayList<>());
+        startS3Server(requests, "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                + "<DeleteResult xmlns=\"http://s3.amazonaws.com/doc/2006-03-01/\">"
+                + "<Deleted><Key>a.txt</Key></Deleted>"
+                + "<Error><Key>b.txt</Key><Code>AccessDenied</Code><Message>Access Denied</Message></Error>"
+                + "<Deleted><Key>c.txt</Key></Deleted>" + "</DeleteResult>");
+        final AmazonWebServiceConfiguration awsConfig = new AmazonWebServiceConfiguration();
+        awsConfig.setAccessKeyId("identity");
+        awsConfig.setSecretAccessKey("credential");
+        awsConfig.setEndpoint("http://127.0.0.1:" + s3Server.getAddress().getPort());
+        createService(new TestBackend("aws-s3", awsConfig::getBlobStoreContext, blobStore));
+
+        bulkDeleteService.delete(Arrays.asList("a.txt", "b.txt", "c.txt"), chunks::add);
+
+        // a single multi-object delete, not one request per object
+        assertThat(requests).hasSize(1);
+        assertThat(requests.get(0)).startsWith("POST /" + backend.getBucket() + "?delete").contains("b.txt");
+        final List<DeleteResult> results = results();
+        assertThat(results).extracting(DeleteResult::getStatus).containsExactly(DeleteResult.DELETED,
+                DeleteResult.FAILED, DeleteResult.DELETED);
+        assertThat(results.get(1).getError()).isEqualTo("AccessDenied: Access Denied");
+    }
+
+    private void createService(final TestBackend testBackend) {
+        backend = testBackend;
+        bulkDeleteService = new BulkDeleteService(new LocalObjectStoreService(backend.getLocalConfig(),
+                backend.getRepository(), executor, backend.getMetrics()), config);
+    }
+
+    private void startS3Server(final List<String> requests, final String response) throws IOException {
+        s3Server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        s3Server.createContext("/", exchange -> {
+            final String body = new String(ByteStreams.toByteArray(exchange.getRequestBody()),
+                    StandardCharsets.UTF_8);
+            requests.add(exchange.getRequestMethod() + " " + exchange.getRequestURI() + " " + body);
+            final byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/xml");
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(bytes);
+            }
+        });
+        s3Server.start();
+    }
+
+    private void upload(final String... fileNames) throws IOException {
+        for (String fileName : fileNames) {
+            final byte[] bytes = fileName.getBytes(StandardCharsets.UTF_8);
+            backend.getRepository().uploadFile(backend.getBucket(), new ByteArrayInputStream(bytes), bytes.length,
+                    fileName, "text/plain");
+        }
+    }
+
+    private List<DeleteResult> results() {
+        return chunks.stream().flatMap(List::stream).collect(Collectors.toList());
+    }
+
+    private BlobStore getBlobStore() {
+        return backend.getContextProvider().getContext().getBlobStore();
+    }
+}
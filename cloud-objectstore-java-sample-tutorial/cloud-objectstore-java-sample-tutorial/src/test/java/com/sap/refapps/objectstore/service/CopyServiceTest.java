@@ -0,0 +1,142 @@
+package com.sap.refapps.objectstore.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.jclouds.blobstore.BlobStore;
+import org.jclouds.blobstore.options.CopyOptions;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.io.ByteStreams;
+import com.sap.refapps.objectstore.CountingBlobStore;
+import com.sap.refapps.objectstore.TestBackend;
+import com.sap.refapps.objectstore.config.CopyConfiguration;
+import com.sap.refapps.objectstore.config.MultipartUploadConfiguration;
+import com.sap.refapps.objectstore.model.CopyResult;
+import com.sap.refapps.objectstore.service.impl.LocalObjectStoreService;
+
+/**
+ * Copies and moves objects on the transient backend behind a
+ * CountingBlobStore that fails the removal of sources.
+ */
+public class CopyServiceTest {
+
+    private final CountingBlobStore blobStore = new CountingBlobStore();
+    private ExecutorService executor;
+    private TestBackend backend;
+    private CopyService copyService;
+
+    @Before
+    public void setUp() throws IOException {
+        executor = Executors.newFixedThreadPool(4);
+        backend = new TestBackend("transient", blobStore, new MultipartUploadConfiguration());
+        final CopyConfiguration config = new CopyConfiguration();
+        config.setConcurrency(2);
+        copyService = new CopyService(new LocalObjectStoreService(backend.getLocalConfig(), backend.getRepository(),
+                executor, backend.getMetrics()), config);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        copyService.shutdown();
+        backend.close();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void objectIsCopied() throws IOException {
+        upload("a.txt");
+
+        final CopyResult result = copyService.copy("a.txt", "b.txt", CopyOptions.NONE, false);
+
+        assertThat(result.getStatus()).isEqualTo(CopyResult.COPIED);
+        assertThat(result.getEtag()).isNotNull();
+        assertThat(read("b.txt")).isEqualTo("a.txt");
+        assertThat(exists("a.txt")).isTrue();
+    }
+
+    @Test
+    public void missingSourceIsNotFound() {
+        final CopyResult result = copyService.copy("missing.txt", "b.txt", CopyOptions.NONE, false);
+
+        assertThat(result.getStatus()).isEqualTo(CopyResult.NOT_FOUND);
+        assertThat(exists("b.txt")).isFalse();
+    }
+
+    @Test
+    public void objectsOfAPrefixAreCopiedBelowTheTargetPrefix() throws IOException {
+        upload("logs/1.txt", "logs/2.txt", "logs/old/3.txt", "other.txt");
+        final List<CopyResult> results = new ArrayList<>();
+
+        copyService.copyPrefix("logs/", "archive/", CopyOptions.NONE, false, results::add);
+
+        assertThat(results).extracting(CopyResult::getTarget).containsExactlyInAnyOrder("archive/1.txt",
+                "archive/2.txt", "archive/old/3.txt");
+        assertThat(results).extracting(CopyResult::getStatus).containsOnly(CopyResult.COPIED);
+        assertThat(read("archive/old/3.txt")).isEqualTo("logs/old/3.txt");
+        assertThat(exists("logs/1.txt")).isTrue();
+        assertThat(exists("archive/other.txt")).isFalse();
+    }
+
+    @Test
+    public void moveDeletesTheSource() throws IOException {
+        upload("logs/1.txt", "logs/2.txt");
+        final List<CopyResult> results = new ArrayList<>();
+
+        copyService.copyPrefix("logs/", "archive/", CopyOptions.NONE, true, results::add);
+
+        assertThat(results).extracting(CopyResult::getStatus).containsOnly(CopyResult.MOVED).hasSize(2);
+        assertThat(exists("logs/1.txt")).isFalse();
+        assertThat(read("archive/2.txt")).isEqualTo("logs/2.txt");
+    }
+
+    @Test
+    public void sourceThatCannotBeDeletedFailsTheMoveAndKeepsTheCopy() throws IOException {
+        upload("a.txt");
+        blobStore.replace("removeBlob", (delegate, args) -> {
+            throw new IllegalStateException("injected failure of " + args[1]);
+        });
+
+        final CopyResult result = copyService.copy("a.txt", "b.txt", CopyOptions.NONE, true);
+
+        assertThat(result.getStatus()).isEqualTo(CopyResult.FAILED);
+        assertThat(result.getError()).contains("source could not be deleted");
+        // the copy is reported with its ETag, the source is still there
+        assertThat(result.getEtag()).isNotNull();
+        assertThat(exists("a.txt")).isTrue();
+        assertThat(read("b.txt")).isEqualTo("a.txt");
+    }
+
+    private void upload(final String... fileNames) throws IOException {
+        for (String fileName : fileNames) {
+            final byte[] bytes = fileName.getBytes(StandardCharsets.UTF_8);
+            backend.getRepository().uploadFile(backend.getBucket(), new ByteArrayInputStream(bytes), bytes.length,
+                    fileName, "text/plain");
+        }
+    }
+
+    private boolean exists(final String fileName) {
+        return getBlobStore().blobExists(backend.getBucket(), fileName);
+    }
+
+    private String read(final String fileName) throws IOException {
+        try (InputStream inputStream = getBlobStore().getBlob(backend.getBucket(), fileName).getPayload()
+                .openStream()) {
+            return new String(ByteStreams.toByteArray(inputStream), StandardCharsets.UTF_8);
+        }
+    }
+
+    private BlobStore getBlobStore() {
+        return backend.getContextProvider().getContext().getBlobStore();
+    }
+}